@@ -0,0 +1,157 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.benchmarks;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.processors.ArcExpander;
+import com.willwinder.universalgcodesender.gcode.processors.CommentProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.DecimalProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.LineSplitter;
+import com.willwinder.universalgcodesender.gcode.processors.M30Processor;
+import com.willwinder.universalgcodesender.gcode.processors.MeshLeveler;
+import com.willwinder.universalgcodesender.gcode.processors.WhitespaceProcessor;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Helpers for creating the input files and parsers used by the benchmarks.
+ *
+ * @author wwinder
+ */
+public final class BenchmarkFiles {
+    /**
+     * The name of the generated gcode file which can be used as a benchmark parameter
+     * instead of one of the fixture files.
+     */
+    public static final String SYNTHETIC = "synthetic";
+
+    private static final String FIXTURE_PATH = "/fixtures/";
+    private static final int SYNTHETIC_LINES = 50_000;
+
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * Returns a temporary file with the given gcode. Either {@link #SYNTHETIC} or
+     * the name of a fixture file bundled with the benchmarks.
+     *
+     * @param name the name of the gcode file
+     * @return a temporary file which will be deleted on exit
+     * @throws IOException if the file couldn't be created
+     */
+    public static File getGcodeFile(String name) throws IOException {
+        if (SYNTHETIC.equals(name)) {
+            return createSyntheticFile(SYNTHETIC_LINES);
+        }
+
+        File file = createTempFile(name);
+        try (InputStream inputStream = BenchmarkFiles.class.getResourceAsStream(FIXTURE_PATH + name)) {
+            if (inputStream == null) {
+                throw new IOException("Could not find the benchmark fixture " + name);
+            }
+            Files.copy(inputStream, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    /**
+     * Reads all lines in the given gcode file.
+     */
+    public static List<String> readLines(String name) throws IOException {
+        File file = getGcodeFile(name);
+        try {
+            return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * Creates a file with a mix of rapids, feed moves, arcs, comments and modal changes
+     * similar to what a CAM program would generate.
+     *
+     * @param lines the approximate number of lines to generate
+     */
+    public static File createSyntheticFile(int lines) throws IOException {
+        File file = createTempFile(SYNTHETIC);
+        Random random = new Random(1337);
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("(Synthetic benchmark file)\n");
+            writer.write("G21 G90 G17\n");
+            writer.write("M3 S10000\n");
+
+            int line = 3;
+            while (line < lines) {
+                writer.write(String.format(Locale.US, "G0 X%.3f Y%.3f Z5.000\n", random.nextDouble() * 30, random.nextDouble() * 30));
+                writer.write(String.format(Locale.US, "G1 Z%.3f F200 ; plunge\n", -random.nextDouble()));
+                for (int i = 0; i < 20; i++) {
+                    writer.write(String.format(Locale.US, "X%.4f Y%.4f F%d\n", random.nextDouble() * 30, random.nextDouble() * 30, 500 + i));
+                }
+                writer.write(String.format(Locale.US, "G2 X%.3f Y%.3f I2.5 J0\n", random.nextDouble() * 30, random.nextDouble() * 30));
+                writer.write(String.format(Locale.US, "G3 X%.3f Y%.3f R%.3f\n", random.nextDouble() * 30, random.nextDouble() * 30, 5 + random.nextDouble() * 5));
+                writer.write("G91 G0 Z1\nG90\n");
+                line += 26;
+            }
+
+            writer.write("M5\nM30\n");
+        }
+        return file;
+    }
+
+    /**
+     * Creates a parser with the processors that are used by default when preprocessing a file
+     * together with arc expansion, line splitting and mesh leveling.
+     */
+    public static GcodeParser createPreprocessingParser() {
+        GcodeParser gcp = new GcodeParser();
+        gcp.addCommandProcessor(new CommentProcessor());
+        gcp.addCommandProcessor(new WhitespaceProcessor());
+        gcp.addCommandProcessor(new M30Processor());
+        gcp.addCommandProcessor(new DecimalProcessor(4));
+        gcp.addCommandProcessor(new ArcExpander(true, 0.5));
+        gcp.addCommandProcessor(new LineSplitter(5));
+
+        Position[][] grid = {
+                {new Position(-50, -50, 0, UnitUtils.Units.MM), new Position(-50, 250, 0.2, UnitUtils.Units.MM)},
+                {new Position(250, -50, 0.1, UnitUtils.Units.MM), new Position(250, 250, 0.3, UnitUtils.Units.MM)}
+        };
+        gcp.addCommandProcessor(new MeshLeveler(0, grid));
+        return gcp;
+    }
+
+    /**
+     * Creates a temporary file which is deleted when the benchmark JVM exits.
+     */
+    public static File createTempFile(String name) throws IOException {
+        File file = File.createTempFile("ugs-benchmark-" + name, ".nc");
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks from the command line, accepts the same arguments as the JMH runner.
+ * The GC profiler is always enabled to report the allocation rate next to the throughput.
+ * <pre>
+ *     java -jar ugs-benchmarks/target/benchmarks.jar                  # all benchmarks
+ *     java -jar ugs-benchmarks/target/benchmarks.jar PreprocessBenchmark -p parallelism=1,4
+ *     java -jar ugs-benchmarks/target/benchmarks.jar -h               # list all options
+ * </pre>
+ *
+ * @author wwinder
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws IOException, RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList() || commandLineOptions.shouldListWithParams()
+                || commandLineOptions.shouldListProfilers() || commandLineOptions.shouldListResultFormats()) {
+            // Nothing to run, let JMH print the help or the requested list
+            Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions);
+        boolean hasGcProfiler = commandLineOptions.getProfilers().stream()
+                .anyMatch(profiler -> profiler.getKlass().equals(GCProfiler.class.getName()) || profiler.getKlass().equals("gc"));
+        if (!hasGcProfiler) {
+            options.addProfiler(GCProfiler.class);
+        }
+
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.benchmarks;
+
+import com.willwinder.universalgcodesender.gcode.DefaultCommandCreator;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import com.willwinder.universalgcodesender.utils.GcodeStreamReader;
+import com.willwinder.universalgcodesender.utils.GcodeStreamWriter;
+import com.willwinder.universalgcodesender.utils.IGcodeWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing and reading gcode stream files, each operation is one row.
+ *
+ * @author wwinder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GcodeStreamBenchmark {
+    private static final int ROWS = 100_000;
+    private static final int RANDOM_READS = 10_000;
+
+    private String[] lines;
+    private int[] randomRows;
+    private File writeFile;
+    private File readFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<String> fileLines = BenchmarkFiles.readLines(BenchmarkFiles.SYNTHETIC);
+        lines = fileLines.subList(0, Math.min(ROWS, fileLines.size())).toArray(new String[0]);
+
+        writeFile = BenchmarkFiles.createTempFile("stream-write");
+        readFile = BenchmarkFiles.createTempFile("stream-read");
+        writeStream(readFile);
+
+        Random random = new Random(1337);
+        randomRows = new int[RANDOM_READS];
+        for (int i = 0; i < RANDOM_READS; i++) {
+            randomRows[i] = random.nextInt(lines.length);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writeFile.delete();
+        readFile.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public File write() throws IOException {
+        writeStream(writeFile);
+        return writeFile;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void readSequential(Blackhole blackhole) throws Exception {
+        try (GcodeStreamReader reader = new GcodeStreamReader(readFile, new DefaultCommandCreator())) {
+            GcodeCommand command;
+            while ((command = reader.getNextCommand()) != null) {
+                blackhole.consume(command);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RANDOM_READS)
+    public void readRandomAccess(Blackhole blackhole) throws Exception {
+        try (GcodeStreamReader reader = new GcodeStreamReader(readFile, new DefaultCommandCreator())) {
+            for (int row : randomRows) {
+                blackhole.consume(reader.getCommand(row));
+            }
+        }
+    }
+
+    private void writeStream(File file) throws IOException {
+        try (IGcodeWriter writer = new GcodeStreamWriter(file)) {
+            for (int i = 0; i < lines.length; i++) {
+                writer.addLine(lines[i], lines[i], "", i);
+            }
+        }
+    }
+}
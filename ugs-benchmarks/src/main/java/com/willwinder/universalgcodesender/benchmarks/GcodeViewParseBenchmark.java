@@ -0,0 +1,112 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.benchmarks;
+
+import com.willwinder.universalgcodesender.gcode.DefaultCommandCreator;
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.processors.CommentProcessor;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.utils.GcodeStreamReader;
+import com.willwinder.universalgcodesender.utils.GcodeStreamWriter;
+import com.willwinder.universalgcodesender.utils.IGcodeWriter;
+import com.willwinder.universalgcodesender.visualizer.GcodeViewParse;
+import com.willwinder.universalgcodesender.visualizer.LineSegment;
+import com.willwinder.universalgcodesender.visualizer.ToolpathBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures generating the line segments used by the visualizer, each operation is one file.
+ *
+ * @author wwinder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GcodeViewParseBenchmark {
+    private static final double ARC_SEGMENT_LENGTH = 0.3;
+
+    @Param({BenchmarkFiles.SYNTHETIC, "Gates_combined_R12.nc", "arc_rword_test.gcode"})
+    public String file;
+
+    private List<String> lines;
+    private File streamFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        lines = BenchmarkFiles.readLines(file);
+
+        File input = BenchmarkFiles.getGcodeFile(file);
+        streamFile = BenchmarkFiles.createTempFile("view-parse");
+        try (IGcodeWriter writer = new GcodeStreamWriter(streamFile)) {
+            GcodeParser gcp = new GcodeParser();
+            gcp.addCommandProcessor(new CommentProcessor());
+            GcodeParserUtils.processAndExport(gcp, input, writer);
+        } finally {
+            input.delete();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        streamFile.delete();
+    }
+
+    @Benchmark
+    public List<LineSegment> toObjRedux() throws Exception {
+        return new GcodeViewParse().toObjRedux(lines, ARC_SEGMENT_LENGTH);
+    }
+
+    @Benchmark
+    public List<LineSegment> toObjFromReader() throws Exception {
+        try (GcodeStreamReader reader = new GcodeStreamReader(streamFile, new DefaultCommandCreator())) {
+            return new GcodeViewParse().toObjFromReader(reader, ARC_SEGMENT_LENGTH);
+        }
+    }
+
+    @Benchmark
+    public ToolpathBuffer toToolpath() throws Exception {
+        return new GcodeViewParse().toToolpath(lines, ARC_SEGMENT_LENGTH);
+    }
+
+    @Benchmark
+    public ToolpathBuffer toToolpathFromReader() throws Exception {
+        try (GcodeStreamReader reader = new GcodeStreamReader(streamFile, new DefaultCommandCreator())) {
+            return new GcodeViewParse().toToolpathFromReader(reader, ARC_SEGMENT_LENGTH);
+        }
+    }
+}
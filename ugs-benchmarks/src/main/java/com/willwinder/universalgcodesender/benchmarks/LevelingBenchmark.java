@@ -0,0 +1,119 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.benchmarks;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.processors.ArcExpander;
+import com.willwinder.universalgcodesender.gcode.processors.LineSplitter;
+import com.willwinder.universalgcodesender.gcode.processors.MeshLeveler;
+import com.willwinder.universalgcodesender.gcode.processors.SurfaceHeightMap;
+import com.willwinder.universalgcodesender.gcode.processors.SurfaceLeveler;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.utils.GcodeStreamWriter;
+import com.willwinder.universalgcodesender.utils.IGcodeWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares leveling a whole file with the {@link MeshLeveler}, which needs the arcs expanded and the
+ * lines split before it, with the {@link SurfaceLeveler} which only splits the lines at the grid lines.
+ *
+ * @author wwinder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LevelingBenchmark {
+    private static final double RESOLUTION = 1;
+
+    @Param({"mesh", "surface"})
+    public String leveler;
+
+    private File input;
+    private File output;
+    private Position[][] grid;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        input = BenchmarkFiles.getGcodeFile(BenchmarkFiles.SYNTHETIC);
+        output = BenchmarkFiles.createTempFile("leveled");
+
+        // A warped surface covering the synthetic file
+        grid = new Position[31][31];
+        for (int x = 0; x < grid.length; x++) {
+            for (int y = 0; y < grid[x].length; y++) {
+                grid[x][y] = new Position(x * RESOLUTION, y * RESOLUTION, Math.sin(x / 5.0) * 0.2 + y * 0.01, UnitUtils.Units.MM);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        input.delete();
+        output.delete();
+    }
+
+    private GcodeParser createParser() {
+        GcodeParser gcp = new GcodeParser();
+        if ("mesh".equals(leveler)) {
+            // The same processors as used by the auto leveler
+            gcp.addCommandProcessor(new ArcExpander(true, 0.5));
+            gcp.addCommandProcessor(new LineSplitter(RESOLUTION / 4));
+            gcp.addCommandProcessor(new MeshLeveler(0, grid));
+        } else {
+            List<Position> points = new ArrayList<>();
+            for (Position[] column : grid) {
+                points.addAll(List.of(column));
+            }
+            gcp.addCommandProcessor(new SurfaceLeveler(0, new SurfaceHeightMap(points), 0.5));
+        }
+        return gcp;
+    }
+
+    @Benchmark
+    public File processAndExport() throws IOException, GcodeParserException {
+        try (IGcodeWriter writer = new GcodeStreamWriter(output)) {
+            GcodeParserUtils.processAndExport(createParser(), input, writer);
+        }
+        return output;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.benchmarks;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.gcode.util.GcodeWordTokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of parsing single gcode lines, each operation is one line.
+ *
+ * @author wwinder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+    private static final int LINES = 10_000;
+
+    @Param({BenchmarkFiles.SYNTHETIC, "Gates_combined_R12.nc"})
+    public String file;
+
+    private String[] lines;
+    private GcodeWordTokenizer tokenizer;
+    private GcodeParser parser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<String> fileLines = BenchmarkFiles.readLines(file);
+        lines = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            lines[i] = fileLines.get(i % fileLines.size());
+        }
+        tokenizer = new GcodeWordTokenizer();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpParser() {
+        parser = new GcodeParser();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void splitCommand(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(GcodePreprocessorUtils.splitCommand(line));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void tokenize(Blackhole blackhole) {
+        for (String line : lines) {
+            tokenizer.tokenize(line);
+            blackhole.consume(tokenizer.getCoord('X'));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void processCommand(Blackhole blackhole) throws GcodeParserException {
+        GcodeState state = new GcodeState();
+        for (String line : lines) {
+            blackhole.consume(GcodeParserUtils.processCommand(line, 0, state, true));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void addCommand(Blackhole blackhole) throws GcodeParserException {
+        for (String line : lines) {
+            blackhole.consume(parser.addCommand(line));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.benchmarks;
+
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.gcode.util.GcodePreprocessorPipeline;
+import com.willwinder.universalgcodesender.utils.GcodeStreamWriter;
+import com.willwinder.universalgcodesender.utils.IGcodeWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures preprocessing a whole file to a gcode stream, each operation is one file. The
+ * parallelism parameter shows how the {@link GcodePreprocessorPipeline} scales with the
+ * number of threads, a parallelism of one is the same as {@link GcodeParserUtils#processAndExport}.
+ *
+ * @author wwinder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PreprocessBenchmark {
+
+    @Param({BenchmarkFiles.SYNTHETIC, "Gates_combined_R12.nc", "rotation.ngc", "arc_rword_test.gcode"})
+    public String file;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private File input;
+    private File output;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        input = BenchmarkFiles.getGcodeFile(file);
+        output = BenchmarkFiles.createTempFile("preprocessed");
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+        input.delete();
+        output.delete();
+    }
+
+    @Benchmark
+    public File processAndExport() throws IOException, GcodeParserException {
+        try (IGcodeWriter writer = new GcodeStreamWriter(output)) {
+            new GcodePreprocessorPipeline(pool, GcodePreprocessorPipeline.DEFAULT_CHUNK_SIZE)
+                    .processAndExport(BenchmarkFiles.createPreprocessingParser(), input, writer);
+        }
+        return output;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.benchmarks;
+
+import com.willwinder.universalgcodesender.GrblUtils;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing GRBL status strings, each operation is one status string.
+ *
+ * @author wwinder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatusStringBenchmark {
+    private static final String[] STATUS_STRINGS = {
+            "<Idle|MPos:0.000,0.000,0.000|FS:0,0|WCO:0.000,0.000,0.000>",
+            "<Run|MPos:12.345,-23.456,-1.000|FS:1200,10000|Ov:100,100,100|A:SF>",
+            "<Run|MPos:12.512,-23.101,-1.000|FS:1200,10000|Pn:XZ>",
+            "<Run|WPos:2.512,-3.101,-1.000,90.000|Bf:15,128|FS:1200,10000>",
+            "<Hold:0|MPos:12.600,-23.000,-1.000|FS:0,10000|WCO:10.000,-20.000,0.000>",
+            "<Jog|MPos:100.000,200.000,-5.250|FS:5000,0|Ov:120,50,100>",
+            "<Alarm|MPos:0.000,0.000,0.000|FS:0,0|Pn:PXYZ>",
+            "<Door:1|MPos:5.000,5.000,5.000|FS:0,0|A:M>"
+    };
+
+    private static final String IDLE_STATUS_STRING = "<Idle|MPos:10.000,20.000,-1.000|Bf:15,128|FS:0,0>";
+
+    private static final String[] LEGACY_STATUS_STRINGS = {
+            "<Idle,MPos:5.529,0.560,7.000,WPos:1.529,-5.440,-0.000>",
+            "<Run,MPos:12.345,-23.456,-1.000,WPos:2.345,-3.456,-1.000,RX:0>"
+    };
+
+    private ControllerStatus lastStatus;
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public ControllerStatus parseStatusString() {
+        for (String status : STATUS_STRINGS) {
+            lastStatus = GrblUtils.getStatusFromStatusStringV1(lastStatus, status, UnitUtils.Units.MM);
+        }
+        return lastStatus;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public ControllerStatus parseStatusStringWithoutLastStatus() {
+        ControllerStatus status = null;
+        for (String statusString : STATUS_STRINGS) {
+            status = GrblUtils.getStatusFromStatusStringV1(null, statusString, UnitUtils.Units.MM);
+        }
+        return status;
+    }
+
+    /**
+     * An idle machine reports the same status over and over, which allows the previous status to be reused
+     */
+    @Benchmark
+    public ControllerStatus parseUnchangedStatusString() {
+        lastStatus = GrblUtils.getStatusFromStatusStringV1(lastStatus, IDLE_STATUS_STRING, UnitUtils.Units.MM);
+        return lastStatus;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public ControllerStatus parseLegacyStatusString() {
+        ControllerStatus status = null;
+        for (String statusString : LEGACY_STATUS_STRINGS) {
+            status = GrblUtils.getStatusFromStatusStringLegacy(statusString, UnitUtils.Units.MM);
+        }
+        return status;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.benchmarks;
+
+import com.willwinder.universalgcodesender.communicator.GrblCommunicator;
+import com.willwinder.universalgcodesender.communicator.event.CommunicatorEventDispatcher;
+import com.willwinder.universalgcodesender.connection.AbstractConnection;
+import com.willwinder.universalgcodesender.connection.DefaultConnectionDevice;
+import com.willwinder.universalgcodesender.connection.IConnectionDevice;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import com.willwinder.universalgcodesender.communicator.StreamingMetrics;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures streaming short commands through the GRBL character counting protocol to a simulated
+ * controller which acknowledges each line immediately, each operation is one command. The
+ * streaming metrics of each iteration are reported as secondary results, see {@link Metrics}.
+ *
+ * @author wwinder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamingBenchmark {
+    private static final int COMMANDS = 2_000;
+
+    @Param({"false", "true"})
+    public boolean batching;
+
+    /**
+     * The simulated cost of each write to the connection, such as a system call to the serial driver
+     */
+    @Param({"0", "20000"})
+    public long writeLatencyNanos;
+
+    private String[] commands;
+    private SimulatedConnection connection;
+    private GrblCommunicator communicator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        commands = new String[COMMANDS];
+        for (int i = 0; i < COMMANDS; i++) {
+            commands[i] = String.format(Locale.US, "G1X%.3fY%.3f", (i % 100) * 0.1, (i % 50) * 0.2);
+        }
+
+        connection = new SimulatedConnection(writeLatencyNanos);
+        communicator = new GrblCommunicator(new LinkedBlockingDeque<>(), new LinkedBlockingDeque<>(), new CommunicatorEventDispatcher(), connection);
+        communicator.setBatchingEnabled(batching);
+        connection.openPort();
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        communicator.getStreamingMetrics().reset();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connection.closePort();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public void streamCommands(Metrics metrics) {
+        for (String command : commands) {
+            communicator.queueCommand(new GcodeCommand(command));
+        }
+        communicator.streamCommands();
+
+        while (communicator.numBufferedCommands() > 0 || communicator.areActiveCommands()) {
+            Thread.onSpinWait();
+        }
+
+        StreamingMetrics streamingMetrics = communicator.getStreamingMetrics();
+        metrics.commandsPerWrite = streamingMetrics.getAverageCommandsPerWrite();
+        metrics.bufferUtilization = streamingMetrics.getAverageBufferUtilization();
+    }
+
+    /**
+     * The streaming metrics of the current iteration, reported as secondary results
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Metrics {
+        /**
+         * The average number of commands in each write to the connection
+         */
+        public double commandsPerWrite;
+
+        /**
+         * The average share of the controller buffer that was in use when writing
+         */
+        public double bufferUtilization;
+    }
+
+    /**
+     * A connection which acknowledges each received line with an "ok" from a separate thread
+     */
+    private static class SimulatedConnection extends AbstractConnection {
+        private static final byte[] OK = "ok\n".getBytes();
+
+        private final BlockingQueue<Integer> receivedLines = new LinkedBlockingQueue<>();
+        private final long writeLatencyNanos;
+        private Thread controllerThread;
+
+        SimulatedConnection(long writeLatencyNanos) {
+            this.writeLatencyNanos = writeLatencyNanos;
+        }
+
+        @Override
+        public void setUri(String uri) {
+        }
+
+        @Override
+        public boolean openPort() {
+            controllerThread = new Thread(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        // All responses to a write are read at once
+                        int lines = receivedLines.take();
+                        byte[] responses = lines == 1 ? OK : "ok\n".repeat(lines).getBytes();
+                        responseMessageHandler.handleResponse(responses, 0, responses.length);
+                    }
+                } catch (InterruptedException e) {
+                    // Closed
+                }
+            }, "Simulated controller");
+            controllerThread.setDaemon(true);
+            controllerThread.start();
+            return true;
+        }
+
+        @Override
+        public void closePort() {
+            controllerThread.interrupt();
+        }
+
+        @Override
+        public void sendByteImmediately(byte b) {
+        }
+
+        @Override
+        public void sendStringToComm(String command) {
+            if (writeLatencyNanos > 0) {
+                LockSupport.parkNanos(writeLatencyNanos);
+            }
+
+            int lines = 0;
+            for (int i = 0; i < command.length(); i++) {
+                if (command.charAt(i) == '\n') {
+                    lines++;
+                }
+            }
+            receivedLines.add(lines);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return controllerThread != null && controllerThread.isAlive();
+        }
+
+        @Override
+        public List<String> getPortNames() {
+            return Collections.singletonList("simulated");
+        }
+
+        @Override
+        public List<IConnectionDevice> getDevices() {
+            return Collections.singletonList(new DefaultConnectionDevice("simulated"));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.benchmarks;
+
+import com.willwinder.universalgcodesender.communicator.GrblCommunicator;
+import com.willwinder.universalgcodesender.communicator.event.CommunicatorEventDispatcher;
+import com.willwinder.universalgcodesender.connection.virtual.VirtualGrbl;
+import com.willwinder.universalgcodesender.connection.virtual.VirtualGrblConnection;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures the time it takes to run a program of short segments on a simulated GRBL controller
+ * in real time, see {@link VirtualGrbl}. A program that is streamed fast enough runs in the
+ * time given by the motion of the machine, any extra time is caused by the planner running out
+ * of commands which is reported as secondary results, see {@link Underruns}.
+ * <p>
+ * The commands are streamed with the {@link GrblCommunicator} which is the buffered communicator
+ * used by the GrblController. The controller itself is left out as it only forwards the commands
+ * to the communicator while streaming, and its connection handshake and status polling would make
+ * each invocation slower without changing how the commands are streamed.
+ *
+ * @author wwinder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class VirtualGrblStreamingBenchmark {
+    private static final int COMMANDS = 500;
+
+    @Param({"0.1", "0.5"})
+    public double segmentLength;
+
+    @Param({"15", "35"})
+    public int plannerBlockCount;
+
+    @Param({"115200"})
+    public int baudRate;
+
+    private String[] commands;
+    private VirtualGrblConnection connection;
+    private GrblCommunicator communicator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // A zigzag with turns that are small enough to be run at the full feed rate of 3000 mm/min
+        commands = new String[COMMANDS];
+        for (int i = 0; i < COMMANDS; i++) {
+            double x = (i + 1) * segmentLength;
+            double y = (i % 2) * segmentLength * 0.02;
+            commands[i] = String.format(Locale.US, "G1X%.4fY%.4fF3000", x, y);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws Exception {
+        connection = new VirtualGrblConnection();
+        connection.setUri("virtual://grbl:" + baudRate);
+        connection.setPlannerBlockCount(plannerBlockCount);
+        communicator = new GrblCommunicator(new LinkedBlockingDeque<>(), new LinkedBlockingDeque<>(), new CommunicatorEventDispatcher(), connection);
+        connection.openPort();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownInvocation() throws Exception {
+        connection.closePort();
+    }
+
+    @Benchmark
+    public void runProgram(Underruns underruns) throws InterruptedException {
+        for (String command : commands) {
+            communicator.queueCommand(new GcodeCommand(command));
+        }
+        communicator.streamCommands();
+
+        AtomicBoolean done = new AtomicBoolean();
+        while (!done.get()) {
+            TimeUnit.MILLISECONDS.sleep(1);
+            connection.withSimulation(grbl -> done.set(grbl.getBlocksExecuted() >= COMMANDS && grbl.getPlannerBlocks() == 0
+                    && communicator.numBufferedCommands() == 0 && !communicator.areActiveCommands()));
+        }
+
+        connection.withSimulation(grbl -> {
+            underruns.underruns += grbl.getUnderrunCount();
+            underruns.underrunMillis += TimeUnit.NANOSECONDS.toMillis(grbl.getUnderrunTime());
+        });
+    }
+
+    /**
+     * The planner underruns in the simulated controller during each iteration, reported as
+     * secondary results
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Underruns {
+        /**
+         * The number of times the planner ran empty while the program was running
+         */
+        public long underruns;
+
+        /**
+         * The total time the machine was waiting for more commands
+         */
+        public long underrunMillis;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            underruns = 0;
+            underrunMillis = 0;
+        }
+    }
+}
@@ -86,7 +86,7 @@ public class VisualizerCanvas extends GLCanvas implements GLEventListener, KeyLi
     private String gcodeFile = null;
     private boolean processedGcodeFile = false; // True if the file should be loaded with a GcodeStreamReader
     private boolean isDrawable = false; //True if a file is loaded; false if not
-    private List<LineSegment> gcodeLineList; //An ArrayList of linesegments composing the model
+    private ToolpathBuffer toolpath; //The line segments composing the model
     private int currentCommandNumber = 0;
     private int lastCommandNumber = 0;
 
@@ -126,7 +126,6 @@ public class VisualizerCanvas extends GLCanvas implements GLEventListener, KeyLi
 
     // OpenGL Object Buffer Variables
     private int numberOfVertices = -1;
-    private float[] lineVertexData = null;
     private byte[] lineColorData = null;
     private FloatBuffer lineVertexBuffer = null;
     private ByteBuffer lineColorBuffer = null;
@@ -407,9 +406,10 @@ public class VisualizerCanvas extends GLCanvas implements GLEventListener, KeyLi
             gl.glBegin(GL_LINES);
             gl.glLineWidth(1.0f);
 
+            float[] lineVertexData = toolpath.getCoordinates();
             int verts = 0;
             int colors = 0;
-            for(LineSegment ls : gcodeLineList)
+            for(int i = 0; i < toolpath.size(); i++)
             {
                 gl.glColor3ub(lineColorData[colors++],lineColorData[colors++],lineColorData[colors++]);
                 gl.glVertex3d(lineVertexData[verts++], lineVertexData[verts++], lineVertexData[verts++]);
@@ -472,24 +472,24 @@ public class VisualizerCanvas extends GLCanvas implements GLEventListener, KeyLi
             // Load from stream
             if (this.processedGcodeFile) {
                 IGcodeStreamReader gsr = new GcodeStreamReader(new File(this.gcodeFile), new DefaultCommandCreator());
-                gcodeLineList = gcvp.toObjFromReader(gsr, 0.3);
+                toolpath = gcvp.toToolpathFromReader(gsr, 0.3);
             }
             // Load raw file
             else {
                 List<String> linesInFile;
                 linesInFile = VisualizerUtils.readFiletoArrayList(this.gcodeFile);
-                gcodeLineList = gcvp.toObjRedux(linesInFile, 0.3);
+                toolpath = gcvp.toToolpath(linesInFile, 0.3);
             }
             
             this.objectMin = gcvp.getMinimumExtremes();
             this.objectMax = gcvp.getMaximumExtremes();
 
-            if (gcodeLineList.size() == 0) {
+            if (toolpath.isEmpty()) {
                 return;
             }
             
             // Grab the line number off the last line.
-            this.lastCommandNumber = gcodeLineList.get(gcodeLineList.size() - 1).getLineNumber();
+            this.lastCommandNumber = toolpath.getLineNumber(toolpath.size() - 1);
             
             System.out.println("Object bounds: X ("+objectMin.x+", "+objectMax.x+")");
             System.out.println("               Y ("+objectMin.y+", "+objectMax.y+")");
@@ -497,7 +497,7 @@ public class VisualizerCanvas extends GLCanvas implements GLEventListener, KeyLi
             
             this.center = VisualizerUtils.findCenter(objectMin, objectMax);
             System.out.println("Center = " + center.toString());
-            System.out.println("Num Line Segments :" + gcodeLineList.size());
+            System.out.println("Num Line Segments :" + toolpath.size());
 
             this.maxSide = VisualizerUtils.findMaxSide(objectMin, objectMax);
             
@@ -526,38 +526,36 @@ public class VisualizerCanvas extends GLCanvas implements GLEventListener, KeyLi
     }
 
     /**
-     * Convert the gcodeLineList into vertex and color arrays.
+     * Convert the toolpath into a color array, the vertices are uploaded directly from the toolpath.
      */
     private void createVertexBuffers() {
         if (this.isDrawable) {
-            this.numberOfVertices = gcodeLineList.size() * 2;
-            this.lineVertexData = new float[numberOfVertices * 3];
-            this.lineColorData = new byte[numberOfVertices * 3];
+            this.numberOfVertices = toolpath.size() * 2;
+            if (this.lineColorData == null || this.lineColorData.length != numberOfVertices * 3) {
+                this.lineColorData = new byte[numberOfVertices * 3];
+            }
             
             VisualizerUtils.Color color;
-            int vertIndex = 0;
             int colorIndex = 0;
-            for(LineSegment ls : gcodeLineList) {
+            for(int i = 0; i < toolpath.size(); i++) {
                 // Find the lines color.
-                if (ls.isArc()) {
+                if (toolpath.isArc(i)) {
                     color = VisualizerUtils.Color.RED;
-                } else if (ls.isFastTraverse()) {
+                } else if (toolpath.isFastTraverse(i)) {
                     color = VisualizerUtils.Color.BLUE;
-                } else if (ls.isZMovement()) {
+                } else if (toolpath.isZMovement(i)) {
                     color = VisualizerUtils.Color.GREEN;
                 } else {
                     color = VisualizerUtils.Color.WHITE;
                 }
 
                 // Override color if it is cutoff
-                if (ls.getLineNumber() <= this.currentCommandNumber) {
+                if (toolpath.getLineNumber(i) <= this.currentCommandNumber) {
                     color = VisualizerUtils.Color.GRAY;
                 }
 
                 // Draw it.
                 {
-                    Position p1 = ls.getStart();
-                    Position p2 = ls.getEnd();
                     byte[] c = color.getBytes();
 
                     // colors
@@ -570,18 +568,6 @@ public class VisualizerCanvas extends GLCanvas implements GLEventListener, KeyLi
                     lineColorData[colorIndex++] = c[0];
                     lineColorData[colorIndex++] = c[1];
                     lineColorData[colorIndex++] = c[2];
-                    
-                    // TODO: take ABC axes into consideration.
-                    // This is only used by the classic GUI.
-
-                    // p1 location
-                    lineVertexData[vertIndex++] = (float)p1.x;
-                    lineVertexData[vertIndex++] = (float)p1.y;
-                    lineVertexData[vertIndex++] = (float)p1.z;
-                    //p2
-                    lineVertexData[vertIndex++] = (float)p2.x;
-                    lineVertexData[vertIndex++] = (float)p2.y;
-                    lineVertexData[vertIndex++] = (float)p2.z;
                 }
             }
         }
@@ -593,19 +579,21 @@ public class VisualizerCanvas extends GLCanvas implements GLEventListener, KeyLi
     private void updateGLGeometryArray(GLAutoDrawable drawable) {
         GL2 gl = drawable.getGL().getGL2();
         
+        int length = toolpath.size() * ToolpathBuffer.COORDINATES_PER_SEGMENT;
+
         // Reset buffer and set to null of new geometry doesn't fit.
         if (lineVertexBuffer != null) {
             lineVertexBuffer.clear();
-            if (lineVertexBuffer.remaining() < lineVertexData.length) {
+            if (lineVertexBuffer.remaining() < length) {
                 lineVertexBuffer = null;
             }
         }
         
         if (lineVertexBuffer == null) {
-            lineVertexBuffer = Buffers.newDirectFloatBuffer(lineVertexData.length);
+            lineVertexBuffer = Buffers.newDirectFloatBuffer(length);
         }
         
-        lineVertexBuffer.put(lineVertexData);
+        lineVertexBuffer.put(toolpath.getCoordinates(), 0, length);
         lineVertexBuffer.flip();
         gl.glVertexPointer( 3, GL.GL_FLOAT, 0, lineVertexBuffer );
     }
@@ -670,7 +658,7 @@ public class VisualizerCanvas extends GLCanvas implements GLEventListener, KeyLi
 
         this.lineColorBuffer = null;
         this.lineVertexBuffer = null;
-        this.gcodeLineList = null;
+        this.toolpath = null;
         this.isDrawable = false;
         this.numberOfVertices = 0;
     }
@@ -99,4 +99,10 @@ public class VisualizerPanel extends JPanel implements UGSEventListener {
             }
         }
     }
+
+    @Override
+    public boolean isCommandCompleteCoalescingEnabled() {
+        // Only the last completed command is used for graying out the toolpath
+        return true;
+    }
 }
\ No newline at end of file
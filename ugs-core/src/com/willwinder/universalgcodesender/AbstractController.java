@@ -337,6 +337,21 @@ public abstract class AbstractController implements ICommunicatorListener, ICont
         return false;
     }
 
+    @Override
+    public void setBatchingEnabled(boolean enabled) {
+        if (this.comm != null) {
+            this.comm.setBatchingEnabled(enabled);
+        }
+    }
+
+    @Override
+    public boolean isBatchingEnabled() {
+        if (this.comm != null) {
+            return this.comm.isBatchingEnabled();
+        }
+        return false;
+    }
+
     @Override
     public Boolean openCommPort(ConnectionDriver connectionDriver, String port, int portRate) throws Exception {
         if (isCommOpen()) {
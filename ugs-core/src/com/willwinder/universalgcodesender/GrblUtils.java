@@ -19,13 +19,11 @@
 
 package com.willwinder.universalgcodesender;
 
+import com.willwinder.universalgcodesender.firmware.grbl.GrblStatusParser;
 import com.willwinder.universalgcodesender.firmware.grbl.commands.GetStatusCommand;
 import com.willwinder.universalgcodesender.firmware.grbl.commands.GrblSystemCommand;
 import com.willwinder.universalgcodesender.listeners.ControllerState;
 import com.willwinder.universalgcodesender.listeners.ControllerStatus;
-import com.willwinder.universalgcodesender.listeners.ControllerStatus.AccessoryStates;
-import com.willwinder.universalgcodesender.listeners.ControllerStatus.EnabledPins;
-import com.willwinder.universalgcodesender.listeners.ControllerStatus.OverridePercents;
 import com.willwinder.universalgcodesender.listeners.MessageType;
 import com.willwinder.universalgcodesender.model.*;
 import com.willwinder.universalgcodesender.model.UnitUtils.Units;
@@ -345,12 +343,7 @@ public class GrblUtils {
      * @return the parsed controller status
      */
     public static ControllerStatus getStatusFromStatusStringLegacy(String status, Units reportingUnits) {
-        String stateString = StringUtils.defaultString(getStateFromStatusString(status), "unknown");
-        ControllerState state = getControllerStateFromStateString(stateString);
-        return new ControllerStatus(
-                state,
-                getMachinePositionFromStatusString(status, reportingUnits),
-                getWorkPositionFromStatusString(status, reportingUnits));
+        return GrblStatusParser.parseLegacy(status, reportingUnits);
     }
 
     /**
@@ -360,105 +353,10 @@ public class GrblUtils {
      *                   and override status from previous status updates.
      * @param status the raw status string
      * @param reportingUnits units
-     * @return the parsed controller status
+     * @return the parsed controller status, or the last status if nothing has changed
      */
     public static ControllerStatus getStatusFromStatusStringV1(ControllerStatus lastStatus, String status, Units reportingUnits) {
-        String stateString = "";
-        String subStateString = "";
-
-        Position MPos = null;
-        Position WPos = null;
-        Position WCO = null;
-
-        OverridePercents overrides = null;
-        EnabledPins pins = EnabledPins.EMPTY_PINS;
-        AccessoryStates accessoryStates = null;
-
-        double feedSpeed = 0;
-        double spindleSpeed = 0;
-        if (lastStatus != null) {
-            feedSpeed = lastStatus.getFeedSpeed();
-            spindleSpeed = lastStatus.getSpindleSpeed();
-        }
-        boolean isOverrideReport = false;
-
-        // Parse out the status messages.
-        for (String part : status.substring(0, status.length()-1).split("\\|")) {
-            if (part.startsWith("<")) {
-                int idx = part.indexOf(':');
-                if (idx == -1) {
-                    stateString = part.substring(1);
-                } else {
-                    stateString = part.substring(1, idx);
-                    subStateString = part.substring(idx + 1);
-                }
-            }
-            else if (part.startsWith("MPos:")) {
-                MPos = GrblUtils.getPositionFromStatusString(status, machinePattern, reportingUnits);
-            }
-            else if (part.startsWith("WPos:")) {
-                WPos = GrblUtils.getPositionFromStatusString(status, workPattern, reportingUnits);
-            }
-            else if (part.startsWith("WCO:")) {
-                WCO = GrblUtils.getPositionFromStatusString(status, wcoPattern, reportingUnits);
-            }
-            else if (part.startsWith("Ov:")) {
-                isOverrideReport = true;
-                String[] overrideParts = part.substring(3).trim().split(",");
-                if (overrideParts.length == 3) {
-                    overrides = new OverridePercents(
-                            Integer.parseInt(overrideParts[0]),
-                            Integer.parseInt(overrideParts[1]),
-                            Integer.parseInt(overrideParts[2]));
-                }
-            }
-            else if (part.startsWith("F:")) {
-                feedSpeed = parseFeedSpeed(part);
-            }
-            else if (part.startsWith("FS:")) {
-                String[] parts = part.substring(3).split(",");
-                feedSpeed = Double.parseDouble(parts[0]);
-                spindleSpeed = Double.parseDouble(parts[1]);
-            }
-            else if (part.startsWith("Pn:")) {
-                String value = part.substring(part.indexOf(':')+1);
-                pins = new EnabledPins(value);
-            }
-            else if (part.startsWith("A:")) {
-                String value = part.substring(part.indexOf(':')+1);
-                accessoryStates = new AccessoryStates(value);
-            }
-        }
-
-        // Grab WCO from state information if necessary.
-        if (WCO == null) {
-            // Grab the work coordinate offset.
-            if (lastStatus != null && lastStatus.getWorkCoordinateOffset() != null) {
-                WCO = lastStatus.getWorkCoordinateOffset();
-            } else {
-                WCO = new Position(0,0,0,0,0,0, reportingUnits);
-            }
-        }
-
-        // Calculate missing coordinate with WCO
-        if (WPos == null && MPos != null) {
-            WPos = new Position(MPos.x-WCO.x, MPos.y-WCO.y, MPos.z-WCO.z, MPos.a-WCO.a, MPos.b-WCO.b, MPos.c-WCO.c, reportingUnits);
-        } else if (MPos == null && WPos != null) {
-            MPos = new Position(WPos.x+WCO.x, WPos.y+WCO.y, WPos.z+WCO.z, WPos.a+WCO.a, WPos.b+WCO.b, WPos.c+WCO.c, reportingUnits);
-        }
-
-        if (!isOverrideReport && lastStatus != null) {
-            overrides = lastStatus.getOverrides();
-        }
-
-        if (accessoryStates == null && !isOverrideReport && lastStatus != null) {
-            accessoryStates = lastStatus.getAccessoryStates();
-        } else if (accessoryStates == null) {
-            accessoryStates = AccessoryStates.EMPTY_ACCESSORY_STATE;
-        }
-
-        ControllerState state = getControllerStateFromStateString(stateString);
-        return new ControllerStatus(state, subStateString, MPos, WPos, feedSpeed, reportingUnits, spindleSpeed, overrides, WCO, pins, accessoryStates);
+        return GrblStatusParser.parseV1(lastStatus, status, reportingUnits);
     }
 
     /**
@@ -526,15 +424,12 @@ public class GrblUtils {
 
     // Optionally look for 6 axes (ABC support as extended by Grbl ESP 32)
     static Pattern PROBE_POSITION_PATTERN = Pattern.compile("\\[PRB:(-?\\d*\\.\\d*),(-?\\d*\\.\\d*),(-?\\d*\\.\\d*)(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?:\\d?]");
-    static Pattern machinePattern = Pattern.compile("(?<=MPos:)(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*)(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?");
-    static Pattern workPattern = Pattern.compile("(?<=WPos:)(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*)(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?");
-    static Pattern wcoPattern = Pattern.compile("(?<=WCO:)(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*)(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?");
     static protected Position getMachinePositionFromStatusString(final String status, Units reportingUnits) {
-        return GrblUtils.getPositionFromStatusString(status, machinePattern, reportingUnits);
+        return GrblStatusParser.parsePosition(status, "MPos:", reportingUnits);
     }
 
     static protected Position getWorkPositionFromStatusString(final String status, Units reportingUnits) {
-        return GrblUtils.getPositionFromStatusString(status, workPattern, reportingUnits);
+        return GrblStatusParser.parsePosition(status, "WPos:", reportingUnits);
     }
 
     public static Position getPositionFromStatusString(final String status, final Pattern pattern, Units reportingUnits) {
@@ -140,6 +140,9 @@ public interface IController {
     void setSingleStepMode(boolean enabled);
     boolean getSingleStepMode();
 
+    void setBatchingEnabled(boolean enabled);
+    boolean isBatchingEnabled();
+
     void setStatusUpdatesEnabled(boolean enabled);
     boolean getStatusUpdatesEnabled();
     
@@ -18,9 +18,11 @@
  */
 package com.willwinder.universalgcodesender;
 
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
 import com.willwinder.universalgcodesender.model.File;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -45,6 +47,26 @@ public interface IFileService {
      */
     void uploadFile(String filename, byte[] data) throws IOException;
 
+    /**
+     * Upload a stream to the controller with the given filename. The stream is sent while it is
+     * read so that large files never needs to be kept in memory.
+     *
+     * @param filename the file name including its path to upload
+     * @param data     the stream with the file data
+     * @param size     the number of bytes in the stream or -1 if unknown, only used for progress
+     * @param listener a listener for the progress of the upload
+     * @throws IOException on any communication error
+     */
+    void uploadFile(String filename, InputStream data, long size, FileTransferListener listener) throws IOException;
+
+    /**
+     * Runs a gcode file that is stored on the controller
+     *
+     * @param filename the file name including its path
+     * @throws IOException on any communication error or if the file could not be started
+     */
+    void runFile(String filename) throws IOException;
+
     /**
      * Deletes a file or directory
      *
@@ -24,8 +24,10 @@ import com.willwinder.universalgcodesender.connection.Connection;
 import com.willwinder.universalgcodesender.connection.ConnectionDriver;
 import com.willwinder.universalgcodesender.connection.ConnectionFactory;
 import com.willwinder.universalgcodesender.i18n.Localization;
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.logging.Logger;
 
 /**
@@ -123,4 +125,9 @@ public abstract class AbstractCommunicator implements ICommunicator {
     public void xmodemSend(byte[] data) throws IOException {
         connection.xmodemSend(data);
     }
+
+    @Override
+    public void xmodemSend(InputStream data, long totalBytes, FileTransferListener listener) throws IOException {
+        connection.xmodemSend(data, totalBytes, listener);
+    }
 }
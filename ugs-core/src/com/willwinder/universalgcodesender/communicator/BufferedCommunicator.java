@@ -27,7 +27,10 @@ import com.willwinder.universalgcodesender.utils.CommUtils;
 import com.willwinder.universalgcodesender.utils.IGcodeStreamReader;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,6 +38,11 @@ import java.util.logging.Logger;
  * A communicator that implements the GRBL streaming protocol which will keep track of the number of sent bytes to the
  * controller making sure it has enough data in its buffers to plan for smooth movement.
  * (https://github.com/gnea/grbl/wiki/Grbl-v1.1-Interface#streaming-a-g-code-program-to-grbl)
+ * <p>
+ * With batching enabled all queued commands that fits in the controller buffer are sent in a single
+ * write instead of one write per command, which reduces the overhead when streaming many short commands.
+ * New commands are then sent when all responses received at the same time has been handled, filling
+ * the space freed by all of them in one write.
  *
  * @author wwinder
  */
@@ -47,7 +55,14 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
     private IGcodeStreamReader commandStream;               // Arbitrary number of commands
     private final LinkedBlockingDeque<GcodeCommand> commandBuffer;     // Manually specified commands
     private final LinkedBlockingDeque<GcodeCommand> activeCommandList;  // Currently running commands
-    private int sentBufferSize = 0;
+    private final AtomicInteger sentBufferSize = new AtomicInteger();  // Bytes sent but not yet acknowledged
+    private final StreamingMetrics streamingMetrics = new StreamingMetrics();
+
+    // Commands waiting to be written in the same batch
+    private final StringBuilder batch = new StringBuilder();
+    private final List<GcodeCommand> batchCommands = new ArrayList<>();
+    private boolean batchingEnabled = false;
+    private boolean streamAfterResponses = false;
 
     private Boolean singleStepModeEnabled = false;
 
@@ -73,6 +88,27 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
         return this.singleStepModeEnabled;
     }
 
+    @Override
+    public void setBatchingEnabled(boolean enabled) {
+        this.batchingEnabled = enabled;
+    }
+
+    @Override
+    public boolean isBatchingEnabled() {
+        return batchingEnabled;
+    }
+
+    /**
+     * @return the number of bytes sent to the controller that hasn't been acknowledged yet
+     */
+    public int getBytesInFlight() {
+        return sentBufferSize.get();
+    }
+
+    public StreamingMetrics getStreamingMetrics() {
+        return streamingMetrics;
+    }
+
     @Override
     public void queueCommand(GcodeCommand command) {
         // Add command to queue
@@ -188,7 +224,7 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
         while (this.getNextCommand() != null &&
                 !isPaused() &&
                 CommUtils.checkRoomInBuffer(
-                    this.sentBufferSize,
+                    this.sentBufferSize.get(),
                     this.getNextCommand().getCommandString(),
                     this.getBufferSize())
                 && allowMoreCommands()) {
@@ -197,18 +233,40 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
             String commandString = command.getCommandString();
             
             this.activeCommandList.add(command);
-            this.sentBufferSize += (commandString.length() + 1);
-
-            try {
-                this.sendingCommand(commandString);
-                connection.sendStringToComm(commandString + "\n");
-                getEventDispatcher().commandSent(command);
-                nextCommand = null;
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(-1);
+            this.sentBufferSize.addAndGet(commandString.length() + 1);
+
+            this.sendingCommand(commandString);
+            batch.append(commandString).append('\n');
+            batchCommands.add(command);
+            nextCommand = null;
+
+            if (!batchingEnabled) {
+                writeBatch();
             }
         }
+
+        writeBatch();
+    }
+
+    /**
+     * Writes the batched commands to the controller in a single write.
+     */
+    private void writeBatch() {
+        if (batchCommands.isEmpty()) {
+            return;
+        }
+
+        try {
+            streamingMetrics.commandsWritten(batchCommands.size(), batch.length(), sentBufferSize.get(), getBufferSize());
+            connection.sendStringToComm(batch.toString());
+            batchCommands.forEach(getEventDispatcher()::commandSent);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(-1);
+        } finally {
+            batch.setLength(0);
+            batchCommands.clear();
+        }
     }
     
     @Override
@@ -234,7 +292,8 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
         this.activeCommandList.clear();
         this.commandStream = null;
         this.sendPaused = false;
-        this.sentBufferSize = 0;
+        this.streamAfterResponses = false;
+        this.sentBufferSize.set(0);
     }
 
     /**
@@ -256,6 +315,16 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
         getEventDispatcher().rawResponseListener(response);
     }
 
+    @Override
+    public void handleResponseMessagesProcessed() {
+        if (streamAfterResponses) {
+            streamAfterResponses = false;
+            if (!isPaused()) {
+                streamCommands();
+            }
+        }
+    }
+
     private void handleResponseForActiveCommand(String response) {
         GcodeCommand activeCommand = activeCommandList.getFirst();
         activeCommand.appendResponse(response);
@@ -275,9 +344,12 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
             // Pop the front of the active list.
             if (areActiveCommands()) {
                 GcodeCommand command = activeCommandList.pop();
-                sentBufferSize -= (command.getCommandString().length() + 1);
+                int bytesInFlight = sentBufferSize.addAndGet(-(command.getCommandString().length() + 1));
+                streamingMetrics.commandCompleted(bytesInFlight, getBufferSize());
 
-                if (!isPaused()) {
+                if (batchingEnabled) {
+                    streamAfterResponses = true;
+                } else if (!isPaused()) {
                     streamCommands();
                 }
             }
@@ -290,7 +362,8 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
 
         this.commandBuffer.clear();
         this.activeCommandList.clear();
-        this.sentBufferSize = 0;
+        this.sentBufferSize.set(0);
+        this.streamingMetrics.reset();
     }
 
     @Override
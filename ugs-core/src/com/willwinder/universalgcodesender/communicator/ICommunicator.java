@@ -1,5 +1,5 @@
 /*
-    Copyright 2019 Will Winder
+    Copyright 2019-2023 Will Winder
 
     This file is part of Universal Gcode Sender (UGS).
 
@@ -21,10 +21,12 @@ package com.willwinder.universalgcodesender.communicator;
 import com.willwinder.universalgcodesender.connection.Connection;
 import com.willwinder.universalgcodesender.connection.ConnectionDriver;
 import com.willwinder.universalgcodesender.connection.IConnectionListener;
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
 import com.willwinder.universalgcodesender.utils.IGcodeStreamReader;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * An interface for describing a communicator, responsible for handling gcode command
@@ -155,6 +157,23 @@ public interface ICommunicator extends IConnectionListener {
      */
     void setSingleStepMode(boolean enable);
 
+    /**
+     * Returns if the communicator writes all commands that fits in the hardware buffer in a
+     * single write.
+     *
+     * @return true if commands are written in batches
+     */
+    boolean isBatchingEnabled();
+
+    /**
+     * Enables or disables writing all commands that fits in the hardware buffer in a single
+     * write to the connection, instead of one write for each command. This reduces the overhead
+     * of each write when streaming many short commands.
+     *
+     * @param enabled set to true to enable batching
+     */
+    void setBatchingEnabled(boolean enabled);
+
     /**
      * Removes listeners for notifying about the progress for sending commands.
      *
@@ -203,4 +222,15 @@ public interface ICommunicator extends IConnectionListener {
      * @throws IOException if there is a protocol error or a timeout occurs.
      */
     void xmodemSend(byte[] data) throws IOException;
+
+    /**
+     * Enters a mode for sending a stream using XModem-1K without reading it all into memory.
+     * This mode will block until the stream has been sent or until the protocol times out or an error occurs.
+     *
+     * @param data       the stream to send
+     * @param totalBytes the number of bytes in the stream or -1 if unknown, only used for progress
+     * @param listener   a listener for the progress of the transfer
+     * @throws IOException if there is a protocol error or a timeout occurs.
+     */
+    void xmodemSend(InputStream data, long totalBytes, FileTransferListener listener) throws IOException;
 }
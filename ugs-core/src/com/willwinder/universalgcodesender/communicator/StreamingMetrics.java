@@ -0,0 +1,149 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.communicator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics about how commands are streamed to the controller by the
+ * {@link BufferedCommunicator}, such as the number of commands in each write
+ * and how much of the controllers RX buffer that is used over time.
+ *
+ * @author wwinder
+ */
+public class StreamingMetrics {
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong commandsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicInteger bytesInFlight = new AtomicInteger();
+    private final AtomicInteger maxBytesInFlight = new AtomicInteger();
+
+    // Time weighted sum of the buffer utilization, used for the average utilization
+    private int bufferSize = 0;
+    private long startTime;
+    private long lastUpdateTime;
+    private double utilizationSum;
+
+    public StreamingMetrics() {
+        reset();
+    }
+
+    /**
+     * Clears all metrics
+     */
+    public synchronized void reset() {
+        writes.set(0);
+        commandsWritten.set(0);
+        bytesWritten.set(0);
+        bytesInFlight.set(0);
+        maxBytesInFlight.set(0);
+        startTime = System.nanoTime();
+        lastUpdateTime = startTime;
+        utilizationSum = 0;
+    }
+
+    /**
+     * Records a write to the controller.
+     *
+     * @param commands      the number of commands in the write
+     * @param bytes         the number of bytes written
+     * @param bytesInFlight the number of bytes sent to the controller that hasn't been acknowledged yet
+     * @param bufferSize    the size of the controller RX buffer
+     */
+    public void commandsWritten(int commands, int bytes, int bytesInFlight, int bufferSize) {
+        writes.incrementAndGet();
+        commandsWritten.addAndGet(commands);
+        bytesWritten.addAndGet(bytes);
+        maxBytesInFlight.accumulateAndGet(bytesInFlight, Math::max);
+        updateBytesInFlight(bytesInFlight, bufferSize);
+    }
+
+    /**
+     * Records that a command was acknowledged by the controller.
+     *
+     * @param bytesInFlight the number of bytes sent to the controller that hasn't been acknowledged yet
+     * @param bufferSize    the size of the controller RX buffer
+     */
+    public void commandCompleted(int bytesInFlight, int bufferSize) {
+        updateBytesInFlight(bytesInFlight, bufferSize);
+    }
+
+    private synchronized void updateBytesInFlight(int bytesInFlight, int bufferSize) {
+        long now = System.nanoTime();
+        utilizationSum += getBufferUtilization() * (now - lastUpdateTime);
+        lastUpdateTime = now;
+        this.bufferSize = bufferSize;
+        this.bytesInFlight.set(bytesInFlight);
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    public long getCommandsWritten() {
+        return commandsWritten.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return the number of bytes sent to the controller that hasn't been acknowledged yet
+     */
+    public int getBytesInFlight() {
+        return bytesInFlight.get();
+    }
+
+    public int getMaxBytesInFlight() {
+        return maxBytesInFlight.get();
+    }
+
+    public double getAverageCommandsPerWrite() {
+        long numberOfWrites = writes.get();
+        return numberOfWrites == 0 ? 0 : commandsWritten.get() / (double) numberOfWrites;
+    }
+
+    /**
+     * @return the current utilization of the controller RX buffer between 0 and 1
+     */
+    public synchronized double getBufferUtilization() {
+        return bufferSize == 0 ? 0 : bytesInFlight.get() / (double) bufferSize;
+    }
+
+    /**
+     * @return the average utilization of the controller RX buffer between 0 and 1 since the metrics was reset
+     */
+    public synchronized double getAverageBufferUtilization() {
+        long now = System.nanoTime();
+        long duration = now - startTime;
+        if (duration <= 0) {
+            return getBufferUtilization();
+        }
+        return (utilizationSum + getBufferUtilization() * (now - lastUpdateTime)) / duration;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("writes=%d, commands=%d, bytes=%d, commandsPerWrite=%.2f, bytesInFlight=%d, maxBytesInFlight=%d, averageBufferUtilization=%.2f",
+                getWrites(), getCommandsWritten(), getBytesWritten(), getAverageCommandsPerWrite(), getBytesInFlight(),
+                getMaxBytesInFlight(), getAverageBufferUtilization());
+    }
+}
@@ -19,8 +19,10 @@
 package com.willwinder.universalgcodesender.connection;
 
 import com.willwinder.universalgcodesender.connection.xmodem.XModemResponseMessageHandler;
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 
 /**
@@ -78,6 +80,20 @@ public abstract class AbstractConnection implements Connection {
         }
     }
 
+    @Override
+    public void xmodemSend(InputStream data, long totalBytes, FileTransferListener listener) throws IOException {
+        // Switch to a special XModem response handler
+        IResponseMessageHandler previousResponseMessageHandler = responseMessageHandler;
+        try {
+            XModemResponseMessageHandler reader = new XModemResponseMessageHandler(this);
+            responseMessageHandler = reader;
+            reader.xmodemSend(data, totalBytes, listener);
+        } finally {
+            // Restore the old response message handler
+            responseMessageHandler = previousResponseMessageHandler;
+        }
+    }
+
     public IResponseMessageHandler getResponseMessageHandler() {
         return responseMessageHandler;
     }
@@ -19,7 +19,10 @@
 
 package com.willwinder.universalgcodesender.connection;
 
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
+
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 /**
@@ -74,6 +77,20 @@ public interface Connection {
      */
     void sendByteImmediately(byte b) throws Exception;
 
+    /**
+     * Immediately sends a number of bytes. Connections that can write several bytes at once should
+     * override this to avoid writing them one at a time.
+     *
+     * @param bytes  the buffer with the bytes to send
+     * @param offset the offset of the first byte to send
+     * @param length the number of bytes to send
+     */
+    default void sendBytesImmediately(byte[] bytes, int offset, int length) throws Exception {
+        for (int i = offset; i < offset + length; i++) {
+            sendByteImmediately(bytes[i]);
+        }
+    }
+
     /**
      * Sends a command to the serial device. This actually streams the bits to
      * the comm port.
@@ -120,4 +137,16 @@ public interface Connection {
      * @throws IOException if there is a protocol error or a timeout occurs.
      */
     void xmodemSend(byte[] data) throws IOException;
+
+    /**
+     * Enters a mode for sending a stream using XModem-1K. The stream is read one block at the time
+     * so it never needs to be kept in memory. This mode will block until the stream has been sent
+     * or until the protocol times out or an error occurs.
+     *
+     * @param data       the stream to send
+     * @param totalBytes the number of bytes in the stream or -1 if unknown, only used for progress
+     * @param listener   a listener for the progress of the transfer
+     * @throws IOException if there is a protocol error or a timeout occurs.
+     */
+    void xmodemSend(InputStream data, long totalBytes, FileTransferListener listener) throws IOException;
 }
@@ -30,7 +30,8 @@ public enum ConnectionDriver {
     JSERIALCOMM("JSerialComm", "jserialcomm://"),
     JSSC("JSSC", "jssc://"),
     TCP("TCP", "tcp://"),
-    WS("WebSocket", "ws://");
+    WS("WebSocket", "ws://"),
+    VIRTUAL("Virtual GRBL", "virtual://");
 
     private final String prettyName;
     private final String protocol;
@@ -18,6 +18,7 @@
  */
 package com.willwinder.universalgcodesender.connection;
 
+import com.willwinder.universalgcodesender.connection.virtual.VirtualGrblConnection;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.Collections;
@@ -87,6 +88,8 @@ public class ConnectionFactory {
                 return Optional.of(new TCPConnection());
             case WS:
                 return Optional.of(new WSConnection());
+            case VIRTUAL:
+                return Optional.of(new VirtualGrblConnection());
         }
         return Optional.empty();
     }
@@ -12,4 +12,13 @@ public interface IConnectionListener {
      * @param response a response message
      */
     void handleResponseMessage(String response);
+
+    /**
+     * Method is invoked when all complete response messages in the data
+     * received from the connection has been handled. This makes it possible
+     * to react once on several responses received at the same time.
+     */
+    default void handleResponseMessagesProcessed() {
+        // Not used by default
+    }
 }
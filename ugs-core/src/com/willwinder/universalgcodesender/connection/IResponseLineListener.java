@@ -0,0 +1,40 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection;
+
+/**
+ * An interface for listening on response lines from a connection without
+ * creating a new string for each line.
+ *
+ * @author wwinder
+ */
+public interface IResponseLineListener {
+
+    /**
+     * Is invoked for each complete line received from the connection. The
+     * line terminator and any carriage returns are not included.
+     * <p>
+     * The given line is a view of a buffer which is reused for the next line,
+     * it is only valid during this call. Use {@link CharSequence#toString()} if
+     * the line needs to be kept.
+     *
+     * @param line the received line
+     */
+    void handleResponseLine(CharSequence line);
+}
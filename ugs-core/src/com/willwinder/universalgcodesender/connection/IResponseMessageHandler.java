@@ -36,5 +36,16 @@ public interface IResponseMessageHandler {
 
     void addListener(IConnectionListener connectionListener);
 
+    /**
+     * Adds a listener which receives each line as a reusable character view
+     * instead of a new string. Handlers which doesn't support line views will
+     * pass the line as a string.
+     *
+     * @param lineListener the listener to add
+     */
+    default void addLineListener(IResponseLineListener lineListener) {
+        addListener(lineListener::handleResponseLine);
+    }
+
     void notifyListeners(String message);
 }
@@ -119,6 +119,11 @@ public class JSSCConnection extends AbstractConnection implements SerialPortEven
         this.serialPort.writeByte(b);
     }
 
+    @Override
+    public void sendBytesImmediately(byte[] bytes, int offset, int length) throws Exception {
+        this.serialPort.writeBytes(Arrays.copyOfRange(bytes, offset, offset + length));
+    }
+
     /**
      * Reads data from the serial port. RXTX SerialPortEventListener method.
      */
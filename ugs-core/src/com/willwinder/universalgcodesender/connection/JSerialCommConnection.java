@@ -33,7 +33,10 @@ import java.util.stream.Collectors;
  */
 public class JSerialCommConnection extends AbstractConnection implements SerialPortDataListener {
 
+    private static final int READ_BUFFER_SIZE = 4096;
+
     private SerialPort serialPort;
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
 
     @Override
     public void setUri(String uri) {
@@ -85,6 +88,11 @@ public class JSerialCommConnection extends AbstractConnection implements SerialP
         serialPort.writeBytes(new byte[]{b}, 1);
     }
 
+    @Override
+    public void sendBytesImmediately(byte[] bytes, int offset, int length) throws Exception {
+        serialPort.writeBytes(bytes, length, offset);
+    }
+
     @Override
     public void sendStringToComm(String command) throws Exception {
         serialPort.writeBytes(command.getBytes(), command.length());
@@ -120,8 +128,16 @@ public class JSerialCommConnection extends AbstractConnection implements SerialP
             return;
         }
 
-        byte[] newData = new byte[serialPort.bytesAvailable()];
-        int numRead = serialPort.readBytes(newData, newData.length);
-        getResponseMessageHandler().handleResponse(newData, 0, numRead);
+        // Reuse the read buffer, the response handler will only keep the bytes of unterminated lines
+        int bytesAvailable = serialPort.bytesAvailable();
+        while (bytesAvailable > 0) {
+            int numRead = serialPort.readBytes(readBuffer, Math.min(bytesAvailable, readBuffer.length));
+            if (numRead <= 0) {
+                return;
+            }
+
+            getResponseMessageHandler().handleResponse(readBuffer, 0, numRead);
+            bytesAvailable -= numRead;
+        }
     }
 }
@@ -21,6 +21,7 @@ package com.willwinder.universalgcodesender.connection;
 import com.willwinder.universalgcodesender.GrblUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeParser;
 import com.willwinder.universalgcodesender.model.Position;
+import org.apache.commons.lang3.StringUtils;
 
 import java.util.Arrays;
 import java.util.List;
@@ -101,7 +102,8 @@ public class LoopBackConnection extends AbstractConnection {
     }
 
     private void handleResponse(String response) {
-        responseMessageHandler.handleResponse(response.getBytes(), 0, response.length());
+        byte[] bytes = (response + "\n").getBytes();
+        responseMessageHandler.handleResponse(bytes, 0, bytes.length);
     }
 
     @Override
@@ -142,7 +144,10 @@ public class LoopBackConnection extends AbstractConnection {
 
     @Override
     public void sendStringToComm(String command) throws Exception {
-        this.sent.put(command);
+        // Respond to each line separately as several commands may be sent in one write
+        for (String line : StringUtils.split(command, '\n')) {
+            this.sent.put(line);
+        }
     }
 
     @Override
@@ -18,8 +18,12 @@
  */
 package com.willwinder.universalgcodesender.connection;
 
-import org.apache.commons.lang3.StringUtils;
-
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.logging.Level;
@@ -29,6 +33,11 @@ import java.util.logging.Logger;
  * Handles response messages from the serial connection buffering the data
  * until we have a complete line. It will then attempt to dispatch that
  * data to a communicator.
+ * <p>
+ * Only the new bytes are scanned for line terminators. Complete lines are decoded
+ * once directly from the buffer given by the connection, only the bytes of an
+ * unterminated line are copied to an internal buffer until the rest of the line
+ * arrives. Carriage returns are removed from the decoded lines.
  *
  * @author wwinder
  * @author Joacim Breiler
@@ -36,39 +45,134 @@ import java.util.logging.Logger;
 public class ResponseMessageHandler implements IResponseMessageHandler {
 
     private final static Logger LOGGER = Logger.getLogger(ResponseMessageHandler.class.getSimpleName());
+    private static final int INITIAL_BUFFER_SIZE = 256;
 
-    private final StringBuilder inputBuffer;
     private final Set<IConnectionListener> listeners = new HashSet<>();
+    private final Set<IResponseLineListener> lineListeners = new HashSet<>();
+    private final CharsetDecoder decoder;
+
+    /**
+     * Bytes of a line which hasn't been terminated yet
+     */
+    private byte[] pendingBytes = new byte[INITIAL_BUFFER_SIZE];
+    private int pendingLength = 0;
+
+    /**
+     * The last decoded line, reused for each line
+     */
+    private char[] lineChars = new char[INITIAL_BUFFER_SIZE];
+    private CharBuffer line = CharBuffer.wrap(lineChars);
 
     public ResponseMessageHandler() {
-        inputBuffer = new StringBuilder();
+        decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
     }
 
     @Override
     public void handleResponse(byte[] buffer, int offset, int length) {
-        String response = new String(buffer, offset, length);
-        inputBuffer.append(StringUtils.remove(response, '\r'));
+        int end = offset + length;
+        int lineStart = offset;
+        boolean dispatched = false;
+        try {
+            for (int i = offset; i < end; i++) {
+                if (buffer[i] != '\n') {
+                    continue;
+                }
+
+                int start = lineStart;
+                lineStart = i + 1;
+                if (pendingLength == 0) {
+                    decodeLine(buffer, start, i - start);
+                } else {
+                    appendPending(buffer, start, i - start);
+                    decodeLine(pendingBytes, 0, pendingLength);
+                    pendingLength = 0;
+                }
+                dispatchLine();
+                dispatched = true;
+            }
+        } finally {
+            // Keep the bytes of the unterminated line until the next response
+            appendPending(buffer, lineStart, end - lineStart);
+        }
+
+        if (dispatched) {
+            listeners.forEach(IConnectionListener::handleResponseMessagesProcessed);
+        }
+    }
+
+    private void dispatchLine() {
+        lineListeners.forEach(listener -> {
+            try {
+                listener.handleResponseLine(line);
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "The response message could not be handled: \"" + line + "\", unsafe to proceed, shutting down connection.", e);
+                throw e;
+            } finally {
+                line.rewind();
+            }
+        });
 
-        // Only continue if there is a line terminator and split out command(response).
-        if (!inputBuffer.toString().contains("\n")) {
+        if (!listeners.isEmpty()) {
+            notifyListeners(line.toString());
+        }
+    }
+
+    private void appendPending(byte[] buffer, int offset, int length) {
+        if (length <= 0) {
             return;
         }
 
-        // Split with the -1 option will give an empty string at
-        // the end if there is a terminator there as well.
-        String[] messages = inputBuffer.toString().split("\\n", -1);
-        for (int i = 0; i < messages.length; i++) {
-            // Make sure this isn't the last command.
-            if ((i + 1) < messages.length) {
+        if (pendingLength + length > pendingBytes.length) {
+            pendingBytes = Arrays.copyOf(pendingBytes, Math.max(pendingBytes.length * 2, pendingLength + length));
+        }
+        System.arraycopy(buffer, offset, pendingBytes, pendingLength, length);
+        pendingLength += length;
+    }
 
-                notifyListeners(messages[i]);
+    /**
+     * Decodes the bytes of a line into the reusable line buffer, skipping carriage returns.
+     */
+    private void decodeLine(byte[] buffer, int offset, int length) {
+        ensureLineCapacity(length);
+
+        // Most controllers only sends ASCII which can be copied as is
+        int end = offset + length;
+        int count = 0;
+        for (int i = offset; i < end; i++) {
+            byte b = buffer[i];
+            if (b < 0) {
+                decodeNonAsciiLine(buffer, offset, length);
+                return;
+            } else if (b != '\r') {
+                lineChars[count++] = (char) b;
+            }
+        }
+        line.clear().limit(count);
+    }
 
-                // Append last command to input buffer because it didn't have a terminator.
-            } else {
-                inputBuffer.setLength(0);
-                inputBuffer.append(messages[i]);
+    private void decodeNonAsciiLine(byte[] buffer, int offset, int length) {
+        ensureLineCapacity((int) Math.ceil(length * (double) decoder.maxCharsPerByte()));
+        line.clear();
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(buffer, offset, length), line, true);
+        decoder.flush(line);
+
+        int count = 0;
+        for (int i = 0; i < line.position(); i++) {
+            if (lineChars[i] != '\r') {
+                lineChars[count++] = lineChars[i];
             }
         }
+        line.clear().limit(count);
+    }
+
+    private void ensureLineCapacity(int length) {
+        if (lineChars.length < length) {
+            lineChars = new char[Math.max(lineChars.length * 2, length)];
+            line = CharBuffer.wrap(lineChars);
+        }
     }
 
     public void notifyListeners(String message) {
@@ -85,4 +189,9 @@ public class ResponseMessageHandler implements IResponseMessageHandler {
     public void addListener(IConnectionListener connectionListener) {
         listeners.add(connectionListener);
     }
+
+    @Override
+    public void addLineListener(IResponseLineListener lineListener) {
+        lineListeners.add(lineListener);
+    }
 }
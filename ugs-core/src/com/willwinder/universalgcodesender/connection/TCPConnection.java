@@ -21,8 +21,8 @@ package com.willwinder.universalgcodesender.connection;
 import com.willwinder.universalgcodesender.services.MdnsService;
 import org.apache.commons.lang3.StringUtils;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.BindException;
 import java.net.ConnectException;
@@ -42,12 +42,13 @@ public class TCPConnection extends AbstractConnection implements Runnable, Conne
 
     private static final Logger LOGGER = Logger.getLogger(TCPConnection.class.getSimpleName());
     private static final String MDNS_SERVICE = "_telnet._tcp.local.";
+    private static final int READ_BUFFER_SIZE = 8192;
     private String host;
     private int port;
     // General variables
     private Socket client;
     private OutputStream bufOut;
-    private BufferedInputStream inStream;
+    private InputStream inStream;
     private Thread replyThread;
 
     TCPConnection() {
@@ -84,7 +85,8 @@ public class TCPConnection extends AbstractConnection implements Runnable, Conne
         }
 
         bufOut = client.getOutputStream();
-        inStream = new BufferedInputStream(client.getInputStream());
+        // Read directly from the socket, the response handler is doing the buffering
+        inStream = client.getInputStream();
 
         // start thread so replies can be handled
         replyThread = new Thread(this);
@@ -144,11 +146,22 @@ public class TCPConnection extends AbstractConnection implements Runnable, Conne
         }
     }
 
+    @Override
+    public void sendBytesImmediately(byte[] bytes, int offset, int length) throws Exception {
+        try {
+            bufOut.write(bytes, offset, length);
+            bufOut.flush();
+        } catch (IOException e) {
+            closePort(); // very likely we got disconnected, attempt to disconnect gracefully
+            throw e;
+        }
+    }
+
     /**
      * Thread to accept data from remote host, and pass it to responseHandler
      */
     public void run() {
-        byte[] buffer = new byte[1024];
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
         while (!Thread.interrupted() && !client.isClosed()) {
             try {
                 int readBytes = inStream.read(buffer);
@@ -0,0 +1,1228 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection.virtual;
+
+import com.willwinder.universalgcodesender.GrblUtils;
+import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.gcode.util.GcodeWordTokenizer;
+import com.willwinder.universalgcodesender.gcode.util.PlaneFormatter;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.types.PointSegment;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A simulation of a GRBL 1.1 controller which responds with about the same timing as the real firmware. It is
+ * meant for measuring how well commands are streamed to a controller without any hardware.
+ * <p>
+ * The simulation models:
+ * <ul>
+ *     <li>the serial link, where each byte takes time to transfer depending on the baud rate</li>
+ *     <li>the serial RX buffer, where lines wait until the parser has room for them in the planner</li>
+ *     <li>the planner buffer with a configurable number of blocks, where arcs are split into several blocks</li>
+ *     <li>acceleration limited motion with junction speeds using the junction deviation, the same as GRBL</li>
+ *     <li>real time commands such as status reports, feed hold, jog cancel and overrides</li>
+ * </ul>
+ * <p>
+ * The simulation is not thread safe and doesn't have its own clock, the time is given by the caller using
+ * {@link #write(byte[], long)} and {@link #advanceTo(long)}. Responses are given to the response listener
+ * during those calls.
+ *
+ * @author wwinder
+ */
+public class VirtualGrbl {
+    public static final int DEFAULT_PLANNER_BLOCK_COUNT = 15;
+    public static final int DEFAULT_RX_BUFFER_SIZE = GrblUtils.GRBL_RX_BUFFER_SIZE;
+    public static final String VERSION = "1.1h";
+
+    private static final long STEP_NANOS = TimeUnit.MICROSECONDS.toNanos(250);
+    private static final int AXES = 3;
+    private static final double EPSILON = 1e-9;
+    private static final String AXIS_NAMES = "XYZ";
+
+    /**
+     * The GRBL settings, the axis speeds and accelerations are those of a typical hobby machine
+     * rather than the very conservative firmware defaults.
+     */
+    private static final Map<Integer, Double> DEFAULT_SETTINGS = new TreeMap<>();
+
+    static {
+        double[][] defaults = {
+                {0, 10}, {1, 25}, {2, 0}, {3, 0}, {4, 0}, {5, 0}, {6, 0}, {10, 1}, {11, 0.010}, {12, 0.002},
+                {13, 0}, {20, 0}, {21, 0}, {22, 0}, {23, 0}, {24, 25}, {25, 500}, {26, 250}, {27, 1}, {30, 1000},
+                {31, 0}, {32, 0}, {100, 800}, {101, 800}, {102, 800}, {110, 3000}, {111, 3000}, {112, 1000},
+                {120, 200}, {121, 200}, {122, 50}, {130, 300}, {131, 300}, {132, 100}};
+        for (double[] setting : defaults) {
+            DEFAULT_SETTINGS.put((int) setting[0], setting[1]);
+        }
+    }
+
+    private enum State {
+        IDLE("Idle"), RUN("Run"), HOLD("Hold"), JOG("Jog"), ALARM("Alarm"), CHECK("Check");
+
+        private final String name;
+
+        State(String name) {
+            this.name = name;
+        }
+    }
+
+    private final int plannerBlockCount;
+    private final int rxBufferSize;
+    private final long byteNanos;
+    private final Map<Integer, Double> settings = new TreeMap<>(DEFAULT_SETTINGS);
+    private Consumer<String> responseListener = response -> {
+    };
+
+    // The serial link, bytes are sent with the time they will arrive
+    private final ArrayDeque<long[]> input = new ArrayDeque<>();
+    private final ArrayDeque<Object[]> output = new ArrayDeque<>();
+    private long inputFreeTime;
+    private long outputFreeTime;
+
+    // The serial RX buffer
+    private final byte[] rxBuffer;
+    private int rxHead;
+    private int rxCount;
+    private int rxLines;
+    private final StringBuilder lineBuilder = new StringBuilder();
+
+    // The gcode parser
+    private final GcodeWordTokenizer tokenizer = new GcodeWordTokenizer();
+    private GcodeState parserState = new GcodeState();
+    private PendingLine pendingLine;
+
+    // The planner and the motion, all positions are machine positions in millimeters
+    private final List<Block> planner = new ArrayList<>();
+    private final double[] plannedPosition = new double[AXES];
+    private final double[] position = new double[AXES];
+    private final double[][] workOffsets = new double[6][AXES];
+    private final double[] g92Offset = new double[AXES];
+    private double exitSpeedSqr;
+    private double speed;
+    private double blockDistance;
+
+    private State state = State.IDLE;
+    private boolean holding;
+    private boolean jogCancel;
+    private boolean checkMode;
+    private int feedOverride = 100;
+    private int rapidOverride = 100;
+    private int spindleOverride = 100;
+    private long now;
+
+    // Statistics
+    private long starvedSince = -1;
+    private int underrunCount;
+    private long underrunNanos;
+    private long blocksExecuted;
+    private long motionNanos;
+    private int rxOverflowCount;
+
+    /**
+     * Creates a simulation with the default buffer sizes and an instant serial link
+     */
+    public VirtualGrbl() {
+        this(DEFAULT_PLANNER_BLOCK_COUNT, DEFAULT_RX_BUFFER_SIZE, 0);
+    }
+
+    /**
+     * @param plannerBlockCount the number of blocks in the planner buffer
+     * @param rxBufferSize      the size of the serial RX buffer in bytes
+     * @param baudRate          the baud rate of the serial link, or zero for an instant transfer
+     */
+    public VirtualGrbl(int plannerBlockCount, int rxBufferSize, int baudRate) {
+        if (plannerBlockCount < 1 || rxBufferSize < 1) {
+            throw new IllegalArgumentException("The planner and RX buffer must have room for at least one item");
+        }
+
+        this.plannerBlockCount = plannerBlockCount;
+        this.rxBufferSize = rxBufferSize;
+        this.rxBuffer = new byte[rxBufferSize];
+
+        // Each byte is sent with a start and stop bit
+        this.byteNanos = baudRate > 0 ? TimeUnit.SECONDS.toNanos(10) / baudRate : 0;
+    }
+
+    /**
+     * Sets the listener which receives the responses from the controller without the line endings
+     *
+     * @param responseListener the response listener
+     */
+    public void setResponseListener(Consumer<String> responseListener) {
+        this.responseListener = responseListener;
+    }
+
+    /**
+     * Starts the controller which will print its welcome message
+     *
+     * @param time the current time in nanoseconds
+     */
+    public void start(long time) {
+        now = time;
+        inputFreeTime = time;
+        outputFreeTime = time;
+        respond("Grbl " + VERSION + " ['$' for help]");
+        advanceTo(time);
+    }
+
+    /**
+     * Sends data from the host to the controller.
+     *
+     * @param data the data to send
+     * @param time the time in nanoseconds when the data was sent, must not be before the last call
+     */
+    public void write(byte[] data, long time) {
+        advanceTo(time);
+        long arrival = Math.max(inputFreeTime, time);
+        for (byte b : data) {
+            arrival += byteNanos;
+            input.add(new long[]{arrival, b});
+        }
+        inputFreeTime = arrival;
+        advanceTo(time);
+    }
+
+    /**
+     * Runs the simulation up to the given time
+     *
+     * @param time the time in nanoseconds
+     */
+    public void advanceTo(long time) {
+        while (true) {
+            receiveInput(now);
+            processLines();
+            sendOutput(now);
+            if (now >= time) {
+                return;
+            }
+
+            long stepEnd = Math.min(time, now + STEP_NANOS);
+            if (isStill()) {
+                // Nothing is moving, jump to the next time something will happen
+                stepEnd = Math.min(time, getNextEventTime());
+            }
+
+            move(stepEnd);
+            now = stepEnd;
+        }
+    }
+
+    private boolean isStill() {
+        return planner.isEmpty() || (holding && speed == 0);
+    }
+
+    private long getNextEventTime() {
+        long next = Long.MAX_VALUE;
+        if (!input.isEmpty()) {
+            next = Math.min(next, input.peek()[0]);
+        }
+        if (!output.isEmpty()) {
+            next = Math.min(next, (long) output.peek()[0]);
+        }
+        if (pendingLine != null && pendingLine.dwellEnd > now) {
+            next = Math.min(next, pendingLine.dwellEnd);
+        }
+        return Math.max(next, now + 1);
+    }
+
+    private void receiveInput(long time) {
+        while (!input.isEmpty() && input.peek()[0] <= time) {
+            byte b = (byte) input.poll()[1];
+            if (!handleRealTimeCommand(b)) {
+                if (rxCount == rxBufferSize) {
+                    // The host sent more than the buffer could hold, the same as on a real controller the data is lost
+                    rxOverflowCount++;
+                    continue;
+                }
+
+                rxBuffer[(rxHead + rxCount) % rxBufferSize] = b;
+                rxCount++;
+                if (b == '\n') {
+                    rxLines++;
+                }
+            }
+        }
+    }
+
+    private void sendOutput(long time) {
+        while (!output.isEmpty() && (long) output.peek()[0] <= time) {
+            responseListener.accept((String) output.poll()[1]);
+        }
+    }
+
+    private void respond(String response) {
+        outputFreeTime = Math.max(outputFreeTime, now) + (response.length() + 2) * byteNanos;
+        output.add(new Object[]{outputFreeTime, response});
+    }
+
+    private boolean handleRealTimeCommand(byte b) {
+        int command = b & 0xFF;
+        switch (command) {
+            case GrblUtils.GRBL_STATUS_COMMAND:
+                respond(getStatusReport());
+                return true;
+            case GrblUtils.GRBL_PAUSE_COMMAND:
+                if (state == State.RUN || state == State.JOG) {
+                    holding = true;
+                    jogCancel = state == State.JOG;
+                    state = State.HOLD;
+                }
+                return true;
+            case GrblUtils.GRBL_RESUME_COMMAND:
+                if (holding && !jogCancel) {
+                    holding = false;
+                    state = planner.isEmpty() ? State.IDLE : State.RUN;
+                }
+                return true;
+            case GrblUtils.GRBL_RESET_COMMAND:
+                softReset();
+                return true;
+            case GrblUtils.GRBL_JOG_CANCEL_COMMAND & 0xFF:
+                if (state == State.JOG) {
+                    holding = true;
+                    jogCancel = true;
+                }
+                return true;
+            case GrblUtils.GRBL_DOOR_COMMAND & 0xFF:
+                return true;
+            case 0x90:
+                return setFeedOverride(100);
+            case 0x91:
+                return setFeedOverride(feedOverride + 10);
+            case 0x92:
+                return setFeedOverride(feedOverride - 10);
+            case 0x93:
+                return setFeedOverride(feedOverride + 1);
+            case 0x94:
+                return setFeedOverride(feedOverride - 1);
+            case 0x95:
+                return setRapidOverride(100);
+            case 0x96:
+                return setRapidOverride(50);
+            case 0x97:
+                return setRapidOverride(25);
+            case 0x99:
+                spindleOverride = 100;
+                return true;
+            case 0x9A:
+                spindleOverride = Math.min(200, spindleOverride + 10);
+                return true;
+            case 0x9B:
+                spindleOverride = Math.max(10, spindleOverride - 10);
+                return true;
+            case 0x9C:
+                spindleOverride = Math.min(200, spindleOverride + 1);
+                return true;
+            case 0x9D:
+                spindleOverride = Math.max(10, spindleOverride - 1);
+                return true;
+            default:
+                // Spindle and coolant toggles and other extended ASCII real time commands are ignored
+                return command >= 0x80;
+        }
+    }
+
+    private boolean setFeedOverride(int value) {
+        feedOverride = Math.max(10, Math.min(200, value));
+        recalculate();
+        return true;
+    }
+
+    private boolean setRapidOverride(int value) {
+        rapidOverride = value;
+        recalculate();
+        return true;
+    }
+
+    private void softReset() {
+        boolean moving = speed > 0 || !planner.isEmpty();
+        planner.clear();
+        speed = 0;
+        blockDistance = 0;
+        System.arraycopy(position, 0, plannedPosition, 0, AXES);
+        rxHead = 0;
+        rxCount = 0;
+        rxLines = 0;
+        lineBuilder.setLength(0);
+        pendingLine = null;
+        holding = false;
+        jogCancel = false;
+        checkMode = false;
+        feedOverride = 100;
+        rapidOverride = 100;
+        spindleOverride = 100;
+        starvedSince = -1;
+        parserState = new GcodeState();
+        updateParserPosition();
+
+        if (moving) {
+            // The position is lost when the controller is reset during motion
+            state = State.ALARM;
+            respond("ALARM:3");
+        } else if (state != State.ALARM) {
+            state = State.IDLE;
+        }
+
+        respond("Grbl " + VERSION + " ['$' for help]");
+        if (state == State.ALARM) {
+            respond("[MSG:'$H'|'$X' to unlock]");
+        }
+    }
+
+    private String readLine() {
+        if (rxLines == 0) {
+            return null;
+        }
+
+        lineBuilder.setLength(0);
+        while (true) {
+            byte b = rxBuffer[rxHead];
+            rxHead = (rxHead + 1) % rxBufferSize;
+            rxCount--;
+            if (b == '\n') {
+                rxLines--;
+                return lineBuilder.toString();
+            }
+            lineBuilder.append((char) (b & 0xFF));
+        }
+    }
+
+    private void processLines() {
+        while (true) {
+            if (pendingLine == null) {
+                String line = readLine();
+                if (line == null) {
+                    return;
+                }
+                pendingLine = parseLine(line);
+            }
+
+            if (!execute(pendingLine)) {
+                return;
+            }
+
+            respond(pendingLine.response);
+            pendingLine = null;
+        }
+    }
+
+    private boolean execute(PendingLine line) {
+        if (line.sync) {
+            if (!planner.isEmpty() || speed > 0) {
+                return false;
+            }
+
+            // The program stops on purpose, this isn't a buffer underrun
+            starvedSince = -1;
+            if (line.syncAction != null) {
+                line.syncAction.run();
+                line.syncAction = null;
+            }
+
+            if (line.dwellEnd < 0) {
+                line.dwellEnd = now + line.dwellNanos;
+            }
+            if (line.dwellEnd > now) {
+                return false;
+            }
+        }
+
+        while (!line.moves.isEmpty()) {
+            if (planner.size() >= plannerBlockCount || jogCancel) {
+                return false;
+            }
+            queueBlock(line.moves.poll(), line.jog);
+        }
+        return true;
+    }
+
+    private PendingLine parseLine(String rawLine) {
+        String line = cleanLine(rawLine);
+        if (line.isEmpty()) {
+            return new PendingLine("ok");
+        } else if (line.startsWith("$")) {
+            return parseSystemCommand(line);
+        } else if (state == State.ALARM) {
+            return new PendingLine("error:9");
+        }
+
+        return parseGcode(line, false);
+    }
+
+    /**
+     * Removes comments and whitespaces the same way as the GRBL parser
+     */
+    private static String cleanLine(String line) {
+        StringBuilder result = new StringBuilder(line.length());
+        boolean inComment = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inComment) {
+                inComment = c != ')';
+            } else if (c == '(') {
+                inComment = true;
+            } else if (c == ';') {
+                break;
+            } else if (c > ' ' && c != '%') {
+                result.append(Character.toUpperCase(c));
+            }
+        }
+        return result.toString();
+    }
+
+    private PendingLine parseSystemCommand(String line) {
+        switch (line) {
+            case "$":
+                return new PendingLine("ok", "[HLP:$$ $# $G $I $N $x=val $Nx=line $J=line $SLP $C $X $H ~ ! ? ctrl-x]");
+            case "$$":
+                return isIdle() ? new PendingLine("ok", getSettingsReport()) : new PendingLine("error:8");
+            case "$#":
+                return new PendingLine("ok", getParametersReport());
+            case "$G":
+                return new PendingLine("ok", getParserStateReport());
+            case "$I":
+                return new PendingLine("ok", "[VER:" + VERSION + ".20190825:]", "[OPT:V," + plannerBlockCount + "," + rxBufferSize + "]");
+            case "$N":
+                return new PendingLine("ok", "$N0=", "$N1=");
+            case "$SLP":
+                return new PendingLine("ok");
+            case "$C":
+                return toggleCheckMode();
+            case "$X":
+                return unlock();
+            case "$H":
+                return home();
+            default:
+                break;
+        }
+
+        if (line.startsWith("$J=")) {
+            if (state != State.IDLE && state != State.JOG) {
+                return new PendingLine("error:8");
+            }
+            return parseGcode(line.substring(3), true);
+        }
+
+        return parseSetting(line);
+    }
+
+    private PendingLine toggleCheckMode() {
+        if (!isIdle() && state != State.CHECK) {
+            return new PendingLine("error:8");
+        }
+
+        checkMode = !checkMode;
+        state = checkMode ? State.CHECK : State.IDLE;
+        if (!checkMode) {
+            parserState = new GcodeState();
+            updateParserPosition();
+        }
+        return new PendingLine("ok", checkMode ? "[MSG:Enabled]" : "[MSG:Disabled]");
+    }
+
+    private PendingLine unlock() {
+        if (state == State.ALARM) {
+            state = State.IDLE;
+            return new PendingLine("ok", "[MSG:Caution: Unlocked]");
+        }
+        return new PendingLine("ok");
+    }
+
+    private PendingLine home() {
+        if (getSetting(22) == 0) {
+            return new PendingLine("error:5");
+        }
+        if (!isIdle() && state != State.ALARM) {
+            return new PendingLine("error:8");
+        }
+
+        PendingLine result = new PendingLine("ok");
+        result.sync = true;
+        result.syncAction = () -> {
+            state = State.IDLE;
+            for (int axis = 0; axis < AXES; axis++) {
+                position[axis] = 0;
+                plannedPosition[axis] = 0;
+            }
+            updateParserPosition();
+        };
+        return result;
+    }
+
+    private PendingLine parseSetting(String line) {
+        int separator = line.indexOf('=');
+        if (separator < 2) {
+            return new PendingLine("error:3");
+        }
+
+        try {
+            int setting = Integer.parseInt(line.substring(1, separator));
+            double value = Double.parseDouble(line.substring(separator + 1));
+            if (!settings.containsKey(setting)) {
+                return new PendingLine("error:3");
+            } else if (!isIdle()) {
+                return new PendingLine("error:8");
+            } else if (value < 0) {
+                return new PendingLine("error:4");
+            }
+
+            settings.put(setting, value);
+            return new PendingLine("ok");
+        } catch (NumberFormatException e) {
+            return new PendingLine("error:3");
+        }
+    }
+
+    private PendingLine parseGcode(String line, boolean jog) {
+        tokenizer.tokenize(line);
+        boolean machineCoordinates = false;
+        boolean returnHome = false;
+        boolean sync = false;
+        double dwellSeconds = 0;
+        Runnable syncAction = null;
+        for (int i = 0; i < tokenizer.getWordCount(); i++) {
+            char letter = tokenizer.getLetter(i);
+            if (letter == 'M') {
+                // Program pauses, program ends and spindle or coolant changes waits for the motion to complete
+                sync |= tokenizer.getValue(i) <= 9;
+            } else if (letter == 'G') {
+                Code code = tokenizer.getCode(i);
+                switch (code) {
+                    case G4:
+                        sync = true;
+                        dwellSeconds = tokenizer.getCoord('P');
+                        break;
+                    case G10:
+                        sync = true;
+                        syncAction = createSetOffsetAction();
+                        break;
+                    case G28:
+                    case G30:
+                        // The stored positions are always at machine zero, intermediate points are ignored
+                        sync = true;
+                        returnHome = true;
+                        break;
+                    case G92:
+                    case G92_1:
+                        sync = true;
+                        syncAction = createSetTemporaryOffsetAction(code == Code.G92_1);
+                        break;
+                    case G53:
+                        machineCoordinates = true;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        if (sync && jog) {
+            return new PendingLine("error:16");
+        }
+        if (Double.isNaN(dwellSeconds) || dwellSeconds < 0) {
+            return new PendingLine("error:28");
+        }
+
+        GcodeState startState = jog ? jogState() : parserState;
+        if (machineCoordinates) {
+            // Parse the command from the machine position so that missing axes keeps their machine coordinates
+            startState = startState.copy();
+            startState.currentPoint = new Position(plannedPosition[0], plannedPosition[1], plannedPosition[2], UnitUtils.Units.MM)
+                    .getPositionIn(startState.getUnits());
+        }
+
+        List<GcodeMeta> metas;
+        try {
+            metas = GcodeParserUtils.processCommand(line, 0, startState, true);
+        } catch (GcodeParserException e) {
+            return new PendingLine("error:20");
+        }
+
+        PendingLine result = new PendingLine("ok");
+        GcodeState endState = startState;
+        Position start = startState.currentPoint;
+        for (GcodeMeta meta : metas == null ? Collections.<GcodeMeta>emptyList() : metas) {
+            if (meta.point != null && !checkMode) {
+                if (!meta.point.isFastTraverse() && meta.state.feedRate <= 0) {
+                    return new PendingLine("error:22");
+                }
+                addMoves(result, meta, start, machineCoordinates);
+                start = meta.point.point();
+            }
+            if (meta.state != null) {
+                endState = meta.state;
+            }
+        }
+
+        if (returnHome && !checkMode) {
+            Move move = new Move();
+            move.target = new double[AXES];
+            move.rapid = true;
+            result.moves.add(move);
+        }
+
+        if (!jog) {
+            parserState = endState;
+        }
+
+        if (!checkMode) {
+            // The parser position follows the planned machine position, the same as in GRBL
+            double[] end = result.moves.isEmpty() ? plannedPosition : result.moves.peekLast().target;
+            updateParserPosition(parserState, end);
+        }
+
+        result.jog = jog;
+        result.sync = sync;
+        result.syncAction = syncAction;
+        result.dwellNanos = (long) (dwellSeconds * TimeUnit.SECONDS.toNanos(1));
+        return result;
+    }
+
+    private GcodeState jogState() {
+        GcodeState result = parserState.copy();
+        result.currentMotionMode = Code.G1;
+        return result;
+    }
+
+    private void addMoves(PendingLine line, GcodeMeta meta, Position start, boolean machineCoordinates) {
+        PointSegment point = meta.point;
+        double feedRate = meta.state.feedRate * UnitUtils.scaleUnits(meta.state.getUnits(), UnitUtils.Units.MM);
+        double[] offset = machineCoordinates ? new double[AXES] : getWorkOffset(meta.state);
+
+        List<Position> points;
+        if (point.isArc()) {
+            // Split arcs the same way as GRBL using the arc tolerance
+            double radius = point.getRadius() * UnitUtils.scaleUnits(point.point().getUnits(), UnitUtils.Units.MM);
+            double tolerance = Math.min(getSetting(12), radius);
+            double segmentLength = Math.max(2 * Math.sqrt(tolerance * (2 * radius - tolerance)), EPSILON);
+            points = GcodePreprocessorUtils.generatePointsAlongArcBDring(start, point.point(), point.center(),
+                    point.isClockwise(), point.getRadius(), 0, segmentLength, new PlaneFormatter(point.getPlaneState()));
+            points = points.isEmpty() ? Collections.singletonList(point.point()) : points.subList(1, points.size());
+        } else {
+            points = Collections.singletonList(point.point());
+        }
+
+        for (Position p : points) {
+            Position target = p.getPositionIn(UnitUtils.Units.MM);
+            Move move = new Move();
+            move.target = new double[]{target.x + offset[0], target.y + offset[1], target.z + offset[2]};
+            move.rapid = point.isFastTraverse();
+            move.feedRate = feedRate;
+            line.moves.add(move);
+        }
+    }
+
+    private Runnable createSetOffsetAction() {
+        double l = tokenizer.getCoord('L');
+        double p = tokenizer.getCoord('P');
+        double[] values = getAxisValues();
+        return () -> {
+            int index = Double.isNaN(p) || p == 0 ? getWorkOffsetIndex(parserState) : (int) p - 1;
+            if (index < 0 || index >= workOffsets.length) {
+                return;
+            }
+
+            for (int axis = 0; axis < AXES; axis++) {
+                if (Double.isNaN(values[axis])) {
+                    continue;
+                }
+
+                if (l == 20) {
+                    // Sets the offset so that the current position gets the given work coordinate
+                    workOffsets[index][axis] = position[axis] - g92Offset[axis] - values[axis];
+                } else if (l == 2) {
+                    workOffsets[index][axis] = values[axis];
+                }
+            }
+            updateParserPosition();
+        };
+    }
+
+    private Runnable createSetTemporaryOffsetAction(boolean clear) {
+        double[] values = getAxisValues();
+        return () -> {
+            for (int axis = 0; axis < AXES; axis++) {
+                if (clear) {
+                    g92Offset[axis] = 0;
+                } else if (!Double.isNaN(values[axis])) {
+                    g92Offset[axis] = position[axis] - workOffsets[getWorkOffsetIndex(parserState)][axis] - values[axis];
+                }
+            }
+            updateParserPosition();
+        };
+    }
+
+    /**
+     * @return the axis words of the tokenized command in millimeters, NaN for missing axes
+     */
+    private double[] getAxisValues() {
+        double scale = UnitUtils.scaleUnits(parserState.getUnits(), UnitUtils.Units.MM);
+        double[] values = new double[AXES];
+        for (int axis = 0; axis < AXES; axis++) {
+            values[axis] = tokenizer.getCoord(AXIS_NAMES.charAt(axis)) * scale;
+        }
+        return values;
+    }
+
+    private static int getWorkOffsetIndex(GcodeState state) {
+        int index = state.offset.ordinal() - Code.G54.ordinal();
+        return index >= 0 && index < 6 ? index : 0;
+    }
+
+    private double[] getWorkOffset(GcodeState state) {
+        double[] workOffset = workOffsets[getWorkOffsetIndex(state)];
+        double[] result = new double[AXES];
+        for (int axis = 0; axis < AXES; axis++) {
+            result[axis] = workOffset[axis] + g92Offset[axis];
+        }
+        return result;
+    }
+
+    private void updateParserPosition() {
+        updateParserPosition(parserState, plannedPosition);
+    }
+
+    /**
+     * Sets the parser position to the work position of the given machine position
+     */
+    private void updateParserPosition(GcodeState state, double[] machinePosition) {
+        double[] offset = getWorkOffset(state);
+        Position workPosition = new Position(machinePosition[0] - offset[0], machinePosition[1] - offset[1], machinePosition[2] - offset[2], UnitUtils.Units.MM);
+        state.currentPoint = workPosition.getPositionIn(state.getUnits());
+    }
+
+    private boolean isIdle() {
+        return planner.isEmpty() && speed == 0 && (state == State.IDLE || state == State.CHECK);
+    }
+
+    private void queueBlock(Move move, boolean jog) {
+        double[] delta = new double[AXES];
+        double length = 0;
+        for (int axis = 0; axis < AXES; axis++) {
+            delta[axis] = move.target[axis] - plannedPosition[axis];
+            length += delta[axis] * delta[axis];
+        }
+        length = Math.sqrt(length);
+        if (length < EPSILON) {
+            return;
+        }
+
+        Block block = new Block();
+        block.start = plannedPosition.clone();
+        block.unit = new double[AXES];
+        block.length = length;
+        block.rapid = move.rapid;
+        block.jog = jog;
+        block.feedRate = move.feedRate / 60.0;
+        block.acceleration = Double.MAX_VALUE;
+        block.maxRate = Double.MAX_VALUE;
+        for (int axis = 0; axis < AXES; axis++) {
+            block.unit[axis] = delta[axis] / length;
+            double component = Math.abs(block.unit[axis]);
+            if (component > EPSILON) {
+                block.acceleration = Math.min(block.acceleration, getSetting(120 + axis) / component);
+                block.maxRate = Math.min(block.maxRate, getSetting(110 + axis) / 60.0 / component);
+            }
+        }
+        block.junctionSpeedSqr = planner.isEmpty() ? 0 : getJunctionSpeedSqr(planner.get(planner.size() - 1), block);
+
+        if (starvedSince >= 0) {
+            underrunCount++;
+            underrunNanos += now - starvedSince;
+            starvedSince = -1;
+        }
+
+        planner.add(block);
+        System.arraycopy(move.target, 0, plannedPosition, 0, AXES);
+        recalculate();
+
+        if (!holding && (state == State.IDLE || state == State.RUN || state == State.JOG)) {
+            state = jog ? State.JOG : State.RUN;
+        }
+    }
+
+    /**
+     * Calculates the maximum speed through the junction between two blocks using the junction deviation,
+     * the same way as the GRBL planner.
+     */
+    private double getJunctionSpeedSqr(Block previous, Block block) {
+        double cosTheta = 0;
+        double[] junctionUnit = new double[AXES];
+        double junctionLength = 0;
+        for (int axis = 0; axis < AXES; axis++) {
+            cosTheta -= previous.unit[axis] * block.unit[axis];
+            junctionUnit[axis] = block.unit[axis] - previous.unit[axis];
+            junctionLength += junctionUnit[axis] * junctionUnit[axis];
+        }
+
+        if (cosTheta > 0.999999) {
+            // A reversal of direction needs to stop
+            return 0;
+        } else if (cosTheta < -0.999999) {
+            // A straight line, only limited by the nominal speeds
+            return Double.MAX_VALUE;
+        }
+
+        junctionLength = Math.sqrt(junctionLength);
+        double junctionAcceleration = Double.MAX_VALUE;
+        for (int axis = 0; axis < AXES; axis++) {
+            double component = Math.abs(junctionUnit[axis] / junctionLength);
+            if (component > EPSILON) {
+                junctionAcceleration = Math.min(junctionAcceleration, getSetting(120 + axis) / component);
+            }
+        }
+
+        double sinThetaHalf = Math.sqrt(0.5 * (1.0 - cosTheta));
+        return junctionAcceleration * getSetting(11) * sinThetaHalf / (1.0 - sinThetaHalf);
+    }
+
+    private double getNominalSpeed(Block block) {
+        if (block.rapid) {
+            return block.maxRate * rapidOverride / 100.0;
+        } else if (block.jog) {
+            return Math.min(block.feedRate, block.maxRate);
+        }
+        return Math.min(block.feedRate * feedOverride / 100.0, block.maxRate);
+    }
+
+    /**
+     * Calculates the highest entry speed of each block so that the machine is able to stop at the
+     * end of the last block in the planner.
+     */
+    private void recalculate() {
+        double nextEntrySpeedSqr = 0;
+        for (int i = planner.size() - 1; i >= 1; i--) {
+            Block block = planner.get(i);
+            double nominalSpeed = Math.min(getNominalSpeed(block), getNominalSpeed(planner.get(i - 1)));
+            double entrySpeedSqr = Math.min(block.junctionSpeedSqr, nominalSpeed * nominalSpeed);
+            entrySpeedSqr = Math.min(entrySpeedSqr, nextEntrySpeedSqr + 2 * block.acceleration * block.length);
+            block.entrySpeedSqr = entrySpeedSqr;
+            nextEntrySpeedSqr = entrySpeedSqr;
+        }
+        exitSpeedSqr = planner.size() > 1 ? planner.get(1).entrySpeedSqr : 0;
+    }
+
+    /**
+     * Moves the machine along the blocks in the planner, accelerating towards the nominal speed of the
+     * current block while making sure it can slow down to the exit speed at the end of it.
+     */
+    private void move(long stepEnd) {
+        double remainingTime = (stepEnd - now) / 1e9;
+        boolean moving = !isStill();
+        while (remainingTime > 0 && !planner.isEmpty()) {
+            Block block = planner.get(0);
+            double remainingDistance = block.length - blockDistance;
+            double blockExitSpeedSqr = holding ? 0 : exitSpeedSqr;
+            double maxSpeedSqr = blockExitSpeedSqr + 2 * block.acceleration * remainingDistance;
+            double nominalSpeed = getNominalSpeed(block);
+
+            // Use a constant acceleration during the step, braking as soon as the machine needs to slow down
+            double acceleration;
+            if (holding || speed * speed >= maxSpeedSqr - EPSILON) {
+                acceleration = speed > 0 ? -block.acceleration : 0;
+            } else if (speed < nominalSpeed - EPSILON) {
+                acceleration = Math.min(block.acceleration, (nominalSpeed - speed) / remainingTime);
+            } else if (speed > nominalSpeed + EPSILON) {
+                acceleration = -Math.min(block.acceleration, (speed - nominalSpeed) / remainingTime);
+            } else {
+                acceleration = 0;
+            }
+
+            double stepTime = remainingTime;
+            if (acceleration < 0 && speed + acceleration * stepTime < 0) {
+                // Stop during the step instead of reversing
+                stepTime = speed / -acceleration;
+            } else if (acceleration >= 0) {
+                // End the step where the machine needs to start braking
+                double brakeDistance = (maxSpeedSqr - speed * speed) / (2 * acceleration + 2 * block.acceleration);
+                if (brakeDistance < remainingDistance && getDistance(speed, acceleration, stepTime) > brakeDistance) {
+                    stepTime = Math.min(stepTime, getTime(speed, acceleration, brakeDistance));
+                }
+            }
+            double distance = getDistance(speed, acceleration, stepTime);
+
+            if (distance < remainingDistance - EPSILON) {
+                blockDistance += distance;
+                speed = Math.max(0, speed + acceleration * stepTime);
+                remainingTime -= stepTime;
+                updatePosition(block);
+                if (holding && speed == 0) {
+                    onHoldComplete();
+                }
+                continue;
+            }
+
+            // The block is completed during this step
+            double time = Math.min(remainingTime, getTime(speed, acceleration, remainingDistance));
+            speed = Math.min(Math.max(0, speed + acceleration * time), Math.sqrt(blockExitSpeedSqr));
+            remainingTime -= time;
+            blockDistance = block.length;
+            updatePosition(block);
+            planner.remove(0);
+            blockDistance = 0;
+            blocksExecuted++;
+            recalculate();
+
+            if (planner.isEmpty()) {
+                speed = 0;
+                long emptyTime = stepEnd - (long) (remainingTime * 1e9);
+                if (!holding && !block.jog) {
+                    starvedSince = emptyTime;
+                }
+                if (holding) {
+                    onHoldComplete();
+                } else if (state == State.RUN || state == State.JOG) {
+                    state = checkMode ? State.CHECK : State.IDLE;
+                }
+            }
+        }
+
+        if (moving) {
+            motionNanos += stepEnd - now;
+        }
+    }
+
+    private static double getDistance(double speed, double acceleration, double time) {
+        return speed * time + acceleration * time * time / 2;
+    }
+
+    /**
+     * @return the time it takes to travel the distance with a constant acceleration
+     */
+    private static double getTime(double speed, double acceleration, double distance) {
+        if (Math.abs(acceleration) < EPSILON) {
+            return speed > EPSILON ? distance / speed : 0;
+        }
+
+        double discriminant = Math.max(0, speed * speed + 2 * acceleration * distance);
+        return Math.max(0, (Math.sqrt(discriminant) - speed) / acceleration);
+    }
+
+    private void onHoldComplete() {
+        if (jogCancel) {
+            // The jog is cancelled, discard the rest of the jog motions
+            planner.clear();
+            speed = 0;
+            blockDistance = 0;
+            System.arraycopy(position, 0, plannedPosition, 0, AXES);
+            if (pendingLine != null && pendingLine.jog) {
+                pendingLine.moves.clear();
+            }
+            updateParserPosition();
+            holding = false;
+            jogCancel = false;
+            state = State.IDLE;
+        }
+    }
+
+    private void updatePosition(Block block) {
+        for (int axis = 0; axis < AXES; axis++) {
+            position[axis] = block.start[axis] + block.unit[axis] * blockDistance;
+        }
+    }
+
+    private String getStatusReport() {
+        String stateName = state.name;
+        if (state == State.HOLD) {
+            stateName += speed == 0 ? ":0" : ":1";
+        }
+
+        double[] workOffset = getWorkOffset(parserState);
+        double spindleSpeed = parserState.spindle == Code.M5 ? 0 : parserState.spindleSpeed * spindleOverride / 100.0;
+        return String.format(Locale.US, "<%s|MPos:%.3f,%.3f,%.3f|Bf:%d,%d|FS:%.0f,%.0f|WCO:%.3f,%.3f,%.3f|Ov:%d,%d,%d>",
+                stateName, position[0], position[1], position[2],
+                plannerBlockCount - planner.size(), rxBufferSize - rxCount,
+                speed * 60, spindleSpeed,
+                workOffset[0], workOffset[1], workOffset[2],
+                feedOverride, rapidOverride, spindleOverride);
+    }
+
+    private String[] getSettingsReport() {
+        List<String> result = new ArrayList<>();
+        settings.forEach((setting, value) -> {
+            if (value == Math.rint(value) && setting != 11 && setting != 12) {
+                result.add(String.format(Locale.US, "$%d=%d", setting, value.longValue()));
+            } else {
+                result.add(String.format(Locale.US, "$%d=%.3f", setting, value));
+            }
+        });
+        return result.toArray(new String[0]);
+    }
+
+    private String[] getParametersReport() {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < workOffsets.length; i++) {
+            result.add(String.format(Locale.US, "[G%d:%.3f,%.3f,%.3f]", 54 + i, workOffsets[i][0], workOffsets[i][1], workOffsets[i][2]));
+        }
+        result.add("[G28:0.000,0.000,0.000]");
+        result.add("[G30:0.000,0.000,0.000]");
+        result.add(String.format(Locale.US, "[G92:%.3f,%.3f,%.3f]", g92Offset[0], g92Offset[1], g92Offset[2]));
+        result.add("[TLO:0.000]");
+        result.add("[PRB:0.000,0.000,0.000:0]");
+        return result.toArray(new String[0]);
+    }
+
+    private String getParserStateReport() {
+        return String.format(Locale.US, "[GC:%s %s %s %s %s %s %s %s T0 F%.0f S%.0f]",
+                getCodeName(parserState.currentMotionMode), getCodeName(parserState.offset),
+                getCodeName(parserState.plane.code), getCodeName(parserState.units),
+                getCodeName(parserState.distanceMode), getCodeName(parserState.feedMode),
+                getCodeName(parserState.spindle), getCodeName(parserState.coolant),
+                parserState.feedRate, parserState.spindleSpeed);
+    }
+
+    private static String getCodeName(Code code) {
+        return code == null ? "G80" : code.name().replace('_', '.');
+    }
+
+    /**
+     * @param setting the setting number
+     * @return the value of the setting or zero if not defined
+     */
+    public double getSetting(int setting) {
+        return settings.getOrDefault(setting, 0d);
+    }
+
+    /**
+     * @return the current machine position in millimeters
+     */
+    public Position getMachinePosition() {
+        return new Position(position[0], position[1], position[2], UnitUtils.Units.MM);
+    }
+
+    /**
+     * @return the current speed in millimeters per minute
+     */
+    public double getFeedRate() {
+        return speed * 60;
+    }
+
+    /**
+     * @return the number of blocks in the planner, including the one being executed
+     */
+    public int getPlannerBlocks() {
+        return planner.size();
+    }
+
+    /**
+     * @return the number of bytes in the serial RX buffer
+     */
+    public int getRxBufferBytes() {
+        return rxCount;
+    }
+
+    /**
+     * @return the number of times the planner ran empty during motion and motion was resumed by more commands
+     */
+    public int getUnderrunCount() {
+        return underrunCount;
+    }
+
+    /**
+     * @return the total time in nanoseconds the machine was waiting for more commands after an underrun
+     */
+    public long getUnderrunTime() {
+        return underrunNanos;
+    }
+
+    /**
+     * @return the total time in nanoseconds with blocks in the planner
+     */
+    public long getMotionTime() {
+        return motionNanos;
+    }
+
+    /**
+     * @return the number of planner blocks that has been executed
+     */
+    public long getBlocksExecuted() {
+        return blocksExecuted;
+    }
+
+    /**
+     * @return the number of bytes that were lost because the host sent more than the RX buffer could hold
+     */
+    public int getRxOverflowCount() {
+        return rxOverflowCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "blocksExecuted=%d, motionTime=%.3fs, underruns=%d, underrunTime=%.3fs, rxOverflows=%d",
+                blocksExecuted, motionNanos / 1e9, underrunCount, underrunNanos / 1e9, rxOverflowCount);
+    }
+
+    /**
+     * A linear motion to a target in machine coordinates in millimeters
+     */
+    private static class Move {
+        private double[] target;
+        private boolean rapid;
+        private double feedRate;
+    }
+
+    /**
+     * A linear motion in the planner, speeds are in millimeters per second
+     */
+    private static class Block {
+        private double[] start;
+        private double[] unit;
+        private double length;
+        private boolean rapid;
+        private boolean jog;
+        private double feedRate;
+        private double maxRate;
+        private double acceleration;
+        private double junctionSpeedSqr;
+        private double entrySpeedSqr;
+    }
+
+    /**
+     * A line that has been read from the RX buffer and waits for the planner to have room for its motions
+     * or for the motions to complete before it can be executed
+     */
+    private static class PendingLine {
+        private final ArrayDeque<Move> moves = new ArrayDeque<>();
+        private final String response;
+        private boolean jog;
+        private boolean sync;
+        private Runnable syncAction;
+        private long dwellNanos;
+        private long dwellEnd = -1;
+
+        PendingLine(String response, String... messages) {
+            this.response = messages.length == 0 ? response : String.join("\n", messages) + "\n" + response;
+        }
+    }
+}
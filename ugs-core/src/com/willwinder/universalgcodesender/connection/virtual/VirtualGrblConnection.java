@@ -0,0 +1,214 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection.virtual;
+
+import com.willwinder.universalgcodesender.connection.AbstractConnection;
+import com.willwinder.universalgcodesender.connection.ConnectionDriver;
+import com.willwinder.universalgcodesender.connection.ConnectionException;
+import com.willwinder.universalgcodesender.connection.DefaultConnectionDevice;
+import com.willwinder.universalgcodesender.connection.IConnectionDevice;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A connection to a simulated GRBL controller, see {@link VirtualGrbl}. It can be used for testing
+ * the streaming throughput without any hardware, for instance with the uri virtual://grbl:115200
+ * where the baud rate is used for the timing of the simulated serial link.
+ * <p>
+ * The simulation runs in real time by default, it can be made to run faster than real time
+ * using {@link #setTimeScale(double)}.
+ *
+ * @author wwinder
+ */
+public class VirtualGrblConnection extends AbstractConnection {
+    private static final Logger LOGGER = Logger.getLogger(VirtualGrblConnection.class.getName());
+    private static final String DEVICE_NAME = "grbl";
+    private static final int DEFAULT_BAUD_RATE = 115200;
+
+    private final Object lock = new Object();
+    private final List<String> responses = new ArrayList<>();
+    private int plannerBlockCount = VirtualGrbl.DEFAULT_PLANNER_BLOCK_COUNT;
+    private int baudRate = DEFAULT_BAUD_RATE;
+    private double timeScale = 1;
+
+    private VirtualGrbl grbl;
+    private Thread simulationThread;
+    private long startTime;
+    private volatile boolean open;
+
+    @Override
+    public void setUri(String uri) {
+        String rate = StringUtils.substringAfterLast(StringUtils.removeStartIgnoreCase(uri, ConnectionDriver.VIRTUAL.getProtocol()), ":");
+        if (StringUtils.isEmpty(rate)) {
+            return;
+        }
+
+        try {
+            baudRate = Integer.parseInt(rate);
+        } catch (NumberFormatException e) {
+            throw new ConnectionException("Couldn't parse connection string " + uri, e);
+        }
+    }
+
+    /**
+     * Sets the number of blocks in the planner buffer of the simulated controller, needs to be set
+     * before the connection is opened.
+     *
+     * @param plannerBlockCount the number of planner blocks
+     */
+    public void setPlannerBlockCount(int plannerBlockCount) {
+        this.plannerBlockCount = plannerBlockCount;
+    }
+
+    /**
+     * Sets how fast the simulation runs compared to real time, ex: a time scale of 10 will
+     * run a program in a tenth of the time it would take on a real machine. Needs to be set
+     * before the connection is opened.
+     *
+     * @param timeScale the simulated time per real time
+     */
+    public void setTimeScale(double timeScale) {
+        if (timeScale <= 0) {
+            throw new IllegalArgumentException("The time scale must be greater than zero");
+        }
+        this.timeScale = timeScale;
+    }
+
+    /**
+     * Gives access to the simulated controller while the simulation is paused, ex: for reading its statistics.
+     * Does nothing if the connection has never been opened.
+     *
+     * @param consumer a function that is given the simulated controller
+     */
+    public void withSimulation(Consumer<VirtualGrbl> consumer) {
+        synchronized (lock) {
+            if (grbl != null) {
+                consumer.accept(grbl);
+            }
+        }
+    }
+
+    @Override
+    public boolean openPort() throws Exception {
+        synchronized (lock) {
+            if (open) {
+                return true;
+            }
+
+            startTime = System.nanoTime();
+            responses.clear();
+            grbl = new VirtualGrbl(plannerBlockCount, VirtualGrbl.DEFAULT_RX_BUFFER_SIZE, baudRate);
+            grbl.setResponseListener(responses::add);
+            grbl.start(0);
+            open = true;
+        }
+
+        simulationThread = new Thread(this::runSimulation, "Virtual GRBL");
+        simulationThread.setDaemon(true);
+        simulationThread.start();
+        return true;
+    }
+
+    private long getSimulationTime() {
+        return (long) ((System.nanoTime() - startTime) * timeScale);
+    }
+
+    private void runSimulation() {
+        List<String> delivered = new ArrayList<>();
+        while (open) {
+            synchronized (lock) {
+                grbl.advanceTo(getSimulationTime());
+                delivered.addAll(responses);
+                responses.clear();
+            }
+
+            // Responses are delivered outside the lock so that the listeners are able to send new commands
+            for (String response : delivered) {
+                byte[] bytes = (response + "\r\n").getBytes(StandardCharsets.US_ASCII);
+                responseMessageHandler.handleResponse(bytes, 0, bytes.length);
+            }
+            delivered.clear();
+
+            try {
+                TimeUnit.MILLISECONDS.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void closePort() throws Exception {
+        open = false;
+        if (simulationThread != null) {
+            simulationThread.interrupt();
+            simulationThread.join(TimeUnit.SECONDS.toMillis(1));
+            simulationThread = null;
+        }
+
+        synchronized (lock) {
+            if (grbl != null) {
+                LOGGER.log(Level.INFO, "Virtual GRBL closed: {0}", grbl);
+            }
+        }
+    }
+
+    @Override
+    public void sendByteImmediately(byte b) throws Exception {
+        write(new byte[]{b});
+    }
+
+    @Override
+    public void sendStringToComm(String command) throws Exception {
+        write(command.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private void write(byte[] data) {
+        synchronized (lock) {
+            if (!open) {
+                throw new ConnectionException("The connection is not open");
+            }
+            grbl.write(data, getSimulationTime());
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public List<String> getPortNames() {
+        return Collections.singletonList(DEVICE_NAME);
+    }
+
+    @Override
+    public List<IConnectionDevice> getDevices() {
+        return Collections.singletonList(new DefaultConnectionDevice(DEVICE_NAME));
+    }
+}
@@ -8,5 +8,17 @@ package com.willwinder.universalgcodesender.connection.xmodem;
 public interface CRC {
     int getCRCLength();
 
-    long calcCRC(byte[] block);
+    /**
+     * Calculates the checksum of a part of a block without copying it
+     *
+     * @param block  the block with the data
+     * @param offset the offset of the first byte to include
+     * @param length the number of bytes to include
+     * @return the checksum
+     */
+    long calcCRC(byte[] block, int offset, int length);
+
+    default long calcCRC(byte[] block) {
+        return calcCRC(block, 0, block.length);
+    }
 }
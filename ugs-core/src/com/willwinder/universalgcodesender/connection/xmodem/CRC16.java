@@ -48,10 +48,10 @@ public class CRC16 implements CRC {
     }
 
     @Override
-    public long calcCRC(byte[] block) {
+    public long calcCRC(byte[] block, int offset, int length) {
         int crc = 0x0000;
-        for (byte b : block) {
-            crc = ((crc << 8) ^ TABLE[((crc >> 8) ^ (0xff & b))]) & 0xFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc = ((crc << 8) ^ TABLE[((crc >> 8) ^ (0xff & block[i]))]) & 0xFFFF;
         }
 
         return crc;
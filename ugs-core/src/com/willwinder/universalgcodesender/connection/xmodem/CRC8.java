@@ -12,10 +12,10 @@ public class CRC8 implements CRC {
     }
 
     @Override
-    public long calcCRC(byte[] block) {
+    public long calcCRC(byte[] block, int offset, int length) {
         byte checksum = 0;
-        for (byte b : block) {
-            checksum += b;
+        for (int i = offset; i < offset + length; i++) {
+            checksum += block[i];
         }
         return checksum;
     }
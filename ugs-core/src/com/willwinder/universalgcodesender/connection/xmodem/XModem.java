@@ -1,8 +1,11 @@
 package com.willwinder.universalgcodesender.connection.xmodem;
 
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 
 
 /**
@@ -30,6 +33,9 @@ class XModem {
 
     protected static final int MAX_ERRORS = 10;
 
+    /* The block type, block number and inverted block number */
+    private static final int HEADER_LENGTH = 3;
+
     protected static final int BLOCK_TIMEOUT = 3000;
     protected static final int REQUEST_TIMEOUT = 3000;
     protected static final int WAIT_FOR_RECEIVER_TIMEOUT = 60_000;
@@ -89,6 +95,21 @@ class XModem {
      * @throws java.io.IOException if the transmission failed
      */
     public void send(InputStream inputStream, boolean useBlock1K) throws IOException {
+        send(inputStream, useBlock1K, -1, FileTransferListener.NONE);
+    }
+
+    /**
+     * Send data as an input stream, the stream is read one block at the time so it never needs
+     * to be kept in memory. A block that is rejected or not acknowledged in time is sent again
+     * until it is acknowledged or too many errors have occurred.
+     *
+     * @param dataStream the data to send
+     * @param useBlock1K uses a 1K send block (XModem-1K)
+     * @param totalBytes the total number of bytes in the stream or -1 if unknown, only used for progress
+     * @param listener   a listener for the progress of the transmission
+     * @throws java.io.IOException if the transmission failed
+     */
+    public void send(InputStream dataStream, boolean useBlock1K, long totalBytes, FileTransferListener listener) throws IOException {
         Timer timer = new Timer(WAIT_FOR_RECEIVER_TIMEOUT).start();
 
         boolean useCRC16 = waitReceiverRequest(timer);
@@ -98,20 +119,25 @@ class XModem {
         else
             crc = new CRC8();
 
-        byte[] block;
-        if (useBlock1K)
-            block = new byte[1024];
-        else
-            block = new byte[128];
-        sendDataBlocks(inputStream, 1, crc, block);
+        int blockSize = useBlock1K ? 1024 : 128;
+        byte[] frame = new byte[HEADER_LENGTH + blockSize + crc.getCRCLength()];
+        sendDataBlocks(dataStream, 1, crc, frame, blockSize, totalBytes, listener);
 
         sendEOT();
     }
 
-    protected void sendDataBlocks(InputStream dataStream, int blockNumber, CRC crc, byte[] block) throws IOException {
+    protected void sendDataBlocks(InputStream dataStream, int blockNumber, CRC crc, byte[] frame, int blockSize, long totalBytes, FileTransferListener listener) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long transferredBytes = 0;
         int dataLength;
-        while ((dataLength = dataStream.read(block)) != -1) {
-            sendBlock(blockNumber++, block, dataLength, crc);
+        while ((dataLength = dataStream.readNBytes(frame, HEADER_LENGTH, blockSize)) > 0) {
+            // The last block can be sent as a short block if the data fits
+            int length = dataLength <= 128 ? 128 : blockSize;
+            sendBlock(blockNumber++, frame, length, dataLength, crc, listener);
+
+            transferredBytes += dataLength;
+            long elapsedTime = Math.max(1, System.currentTimeMillis() - startTime);
+            listener.onProgress(transferredBytes, totalBytes, transferredBytes * 1000 / elapsedTime);
         }
     }
 
@@ -135,32 +161,44 @@ class XModem {
         }
     }
 
-    protected void sendBlock(int blockNumber, byte[] block, int dataLength, CRC crc) throws IOException {
+    /**
+     * Sends a block that has been read into the frame buffer. The header, padding and checksum is
+     * added to the frame so that it can be written and resent as a single write.
+     *
+     * @param blockNumber the number of the block
+     * @param frame       the frame buffer with the data starting after the header
+     * @param blockSize   the size of the block, 128 or 1024
+     * @param dataLength  the number of data bytes in the block
+     * @param crc         the checksum to use
+     * @param listener    a listener to notify when the block is sent again
+     * @throws IOException if the block could not be sent
+     */
+    protected void sendBlock(int blockNumber, byte[] frame, int blockSize, int dataLength, CRC crc, FileTransferListener listener) throws IOException {
         int errorCount;
         int character;
         Timer timer = new Timer(SEND_BLOCK_TIMEOUT);
 
-        if (dataLength < block.length) {
-            // Fill the remaining bytes with EOF:s
-            for (int i = dataLength; i < block.length; i++) {
-                block[i] = CPM_EOF;
-            }
+        // Fill the remaining bytes with EOF:s
+        Arrays.fill(frame, HEADER_LENGTH + dataLength, HEADER_LENGTH + blockSize, CPM_EOF);
+
+        frame[0] = blockSize == 1024 ? STX : SOH;
+        frame[1] = (byte) blockNumber;
+        frame[2] = (byte) ~blockNumber;
+        int frameLength = HEADER_LENGTH + blockSize;
+        long crcValue = crc.calcCRC(frame, HEADER_LENGTH, blockSize);
+        for (int i = 0; i < crc.getCRCLength(); i++) {
+            frame[frameLength + crc.getCRCLength() - i - 1] = (byte) ((crcValue >> (8 * i)) & 0xFF);
         }
-        errorCount = 0;
+        frameLength += crc.getCRCLength();
 
+        errorCount = 0;
         while (errorCount < MAX_ERRORS) {
-            timer.start();
-
-            if (block.length == 1024) {
-                outputStream.write(STX);
-            } else { //128
-                outputStream.write(SOH);
+            if (errorCount > 0) {
+                listener.onRetry(blockNumber, errorCount);
             }
-            outputStream.write(blockNumber);
-            outputStream.write(~blockNumber);
 
-            outputStream.write(block);
-            writeCRC(block, crc);
+            timer.start();
+            outputStream.write(frame, 0, frameLength);
             outputStream.flush();
 
             while (true) {
@@ -179,21 +217,12 @@ class XModem {
                     break;
                 }
             }
-
         }
 
+        interruptTransmission();
         throw new IOException("Too many errors caught, abandoning transfer");
     }
 
-    private void writeCRC(byte[] block, CRC crc) throws IOException {
-        byte[] crcBytes = new byte[crc.getCRCLength()];
-        long crcValue = crc.calcCRC(block);
-        for (int i = 0; i < crc.getCRCLength(); i++) {
-            crcBytes[crc.getCRCLength() - i - 1] = (byte) ((crcValue >> (8 * i)) & 0xFF);
-        }
-        outputStream.write(crcBytes);
-    }
-
     /**
      * Receives data
      * <p>
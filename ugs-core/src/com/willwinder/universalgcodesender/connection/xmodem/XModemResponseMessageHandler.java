@@ -21,10 +21,12 @@ package com.willwinder.universalgcodesender.connection.xmodem;
 import com.willwinder.universalgcodesender.connection.Connection;
 import com.willwinder.universalgcodesender.connection.IConnectionListener;
 import com.willwinder.universalgcodesender.connection.IResponseMessageHandler;
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
 import static com.willwinder.universalgcodesender.connection.xmodem.XModemUtils.trimEOF;
@@ -48,6 +50,15 @@ public class XModemResponseMessageHandler implements IResponseMessageHandler {
                     throw new IOException(e);
                 }
             }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                try {
+                    connection.sendBytesImmediately(bytes, offset, length);
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
         });
     }
 
@@ -75,4 +86,16 @@ public class XModemResponseMessageHandler implements IResponseMessageHandler {
     public void xmodemSend(byte[] data) throws IOException {
         modem.send(new ByteArrayInputStream(data), false);
     }
+
+    /**
+     * Sends the stream using XModem-1K
+     *
+     * @param data       the stream to send
+     * @param totalBytes the number of bytes in the stream or -1 if unknown
+     * @param listener   a listener for the progress of the transfer
+     * @throws IOException if the transfer failed
+     */
+    public void xmodemSend(InputStream data, long totalBytes, FileTransferListener listener) throws IOException {
+        modem.send(data, true, totalBytes, listener);
+    }
 }
@@ -302,6 +302,15 @@ public class FluidNCController implements IController, ICommunicatorListener {
     public void setSingleStepMode(boolean enabled) {
     }
 
+    @Override
+    public void setBatchingEnabled(boolean enabled) {
+    }
+
+    @Override
+    public boolean isBatchingEnabled() {
+        return false;
+    }
+
     @Override
     public boolean getStatusUpdatesEnabled() {
         return positionPollTimer.isEnabled();
@@ -25,9 +25,13 @@ import com.willwinder.universalgcodesender.StatusPollTimer;
 import com.willwinder.universalgcodesender.firmware.fluidnc.commands.DeleteFileCommand;
 import com.willwinder.universalgcodesender.firmware.fluidnc.commands.DownloadFileCommand;
 import com.willwinder.universalgcodesender.firmware.fluidnc.commands.ListFilesCommand;
+import com.willwinder.universalgcodesender.firmware.fluidnc.commands.RunFileCommand;
 import com.willwinder.universalgcodesender.firmware.fluidnc.commands.UploadFileCommand;
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 import static com.willwinder.universalgcodesender.utils.ControllerUtils.sendAndWaitForCompletion;
@@ -60,16 +64,16 @@ public class FluidNCFileService implements IFileService {
 
     @Override
     public void uploadFile(String filename, byte[] data) throws IOException {
+        uploadFile(filename, new ByteArrayInputStream(data), data.length, FileTransferListener.NONE);
+    }
+
+    @Override
+    public void uploadFile(String filename, InputStream data, long size, FileTransferListener listener) throws IOException {
+        filename = getAbsolutePath(filename);
         try {
             statusPollTimer.stop();
-
-            // If the file name has not been specified with a filesystem (SD or localfs) prepend a default one.
-            if (!filename.startsWith("/")) {
-                filename = "/localfs/" + filename;
-            }
-
             controller.sendCommandImmediately(new UploadFileCommand(filename));
-            controller.getCommunicator().xmodemSend(data);
+            controller.getCommunicator().xmodemSend(data, size, listener);
             waitOnActiveCommands(controller);
         } catch (Exception e) {
             throw new IOException("Couldn't upload file " + filename, e);
@@ -78,6 +82,31 @@ public class FluidNCFileService implements IFileService {
         }
     }
 
+    @Override
+    public void runFile(String filename) throws IOException {
+        filename = getAbsolutePath(filename);
+        try {
+            RunFileCommand command = sendAndWaitForCompletion(controller, new RunFileCommand(filename));
+            if (command.isError()) {
+                throw new IOException("Could not run the file: " + filename);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Couldn't run file " + filename, e);
+        }
+    }
+
+    /**
+     * If the file name has not been specified with a filesystem (SD or localfs) prepend a default one.
+     */
+    private static String getAbsolutePath(String filename) {
+        if (!filename.startsWith("/")) {
+            return "/localfs/" + filename;
+        }
+        return filename;
+    }
+
     @Override
     public void deleteFile(File file) throws IOException {
         try {
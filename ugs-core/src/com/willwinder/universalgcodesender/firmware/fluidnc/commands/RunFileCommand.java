@@ -0,0 +1,42 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.firmware.fluidnc.commands;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Runs a gcode file from the storage of the controller
+ */
+public class RunFileCommand extends SystemCommand {
+    private static final String SD_PATH = "/sd/";
+    private static final String LOCALFS_PATH = "/localfs/";
+
+    public RunFileCommand(String filename) {
+        super(getCommand(filename));
+    }
+
+    private static String getCommand(String filename) {
+        if (StringUtils.startsWithIgnoreCase(filename, SD_PATH)) {
+            return "$SD/Run=" + filename.substring(SD_PATH.length());
+        } else if (StringUtils.startsWithIgnoreCase(filename, LOCALFS_PATH)) {
+            return "$LocalFS/Run=" + filename.substring(LOCALFS_PATH.length());
+        }
+        return "$LocalFS/Run=" + filename;
+    }
+}
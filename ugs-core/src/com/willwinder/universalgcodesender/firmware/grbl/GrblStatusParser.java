@@ -0,0 +1,548 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.firmware.grbl;
+
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.AccessoryStates;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.BufferState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.EnabledPins;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.OverridePercents;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+
+/**
+ * A single pass parser for GRBL status reports in both the legacy and the 1.x format:
+ * <pre>
+ * legacy: &lt;Idle,MPos:1,2,3,WPos:1,2,3&gt;
+ * 1.x:    &lt;Idle|MPos:1,2,3|Bf:15,128|FS:0,0|WCO:0,0,0&gt;
+ * </pre>
+ * The fields are read directly from the status string without splitting it and numbers
+ * are parsed without creating substrings. Overrides, pins and accessory states that are
+ * equal to the ones in the previous status are reused, and if nothing has changed the
+ * previous status itself is returned. This keeps the garbage produced by frequent status
+ * polling to a minimum. Positions are mutable and are therefore never shared between two
+ * different statuses.
+ *
+ * @author wwinder
+ */
+public final class GrblStatusParser {
+    private static final int MAX_AXES = 6;
+    private static final int MAX_FAST_PATH_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    private static final String[] STATE_NAMES = {
+            "Jog", "Run", "Hold", "Door", "Home", "Idle", "Alarm", "Check", "Sleep", "Tool"
+    };
+    private static final ControllerState[] STATES = {
+            ControllerState.JOG, ControllerState.RUN, ControllerState.HOLD, ControllerState.DOOR, ControllerState.HOME,
+            ControllerState.IDLE, ControllerState.ALARM, ControllerState.CHECK, ControllerState.SLEEP, ControllerState.TOOL
+    };
+
+    private static final String PIN_FLAGS = "XYZABCPDHRS";
+    private static final String ACCESSORY_FLAGS = "SCFM";
+
+    private final String status;
+    private final double[] axes = new double[MAX_AXES];
+
+    // The end offset of the last parsed number
+    private int numberEnd;
+
+    private GrblStatusParser(String status) {
+        this.status = status;
+    }
+
+    /**
+     * Parses a GRBL status string in the v1.x format.
+     *
+     * @param lastStatus     the previous status used for values which are not reported in every
+     *                       status string, like the work coordinate offset and overrides. May be null.
+     * @param status         the raw status string
+     * @param reportingUnits units
+     * @return the parsed controller status, or the last status if nothing has changed
+     */
+    public static ControllerStatus parseV1(ControllerStatus lastStatus, String status, Units reportingUnits) {
+        return new GrblStatusParser(status).parseV1(lastStatus, reportingUnits);
+    }
+
+    /**
+     * Parses a GRBL status string in the legacy format.
+     *
+     * @param status         the raw status string
+     * @param reportingUnits units
+     * @return the parsed controller status
+     */
+    public static ControllerStatus parseLegacy(String status, Units reportingUnits) {
+        return new GrblStatusParser(status).parseLegacy(reportingUnits);
+    }
+
+    /**
+     * Finds and parses a position following the given prefix, for instance "MPos:".
+     *
+     * @param status         the raw status string
+     * @param prefix         the prefix of the position
+     * @param reportingUnits units
+     * @return the position or null if the status string didn't contain a position with the prefix
+     */
+    public static Position parsePosition(String status, String prefix, Units reportingUnits) {
+        int start = status.indexOf(prefix);
+        if (start < 0) {
+            return null;
+        }
+
+        GrblStatusParser parser = new GrblStatusParser(status);
+        int axisCount = parser.parseAxes(start + prefix.length(), status.length());
+        return axisCount == 0 ? null : parser.toPosition(reportingUnits);
+    }
+
+    private ControllerStatus parseV1(ControllerStatus lastStatus, Units reportingUnits) {
+        ControllerState state = ControllerState.UNKNOWN;
+        String subState = "";
+
+        Position machineCoord = null;
+        Position workCoord = null;
+        Position workCoordinateOffset = null;
+        OverridePercents overrides = null;
+        EnabledPins pins = EnabledPins.EMPTY_PINS;
+        AccessoryStates accessoryStates = null;
+        BufferState bufferState = null;
+
+        double feedSpeed = 0;
+        double spindleSpeed = 0;
+        if (lastStatus != null) {
+            feedSpeed = lastStatus.getFeedSpeed();
+            spindleSpeed = lastStatus.getSpindleSpeed();
+        }
+        boolean isOverrideReport = false;
+
+        // The last character is expected to be the closing '>'
+        int end = Math.max(status.length() - 1, 0);
+        int fieldStart = 0;
+        while (fieldStart < end) {
+            int fieldEnd = status.indexOf('|', fieldStart);
+            if (fieldEnd < 0 || fieldEnd > end) {
+                fieldEnd = end;
+            }
+
+            if (status.charAt(fieldStart) == '<') {
+                int separator = indexOf(':', fieldStart, fieldEnd);
+                int stateEnd = separator < 0 ? fieldEnd : separator;
+                state = lookupState(fieldStart + 1, stateEnd);
+                if (separator >= 0) {
+                    subState = parseSubState(lastStatus, separator + 1, fieldEnd);
+                }
+            } else if (status.startsWith("MPos:", fieldStart)) {
+                if (parseAxes(fieldStart + 5, fieldEnd) > 0) {
+                    machineCoord = toPosition(reportingUnits);
+                }
+            } else if (status.startsWith("WPos:", fieldStart)) {
+                if (parseAxes(fieldStart + 5, fieldEnd) > 0) {
+                    workCoord = toPosition(reportingUnits);
+                }
+            } else if (status.startsWith("WCO:", fieldStart)) {
+                if (parseAxes(fieldStart + 4, fieldEnd) > 0) {
+                    workCoordinateOffset = toPosition(reportingUnits);
+                }
+            } else if (status.startsWith("Ov:", fieldStart)) {
+                isOverrideReport = true;
+                overrides = parseOverrides(lastStatus == null ? null : lastStatus.getOverrides(), fieldStart + 3, fieldEnd);
+            } else if (status.startsWith("F:", fieldStart)) {
+                feedSpeed = parseFeedSpeed(fieldStart + 2, fieldEnd);
+            } else if (status.startsWith("FS:", fieldStart)) {
+                feedSpeed = parseNumber(fieldStart + 3, valueEnd(fieldStart + 3, fieldEnd));
+                if (numberEnd < fieldEnd) {
+                    spindleSpeed = parseNumber(numberEnd + 1, valueEnd(numberEnd + 1, fieldEnd));
+                }
+            } else if (status.startsWith("Pn:", fieldStart)) {
+                EnabledPins lastPins = lastStatus == null ? null : lastStatus.getEnabledPins();
+                if (lastPins != null && flags(PIN_FLAGS, fieldStart + 3, fieldEnd) == flags(lastPins)) {
+                    pins = lastPins;
+                } else {
+                    pins = new EnabledPins(status.substring(fieldStart + 3, fieldEnd));
+                }
+            } else if (status.startsWith("A:", fieldStart)) {
+                AccessoryStates lastStates = lastStatus == null ? null : lastStatus.getAccessoryStates();
+                if (lastStates != null && flags(ACCESSORY_FLAGS, fieldStart + 2, fieldEnd) == flags(lastStates)) {
+                    accessoryStates = lastStates;
+                } else {
+                    accessoryStates = new AccessoryStates(status.substring(fieldStart + 2, fieldEnd));
+                }
+            } else if (status.startsWith("Bf:", fieldStart)) {
+                bufferState = parseBufferState(lastStatus == null ? null : lastStatus.getBufferState(), fieldStart + 3, fieldEnd);
+            }
+
+            fieldStart = fieldEnd + 1;
+        }
+
+        // Grab WCO from state information if necessary.
+        if (workCoordinateOffset == null) {
+            if (lastStatus != null && lastStatus.getWorkCoordinateOffset() != null) {
+                workCoordinateOffset = new Position(lastStatus.getWorkCoordinateOffset());
+            } else {
+                workCoordinateOffset = new Position(0, 0, 0, 0, 0, 0, reportingUnits);
+            }
+        }
+
+        // Calculate missing coordinate with WCO
+        Position wco = workCoordinateOffset;
+        if (workCoord == null && machineCoord != null) {
+            setAxes(machineCoord.x - wco.x, machineCoord.y - wco.y, machineCoord.z - wco.z, machineCoord.a - wco.a, machineCoord.b - wco.b, machineCoord.c - wco.c);
+            workCoord = toPosition(reportingUnits);
+        } else if (machineCoord == null && workCoord != null) {
+            setAxes(workCoord.x + wco.x, workCoord.y + wco.y, workCoord.z + wco.z, workCoord.a + wco.a, workCoord.b + wco.b, workCoord.c + wco.c);
+            machineCoord = toPosition(reportingUnits);
+        }
+
+        if (!isOverrideReport && lastStatus != null) {
+            overrides = lastStatus.getOverrides();
+        }
+
+        if (accessoryStates == null && !isOverrideReport && lastStatus != null) {
+            accessoryStates = lastStatus.getAccessoryStates();
+        } else if (accessoryStates == null) {
+            accessoryStates = AccessoryStates.EMPTY_ACCESSORY_STATE;
+        }
+
+        if (lastStatus != null &&
+                lastStatus.getState() == state &&
+                lastStatus.getSubState() == subState &&
+                isSamePosition(lastStatus.getMachineCoord(), machineCoord) &&
+                isSamePosition(lastStatus.getWorkCoord(), workCoord) &&
+                isSamePosition(lastStatus.getWorkCoordinateOffset(), workCoordinateOffset) &&
+                lastStatus.getOverrides() == overrides &&
+                lastStatus.getEnabledPins() == pins &&
+                lastStatus.getAccessoryStates() == accessoryStates &&
+                lastStatus.getBufferState() == bufferState &&
+                lastStatus.getFeedSpeedUnits() == reportingUnits &&
+                lastStatus.getFeedSpeed() != null && lastStatus.getFeedSpeed() == feedSpeed &&
+                lastStatus.getSpindleSpeed() != null && lastStatus.getSpindleSpeed() == spindleSpeed) {
+            return lastStatus;
+        }
+
+        return new ControllerStatus(state, subState, machineCoord, workCoord, feedSpeed, reportingUnits, spindleSpeed, overrides, workCoordinateOffset, pins, accessoryStates, bufferState);
+    }
+
+    private ControllerStatus parseLegacy(Units reportingUnits) {
+        ControllerState state = ControllerState.UNKNOWN;
+        if (status.startsWith("<")) {
+            int stateEnd = 1;
+            while (stateEnd < status.length() && isStateCharacter(status.charAt(stateEnd))) {
+                stateEnd++;
+            }
+
+            if (stateEnd < status.length() && (status.charAt(stateEnd) == ',' || status.charAt(stateEnd) == '>')) {
+                state = lookupState(1, stateEnd);
+            }
+        }
+
+        return new ControllerStatus(
+                state,
+                parsePosition(status, "MPos:", reportingUnits),
+                parsePosition(status, "WPos:", reportingUnits));
+    }
+
+    /**
+     * Parses three to six comma separated numbers into the axes buffer. Any axes that
+     * wasn't given is set to NaN.
+     *
+     * @return the number of parsed axes, or zero if there were less than three numbers
+     */
+    private int parseAxes(int start, int end) {
+        int axisCount = 0;
+        int index = start;
+        while (axisCount < MAX_AXES) {
+            int valueEnd = scanNumber(index, end);
+
+            // The optional axes needs to end with a digit
+            if (axisCount >= 3 && (valueEnd == index || !isDigit(status.charAt(valueEnd - 1)))) {
+                break;
+            }
+
+            axes[axisCount++] = parseNumber(index, valueEnd);
+            if (valueEnd >= end || status.charAt(valueEnd) != ',') {
+                break;
+            }
+            index = valueEnd + 1;
+        }
+
+        if (axisCount < 3) {
+            return 0;
+        }
+
+        for (int i = axisCount; i < MAX_AXES; i++) {
+            axes[i] = Double.NaN;
+        }
+        return axisCount;
+    }
+
+    private void setAxes(double x, double y, double z, double a, double b, double c) {
+        axes[0] = x;
+        axes[1] = y;
+        axes[2] = z;
+        axes[3] = a;
+        axes[4] = b;
+        axes[5] = c;
+    }
+
+    /**
+     * Creates a new position from the axes buffer.
+     */
+    private Position toPosition(Units units) {
+        return new Position(axes[0], axes[1], axes[2], axes[3], axes[4], axes[5], units);
+    }
+
+    /**
+     * Checks if the positions have exactly the same values and units.
+     */
+    private static boolean isSamePosition(Position previous, Position position) {
+        if (previous == null || position == null) {
+            return previous == position;
+        }
+
+        return previous.getUnits() == position.getUnits() &&
+                Double.compare(previous.x, position.x) == 0 &&
+                Double.compare(previous.y, position.y) == 0 &&
+                Double.compare(previous.z, position.z) == 0 &&
+                Double.compare(previous.a, position.a) == 0 &&
+                Double.compare(previous.b, position.b) == 0 &&
+                Double.compare(previous.c, position.c) == 0;
+    }
+
+    private OverridePercents parseOverrides(OverridePercents previous, int start, int end) {
+        start = skipWhitespace(start, end);
+        end = trimWhitespace(start, end);
+
+        int feedEnd = indexOf(',', start, end);
+        int rapidEnd = feedEnd < 0 ? -1 : indexOf(',', feedEnd + 1, end);
+        if (rapidEnd < 0 || rapidEnd + 1 == end || indexOf(',', rapidEnd + 1, end) >= 0) {
+            return null;
+        }
+
+        int feed = parseInt(start, feedEnd);
+        int rapid = parseInt(feedEnd + 1, rapidEnd);
+        int spindle = parseInt(rapidEnd + 1, end);
+        if (previous != null && previous.feed == feed && previous.rapid == rapid && previous.spindle == spindle) {
+            return previous;
+        }
+        return new OverridePercents(feed, rapid, spindle);
+    }
+
+    private BufferState parseBufferState(BufferState previous, int start, int end) {
+        int separator = indexOf(',', start, end);
+        if (separator < 0) {
+            return null;
+        }
+
+        int plannerBlocksAvailable = parseInt(start, separator);
+        int rxBytesAvailable = parseInt(separator + 1, end);
+        if (previous != null && previous.plannerBlocksAvailable == plannerBlocksAvailable && previous.rxBytesAvailable == rxBytesAvailable) {
+            return previous;
+        }
+        return new BufferState(plannerBlocksAvailable, rxBytesAvailable);
+    }
+
+    /**
+     * Parses the feed speed the same way as {@link com.willwinder.universalgcodesender.GrblUtils#parseFeedSpeed(String)}.
+     * The supported formats are F:1000.0 or F:3000.0,100.0,100.0 which are current feed rate, requested
+     * feed rate and override feed rate.
+     */
+    private double parseFeedSpeed(int start, int end) {
+        int valueCount = 0;
+        int index = start;
+        while (index < end) {
+            int valueEnd = valueEnd(index, end);
+            if (valueEnd > index) {
+                valueCount++;
+            }
+            index = valueEnd + 1;
+        }
+
+        if (valueCount == 2) {
+            return 0;
+        }
+
+        while (start < end && status.charAt(start) == ',') {
+            start++;
+        }
+        return parseNumber(start, valueEnd(start, end));
+    }
+
+    private String parseSubState(ControllerStatus lastStatus, int start, int end) {
+        String lastSubState = lastStatus == null ? null : lastStatus.getSubState();
+        if (lastSubState != null && lastSubState.length() == end - start && status.startsWith(lastSubState, start)) {
+            return lastSubState;
+        }
+        return status.substring(start, end);
+    }
+
+    private ControllerState lookupState(int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < STATE_NAMES.length; i++) {
+            String name = STATE_NAMES[i];
+            if (name.length() == length && status.regionMatches(true, start, name, 0, length)) {
+                return STATES[i];
+            }
+        }
+        return ControllerState.UNKNOWN;
+    }
+
+    /**
+     * Creates a bit mask of which of the given flag characters that are present in the region, case-insensitive.
+     */
+    private int flags(String flagCharacters, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            int flag = flagCharacters.indexOf(Character.toUpperCase(status.charAt(i)));
+            if (flag >= 0) {
+                result |= 1 << flag;
+            }
+        }
+        return result;
+    }
+
+    private static int flags(EnabledPins pins) {
+        return flag(pins.X, 0) | flag(pins.Y, 1) | flag(pins.Z, 2) | flag(pins.A, 3) | flag(pins.B, 4) | flag(pins.C, 5) |
+                flag(pins.Probe, 6) | flag(pins.Door, 7) | flag(pins.Hold, 8) | flag(pins.SoftReset, 9) | flag(pins.CycleStart, 10);
+    }
+
+    private static int flags(AccessoryStates states) {
+        return flag(states.SpindleCW, 0) | flag(states.SpindleCCW, 1) | flag(states.Flood, 2) | flag(states.Mist, 3);
+    }
+
+    private static int flag(boolean value, int bit) {
+        return value ? 1 << bit : 0;
+    }
+
+    /**
+     * Returns the end of a number in the format "-?\d*\.?\d*" starting at the given offset.
+     */
+    private int scanNumber(int start, int end) {
+        int index = start;
+        if (index < end && status.charAt(index) == '-') {
+            index++;
+        }
+        while (index < end && isDigit(status.charAt(index))) {
+            index++;
+        }
+        if (index < end && status.charAt(index) == '.') {
+            index++;
+        }
+        while (index < end && isDigit(status.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the offset of the next comma or the end.
+     */
+    private int valueEnd(int start, int end) {
+        int separator = indexOf(',', start, end);
+        return separator < 0 ? end : separator;
+    }
+
+    /**
+     * Parses a number with the same result as {@link Double#parseDouble(String)}. Plain decimal numbers with
+     * few digits are parsed without allocating, in those cases both the digits and the power of ten are exactly
+     * representable as doubles which makes the division correctly rounded.
+     */
+    private double parseNumber(int start, int end) {
+        numberEnd = end;
+
+        boolean negative = start < end && status.charAt(start) == '-';
+        long digits = 0;
+        int digitCount = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            char c = status.charAt(i);
+            if (isDigit(c)) {
+                digits = digits * 10 + (c - '0');
+                digitCount++;
+                if (fraction) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                digitCount = Integer.MAX_VALUE;
+                break;
+            }
+        }
+
+        if (digitCount == 0 || digitCount > MAX_FAST_PATH_DIGITS) {
+            return Double.parseDouble(status.substring(start, end));
+        }
+
+        double value = digits / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private int parseInt(int start, int end) {
+        boolean negative = start < end && status.charAt(start) == '-';
+        int first = negative ? start + 1 : start;
+        if (first == end || end - first > 9) {
+            return Integer.parseInt(status.substring(start, end));
+        }
+
+        int value = 0;
+        for (int i = first; i < end; i++) {
+            char c = status.charAt(i);
+            if (!isDigit(c)) {
+                return Integer.parseInt(status.substring(start, end));
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (status.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipWhitespace(int start, int end) {
+        while (start < end && Character.isWhitespace(status.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimWhitespace(int start, int end) {
+        while (end > start && Character.isWhitespace(status.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isStateCharacter(char c) {
+        // Mirrors the previously used regex character class [a-zA-z]
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'z');
+    }
+}
@@ -174,6 +174,16 @@ public class GcodeParser implements IGcodeParser {
         return statsProcessor;
     }
 
+    /**
+     * Returns if all command processors are stateless, which makes it safe to call
+     * {@link #preprocessCommand(String, GcodeState)} for different commands in parallel.
+     *
+     * @return true if preprocessing can be done in parallel
+     */
+    public boolean isPreprocessingStateless() {
+        return processors.isStateless();
+    }
+
     /**
      * Applies all command processors to a given command and returns the resulting GCode. Does not change the parser state.
      *
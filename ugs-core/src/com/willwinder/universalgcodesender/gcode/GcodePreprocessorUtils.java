@@ -21,6 +21,7 @@ package com.willwinder.universalgcodesender.gcode;
 import com.google.common.base.Preconditions;
 import com.willwinder.universalgcodesender.gcode.util.Code;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeWordTokenizer;
 import com.willwinder.universalgcodesender.gcode.util.PlaneFormatter;
 import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.model.Axis;
@@ -29,6 +30,8 @@ import com.willwinder.universalgcodesender.model.PartialPosition;
 import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UnitUtils;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.regex.Matcher;
@@ -48,7 +51,11 @@ public class GcodePreprocessorUtils {
     public static final Pattern COMMENT = Pattern.compile("\\(.*\\)|\\s*;.*|%.*$");
     private static final String EMPTY = "";
     private static final Pattern COMMENTPARSE = Pattern.compile("(?<=\\()[^()]*|(?<=;).*|%");
-    private static final DecimalFormat DEFAULT_FORMATTER = new DecimalFormat("0.####", Localization.dfs);
+    private static final String DEFAULT_FORMAT_PATTERN = "0.####";
+
+    // DecimalFormat is not thread safe, keep one formatter per thread so that commands can be processed in parallel
+    private static final ThreadLocal<DecimalFormat> DEFAULT_FORMATTER = ThreadLocal.withInitial(() -> new DecimalFormat(DEFAULT_FORMAT_PATTERN, Localization.dfs));
+    private static final ThreadLocal<DecimalTruncator> DECIMAL_TRUNCATOR = new ThreadLocal<>();
 
     private static final EnumMap<Axis, Pattern> POSITION_OVERRIDE_MAP = new EnumMap<>(Axis.class);
     static {
@@ -60,9 +67,7 @@ public class GcodePreprocessorUtils {
         POSITION_OVERRIDE_MAP.put(Axis.C, Pattern.compile("C([-+]?[0-9.]+)", Pattern.CASE_INSENSITIVE));
     }
 
-    private static int decimalLength = -1;
-    private static Pattern decimalPattern;
-    private static DecimalFormat decimalFormatter = DEFAULT_FORMATTER;
+    private static volatile int decimalLength = -1;
 
     /**
      * Searches the command string for moves (x, y, z, a, b, or c) and replaces
@@ -75,7 +80,7 @@ public class GcodePreprocessorUtils {
             Axis axis = axisToPattern.getKey();
             if (updated.hasAxis(axis)) {
                 Matcher matcher = axisToPattern.getValue().matcher(command);
-                String updatedStr = axis + DEFAULT_FORMATTER.format(updated.getAxis(axis));
+                String updatedStr = axis + DEFAULT_FORMATTER.get().format(updated.getAxis(axis));
                 if (matcher.find()) {
                     command = matcher.replaceAll(updatedStr);
                 } else {
@@ -135,19 +140,21 @@ public class GcodePreprocessorUtils {
     }
     
     static public String truncateDecimals(int length, String command) {
-        if (length != decimalLength) {
+        DecimalTruncator truncator = DECIMAL_TRUNCATOR.get();
+        if (truncator == null || truncator.length != length) {
             //Only build the decimal formatter if the truncation length has changed.
-            updateDecimalFormatter(length);
-
+            truncator = new DecimalTruncator(length);
+            DECIMAL_TRUNCATOR.set(truncator);
         }
-        Matcher matcher = decimalPattern.matcher(command);
+        decimalLength = length;
+        Matcher matcher = truncator.pattern.matcher(command);
 
         // Build up the truncated command.
         double d;
         StringBuffer sb = new StringBuffer();
         while (matcher.find()) {
             d = Double.parseDouble(matcher.group());
-            matcher.appendReplacement(sb, decimalFormatter.format(d));
+            matcher.appendReplacement(sb, truncator.formatter.format(d));
         }
         matcher.appendTail(sb);
         
@@ -155,11 +162,19 @@ public class GcodePreprocessorUtils {
         return sb.toString();
     }
 
+    /**
+     * Returns a new decimal formatter using the most recently used truncation length
+     * or the default format if {@link #truncateDecimals(int, String)} hasn't been used.
+     */
     public static DecimalFormat getDecimalFormatter() {
-        return decimalFormatter;
+        int length = decimalLength;
+        if (length < 0) {
+            return new DecimalFormat(DEFAULT_FORMAT_PATTERN, Localization.dfs);
+        }
+        return createDecimalFormatter(length);
     }
 
-    private static void updateDecimalFormatter(int length) {
+    private static DecimalFormat createDecimalFormatter(int length) {
         StringBuilder df = new StringBuilder();
 
         // Build up the decimal formatter.
@@ -172,17 +187,30 @@ public class GcodePreprocessorUtils {
             df.append('#');
         }
 
-        decimalFormatter = new DecimalFormat(df.toString(), Localization.dfs);
+        return new DecimalFormat(df.toString(), Localization.dfs);
+    }
 
-        // Build up the regular expression.
-        df = new StringBuilder();
-        df.append("\\d+\\.\\d");
-        for (int i = 0; i < length; i++) {
-            df.append("\\d");
+    /**
+     * The formatter and pattern used for truncating decimals to a given length.
+     */
+    private static class DecimalTruncator {
+        private final int length;
+        private final DecimalFormat formatter;
+        private final Pattern pattern;
+
+        private DecimalTruncator(int length) {
+            this.length = length;
+            this.formatter = createDecimalFormatter(length);
+
+            // Build up the regular expression.
+            StringBuilder df = new StringBuilder();
+            df.append("\\d+\\.\\d");
+            for (int i = 0; i < length; i++) {
+                df.append("\\d");
+            }
+            df.append('+');
+            this.pattern = Pattern.compile(df.toString());
         }
-        df.append('+');
-        decimalPattern = Pattern.compile(df.toString());
-        decimalLength = length;
     }
 
     static public List<String> parseCodes(List<String> args, char code) {
@@ -218,6 +246,26 @@ public class GcodePreprocessorUtils {
         return updatePointWithCommand(initial, x, y, z, a, b, c, absoluteMode);
     }
 
+    /**
+     * Update a point given the arguments of a command, using a tokenized command.
+     */
+    static public Position updatePointWithCommand(GcodeWordTokenizer words, Position initial, boolean absoluteMode) {
+
+        double x = words.getCoord('X');
+        double y = words.getCoord('Y');
+        double z = words.getCoord('Z');
+        double a = words.getCoord('A');
+        double b = words.getCoord('B');
+        double c = words.getCoord('C');
+
+        if (Double.isNaN(x) && Double.isNaN(y) && Double.isNaN(z) &&
+            Double.isNaN(a) && Double.isNaN(b) && Double.isNaN(c)) {
+            return null;
+        }
+
+        return updatePointWithCommand(initial, x, y, z, a, b, c, absoluteMode);
+    }
+
     /**
      * Update a point given the new coordinates.
      */
@@ -290,6 +338,27 @@ public class GcodePreprocessorUtils {
 
     }
 
+    static public Position updateCenterWithCommand(
+            GcodeWordTokenizer words,
+            Position initial,
+            Position nextPoint,
+            boolean absoluteIJKMode,
+            boolean clockwise,
+            PlaneFormatter plane) {
+        double i      = words.getCoord('I');
+        double j      = words.getCoord('J');
+        double k      = words.getCoord('K');
+        double radius = words.getCoord('R');
+
+        if (Double.isNaN(i) && Double.isNaN(j) && Double.isNaN(k)) {
+            return GcodePreprocessorUtils.convertRToCenter(
+                            initial, nextPoint, radius, absoluteIJKMode,
+                            clockwise, plane);
+        }
+
+        return updatePointWithCommand(initial, i, j, k, 0, 0, 0, absoluteIJKMode);
+    }
+
     static public String generateLineFromPoints(final Code command, final CNCPoint start, final CNCPoint end, final boolean absoluteMode) {
         return generateLineFromPoints(command, start, end, absoluteMode, null);
     }
@@ -297,7 +366,7 @@ public class GcodePreprocessorUtils {
     static public String generateLineFromPoints(final Code command, final CNCPoint start, final CNCPoint end, final boolean absoluteMode, DecimalFormat formatter) {
         DecimalFormat df = formatter;
         if (df == null) {
-            df = DEFAULT_FORMATTER;
+            df = DEFAULT_FORMATTER.get();
         }
         
         StringBuilder sb = new StringBuilder();
@@ -334,6 +403,37 @@ public class GcodePreprocessorUtils {
         return sb.toString();
     }
     
+    /**
+     * Rounds a value to the number of decimals it would be formatted with by the given formatter, so that
+     * the result is the same value as parsing the formatted number. This is used for creating the parsed state
+     * of a generated command without formatting it.
+     *
+     * @param value     the value to round
+     * @param formatter the formatter used for the value or null for the formatter used by
+     *                  {@link #generateLineFromPoints(Code, CNCPoint, CNCPoint, boolean, DecimalFormat)}
+     * @return the rounded value
+     */
+    public static double roundToFormat(double value, DecimalFormat formatter) {
+        DecimalFormat df = formatter == null ? DEFAULT_FORMATTER.get() : formatter;
+        int decimals = df.getMaximumFractionDigits();
+        if (Double.isNaN(value) || Double.isInfinite(value) || decimals > 15) {
+            return value;
+        }
+
+        double scale = Math.pow(10, decimals);
+        double scaled = value * scale;
+        if (Math.abs(scaled) > 1e15) {
+            return value;
+        }
+
+        // The scaled value may itself be rounded, use the exact value of the double when close to a tie
+        double fraction = Math.abs(scaled - Math.floor(scaled) - 0.5);
+        if (fraction < 1e-6) {
+            return new BigDecimal(value).setScale(decimals, RoundingMode.HALF_EVEN).doubleValue();
+        }
+        return Math.rint(scaled) / scale;
+    }
+
     /**
      * Splits a gcode command by each word/argument, doesn't care about spaces.
      * This command is about the same speed as the string.split(" ") command,
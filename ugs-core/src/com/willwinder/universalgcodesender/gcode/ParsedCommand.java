@@ -0,0 +1,216 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.model.Position;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * A gcode command passed between the processors in a
+ * {@link com.willwinder.universalgcodesender.gcode.processors.CommandProcessorList}.
+ * <p>
+ * The command is parsed at most once for a given state and the result is kept, so several processors
+ * inspecting the same command don't need to parse it again. Commands created by a processor can be given
+ * their parsed meta data up front and generate their text lazily, which means that a command that is
+ * transformed by several processors is only formatted once when the resulting text is needed.
+ * <p>
+ * An instance is not thread safe.
+ *
+ * @author wwinder
+ */
+public class ParsedCommand {
+    private final Supplier<String> serializer;
+    private String command;
+
+    // The state the command was parsed with and the result of it
+    private GcodeState parsedState;
+    private List<GcodeMeta> metas;
+
+    private ParsedCommand(String command, Supplier<String> serializer) {
+        this.command = command;
+        this.serializer = serializer;
+    }
+
+    /**
+     * Creates a command from its text, it will be parsed when needed.
+     *
+     * @param command the gcode command
+     * @return a new parsed command
+     */
+    public static ParsedCommand of(String command) {
+        return new ParsedCommand(Objects.requireNonNull(command), null);
+    }
+
+    /**
+     * Creates a command which text is generated when first needed.
+     *
+     * @param serializer a function generating the text of the command
+     * @return a new parsed command
+     */
+    public static ParsedCommand generated(Supplier<String> serializer) {
+        return new ParsedCommand(null, Objects.requireNonNull(serializer));
+    }
+
+    /**
+     * Creates a command which text is generated when first needed, with the meta data it would have
+     * if it was parsed with the given state. This allows the command to be passed on to other processors
+     * without formatting and parsing it again.
+     *
+     * @param serializer a function generating the text of the command
+     * @param metas      the meta data of the command, the same as returned by {@link #getMetas(GcodeState)}
+     * @param state      the state the meta data was created with
+     * @return a new parsed command
+     */
+    public static ParsedCommand generated(Supplier<String> serializer, List<GcodeMeta> metas, GcodeState state) {
+        ParsedCommand result = generated(serializer);
+        result.parsedState = Objects.requireNonNull(state);
+        result.metas = metas;
+        return result;
+    }
+
+    /**
+     * Converts a list of commands to their text.
+     *
+     * @param commands a list of commands
+     * @return a list with the text of each command
+     */
+    public static List<String> toCommands(List<ParsedCommand> commands) {
+        if (commands.size() == 1) {
+            return Collections.singletonList(commands.get(0).getCommand());
+        }
+
+        List<String> result = new ArrayList<>(commands.size());
+        for (ParsedCommand command : commands) {
+            result.add(command.getCommand());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the text of the command, generating it if needed.
+     *
+     * @return the gcode command
+     */
+    public String getCommand() {
+        if (command == null) {
+            command = serializer.get();
+        }
+        return command;
+    }
+
+    /**
+     * Returns the parsed meta data of the command, the same as
+     * {@link GcodeParserUtils#processCommand(String, int, GcodeState)} with the
+     * command number of the state as line number. The result is cached for the
+     * most recently used state.
+     *
+     * @param state the state when the command will run, must not be modified afterwards
+     * @return the meta data of the command or null if the command was empty
+     * @throws GcodeParserException if the command couldn't be parsed
+     */
+    public List<GcodeMeta> getMetas(GcodeState state) throws GcodeParserException {
+        if (parsedState == null || !isSameState(parsedState, state)) {
+            metas = GcodeParserUtils.processCommand(getCommand(), state.commandNumber, state);
+            parsedState = state;
+        }
+        return metas;
+    }
+
+    /**
+     * Returns the state after running the command.
+     *
+     * @param state the state when the command will run, must not be modified afterwards
+     * @return the state after the command, or the given state if the command didn't change it
+     * @throws GcodeParserException if the command couldn't be parsed
+     */
+    public GcodeState getResultState(GcodeState state) throws GcodeParserException {
+        GcodeState result = state;
+        List<GcodeMeta> commandMetas = getMetas(state);
+        if (commandMetas != null) {
+            for (GcodeMeta meta : commandMetas) {
+                if (meta.state != null) {
+                    result = meta.state;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the command has been parsed or was given its meta data for the given state.
+     *
+     * @param state a gcode state
+     * @return true if {@link #getMetas(GcodeState)} won't need to parse the command
+     */
+    public boolean isParsed(GcodeState state) {
+        return parsedState != null && isSameState(parsedState, state);
+    }
+
+    @Override
+    public String toString() {
+        return getCommand();
+    }
+
+    private static boolean isSameState(GcodeState a, GcodeState b) {
+        if (a == b) {
+            return true;
+        }
+
+        return a.currentMotionMode == b.currentMotionMode &&
+                a.plane == b.plane &&
+                a.inAbsoluteMode == b.inAbsoluteMode &&
+                a.distanceMode == b.distanceMode &&
+                a.inAbsoluteIJKMode == b.inAbsoluteIJKMode &&
+                a.arcDistanceMode == b.arcDistanceMode &&
+                a.feedMode == b.feedMode &&
+                Double.compare(a.feedRate, b.feedRate) == 0 &&
+                a.isMetric == b.isMetric &&
+                a.units == b.units &&
+                a.offset == b.offset &&
+                a.spindle == b.spindle &&
+                a.coolant == b.coolant &&
+                Double.compare(a.spindleSpeed, b.spindleSpeed) == 0 &&
+                a.commandNumber == b.commandNumber &&
+                isSamePosition(a.currentPoint, b.currentPoint);
+    }
+
+    private static boolean isSamePosition(Position a, Position b) {
+        if (a == b) {
+            return true;
+        } else if (a == null || b == null) {
+            return false;
+        }
+
+        return a.getUnits() == b.getUnits() &&
+                Double.compare(a.x, b.x) == 0 &&
+                Double.compare(a.y, b.y) == 0 &&
+                Double.compare(a.z, b.z) == 0 &&
+                Double.compare(a.a, b.a) == 0 &&
+                Double.compare(a.b, b.b) == 0 &&
+                Double.compare(a.c, b.c) == 0;
+    }
+}
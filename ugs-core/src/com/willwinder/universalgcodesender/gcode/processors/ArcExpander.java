@@ -23,6 +23,7 @@ import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.SplitCommand;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
 import com.willwinder.universalgcodesender.gcode.util.Code;
 import static com.willwinder.universalgcodesender.gcode.util.Code.G1;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
@@ -43,16 +44,22 @@ import java.util.List;
  *
  * @author wwinder
  */
-public class ArcExpander implements CommandProcessor {
+public class ArcExpander implements ParsedCommandProcessor {
     final private boolean convertToLines;
     final private double length;
-    final private DecimalFormat df;
+    // DecimalFormat is not thread safe, keep one instance per thread
+    final private ThreadLocal<DecimalFormat> df;
 
     @Override
     public String getHelp() {
         return Localization.getString("sender.help.arcs") + "\n"
                 + Localization.getString("sender.arcs.length")
-                + ": " + df.format(length);
+                + ": " + df.get().format(length);
+    }
+
+    @Override
+    public boolean isStateless() {
+        return true;
     }
 
     /**
@@ -64,7 +71,7 @@ public class ArcExpander implements CommandProcessor {
         this.length = length;
 
         // Setup decimal formatter
-        df = new DecimalFormat("#.#########", Localization.dfs);
+        df = ThreadLocal.withInitial(() -> new DecimalFormat("#.#########", Localization.dfs));
     }
 
     /**
@@ -74,16 +81,14 @@ public class ArcExpander implements CommandProcessor {
     public ArcExpander(boolean convertToLines, double length, DecimalFormat df) {
         this.convertToLines = convertToLines;
         this.length = length;
-        this.df = df;
+        this.df = ThreadLocal.withInitial(() -> (DecimalFormat) df.clone());
     }
 
     @Override
-    public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
+    public List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) throws GcodeParserException {
         if (state.currentPoint == null) throw new GcodeParserException(Localization.getString("parser.processor.arc.start-error"));
 
-        List<String> results = new ArrayList<>();
-
-        List<GcodeMeta> commands = GcodeParserUtils.processCommand(command, 0, state, true);
+        List<GcodeMeta> commands = command.getMetas(state);
 
         // If this is not an arc, there is nothing to do.
         Code c = hasArcCommand(commands);
@@ -91,9 +96,14 @@ public class ArcExpander implements CommandProcessor {
             return Collections.singletonList(command);
         }
 
-        SplitCommand sc = GcodePreprocessorUtils.extractMotion(c, command);
+        List<ParsedCommand> results = new ArrayList<>();
+        GcodeState segmentState = state;
+
+        SplitCommand sc = GcodePreprocessorUtils.extractMotion(c, command.getCommand());
         if (sc.remainder.length() > 0) {
-            results.add(sc.remainder);
+            ParsedCommand remainder = ParsedCommand.of(sc.remainder);
+            segmentState = remainder.getResultState(state);
+            results.add(remainder);
         }
 
         GcodeMeta arcMeta = Iterables.getLast(commands);
@@ -110,8 +120,15 @@ public class ArcExpander implements CommandProcessor {
         points.remove(0);
 
         if (convertToLines) {
+            // The lines are given their parsed meta data directly, the text is only generated if needed
+            boolean absoluteMode = state.inAbsoluteMode;
             for (Position point : points) {
-                results.add(GcodePreprocessorUtils.generateLineFromPoints(G1, start, point, state.inAbsoluteMode, df));
+                final Position segmentStart = start;
+                GcodeMeta meta = GcodeParserUtils.createLinearMotion(G1, segmentStart, point, absoluteMode, df.get(), segmentState);
+                results.add(ParsedCommand.generated(
+                        () -> GcodePreprocessorUtils.generateLineFromPoints(G1, segmentStart, point, absoluteMode, df.get()),
+                        Collections.singletonList(meta), segmentState));
+                segmentState = meta.state;
                 start = point;
             }
         } else {
@@ -44,6 +44,11 @@ public class CommandLengthProcessor implements CommandProcessor {
                 + ": " + length;
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     @Override
     public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
         if (command.length() > length)
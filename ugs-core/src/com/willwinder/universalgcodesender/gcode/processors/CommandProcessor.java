@@ -49,4 +49,15 @@ public interface CommandProcessor {
      * Called before a new file is processed to allow the processor to reset any state about the processed file.
      */
     default void reset() {}
+
+    /**
+     * Returns if the result of {@link #processCommand(String, GcodeState)} only depends on its arguments.
+     * A stateless processor does not remember anything between commands and can be used from several
+     * threads at once, which allows a file to be processed in parallel chunks.
+     *
+     * @return true if the processor is stateless, defaults to false
+     */
+    default boolean isStateless() {
+        return false;
+    }
 }
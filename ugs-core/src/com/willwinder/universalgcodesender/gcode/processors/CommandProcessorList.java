@@ -1,12 +1,11 @@
 package com.willwinder.universalgcodesender.gcode.processors;
 
-import com.willwinder.universalgcodesender.gcode.GcodeParser;
-import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Spliterator;
@@ -14,7 +13,7 @@ import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.function.Consumer;
 
-public class CommandProcessorList implements CommandProcessor, Iterable<CommandProcessor> {
+public class CommandProcessorList implements ParsedCommandProcessor, Iterable<CommandProcessor> {
 
     private final BlockingDeque<CommandProcessor> commandProcessors = new LinkedBlockingDeque<>();
 
@@ -32,28 +31,46 @@ public class CommandProcessorList implements CommandProcessor, Iterable<CommandP
      */
     @Override
     public List<String> processCommand(String command, final GcodeState initialState) throws GcodeParserException {
-        List<String> ret = new ArrayList<>();
-        ret.add(command);
-        GcodeState tempState;
+        return ParsedCommand.toCommands(processCommand(ParsedCommand.of(command), initialState));
+    }
+
+    /**
+     * Applies all command processors to a given command. The command is passed between the processors
+     * as a {@link ParsedCommand} so that it is parsed once for all processors instead of once per processor.
+     * String based processors are adapted, their results are only parsed again if they modified the command.
+     */
+    @Override
+    public List<ParsedCommand> processCommand(ParsedCommand command, final GcodeState initialState) throws GcodeParserException {
+        List<ParsedCommand> ret = Collections.singletonList(command);
         for (CommandProcessor p : commandProcessors) {
             // Reset point segments after each pass. The final pass is what we will return.
-            tempState = initialState.copy();
+            GcodeState tempState = initialState.copy();
+            List<ParsedCommand> next = new ArrayList<>(ret.size());
+
             // Process each command in the list and add results to the end.
             // Don't re-process the results with the same preprocessor.
-            for (int i = ret.size(); i > 0; i--) {
+            for (int i = 0; i < ret.size(); i++) {
                 // The arc expander changes the lastGcodeCommand which causes the following to fail:
                 // G2 Y-0.7 J-14.7
                 // Y28.7 J14.7 (this line treated as a G1)
-                tempState.currentMotionMode = initialState.currentMotionMode;
-                List<String> intermediate = p.processCommand(ret.remove(0), tempState);
-
-                // process results to update the state and collect PointSegments
-                for(String c : intermediate) {
-                    tempState = testState(c, tempState);
+                // The state may be shared with a parsed command so it needs to be copied before it is changed.
+                if (tempState.currentMotionMode != initialState.currentMotionMode) {
+                    tempState = tempState.copy();
+                    tempState.currentMotionMode = initialState.currentMotionMode;
+                }
+                List<ParsedCommand> intermediate = processCommand(p, ret.get(i), tempState);
+
+                // process results to update the state and collect PointSegments,
+                // the state after the last command isn't used so there is no need to parse it
+                if (i < ret.size() - 1) {
+                    for (ParsedCommand result : intermediate) {
+                        tempState = result.getResultState(tempState);
+                    }
                 }
 
-                ret.addAll(intermediate);
+                next.addAll(intermediate);
             }
+            ret = next;
         }
 
         return ret;
@@ -64,23 +81,31 @@ public class CommandProcessorList implements CommandProcessor, Iterable<CommandP
         return "Combines several processors and runs them in sequence";
     }
 
+    @Override
+    public boolean isStateless() {
+        return commandProcessors.stream().allMatch(CommandProcessor::isStateless);
+    }
+
     /**
-     * Helper to statically process the next step in a program without modifying the parser.
+     * Runs a processor on a parsed command, string based processors are given the text of the command.
+     * If such a processor returns the command unchanged the parsed command is kept to avoid parsing it again.
      */
-    static private GcodeState testState(String command, GcodeState state) throws GcodeParserException {
-        GcodeState ret = state;
-
-        // Add command get meta doesn't update the state, so we need to do that manually.
-        Collection<GcodeParser.GcodeMeta> metaObjects = GcodeParserUtils.processCommand(command, state.commandNumber, state);
-        if (metaObjects != null) {
-            for (GcodeParser.GcodeMeta c : metaObjects) {
-                if (c.state != null) {
-                    ret = c.state;
-                }
-            }
+    private static List<ParsedCommand> processCommand(CommandProcessor processor, ParsedCommand command, GcodeState state) throws GcodeParserException {
+        if (processor instanceof ParsedCommandProcessor parsedCommandProcessor) {
+            return parsedCommandProcessor.processCommand(command, state);
         }
 
-        return ret;
+        String text = command.getCommand();
+        List<String> result = processor.processCommand(text, state);
+        if (result.size() == 1 && text.equals(result.get(0))) {
+            return Collections.singletonList(command);
+        }
+
+        List<ParsedCommand> parsedCommands = new ArrayList<>(result.size());
+        for (String c : result) {
+            parsedCommands.add(ParsedCommand.of(c));
+        }
+        return parsedCommands;
     }
 
     public void add(CommandProcessor processor) {
@@ -47,6 +47,11 @@ public class DecimalProcessor implements CommandProcessor {
                 + Localization.getString("sender.truncate") + ": " + numDecimals;
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     @Override
     public List<String> processCommand(String command, GcodeState state) {
         List<String> ret = new ArrayList<>();
@@ -45,4 +45,9 @@ public class EmptyLineRemoverProcessor implements CommandProcessor {
     public String getHelp() {
         return Localization.getString("sender.help.empty-line-remover");
     }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
 }
@@ -23,15 +23,16 @@ package com.willwinder.universalgcodesender.gcode.processors;
 
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
 import com.willwinder.universalgcodesender.i18n.Localization;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  *
  * @author wwinder
  */
-public class FeedOverrideProcessor implements CommandProcessor {
+public class FeedOverrideProcessor implements ParsedCommandProcessor {
     private final double percentOverride;
 
     public FeedOverrideProcessor(double percentOverride) {
@@ -47,13 +48,21 @@ public class FeedOverrideProcessor implements CommandProcessor {
     }
 
     @Override
-    public List<String> processCommand(String command, GcodeState state) {
-        List<String> ret = new ArrayList<>();
-        if (percentOverride > 0) {
-            ret.add(GcodePreprocessorUtils.overrideSpeed(command, percentOverride));
-        } else {
-            ret.add(command);
+    public boolean isStateless() {
+        return true;
+    }
+
+    @Override
+    public List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) {
+        if (percentOverride <= 0) {
+            return Collections.singletonList(command);
+        }
+
+        String original = command.getCommand();
+        String overridden = GcodePreprocessorUtils.overrideSpeed(original, percentOverride);
+        if (overridden.equals(original)) {
+            return Collections.singletonList(command);
         }
-        return ret;
+        return Collections.singletonList(ParsedCommand.of(overridden));
     }
-}
\ No newline at end of file
+}
@@ -24,6 +24,7 @@ import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.SplitCommand;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
 import com.willwinder.universalgcodesender.gcode.util.Code;
 import static com.willwinder.universalgcodesender.gcode.util.Code.*;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
@@ -38,7 +39,7 @@ import java.util.List;
  *
  * @author wwinder
  */
-public class LineSplitter implements CommandProcessor {
+public class LineSplitter implements ParsedCommandProcessor {
     final double maxSegmentLength;
 
     /**
@@ -53,6 +54,11 @@ public class LineSplitter implements CommandProcessor {
         return "Split G0 and G1 commands into multiple commands.";
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     private Code hasLine(List<GcodeMeta> commands) {
         if (commands == null) return null;
         for (GcodeMeta command : commands) {
@@ -67,62 +73,83 @@ public class LineSplitter implements CommandProcessor {
     }
 
     @Override
-    public List<String> processCommand(String commandString, GcodeState state) throws GcodeParserException {
-        List<GcodeParser.GcodeMeta> commands = GcodeParserUtils.processCommand(commandString, 0, state);
-
-        List<String> results = new ArrayList<>();
+    public List<ParsedCommand> processCommand(ParsedCommand parsedCommand, GcodeState state) throws GcodeParserException {
+        List<GcodeParser.GcodeMeta> commands = parsedCommand.getMetas(state);
 
         Code code = hasLine(commands);
         if (code == null) {
-            return Collections.singletonList(commandString);
-        }
-
-        SplitCommand sc = GcodePreprocessorUtils.extractMotion(code, commandString);
-        if (sc.remainder.length() > 0) {
-            results.add(sc.remainder);
+            return Collections.singletonList(parsedCommand);
         }
 
         GcodeMeta command = Iterables.getLast(commands);
 
         if (command == null) {
-            throw new GcodeParserException("Internal parser error: missing data. " + commandString);
+            throw new GcodeParserException("Internal parser error: missing data. " + parsedCommand.getCommand());
         }
         if (command.point == null) {
             // No point data associated with this command (Maybe just setting feed rate), leave it as-is
-            return Collections.singletonList(commandString);
+            return Collections.singletonList(parsedCommand);
         }
 
         // line length
         Position start = state.currentPoint;
         Position end = command.point.point();
-        Position current = start;
         double length = start.distanceXYZ(end);
 
         // Check if line needs splitting.
-        if (length > this.maxSegmentLength) {
-            int numSegments = (int) Math.ceil(length/this.maxSegmentLength);
-            double segmentLength = length / Math.ceil(length / this.maxSegmentLength);
-
-            // Create line segments, stop before the last one which uses the end point.
-            for (int i = 1; i < numSegments; i++) {
-                double k = 1 / (length / (i * segmentLength));
-                double newX = start.x + k * (end.x - start.x);
-                double newY = start.y + k * (end.y - start.y);
-                double newZ = start.z + k * (end.z - start.z);
-
-                Position next = new Position(newX, newY, newZ, start.getUnits());
-                results.add(GcodePreprocessorUtils.generateLineFromPoints(
-                        command.code, current, next, command.state.inAbsoluteMode, null));
-                current = next;
-            }
+        if (length <= this.maxSegmentLength) {
+            return Collections.singletonList(parsedCommand);
+        }
+
+        List<ParsedCommand> results = new ArrayList<>();
+        GcodeState segmentState = state;
 
-            // Add the last line point.
-            results.add(GcodePreprocessorUtils.generateLineFromPoints(
-                    command.code, current, end, command.state.inAbsoluteMode, null));
-        } else {
-            return Collections.singletonList(commandString);
+        SplitCommand sc = GcodePreprocessorUtils.extractMotion(code, parsedCommand.getCommand());
+        if (sc.remainder.length() > 0) {
+            ParsedCommand remainder = ParsedCommand.of(sc.remainder);
+            segmentState = remainder.getResultState(state);
+            results.add(remainder);
+        }
+
+        int numSegments = (int) Math.ceil(length/this.maxSegmentLength);
+        double segmentLength = length / Math.ceil(length / this.maxSegmentLength);
+
+        // Create line segments, stop before the last one which uses the end point.
+        Position current = start;
+        for (int i = 1; i < numSegments; i++) {
+            double k = 1 / (length / (i * segmentLength));
+            double newX = start.x + k * (end.x - start.x);
+            double newY = start.y + k * (end.y - start.y);
+            double newZ = start.z + k * (end.z - start.z);
+
+            Position next = new Position(newX, newY, newZ, start.getUnits());
+            segmentState = addSegment(results, command, current, next, segmentState);
+            current = next;
         }
 
+        // Add the last line point.
+        addSegment(results, command, current, end, segmentState);
         return results;
     }
+
+    /**
+     * Adds a line segment with its parsed meta data, the text of the command is only generated when needed.
+     *
+     * @return the state after the segment
+     */
+    private GcodeState addSegment(List<ParsedCommand> results, GcodeMeta command, Position from, Position to, GcodeState segmentState) throws GcodeParserException {
+        boolean absoluteMode = command.state.inAbsoluteMode;
+        if (command.code != G0 && command.code != G1) {
+            ParsedCommand segment = ParsedCommand.generated(
+                    () -> GcodePreprocessorUtils.generateLineFromPoints(command.code, from, to, absoluteMode, null));
+            results.add(segment);
+            return segment.getResultState(segmentState);
+        }
+
+        GcodeMeta meta = GcodeParserUtils.createLinearMotion(command.code, from, to, absoluteMode, null, segmentState);
+        results.add(ParsedCommand.generated(
+                () -> GcodePreprocessorUtils.generateLineFromPoints(command.code, from, to, absoluteMode, null),
+                Collections.singletonList(meta), segmentState));
+        return meta.state;
+    }
 }
@@ -22,8 +22,8 @@ import com.google.common.collect.ImmutableList;
 import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
-import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
 import com.willwinder.universalgcodesender.model.PartialPosition;
 import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UnitUtils;
@@ -37,7 +37,7 @@ import java.util.List;
  *
  * @author wwinder
  */
-public class MeshLeveler implements CommandProcessor {
+public class MeshLeveler implements ParsedCommandProcessor {
     public final static String ERROR_MESH_SHAPE = "Surface mesh must be a rectangular 2D array.";
     public final static String ERROR_NOT_ENOUGH_SAMPLES = "Need at least 2 samples along each axis.";
     public final static String ERROR_X_ALIGNMENT = "Unaligned x coordinate in surface grid.";
@@ -142,21 +142,22 @@ public class MeshLeveler implements CommandProcessor {
     }
 
     @Override
-    public List<String> processCommand(final String commandString, GcodeState state) throws GcodeParserException {
-        List<GcodeMeta> commands = GcodeParserUtils.processCommand(commandString, 0, state);
+    public List<ParsedCommand> processCommand(final ParsedCommand parsedCommand, GcodeState state) throws GcodeParserException {
+        List<GcodeMeta> commands = parsedCommand.getMetas(state);
 
         // If there are no lines, return unmodified input.
         if (!ensureJustLines(commands)) {
-            return Collections.singletonList(commandString);
+            return Collections.singletonList(parsedCommand);
         }
 
-        ImmutableList.Builder<String> adjustedCommands = ImmutableList.builder();
+        String commandString = parsedCommand.getCommand();
+        ImmutableList.Builder<ParsedCommand> adjustedCommands = ImmutableList.builder();
         for (GcodeMeta command : commands) {
             if (command == null) {
                 throw new GcodeParserException(ERROR_MISSING_POINT_DATA + commandString);
             }
             if (command.point == null) {
-                adjustedCommands.add(commandString);
+                adjustedCommands.add(parsedCommand);
                 continue;
             }
 
@@ -193,7 +194,7 @@ public class MeshLeveler implements CommandProcessor {
                 overrideZ.setZ(newZ - start.getZ());
             }
             String adjustedCommand = GcodePreprocessorUtils.overridePosition(commandString, overrideZ.build());
-            adjustedCommands.add(adjustedCommand);
+            adjustedCommands.add(ParsedCommand.of(adjustedCommand));
         }
 
         return adjustedCommands.build();
@@ -247,4 +248,9 @@ public class MeshLeveler implements CommandProcessor {
     public String getHelp() {
         return null;
     }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
 }
@@ -18,21 +18,12 @@
  */
 package com.willwinder.universalgcodesender.gcode.processors;
 
-import com.willwinder.universalgcodesender.gcode.GcodeParser;
-import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
-import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
 import com.willwinder.universalgcodesender.model.PartialPosition;
-import com.willwinder.universalgcodesender.model.Position;
-import com.willwinder.universalgcodesender.model.UnitUtils;
 
-import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
-
-import static com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.normalizeCommand;
 
 /**
  * A processor that will mirror the model horizontally on a given center x position.
@@ -40,7 +31,7 @@ import static com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.n
  *
  * @author Joacim Breiler
  */
-public class MirrorProcessor implements CommandProcessor {
+public class MirrorProcessor implements ParsedCommandProcessor {
     private final PartialPosition center;
     private ArcExpander arcExpander;
 
@@ -55,71 +46,22 @@ public class MirrorProcessor implements CommandProcessor {
     }
 
     @Override
-    public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
-        List<String> commands = expandArcsToLines(command, state);
-        return commands.stream()
-                .map(c -> {
-                    try {
-                        return mirrorCommandCoordinates(c, state);
-                    } catch (GcodeParserException e) {
-                        throw new RuntimeException("Could not rotate the given command coordinate", e);
-                    }
-                })
-                .flatMap(Collection::stream).collect(Collectors.toList());
-    }
-
-    private List<String> mirrorCommandCoordinates(String command, GcodeState state) throws GcodeParserException {
-        List<GcodeParser.GcodeMeta> gcodeMetas = GcodeParserUtils.processCommand(command, 0, state);
-        if (!isMovement(gcodeMetas)) {
-            return Collections.singletonList(command);
-        }
-
-        return gcodeMetas.stream()
-                .map(gcodeMeta -> {
-                    UnitUtils.Units currentUnits = UnitUtils.Units.getUnits(gcodeMeta.state.units);
-                    Position start = state.currentPoint
-                            .getPositionIn(currentUnits);
-
-                    Position end = gcodeMeta.point.point()
-                            .getPositionIn(currentUnits);
-                    double diffFromCenter = end.getX() - center.getPositionIn(currentUnits).getX();
-                    double newX = end.getX() - (diffFromCenter * 2);
-                    end.setX(newX);
-
-                    String adjustedCommand = GcodePreprocessorUtils.generateLineFromPoints(
-                            gcodeMeta.code, start, end, gcodeMeta.state.inAbsoluteMode, null);
-
-                    try {
-                        return normalizeCommand(adjustedCommand, gcodeMeta.state);
-                    } catch (GcodeParserException e) {
-                        return adjustedCommand;
-                    }
-                })
-                .collect(Collectors.toList());
-    }
-
-    private boolean isMovement(List<GcodeParser.GcodeMeta> commands) {
-        if (commands == null) return false;
-        boolean hasLine = false;
-        for (GcodeParser.GcodeMeta command : commands) {
-            switch (command.code) {
-                case G0:
-                case G1:
-                case G2:
-                case G3:
-                    hasLine = true;
-                    break;
-            }
-        }
-        return hasLine;
-    }
-
-    private List<String> expandArcsToLines(String command, GcodeState state) throws GcodeParserException {
-        return arcExpander.processCommand(command, state);
+    public List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) throws GcodeParserException {
+        return MotionTransformer.transform(arcExpander, command, state, (end, currentUnits) -> {
+            double diffFromCenter = end.getX() - center.getPositionIn(currentUnits).getX();
+            double newX = end.getX() - (diffFromCenter * 2);
+            end.setX(newX);
+            return end;
+        });
     }
 
     @Override
     public String getHelp() {
         return "Mirrors the model";
     }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
 }
@@ -0,0 +1,133 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.processors;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
+import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.normalizeCommand;
+
+/**
+ * Transforms the end point of all motions in a command, used by processors like the {@link TranslateProcessor}.
+ * Arcs are expanded to lines first. The transformed lines are given their parsed meta data directly so that
+ * the following processors don't need to parse them, and the text of the lines is only generated when needed.
+ *
+ * @author Joacim Breiler
+ */
+final class MotionTransformer {
+
+    /**
+     * A function transforming an end point
+     */
+    interface Transformation {
+        /**
+         * @param end   the end point of a motion
+         * @param units the units of the end point
+         * @return the transformed end point
+         */
+        Position apply(Position end, UnitUtils.Units units);
+    }
+
+    private MotionTransformer() {
+    }
+
+    static List<ParsedCommand> transform(ArcExpander arcExpander, ParsedCommand command, GcodeState state, Transformation transformation) throws GcodeParserException {
+        List<ParsedCommand> commands = arcExpander.processCommand(command, state);
+        List<ParsedCommand> results = new ArrayList<>(commands.size());
+
+        // The state after each result, used for giving the transformed lines their meta data
+        GcodeState resultState = state;
+        for (ParsedCommand c : commands) {
+            List<GcodeMeta> gcodeMetas = c.getMetas(state);
+            if (!isMovement(gcodeMetas)) {
+                results.add(c);
+                resultState = c.getResultState(resultState);
+                continue;
+            }
+
+            for (GcodeMeta gcodeMeta : gcodeMetas) {
+                if (gcodeMeta.point == null) {
+                    throw new GcodeParserException("Could not transform a motion without an end point: " + c.getCommand());
+                }
+
+                UnitUtils.Units currentUnits = UnitUtils.Units.getUnits(gcodeMeta.state.units);
+                Position start = state.currentPoint.getPositionIn(currentUnits);
+                Position end = transformation.apply(gcodeMeta.point.point().getPositionIn(currentUnits), currentUnits);
+
+                ParsedCommand result = createLine(gcodeMeta, start, end, resultState);
+                results.add(result);
+                resultState = result.getResultState(resultState);
+            }
+        }
+
+        return results;
+    }
+
+    private static ParsedCommand createLine(GcodeMeta gcodeMeta, Position start, Position end, GcodeState resultState) {
+        Code code = gcodeMeta.code;
+        GcodeState metaState = gcodeMeta.state;
+        ParsedCommand line = ParsedCommand.generated(() -> {
+            String adjustedCommand = GcodePreprocessorUtils.generateLineFromPoints(
+                    code, start, end, metaState.inAbsoluteMode, null);
+            try {
+                return normalizeCommand(adjustedCommand, metaState);
+            } catch (GcodeParserException e) {
+                return adjustedCommand;
+            }
+        });
+
+        if (code != Code.G0 && code != Code.G1) {
+            return line;
+        }
+
+        // The normalized line starts with the feed rate and spindle speed followed by the motion
+        GcodeState lineState = resultState.copy();
+        lineState.feedRate = metaState.feedRate;
+        lineState.spindleSpeed = metaState.spindleSpeed;
+        GcodeMeta meta = GcodeParserUtils.createLinearMotion(code, start, end, metaState.inAbsoluteMode, null, lineState);
+        return ParsedCommand.generated(line::getCommand, Collections.singletonList(meta), resultState);
+    }
+
+    private static boolean isMovement(List<GcodeMeta> commands) {
+        if (commands == null) return false;
+        boolean hasLine = false;
+        for (GcodeMeta command : commands) {
+            switch (command.code) {
+                case G0:
+                case G1:
+                case G2:
+                case G3:
+                    hasLine = true;
+                    break;
+            }
+        }
+        return hasLine;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.processors;
+
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+
+import java.util.List;
+
+/**
+ * A command processor working on {@link ParsedCommand}s instead of strings. When used in a
+ * {@link CommandProcessorList} the parsed commands are passed from processor to processor, so a command
+ * is only parsed once and only formatted once at the end of the chain even if several processors
+ * transform it.
+ * <p>
+ * The string based {@link #processCommand(String, GcodeState)} is implemented by wrapping the command,
+ * so the processor can still be used on its own.
+ *
+ * @author wwinder
+ */
+public interface ParsedCommandProcessor extends CommandProcessor {
+    /**
+     * Given a command and the current state of a program returns a replacement list of commands.
+     * Commands which aren't modified should be returned as is to keep their parsed state.
+     *
+     * @param command the command to process
+     * @param state   state of the gcode parser when the command will run, must not be modified
+     * @return one or more commands to replace the original command with
+     * @throws GcodeParserException if the command couldn't be processed
+     */
+    List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) throws GcodeParserException;
+
+    @Override
+    default List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
+        return ParsedCommand.toCommands(processCommand(ParsedCommand.of(command), state));
+    }
+}
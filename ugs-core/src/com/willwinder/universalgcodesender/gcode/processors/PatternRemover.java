@@ -44,6 +44,11 @@ public class PatternRemover implements CommandProcessor {
                 + ": \"" + p.pattern() + "\"";
     }
 
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
     @Override
     public List<String> processCommand(String command, GcodeState state) {
         List<String> ret = new ArrayList<>();
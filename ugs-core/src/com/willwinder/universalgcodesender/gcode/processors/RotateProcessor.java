@@ -18,20 +18,14 @@
  */
 package com.willwinder.universalgcodesender.gcode.processors;
 
-import com.willwinder.universalgcodesender.gcode.GcodeParser;
-import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
-import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
 import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UnitUtils;
 
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
-
-import static com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.normalizeCommand;
 
 /**
  * A processor that will rotate the model around the given center position using the given rotation in radians.
@@ -39,7 +33,7 @@ import static com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.n
  *
  * @author Joacim Breiler
  */
-public class RotateProcessor implements CommandProcessor {
+public class RotateProcessor implements ParsedCommandProcessor {
 
     private ArcExpander arcExpander;
     private Position center;
@@ -76,73 +70,23 @@ public class RotateProcessor implements CommandProcessor {
     }
 
     @Override
-    public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
+    public List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) throws GcodeParserException {
         // Ignore this processor if no rotation should be made
         if (rotation == 0) {
             return Collections.singletonList(command);
         }
 
-        List<String> commands = expandArcsToLines(command, state);
-        return commands.stream()
-                .map(c -> {
-                    try {
-                        return rotateCommandCoordinates(c, state);
-                    } catch (GcodeParserException e) {
-                        throw new RuntimeException("Could not rotate the given command coordinate", e);
-                    }
-                })
-                .flatMap(Collection::stream).collect(Collectors.toList());
-    }
-
-    private List<String> expandArcsToLines(String command, GcodeState state) throws GcodeParserException {
-        return arcExpander.processCommand(command, state);
-    }
-
-    private List<String> rotateCommandCoordinates(String command, GcodeState state) throws GcodeParserException {
-        List<GcodeParser.GcodeMeta> gcodeMetas = GcodeParserUtils.processCommand(command, 0, state);
-        if (!isMovement(gcodeMetas)) {
-            return Collections.singletonList(command);
-        }
-        return gcodeMetas.stream()
-                .map(gcodeMeta -> {
-                    UnitUtils.Units currentUnits = UnitUtils.Units.getUnits(gcodeMeta.state.units);
-                    Position start = state.currentPoint
-                            .getPositionIn(currentUnits);
-
-                    Position end = gcodeMeta.point.point()
-                            .getPositionIn(currentUnits);
-                    end = end.rotate(center.getPositionIn(currentUnits), rotation);
-
-                    String adjustedCommand = GcodePreprocessorUtils.generateLineFromPoints(
-                            gcodeMeta.code, start, end, gcodeMeta.state.inAbsoluteMode, null);
-
-                    try {
-                        return normalizeCommand(adjustedCommand, gcodeMeta.state);
-                    } catch (GcodeParserException e) {
-                        return adjustedCommand;
-                    }
-                })
-                .collect(Collectors.toList());
-    }
-
-    private boolean isMovement(List<GcodeParser.GcodeMeta> commands) {
-        if (commands == null) return false;
-        boolean hasLine = false;
-        for (GcodeParser.GcodeMeta command : commands) {
-            switch (command.code) {
-                case G0:
-                case G1:
-                case G2:
-                case G3:
-                    hasLine = true;
-                    break;
-            }
-        }
-        return hasLine;
+        return MotionTransformer.transform(arcExpander, command, state,
+                (end, currentUnits) -> end.rotate(center.getPositionIn(currentUnits), rotation));
     }
 
     @Override
     public String getHelp() {
         return "Rotates the model 180 degrees";
     }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
 }
@@ -68,32 +68,46 @@ public class RunFromProcessor implements CommandProcessor {
     }
 
     private ImmutableList<String> getSkippedLinesState(String command) {
-        Position pos = parser.getCurrentState().currentPoint;
+        GcodeState s = parser.getCurrentState();
+
+        // Reset the parser to prevent the state to be re-added
+        parser = null;
+
+        return createResumeCommands(s, clearanceHeight, command);
+    }
+
+    /**
+     * Creates the commands needed to resume a program from a command, restoring the
+     * state the program had before it and moving to its start location.
+     *
+     * @param state           the state before the command
+     * @param clearanceHeight a safe height in the units of the state to move at
+     * @param command         the command to resume from
+     * @return the commands to send in place of the command
+     */
+    public static ImmutableList<String> createResumeCommands(GcodeState state, double clearanceHeight, String command) {
+        Position pos = state.currentPoint;
         String moveToClearanceHeight = "G0Z" + clearanceHeight;
         String moveToXY = "G0X" + pos.x + "Y" + pos.y;
         String plunge = "G1Z" + pos.z;
 
-        GcodeState s = parser.getCurrentState();
         String normalized = command;
         try {
-            normalized = normalizeCommand(command, s);
+            normalized = normalizeCommand(command, state);
         } catch (GcodeParserException e) {
             // If command couldn't be normalized, send as is
         }
 
-        // Reset the parser to prevent the state to be re-added
-        parser = null;
-
         return ImmutableList.of(
                 // Initialize state
-                s.machineStateCode(),
+                state.machineStateCode(),
 
                 // Move to start location
                 moveToClearanceHeight,
                 moveToXY,
 
                 // Start spindle and set feed/speed before plunging into the work.
-                s.toAccessoriesCode(),
+                state.toAccessoriesCode(),
                 plunge,
 
                 // Append normalized command
@@ -56,4 +56,9 @@ public class SpindleOnDweller implements CommandProcessor {
     public String getHelp() {
         return Localization.getString("sender.help.spindle-dwell");
     }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
 }
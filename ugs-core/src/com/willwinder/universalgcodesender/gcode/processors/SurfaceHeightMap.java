@@ -0,0 +1,294 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.processors;
+
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A surface height map built from an arbitrary cloud of probed points. The points are resampled once
+ * onto a regular grid, where each grid node gets the height of a probed point at the same location or
+ * an inverse distance weighted average of the nearest probed points. The heights between the nodes are
+ * then given by bilinear interpolation which is done without any allocations.
+ * <p>
+ * Outside the probed area the height of the nearest edge of the grid is used.
+ *
+ * @author wwinder
+ */
+public class SurfaceHeightMap {
+    public static final String ERROR_NOT_ENOUGH_SAMPLES = "Need probed points spread along both the X and Y axis.";
+
+    /**
+     * The number of nearest points used when the height of a grid node needs to be estimated
+     */
+    private static final int NEAREST_POINTS = 6;
+
+    private final Units units;
+    private final double minX;
+    private final double minY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int xNodes;
+    private final int yNodes;
+    private final double[] heights;
+
+    /**
+     * Creates a height map with a grid size based on the number of points and the probed area. If the
+     * points form a full grid, the grid nodes will be placed on the probed points.
+     *
+     * @param points the probed points, all points will be converted to the units of the first point
+     */
+    public SurfaceHeightMap(List<Position> points) {
+        this(points, Double.NaN);
+    }
+
+    /**
+     * Creates a height map with the given grid resolution.
+     *
+     * @param points     the probed points, all points will be converted to the units of the first point
+     * @param resolution the distance between the grid nodes in the units of the first point
+     */
+    public SurfaceHeightMap(List<Position> points, double resolution) {
+        if (points == null || points.isEmpty()) {
+            throw new IllegalArgumentException(ERROR_NOT_ENOUGH_SAMPLES);
+        }
+
+        this.units = points.get(0).getUnits();
+        int count = points.size();
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        double[] zs = new double[count];
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double lowX = Double.POSITIVE_INFINITY;
+        double lowY = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            Position point = points.get(i).getPositionIn(units);
+            xs[i] = point.x;
+            ys[i] = point.y;
+            zs[i] = point.z;
+            lowX = Math.min(lowX, point.x);
+            lowY = Math.min(lowY, point.y);
+            maxX = Math.max(maxX, point.x);
+            maxY = Math.max(maxY, point.y);
+        }
+
+        double width = maxX - lowX;
+        double height = maxY - lowY;
+        if (!(width > 0) || !(height > 0)) {
+            throw new IllegalArgumentException(ERROR_NOT_ENOUGH_SAMPLES);
+        }
+
+        if (resolution > 0) {
+            xNodes = (int) Math.ceil(width / resolution) + 1;
+            yNodes = (int) Math.ceil(height / resolution) + 1;
+        } else {
+            int distinctX = countDistinct(xs, width);
+            int distinctY = countDistinct(ys, height);
+            if ((long) distinctX * distinctY == count) {
+                xNodes = distinctX;
+                yNodes = distinctY;
+            } else {
+                xNodes = Math.max(2, (int) Math.round(Math.sqrt(count * width / height)));
+                yNodes = Math.max(2, (int) Math.round(count / (double) xNodes));
+            }
+        }
+
+        this.minX = lowX;
+        this.minY = lowY;
+        this.cellWidth = width / (xNodes - 1);
+        this.cellHeight = height / (yNodes - 1);
+        this.heights = new double[xNodes * yNodes];
+        resample(xs, ys, zs);
+    }
+
+    private static int countDistinct(double[] values, double range) {
+        double tolerance = range * 1e-6;
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        double last = Double.NEGATIVE_INFINITY;
+        for (double value : sorted) {
+            if (value - last > tolerance) {
+                distinct++;
+                last = value;
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Calculates the height of all grid nodes using a bucket index of the points where each bucket is
+     * centered around a grid node.
+     */
+    private void resample(double[] xs, double[] ys, double[] zs) {
+        int count = xs.length;
+        int[] bucketStart = new int[xNodes * yNodes + 1];
+        int[] bucketOf = new int[count];
+        for (int i = 0; i < count; i++) {
+            bucketOf[i] = getNodeIndex(nearestNode(xs[i], minX, cellWidth, xNodes), nearestNode(ys[i], minY, cellHeight, yNodes));
+            bucketStart[bucketOf[i] + 1]++;
+        }
+        for (int i = 0; i < xNodes * yNodes; i++) {
+            bucketStart[i + 1] += bucketStart[i];
+        }
+        int[] bucketPoints = new int[count];
+        int[] fill = Arrays.copyOf(bucketStart, bucketStart.length - 1);
+        for (int i = 0; i < count; i++) {
+            bucketPoints[fill[bucketOf[i]]++] = i;
+        }
+
+        double exactDistance = Math.min(cellWidth, cellHeight) * 1e-6;
+        int nearestCount = Math.min(NEAREST_POINTS, count);
+        int[] nearest = new int[nearestCount];
+        double[] nearestDistance = new double[nearestCount];
+        for (int xNode = 0; xNode < xNodes; xNode++) {
+            for (int yNode = 0; yNode < yNodes; yNode++) {
+                double nodeX = minX + xNode * cellWidth;
+                double nodeY = minY + yNode * cellHeight;
+
+                // Search rings of buckets until enough points are found, then one more ring as a
+                // point in the next ring may be closer than the points in the corners of this ring
+                int found = 0;
+                int lastRing = Integer.MAX_VALUE;
+                int maxRing = Math.max(xNodes, yNodes);
+                for (int ring = 0; ring <= Math.min(lastRing, maxRing); ring++) {
+                    for (int bx = xNode - ring; bx <= xNode + ring; bx++) {
+                        for (int by = yNode - ring; by <= yNode + ring; by++) {
+                            boolean onRing = Math.abs(bx - xNode) == ring || Math.abs(by - yNode) == ring;
+                            if (!onRing || bx < 0 || by < 0 || bx >= xNodes || by >= yNodes) {
+                                continue;
+                            }
+
+                            int bucket = getNodeIndex(bx, by);
+                            for (int p = bucketStart[bucket]; p < bucketStart[bucket + 1]; p++) {
+                                int point = bucketPoints[p];
+                                double distance = Math.hypot(xs[point] - nodeX, ys[point] - nodeY);
+                                found = insertNearest(nearest, nearestDistance, found, point, distance);
+                            }
+                        }
+                    }
+
+                    if (found == nearestCount && lastRing == Integer.MAX_VALUE) {
+                        lastRing = ring + 1;
+                    }
+                }
+
+                heights[getNodeIndex(xNode, yNode)] = weightedHeight(zs, nearest, nearestDistance, found, exactDistance);
+            }
+        }
+    }
+
+    private static int insertNearest(int[] nearest, double[] nearestDistance, int found, int point, double distance) {
+        int index = found;
+        if (found == nearest.length) {
+            if (distance >= nearestDistance[found - 1]) {
+                return found;
+            }
+            index = found - 1;
+        } else {
+            found++;
+        }
+
+        while (index > 0 && nearestDistance[index - 1] > distance) {
+            nearest[index] = nearest[index - 1];
+            nearestDistance[index] = nearestDistance[index - 1];
+            index--;
+        }
+        nearest[index] = point;
+        nearestDistance[index] = distance;
+        return found;
+    }
+
+    private static double weightedHeight(double[] zs, int[] nearest, double[] nearestDistance, int found, double exactDistance) {
+        if (nearestDistance[0] <= exactDistance) {
+            return zs[nearest[0]];
+        }
+
+        double weightedSum = 0;
+        double weightSum = 0;
+        for (int i = 0; i < found; i++) {
+            double weight = 1 / (nearestDistance[i] * nearestDistance[i]);
+            weightedSum += weight * zs[nearest[i]];
+            weightSum += weight;
+        }
+        return weightedSum / weightSum;
+    }
+
+    private static int nearestNode(double value, double min, double cellSize, int nodes) {
+        int node = (int) Math.round((value - min) / cellSize);
+        return Math.max(0, Math.min(nodes - 1, node));
+    }
+
+    private int getNodeIndex(int xNode, int yNode) {
+        return xNode * yNodes + yNode;
+    }
+
+    /**
+     * Returns the interpolated height of the surface at the given position
+     *
+     * @param x the X coordinate in the units of the height map
+     * @param y the Y coordinate in the units of the height map
+     * @return the height in the units of the height map
+     */
+    public double getHeightAt(double x, double y) {
+        double xCell = Math.max(0, Math.min(xNodes - 1, (x - minX) / cellWidth));
+        double yCell = Math.max(0, Math.min(yNodes - 1, (y - minY) / cellHeight));
+        int xNode = Math.min((int) xCell, xNodes - 2);
+        int yNode = Math.min((int) yCell, yNodes - 2);
+        double xRatio = xCell - xNode;
+        double yRatio = yCell - yNode;
+
+        int index = getNodeIndex(xNode, yNode);
+        double lower = heights[index] + (heights[index + yNodes] - heights[index]) * xRatio;
+        double upper = heights[index + 1] + (heights[index + yNodes + 1] - heights[index + 1]) * xRatio;
+        return lower + (upper - lower) * yRatio;
+    }
+
+    public Units getUnits() {
+        return units;
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getCellWidth() {
+        return cellWidth;
+    }
+
+    public double getCellHeight() {
+        return cellHeight;
+    }
+
+    public int getXNodes() {
+        return xNodes;
+    }
+
+    public int getYNodes() {
+        return yNodes;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.processors;
+
+import com.google.common.collect.Iterables;
+import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.SplitCommand;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
+import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.model.PartialPosition;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.willwinder.universalgcodesender.gcode.util.Code.G0;
+import static com.willwinder.universalgcodesender.gcode.util.Code.G1;
+
+/**
+ * Adjust Z heights based on a {@link SurfaceHeightMap} built from any set of probed points.
+ * <p>
+ * Unlike the {@link MeshLeveler} this processor doesn't need any other processors before it. Arcs are
+ * expanded to line segments and lines are split where they cross the grid lines of the height map, so
+ * that the whole move follows the surface and not only its end points.
+ *
+ * @author wwinder
+ */
+public class SurfaceLeveler implements ParsedCommandProcessor {
+    private static final double MIN_SEGMENT_RATIO = 1e-6;
+
+    private final double materialSurfaceHeightMM;
+    private final SurfaceHeightMap surface;
+    private final ArcExpander arcExpander;
+
+    /**
+     * @param materialSurfaceHeightMM Z height used in offset.
+     * @param surface                 the surface to follow
+     * @param arcSegmentLength        the length of the line segments arcs are expanded to
+     */
+    public SurfaceLeveler(double materialSurfaceHeightMM, SurfaceHeightMap surface, double arcSegmentLength) {
+        if (surface == null) {
+            throw new IllegalArgumentException("Surface height map is required.");
+        }
+
+        this.materialSurfaceHeightMM = materialSurfaceHeightMM;
+        this.surface = surface;
+        this.arcExpander = new ArcExpander(true, arcSegmentLength, GcodePreprocessorUtils.getDecimalFormatter());
+    }
+
+    @Override
+    public String getHelp() {
+        return "Adjusts the Z height of moves to follow a probed surface.";
+    }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
+    @Override
+    public List<ParsedCommand> processCommand(ParsedCommand parsedCommand, GcodeState state) throws GcodeParserException {
+        List<GcodeMeta> commands = parsedCommand.getMetas(state);
+        if (commands == null || commands.isEmpty()) {
+            return Collections.singletonList(parsedCommand);
+        }
+
+        if (hasArc(commands)) {
+            List<ParsedCommand> results = new ArrayList<>();
+            GcodeState segmentState = state;
+            for (ParsedCommand segment : arcExpander.processCommand(parsedCommand, state)) {
+                results.addAll(processLine(segment, segmentState));
+                segmentState = segment.getResultState(segmentState);
+            }
+            return results;
+        }
+
+        return processLine(parsedCommand, state);
+    }
+
+    private static boolean hasArc(List<GcodeMeta> commands) {
+        for (GcodeMeta command : commands) {
+            if (command != null && command.point != null && command.point.isArc()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Code getLineCode(List<GcodeMeta> commands) {
+        for (GcodeMeta command : commands) {
+            if (command != null && (command.code == G0 || command.code == G1)) {
+                return command.code;
+            }
+        }
+        return null;
+    }
+
+    private List<ParsedCommand> processLine(ParsedCommand parsedCommand, GcodeState state) throws GcodeParserException {
+        List<GcodeMeta> commands = parsedCommand.getMetas(state);
+        Code code = commands == null ? null : getLineCode(commands);
+        if (code == null) {
+            return Collections.singletonList(parsedCommand);
+        }
+
+        GcodeMeta command = Iterables.getLast(commands);
+        if (command == null) {
+            throw new GcodeParserException(MeshLeveler.ERROR_MISSING_POINT_DATA + parsedCommand.getCommand());
+        }
+        if (command.point == null) {
+            return Collections.singletonList(parsedCommand);
+        }
+
+        Position start = state.currentPoint;
+        Position end = command.point.point();
+        boolean absoluteMode = command.state.inAbsoluteMode;
+        SplitCommand sc = GcodePreprocessorUtils.extractMotion(code, parsedCommand.getCommand());
+
+        // Machine coordinate moves and moves within a cell only need the end point adjusted
+        double nextSplit = sc == null || sc.extracted.contains("G53") ? 1 : nextSplit(start, end, 0);
+        if (nextSplit >= 1) {
+            PartialPosition.Builder overrideZ = PartialPosition.builder(end.getUnits());
+            double endZ = levelZ(end.x, end.y, end.z, end.getUnits(), absoluteMode);
+            if (absoluteMode) {
+                overrideZ.setZ(endZ);
+            } else {
+                overrideZ.setZ(endZ - levelZ(start.x, start.y, start.z, start.getUnits(), false));
+            }
+            String adjustedCommand = GcodePreprocessorUtils.overridePosition(parsedCommand.getCommand(), overrideZ.build());
+            return Collections.singletonList(ParsedCommand.of(adjustedCommand));
+        }
+
+        List<ParsedCommand> results = new ArrayList<>();
+        GcodeState segmentState = state;
+        if (sc.remainder.length() > 0) {
+            ParsedCommand remainder = ParsedCommand.of(sc.remainder);
+            segmentState = remainder.getResultState(state);
+            results.add(remainder);
+        }
+
+        Position from = levelPosition(start, end, 0, absoluteMode);
+        double ratio = nextSplit;
+        while (ratio < 1) {
+            Position to = levelPosition(start, end, ratio, absoluteMode);
+            segmentState = addSegment(results, code, from, to, absoluteMode, segmentState);
+            from = to;
+            ratio = nextSplit(start, end, ratio);
+        }
+        addSegment(results, code, from, levelPosition(start, end, 1, absoluteMode), absoluteMode, segmentState);
+        return results;
+    }
+
+    /**
+     * Finds the next position along the line where it crosses a grid line of the height map.
+     *
+     * @param start the start of the line
+     * @param end   the end of the line
+     * @param ratio how far along the line to start searching from, zero is the start and one the end
+     * @return the ratio of the line where the next crossing is, or one if there are no more crossings
+     */
+    private double nextSplit(Position start, Position end, double ratio) {
+        double scale = UnitUtils.scaleUnits(end.getUnits(), surface.getUnits());
+        double minRatio = ratio + MIN_SEGMENT_RATIO;
+        double xSplit = nextSplit(start.x * scale, end.x * scale, surface.getMinX(), surface.getCellWidth(), surface.getXNodes(), minRatio);
+        double ySplit = nextSplit(start.y * scale, end.y * scale, surface.getMinY(), surface.getCellHeight(), surface.getYNodes(), minRatio);
+        double split = Math.min(xSplit, ySplit);
+        return split > 1 - MIN_SEGMENT_RATIO ? 1 : split;
+    }
+
+    private static double nextSplit(double start, double end, double min, double cellSize, int nodes, double minRatio) {
+        double delta = end - start;
+        if (delta == 0 || Double.isNaN(delta)) {
+            return 1;
+        }
+
+        double cell = (start + delta * minRatio - min) / cellSize;
+        int node = delta > 0 ? (int) Math.ceil(cell) : (int) Math.floor(cell);
+        node = Math.max(0, Math.min(nodes - 1, node));
+        double split = (min + node * cellSize - start) / delta;
+        if (split < minRatio) {
+            // Rounding put us on the grid line we are searching from, continue with the next one
+            node += delta > 0 ? 1 : -1;
+            if (node < 0 || node >= nodes) {
+                return 1;
+            }
+            split = (min + node * cellSize - start) / delta;
+        }
+        return split >= minRatio ? split : 1;
+    }
+
+    private Position levelPosition(Position start, Position end, double ratio, boolean absoluteMode) {
+        double x = start.x + (end.x - start.x) * ratio;
+        double y = start.y + (end.y - start.y) * ratio;
+        double z = start.z + (end.z - start.z) * ratio;
+        return new Position(x, y, levelZ(x, y, z, end.getUnits(), absoluteMode), end.getUnits());
+    }
+
+    /**
+     * Adjusts a Z height to the surface height. In relative mode only the surface height is added as
+     * the material surface height is cancelled out between the start and end of each move.
+     */
+    private double levelZ(double x, double y, double z, Units units, boolean absoluteMode) {
+        double scale = UnitUtils.scaleUnits(units, surface.getUnits());
+        double surfaceHeight = surface.getHeightAt(x * scale, y * scale);
+        if (absoluteMode) {
+            surfaceHeight -= materialSurfaceHeightMM * UnitUtils.scaleUnits(Units.MM, surface.getUnits());
+        }
+        return z + surfaceHeight / scale;
+    }
+
+    /**
+     * Adds a line segment with its parsed meta data, the text of the command is only generated when needed.
+     *
+     * @return the state after the segment
+     */
+    private static GcodeState addSegment(List<ParsedCommand> results, Code code, Position from, Position to, boolean absoluteMode, GcodeState segmentState) {
+        GcodeMeta meta = GcodeParserUtils.createLinearMotion(code, from, to, absoluteMode, null, segmentState);
+        results.add(ParsedCommand.generated(
+                () -> GcodePreprocessorUtils.generateLineFromPoints(code, from, to, absoluteMode, null),
+                Collections.singletonList(meta), segmentState));
+        return meta.state;
+    }
+}
@@ -113,4 +113,9 @@ public class Translator implements CommandProcessor {
   public String getHelp() {
     return "Translates gcode location.";
   }
+
+  @Override
+  public boolean isStateless() {
+    return true;
+  }
 }
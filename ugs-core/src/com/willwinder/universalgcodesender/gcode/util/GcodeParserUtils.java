@@ -18,12 +18,12 @@
  */
 package com.willwinder.universalgcodesender.gcode.util;
 
-import com.google.common.collect.Iterables;
 import com.willwinder.universalgcodesender.gcode.DefaultCommandCreator;
 import com.willwinder.universalgcodesender.gcode.GcodeParser;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
 import com.willwinder.universalgcodesender.i18n.Localization;
+import com.willwinder.universalgcodesender.model.CNCPoint;
 import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UnitUtils;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
@@ -37,17 +37,15 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import static com.willwinder.universalgcodesender.gcode.util.Code.G20;
 import static com.willwinder.universalgcodesender.gcode.util.Code.G21;
@@ -64,6 +62,7 @@ import static com.willwinder.universalgcodesender.gcode.util.Code.UNKNOWN;
  */
 public class GcodeParserUtils {
     private static final Logger LOGGER = Logger.getLogger(GcodeParserUtils.class.getName());
+    private static final ThreadLocal<GcodeWordTokenizer> TOKENIZER = ThreadLocal.withInitial(GcodeWordTokenizer::new);
 
     /**
      * For backwards compatibility this method calls processCommand with includeNonMotionStates = false.
@@ -83,8 +82,8 @@ public class GcodeParserUtils {
     public static List<GcodeParser.GcodeMeta> processCommand(String command, int line, final GcodeState inputState,
                                                              boolean includeNonMotionStates)
             throws GcodeParserException {
-        List<String> args = GcodePreprocessorUtils.splitCommand(command);
-        if (args.isEmpty()) return null;
+        GcodeWordTokenizer words = TOKENIZER.get().tokenize(command);
+        if (words.getWordCount() == 0) return null;
 
         // Initialize with original state
         GcodeState state = inputState.copy();
@@ -92,8 +91,12 @@ public class GcodeParserUtils {
         state.commandNumber = line;
 
         // handle M codes.
-        Set<Code> mCodes = GcodePreprocessorUtils.getMCodes(args);
-        for (Code c : mCodes) {
+        for (int i = 0; i < words.getWordCount(); i++) {
+            if (!isFirstCodeOccurrence(words, i, 'M')) {
+                continue;
+            }
+
+            Code c = words.getCode(i);
             switch (c.getType()) {
                 case Spindle:
                     state.spindle = c;
@@ -106,61 +109,55 @@ public class GcodeParserUtils {
             }
         }
 
-        List<String> fCodes = GcodePreprocessorUtils.parseCodes(args, 'F');
-        if (!fCodes.isEmpty()) {
-            try {
-                state.feedRate = Double.parseDouble(Iterables.getOnlyElement(fCodes));
-            } catch (IllegalArgumentException e) {
+        int fCode = words.indexOf('F');
+        if (fCode >= 0) {
+            if (words.count('F') > 1 || !words.hasValue(fCode)) {
                 throw new GcodeParserException("Multiple F-codes on one line.");
             }
+            state.feedRate = words.getValue(fCode);
         }
 
-        List<String> sCodes = GcodePreprocessorUtils.parseCodes(args, 'S');
-        if (!sCodes.isEmpty()) {
-            try {
-                state.spindleSpeed = Double.parseDouble(Iterables.getOnlyElement(sCodes));
-            } catch (IllegalArgumentException e) {
+        int sCode = words.indexOf('S');
+        if (sCode >= 0) {
+            if (words.count('S') > 1 || !words.hasValue(sCode)) {
                 throw new GcodeParserException("Multiple S-codes on one line.");
             }
+            state.spindleSpeed = words.getValue(sCode);
         }
 
-        // Gather G codes.
-        Set<Code> gCodes = GcodePreprocessorUtils.getGCodes(args);
-
-        boolean hasAxisWords = GcodePreprocessorUtils.hasAxisWords(args);
-
         // Error to mix group 1 (Motion) and certain group 0 (NonModal) codes (G10, G28, G30, G92)
-        Collection<Code> motionCodes = gCodes.stream()
-                .filter(Code::consumesMotion)
-                .collect(Collectors.toList());
+        int motionCodeCount = 0;
+        for (int i = 0; i < words.getWordCount(); i++) {
+            if (isFirstCodeOccurrence(words, i, 'G') && words.getCode(i).consumesMotion()) {
+                motionCodeCount++;
+            }
+        }
 
         // 1 motion code per line.
-        if (motionCodes.size() > 1) {
+        if (motionCodeCount > 1) {
+            List<Code> motionCodes = new ArrayList<>();
+            for (int i = 0; i < words.getWordCount(); i++) {
+                if (isFirstCodeOccurrence(words, i, 'G') && words.getCode(i).consumesMotion()) {
+                    motionCodes.add(words.getCode(i));
+                }
+            }
             throw new GcodeParserException(Localization.getString("parser.gcode.multiple-axis-commands")
                     + ": " + StringUtils.join(motionCodes, ", "));
         }
 
-        // If there are axis words and nothing to use them, add the currentMotionMode.
-        if (hasAxisWords && motionCodes.isEmpty() && state.currentMotionMode != null) {
-            gCodes.add(state.currentMotionMode);
-        }
-
         // Apply each code to the state.
         List<GcodeParser.GcodeMeta> results = new ArrayList<>();
-        for (Code i : gCodes) {
-            if (i == UNKNOWN) {
-                LOGGER.warning("An unknown gcode command was detected in: " + command);
-            } else {
-                GcodeParser.GcodeMeta meta = handleGCode(i, args, line, state);
-                meta.command = command;
-                // Commands like 'G21' don't return a point segment.
-                if (meta.point != null) {
-                    meta.point.setFeedRate(state.feedRate);
-                    meta.point.setSpindleSpeed(state.spindleSpeed);
-                }
-                results.add(meta);
+        for (int i = 0; i < words.getWordCount(); i++) {
+            if (isFirstCodeOccurrence(words, i, 'G')) {
+                applyGCode(words.getCode(i), words, command, line, state, results);
             }
         }
+
+        // If there are axis words and nothing to use them, add the currentMotionMode.
+        if (words.hasAxisWords() && motionCodeCount == 0 && state.currentMotionMode != null) {
+            applyGCode(state.currentMotionMode, words, command, line, state, results);
+        }
+
         // Return updated state / command.
         if (results.isEmpty() && includeNonMotionStates) {
             GcodeParser.GcodeMeta meta = new GcodeParser.GcodeMeta();
@@ -173,6 +170,97 @@ public class GcodeParserUtils {
         return results;
     }
 
+    /**
+     * Creates the meta data of a linear motion the same way as parsing a command like "G1X1Y2Z3" with
+     * {@link #processCommand(String, int, GcodeState)} would, without having to format and parse the command.
+     * The coordinates are absolute or relative depending on the distance mode of the state, the same as
+     * the words of a command. The line number is taken from the command number of the state.
+     *
+     * @param code       the motion code, G0 or G1
+     * @param x          the x coordinate or NaN if not given
+     * @param y          the y coordinate or NaN if not given
+     * @param z          the z coordinate or NaN if not given
+     * @param inputState the state when the command will run, it will not be modified
+     * @return the meta data of the motion, the command of the meta data is not set
+     */
+    public static GcodeParser.GcodeMeta createLinearMotion(Code code, double x, double y, double z, final GcodeState inputState) {
+        if (code != Code.G0 && code != Code.G1) {
+            throw new IllegalArgumentException("Only G0 and G1 linear motions are supported, got " + code);
+        }
+
+        GcodeState state = inputState.copy();
+        Position nextPoint = GcodePreprocessorUtils.updatePointWithCommand(
+                state.currentPoint, x, y, z, Double.NaN, Double.NaN, Double.NaN, state.inAbsoluteMode);
+
+        GcodeParser.GcodeMeta meta = new GcodeParser.GcodeMeta();
+        meta.code = code;
+        meta.point = addLinearPointSegment(nextPoint, code == Code.G0, state.commandNumber, state);
+        meta.point.setFeedRate(state.feedRate);
+        meta.point.setSpindleSpeed(state.spindleSpeed);
+        state.currentMotionMode = code;
+        meta.state = state;
+        return meta;
+    }
+
+    /**
+     * Creates the meta data of the line generated by
+     * {@link GcodePreprocessorUtils#generateLineFromPoints(Code, CNCPoint, CNCPoint, boolean, DecimalFormat)}
+     * with the same arguments, as if it was parsed with the given state. The coordinates are rounded the same
+     * way as they would be formatted, so the result is the same as formatting and parsing the line.
+     *
+     * @param code         the motion code, G0 or G1
+     * @param start        the start point of the line, used for relative coordinates
+     * @param end          the end point of the line
+     * @param absoluteMode if the line is generated with absolute or relative coordinates
+     * @param formatter    the formatter used for generating the line or null for the default
+     * @param inputState   the state when the line will run, it will not be modified
+     * @return the meta data of the motion, the command of the meta data is not set
+     */
+    public static GcodeParser.GcodeMeta createLinearMotion(Code code, CNCPoint start, CNCPoint end, boolean absoluteMode, DecimalFormat formatter, final GcodeState inputState) {
+        double x = absoluteMode ? end.x : end.x - start.x;
+        double y = absoluteMode ? end.y : end.y - start.y;
+        double z = absoluteMode ? end.z : end.z - start.z;
+        return createLinearMotion(code,
+                GcodePreprocessorUtils.roundToFormat(x, formatter),
+                GcodePreprocessorUtils.roundToFormat(y, formatter),
+                GcodePreprocessorUtils.roundToFormat(z, formatter),
+                inputState);
+    }
+
+    /**
+     * Returns true if the word has the given letter and the same code hasn't been used
+     * in a previous word, codes are only applied once per line.
+     */
+    private static boolean isFirstCodeOccurrence(GcodeWordTokenizer words, int index, char letter) {
+        if (words.getLetter(index) != letter) {
+            return false;
+        }
+
+        Code code = words.getCode(index);
+        for (int i = 0; i < index; i++) {
+            if (words.getLetter(i) == letter && words.getCode(i) == code) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void applyGCode(Code code, GcodeWordTokenizer words, String command, int line, GcodeState state, List<GcodeParser.GcodeMeta> results) throws GcodeParserException {
+        if (code == UNKNOWN) {
+            LOGGER.warning("An unknown gcode command was detected in: " + command);
+            return;
+        }
+
+        GcodeParser.GcodeMeta meta = handleGCode(code, words, line, state);
+        meta.command = command;
+        // Commands like 'G21' don't return a point segment.
+        if (meta.point != null) {
+            meta.point.setFeedRate(state.feedRate);
+            meta.point.setSpindleSpeed(state.spindleSpeed);
+        }
+        results.add(meta);
+    }
+
     private static PointSegment addProbePointSegment(Position nextPoint, boolean fastTraverse, int line, GcodeState state) {
         PointSegment ps = addLinearPointSegment(nextPoint, fastTraverse, line, state);
         ps.setIsProbe(true);
@@ -205,7 +293,7 @@ public class GcodeParserUtils {
     /**
      * Create a PointSegment representing the arc command.
      */
-    private static PointSegment addArcPointSegment(Position nextPoint, boolean clockwise, List<String> args, int line, GcodeState state) {
+    private static PointSegment addArcPointSegment(Position nextPoint, boolean clockwise, GcodeWordTokenizer words, int line, GcodeState state) {
         if (nextPoint == null) {
             return null;
         }
@@ -215,9 +303,9 @@ public class GcodeParserUtils {
         PlaneFormatter plane = new PlaneFormatter(state.plane);
         Position center =
                 GcodePreprocessorUtils.updateCenterWithCommand(
-                        args, state.currentPoint, nextPoint, state.inAbsoluteIJKMode, clockwise, plane);
+                        words, state.currentPoint, nextPoint, state.inAbsoluteIJKMode, clockwise, plane);
 
-        double radius = GcodePreprocessorUtils.parseCoord(args, 'R');
+        double radius = words.getCoord('R');
 
         // Calculate radius if necessary, according to the current G17/18/19 Plane
         if (Double.isNaN(radius)) {
@@ -248,7 +336,7 @@ public class GcodeParserUtils {
      * <p>
      * A copy of the state object should go in the resulting GcodeMeta object.
      */
-    private static GcodeParser.GcodeMeta handleGCode(final Code code, List<String> args, int line, GcodeState state)
+    private static GcodeParser.GcodeMeta handleGCode(final Code code, GcodeWordTokenizer words, int line, GcodeState state)
             throws GcodeParserException {
         GcodeParser.GcodeMeta meta = new GcodeParser.GcodeMeta();
 
@@ -258,7 +346,7 @@ public class GcodeParserUtils {
 
         // If it is a movement code make sure it has some coordinates.
         if (code.consumesMotion()) {
-            nextPoint = GcodePreprocessorUtils.updatePointWithCommand(args, state.currentPoint, state.inAbsoluteMode);
+            nextPoint = GcodePreprocessorUtils.updatePointWithCommand(words, state.currentPoint, state.inAbsoluteMode);
 
             if (nextPoint == null) {
                 if (!code.motionOptional()) {
@@ -282,10 +370,10 @@ public class GcodeParserUtils {
 
             // Arc command.
             case G2:
-                meta.point = addArcPointSegment(nextPoint, true, args, line, state);
+                meta.point = addArcPointSegment(nextPoint, true, words, line, state);
                 break;
             case G3:
-                meta.point = addArcPointSegment(nextPoint, false, args, line, state);
+                meta.point = addArcPointSegment(nextPoint, false, words, line, state);
                 break;
 
             case G17:
@@ -369,10 +457,8 @@ public class GcodeParserUtils {
      */
     public static void processAndExport(GcodeParser gcp, File input, IGcodeWriter output)
             throws IOException, GcodeParserException {
-        try (InputStream inputStream = new FileInputStream(input)) {
-            if (processAndExportGcodeStream(gcp, inputStream, output)) {
-                return;
-            }
+        if (processAndExportGcodeStream(gcp, input, output)) {
+            return;
         }
 
         try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8.name()))) {
@@ -402,7 +488,7 @@ public class GcodeParserUtils {
      * Attempts to read the input file in GcodeStream format.
      * @return whether or not we succeed processing the file.
      */
-    private static boolean processAndExportGcodeStream(GcodeParser gcp, InputStream input, IGcodeWriter output)
+    private static boolean processAndExportGcodeStream(GcodeParser gcp, File input, IGcodeWriter output)
             throws IOException, GcodeParserException {
 
         // Preprocess a GcodeStream file.
@@ -0,0 +1,291 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.willwinder.universalgcodesender.gcode.DefaultCommandCreator;
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import com.willwinder.universalgcodesender.utils.GcodeStreamReader;
+import com.willwinder.universalgcodesender.utils.IGcodeStreamReader;
+import com.willwinder.universalgcodesender.utils.IGcodeWriter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Preprocesses a gcode file in parallel. The work is split into three stages:
+ * <ol>
+ *     <li>A reader stage which reads the file and runs each line through the parser to
+ *     track the modal state. The state is snapshotted at the start of each chunk of lines.</li>
+ *     <li>A fork/join stage which applies the command processors on each chunk in parallel,
+ *     starting from the snapshotted state.</li>
+ *     <li>A writer stage which writes the processed chunks to the output in their original order.</li>
+ * </ol>
+ * The output is identical to {@link GcodeParserUtils#processAndExport(GcodeParser, File, IGcodeWriter)}, which
+ * is used as a fallback if any of the command processors are not stateless or if there is no parallelism available.
+ *
+ * @author wwinder
+ */
+public class GcodePreprocessorPipeline {
+    private static final Logger LOGGER = Logger.getLogger(GcodePreprocessorPipeline.class.getName());
+    public static final int DEFAULT_CHUNK_SIZE = 2000;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int maxChunksInFlight;
+
+    /**
+     * Creates a pipeline using the common fork/join pool
+     */
+    public GcodePreprocessorPipeline() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a pipeline
+     *
+     * @param pool      the pool to process the chunks on
+     * @param chunkSize the number of lines in each chunk
+     */
+    public GcodePreprocessorPipeline(ForkJoinPool pool, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be at least one line");
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+
+        // Limits the number of lines kept in memory while waiting to be written
+        this.maxChunksInFlight = Math.max(2, pool.getParallelism() * 2);
+    }
+
+    /**
+     * Applies the command processors of the parser on the input file and writes the result
+     * to the output. The parser state will be the same as after processing it sequentially.
+     *
+     * @param gcp    the parser with the command processors to use
+     * @param input  a gcode file or a gcode stream file
+     * @param output the writer to write the processed gcode to
+     * @throws IOException          if the file could not be read or written
+     * @throws GcodeParserException if the gcode could not be parsed
+     */
+    public void processAndExport(GcodeParser gcp, File input, IGcodeWriter output) throws IOException, GcodeParserException {
+        if (pool.getParallelism() < 2 || !gcp.isPreprocessingStateless()) {
+            GcodeParserUtils.processAndExport(gcp, input, output);
+            return;
+        }
+
+        Pipeline pipeline = new Pipeline(gcp, output);
+        try {
+            if (!readGcodeStream(input, pipeline)) {
+                readText(input, pipeline);
+            }
+        } finally {
+            // Write all chunks that has been read, if a chunk failed its error will be thrown
+            pipeline.flush();
+        }
+    }
+
+    private static boolean readGcodeStream(File input, Pipeline pipeline) throws IOException, GcodeParserException {
+        try (IGcodeStreamReader gsr = new GcodeStreamReader(input, new DefaultCommandCreator())) {
+            int i = 0;
+            while (gsr.getNumRowsRemaining() > 0) {
+                i++;
+                GcodeCommand gc = gsr.getNextCommand();
+                pipeline.addLine(gc.getCommandString(), gc.getComment(), i);
+            }
+            return true;
+        } catch (GcodeStreamReader.NotGcodeStreamFile ex) {
+            // File exists, but isn't a stream reader. So go ahead and try parsing it as a raw gcode file.
+            return false;
+        }
+    }
+
+    private static void readText(File input, Pipeline pipeline) throws IOException, GcodeParserException {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8))) {
+            int i = 0;
+            for (String line; (line = br.readLine()) != null; ) {
+                i++;
+                String comment = GcodePreprocessorUtils.parseComment(line);
+                pipeline.addLine(line, comment, i);
+            }
+        }
+    }
+
+    /**
+     * Replicates how {@link GcodeParser#addCommand(String)} updates the state without
+     * touching the parser.
+     */
+    private static GcodeState nextState(String command, GcodeState state) throws GcodeParserException {
+        GcodeState result = state;
+        int line = ++state.commandNumber;
+        Collection<GcodeParser.GcodeMeta> metaObjects = GcodeParserUtils.processCommand(command, line, state, true);
+        if (metaObjects != null) {
+            for (GcodeParser.GcodeMeta meta : metaObjects) {
+                if (meta.state != null) {
+                    result = meta.state;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keeps track of the chunks being read, processed and written.
+     */
+    private class Pipeline {
+        private final GcodeParser gcp;
+        private final IGcodeWriter output;
+        private final Deque<ForkJoinTask<Chunk>> pending = new ArrayDeque<>();
+        private Chunk currentChunk;
+
+        private Pipeline(GcodeParser gcp, IGcodeWriter output) {
+            this.gcp = gcp;
+            this.output = output;
+        }
+
+        private void addLine(String command, String comment, int index) throws GcodeParserException {
+            if (index % 100000 == 0) {
+                LOGGER.log(Level.FINE, "gcode processing line: " + index);
+            }
+
+            if (currentChunk == null) {
+                currentChunk = new Chunk(gcp, gcp.getCurrentState().copy(), index, chunkSize);
+            }
+            currentChunk.add(command, comment);
+
+            // The modal state pass, if it fails the line is still preprocessed and written before the error is thrown
+            gcp.addCommand(command);
+
+            if (currentChunk.size == chunkSize) {
+                submitCurrentChunk();
+                writeCompletedChunks();
+            }
+        }
+
+        private void submitCurrentChunk() throws GcodeParserException {
+            if (currentChunk == null) {
+                return;
+            }
+
+            while (pending.size() >= maxChunksInFlight) {
+                write(pending.removeFirst().join());
+            }
+            pending.addLast(pool.submit((Callable<Chunk>) currentChunk));
+            currentChunk = null;
+        }
+
+        private void writeCompletedChunks() throws GcodeParserException {
+            while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+                write(pending.removeFirst().join());
+            }
+        }
+
+        private void flush() throws GcodeParserException {
+            try {
+                submitCurrentChunk();
+                while (!pending.isEmpty()) {
+                    write(pending.removeFirst().join());
+                }
+            } finally {
+                pending.forEach(task -> task.cancel(true));
+                pending.clear();
+            }
+        }
+
+        private void write(Chunk chunk) throws GcodeParserException {
+            for (int i = 0; i < chunk.completed; i++) {
+                for (String processedLine : chunk.results.get(i)) {
+                    output.addLine(chunk.commands[i], processedLine, chunk.comments[i], chunk.firstIndex + i);
+                }
+            }
+
+            if (chunk.error instanceof GcodeParserException) {
+                throw (GcodeParserException) chunk.error;
+            } else if (chunk.error instanceof RuntimeException) {
+                throw (RuntimeException) chunk.error;
+            }
+        }
+    }
+
+    /**
+     * A sequence of lines which are preprocessed starting from a snapshot of the modal state.
+     */
+    private static class Chunk implements Callable<Chunk> {
+        private final GcodeParser gcp;
+        private final GcodeState startState;
+        private final int firstIndex;
+        private final String[] commands;
+        private final String[] comments;
+        private final List<List<String>> results;
+        private int size;
+        private int completed;
+        private Exception error;
+
+        private Chunk(GcodeParser gcp, GcodeState startState, int firstIndex, int capacity) {
+            this.gcp = gcp;
+            this.startState = startState;
+            this.firstIndex = firstIndex;
+            this.commands = new String[capacity];
+            this.comments = new String[capacity];
+            this.results = new ArrayList<>(Collections.nCopies(capacity, null));
+        }
+
+        private void add(String command, String comment) {
+            commands[size] = command;
+            comments[size] = comment;
+            size++;
+        }
+
+        @Override
+        public Chunk call() {
+            GcodeState state = startState;
+            try {
+                for (int i = 0; i < size; i++) {
+                    results.set(i, gcp.preprocessCommand(commands[i], state));
+                    completed = i + 1;
+
+                    // The state after the last line isn't needed
+                    if (i < size - 1) {
+                        state = nextState(commands[i], state);
+                    }
+                }
+            } catch (GcodeParserException | RuntimeException e) {
+                error = e;
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,455 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import java.util.Arrays;
+
+/**
+ * A reusable tokenizer which splits a gcode command into words, like "G1", "X-0.5" or "(comment)".
+ * The words are parsed once into primitive arrays which can be queried without allocating
+ * any objects, making it suitable for parsing large files line by line.
+ * <p>
+ * The words are split the same way as {@link com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils#splitCommand(String)}
+ * with the exception that empty words are never returned.
+ * <p>
+ * An instance is not thread safe and its content is replaced on each call to {@link #tokenize(String)}.
+ *
+ * @author wwinder
+ */
+public final class GcodeWordTokenizer {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_FAST_PATH_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    /**
+     * A hash table with all codes for looking them up from a character sequence
+     */
+    private static final Code[][] CODE_TABLE = createCodeTable();
+    private static final String[] CODE_NAMES = Arrays.stream(Code.values()).map(Code::toString).toArray(String[]::new);
+
+    private String command = "";
+    private int wordCount;
+
+    // The characters of each word, with any whitespace and ignored characters removed
+    private char[] text = new char[INITIAL_CAPACITY * 4];
+    private int textLength;
+
+    private char[] letters = new char[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private boolean[] validValues = new boolean[INITIAL_CAPACITY];
+    private int[] textStarts = new int[INITIAL_CAPACITY];
+    private int[] textLengths = new int[INITIAL_CAPACITY];
+    private int[] sourceStarts = new int[INITIAL_CAPACITY];
+    private int[] sourceEnds = new int[INITIAL_CAPACITY];
+
+    // State of the word being read
+    private int currentSourceStart;
+    private int currentSourceEnd;
+
+    /**
+     * Splits the given command into words, replacing any previously tokenized command.
+     *
+     * @param command the command to tokenize
+     * @return this tokenizer
+     */
+    public GcodeWordTokenizer tokenize(String command) {
+        this.command = command;
+        wordCount = 0;
+        textLength = 0;
+
+        // Special handling for GRBL system commands which will not be splitted
+        if (command.startsWith("$")) {
+            for (int i = 0; i < command.length(); i++) {
+                append(command.charAt(i), i);
+            }
+            endWord();
+            return this;
+        }
+
+        boolean readNumeric = false;
+        boolean readLineComment = false;
+        int blockCommentDepth = 0;
+
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+
+            if (c == '(' && !readLineComment) {
+                if (blockCommentDepth == 0) {
+                    endWord();
+                }
+                append(c, i);
+                blockCommentDepth++;
+                continue;
+            } else if (blockCommentDepth > 0 && c == ')') {
+                append(c, i);
+                blockCommentDepth--;
+                if (blockCommentDepth == 0) {
+                    endWord();
+                }
+                continue;
+            } else if (c == ';' && !readLineComment && blockCommentDepth == 0) {
+                endWord();
+                append(c, i);
+                readLineComment = true;
+                continue;
+            }
+
+            if (readLineComment || blockCommentDepth > 0) {
+                append(c, i);
+            } else if (Character.isWhitespace(c)) {
+                continue;
+            }
+            // If the last character was numeric (readNumeric is true) and this
+            // character is a letter or whitespace, then we hit a boundary.
+            else if (readNumeric && !Character.isDigit(c) && c != '.') {
+                readNumeric = false;
+                endWord();
+
+                if (Character.isLetter(c)) {
+                    append(c, i);
+                }
+            } else if (Character.isDigit(c) || c == '.' || c == '-') {
+                append(c, i);
+                readNumeric = true;
+            } else if (Character.isLetter(c)) {
+                append(c, i);
+            }
+        }
+
+        endWord();
+        return this;
+    }
+
+    /**
+     * @return the command that was tokenized
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the number of words in the command
+     */
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Returns the upper case letter of the word, or the first character if the word isn't
+     * a letter followed by a value such as a comment or a system command.
+     *
+     * @param index the index of the word
+     * @return the letter of the word
+     */
+    public char getLetter(int index) {
+        checkIndex(index);
+        return letters[index];
+    }
+
+    /**
+     * Returns the value after the letter, for instance -0.5 for "X-0.5".
+     *
+     * @param index the index of the word
+     * @return the value of the word or NaN if it had no value or if it couldn't be parsed
+     */
+    public double getValue(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * @param index the index of the word
+     * @return true if the word has a value which could be parsed as a number
+     */
+    public boolean hasValue(int index) {
+        checkIndex(index);
+        return validValues[index];
+    }
+
+    /**
+     * @param index the index of the word
+     * @return true if the word is a block or line comment
+     */
+    public boolean isComment(int index) {
+        checkIndex(index);
+        return letters[index] == '(' || letters[index] == ';';
+    }
+
+    /**
+     * @param index the index of the word
+     * @return the offset of the first character of the word in the command
+     */
+    public int getSourceStart(int index) {
+        checkIndex(index);
+        return sourceStarts[index];
+    }
+
+    /**
+     * @param index the index of the word
+     * @return the offset after the last character of the word in the command
+     */
+    public int getSourceEnd(int index) {
+        checkIndex(index);
+        return sourceEnds[index];
+    }
+
+    /**
+     * Returns the word as a string. Note that this method allocates a new string and should be avoided when
+     * parsing large amounts of commands.
+     *
+     * @param index the index of the word
+     * @return the word without any whitespaces, like "G1" or "X-0.5"
+     */
+    public String getWord(int index) {
+        checkIndex(index);
+        return new String(text, textStarts[index], textLengths[index]);
+    }
+
+    /**
+     * Looks up the code of the word the same way as {@link Code#lookupCode(String)}.
+     *
+     * @param index the index of the word
+     * @return the code or {@link Code#UNKNOWN} if the word isn't a known code
+     */
+    public Code getCode(int index) {
+        checkIndex(index);
+        int start = textStarts[index];
+        int length = textLengths[index];
+
+        // Strip leading zeros in a way that leaves the last zero in case of 'G0'
+        int restStart = 1;
+        for (int i = 1; i < length; i++) {
+            restStart = i;
+            if (text[start + i] != '0') {
+                break;
+            }
+        }
+
+        char letter = letters[index];
+        int hash = letter;
+        for (int i = restStart; i < length; i++) {
+            hash = 31 * hash + text[start + i];
+        }
+
+        Code[] bucket = CODE_TABLE[hash & (CODE_TABLE.length - 1)];
+        for (Code code : bucket) {
+            String name = CODE_NAMES[code.ordinal()];
+            if (name.length() == length - restStart + 1 && name.charAt(0) == letter && regionMatches(name, start + restStart, length - restStart)) {
+                return code;
+            }
+        }
+        return Code.UNKNOWN;
+    }
+
+    /**
+     * Returns the index of the first word with the given letter.
+     *
+     * @param letter the letter to search for, case-insensitive
+     * @return the index of the word or -1 if not found
+     */
+    public int indexOf(char letter) {
+        char address = Character.toUpperCase(letter);
+        for (int i = 0; i < wordCount; i++) {
+            if (letters[i] == address) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of words with the given letter.
+     *
+     * @param letter the letter to search for, case-insensitive
+     * @return the number of words with the letter
+     */
+    public int count(char letter) {
+        char address = Character.toUpperCase(letter);
+        int result = 0;
+        for (int i = 0; i < wordCount; i++) {
+            if (letters[i] == address) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of the first word with the given letter, the same as
+     * {@link com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils#parseCoord(java.util.List, char)}.
+     *
+     * @param letter the letter to search for, case-insensitive
+     * @return the value or NaN if the word couldn't be found or didn't have a value
+     */
+    public double getCoord(char letter) {
+        int index = indexOf(letter);
+        if (index < 0) {
+            return Double.NaN;
+        }
+        return values[index];
+    }
+
+    /**
+     * @return true if the command has any X, Y, Z, A, B or C words with a value
+     */
+    public boolean hasAxisWords() {
+        for (int i = 0; i < wordCount; i++) {
+            char c = letters[i];
+            if (textLengths[i] > 1 && (c == 'X' || c == 'Y' || c == 'Z' || c == 'A' || c == 'B' || c == 'C')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= wordCount) {
+            throw new IndexOutOfBoundsException("Word index " + index + " out of bounds for " + wordCount + " words");
+        }
+    }
+
+    private boolean regionMatches(String name, int textOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i + 1) != text[textOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(char c, int sourceIndex) {
+        if (textLength == text.length) {
+            text = Arrays.copyOf(text, text.length * 2);
+        }
+
+        if (textLength == currentTextStart()) {
+            currentSourceStart = sourceIndex;
+        }
+        currentSourceEnd = sourceIndex + 1;
+        text[textLength++] = c;
+    }
+
+    private int currentTextStart() {
+        return wordCount == 0 ? 0 : textStarts[wordCount - 1] + textLengths[wordCount - 1];
+    }
+
+    private void endWord() {
+        int start = currentTextStart();
+        int length = textLength - start;
+        if (length == 0) {
+            return;
+        }
+
+        if (wordCount == letters.length) {
+            grow();
+        }
+
+        letters[wordCount] = Character.toUpperCase(text[start]);
+        textStarts[wordCount] = start;
+        textLengths[wordCount] = length;
+        sourceStarts[wordCount] = currentSourceStart;
+        sourceEnds[wordCount] = currentSourceEnd;
+        parseValue(wordCount, start + 1, length - 1);
+        wordCount++;
+    }
+
+    /**
+     * Parses the value of a word with the same result as {@link Double#parseDouble(String)}. Plain decimal numbers
+     * with few digits are parsed without allocating, in those cases both the digits and the power of ten are exactly
+     * representable as doubles which makes the division correctly rounded.
+     */
+    private void parseValue(int index, int offset, int length) {
+        double value = Double.NaN;
+        boolean valid = false;
+
+        if (letters[index] == '(' || letters[index] == ';' || length == 0) {
+            // No value
+        } else if (isFastPathNumber(offset, length)) {
+            boolean negative = text[offset] == '-';
+            long digits = 0;
+            int fractionDigits = 0;
+            boolean fraction = false;
+            for (int i = negative ? offset + 1 : offset; i < offset + length; i++) {
+                char c = text[i];
+                if (c == '.') {
+                    fraction = true;
+                } else {
+                    digits = digits * 10 + (c - '0');
+                    if (fraction) {
+                        fractionDigits++;
+                    }
+                }
+            }
+            value = digits / POWERS_OF_TEN[fractionDigits];
+            value = negative ? -value : value;
+            valid = true;
+        } else {
+            try {
+                value = Double.parseDouble(new String(text, offset, length));
+                valid = true;
+            } catch (NumberFormatException e) {
+                value = Double.NaN;
+            }
+        }
+
+        values[index] = value;
+        validValues[index] = valid;
+    }
+
+    private boolean isFastPathNumber(int offset, int length) {
+        int digits = 0;
+        int decimalPoints = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text[offset + i];
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.') {
+                decimalPoints++;
+            } else if (c != '-' || i != 0) {
+                return false;
+            }
+        }
+        return digits > 0 && digits <= MAX_FAST_PATH_DIGITS && decimalPoints <= 1;
+    }
+
+    private void grow() {
+        int capacity = letters.length * 2;
+        letters = Arrays.copyOf(letters, capacity);
+        values = Arrays.copyOf(values, capacity);
+        validValues = Arrays.copyOf(validValues, capacity);
+        textStarts = Arrays.copyOf(textStarts, capacity);
+        textLengths = Arrays.copyOf(textLengths, capacity);
+        sourceStarts = Arrays.copyOf(sourceStarts, capacity);
+        sourceEnds = Arrays.copyOf(sourceEnds, capacity);
+    }
+
+    private static Code[][] createCodeTable() {
+        Code[] codes = Code.values();
+        int size = Integer.highestOneBit(codes.length * 4);
+        Code[][] table = new Code[size][0];
+        for (Code code : codes) {
+            int bucket = code.toString().hashCode() & (size - 1);
+            table[bucket] = Arrays.copyOf(table[bucket], table[bucket].length + 1);
+            table[bucket][table[bucket].length - 1] = code;
+        }
+        return table;
+    }
+}
@@ -38,6 +38,7 @@ public class ControllerStatus {
     private final ControllerState state;
     private final UnitUtils.Units feedSpeedUnits;
     private final String subState;
+    private final BufferState bufferState;
 
     /**
      * Baseline constructor. This data should always be present. Represents the
@@ -68,6 +69,18 @@ public class ControllerStatus {
                             Position workCoord, Double feedSpeed, UnitUtils.Units feedSpeedUnits, Double spindleSpeed,
                             OverridePercents overrides, Position workCoordinateOffset,
                             EnabledPins pins, AccessoryStates states) {
+        this(state, subState, machineCoord, workCoord, feedSpeed, feedSpeedUnits, spindleSpeed, overrides, workCoordinateOffset, pins, states, null);
+    }
+
+    /**
+     * Additional parameters
+     *
+     * @param bufferState the planner and serial buffer availability if reported by the controller, may be null
+     */
+    public ControllerStatus(ControllerState state, String subState, Position machineCoord,
+                            Position workCoord, Double feedSpeed, UnitUtils.Units feedSpeedUnits, Double spindleSpeed,
+                            OverridePercents overrides, Position workCoordinateOffset,
+                            EnabledPins pins, AccessoryStates states, BufferState bufferState) {
         this.state = state;
         this.subState = subState;
         this.machineCoord = machineCoord;
@@ -79,6 +92,7 @@ public class ControllerStatus {
         this.overrides = overrides;
         this.pins = pins;
         this.accessoryStates = states;
+        this.bufferState = bufferState;
     }
 
     public ControllerStatus() {
@@ -139,6 +153,15 @@ public class ControllerStatus {
         return subState;
     }
 
+    /**
+     * Returns the buffer state as reported by the controller, for GRBL this is the "Bf:" field.
+     *
+     * @return the buffer state or null if it wasn't reported
+     */
+    public BufferState getBufferState() {
+        return bufferState;
+    }
+
     public static class EnabledPins {
         public static final EnabledPins EMPTY_PINS = new EnabledPins("");
 
@@ -227,4 +250,31 @@ public class ControllerStatus {
             return HashCodeBuilder.reflectionHashCode(this);
         }
     }
+
+    public static class BufferState {
+        /**
+         * The number of available blocks in the planner buffer
+         */
+        final public int plannerBlocksAvailable;
+
+        /**
+         * The number of available bytes in the serial RX buffer
+         */
+        final public int rxBytesAvailable;
+
+        public BufferState(int plannerBlocksAvailable, int rxBytesAvailable) {
+            this.plannerBlocksAvailable = plannerBlocksAvailable;
+            this.rxBytesAvailable = rxBytesAvailable;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return EqualsBuilder.reflectionEquals(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return HashCodeBuilder.reflectionHashCode(this);
+        }
+    }
 }
@@ -0,0 +1,51 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.listeners;
+
+/**
+ * A listener for getting the progress of a file transfer to or from the controller
+ *
+ * @author Joacim Breiler
+ */
+public interface FileTransferListener {
+    /**
+     * A listener that ignores all events
+     */
+    FileTransferListener NONE = (transferredBytes, totalBytes, bytesPerSecond) -> {
+    };
+
+    /**
+     * Called each time a block has been transferred
+     *
+     * @param transferredBytes the number of bytes that has been transferred so far
+     * @param totalBytes       the total number of bytes to transfer or -1 if unknown
+     * @param bytesPerSecond   the average throughput since the transfer started
+     */
+    void onProgress(long transferredBytes, long totalBytes, long bytesPerSecond);
+
+    /**
+     * Called when a block was rejected or not acknowledged in time and is sent again
+     *
+     * @param blockNumber the number of the block that is sent again
+     * @param retryCount  the number of times the block has been sent again
+     */
+    default void onRetry(int blockNumber, int retryCount) {
+        // Not used by default
+    }
+}
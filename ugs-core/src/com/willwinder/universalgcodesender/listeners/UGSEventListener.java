@@ -26,4 +26,15 @@ import com.willwinder.universalgcodesender.model.UGSEvent;
  */
 public interface UGSEventListener {
     void UGSEvent(UGSEvent evt);
+
+    /**
+     * When events are dispatched asynchronously a burst of COMMAND_COMPLETE events which haven't
+     * been handled yet may be coalesced into the last one. This should only be enabled for
+     * listeners that are only interested in the latest completed command, such as visualizers.
+     *
+     * @return true if COMMAND_COMPLETE events may be coalesced for this listener
+     */
+    default boolean isCommandCompleteCoalescingEnabled() {
+        return false;
+    }
 }
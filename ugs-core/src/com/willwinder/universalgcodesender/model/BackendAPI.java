@@ -24,8 +24,10 @@ import com.willwinder.universalgcodesender.gcode.GcodeParser;
 import com.willwinder.universalgcodesender.gcode.ICommandCreator;
 import com.willwinder.universalgcodesender.gcode.processors.CommandProcessor;
 import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
 import com.willwinder.universalgcodesender.listeners.MessageListener;
 import com.willwinder.universalgcodesender.listeners.MessageType;
+import com.willwinder.universalgcodesender.services.StreamingTelemetry;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
 import com.willwinder.universalgcodesender.utils.Settings;
 
@@ -129,6 +131,28 @@ public interface BackendAPI extends BackendAPIReadOnly {
     void offsetTool(String axis, double offset, UnitUtils.Units units) throws Exception;
 
     void send() throws Exception;
+
+    /**
+     * Sets where {@link #send()} should start streaming the processed gcode file. This is reset
+     * when the file is processed again.
+     *
+     * @param row      the zero based row in the processed gcode file to start from
+     * @param commands commands to send before the row, used for restoring the machine state
+     */
+    void setSendStart(int row, List<String> commands);
+
+    /**
+     * Uploads the processed gcode file to the storage of the controller and runs it from there,
+     * which avoids the latency of streaming each command over the connection. This is only
+     * available for controllers with a file service. The call blocks until the upload is done.
+     *
+     * @param filename the file name on the controller, stored on the local file system of the
+     *                 controller if no file system is given
+     * @param listener a listener for the progress of the upload
+     * @throws Exception if the file could not be uploaded or started
+     */
+    void uploadAndRunFromController(String filename, FileTransferListener listener) throws Exception;
+
     void pauseResume() throws Exception;
     void cancel() throws Exception;
     void returnToZero() throws Exception;
@@ -172,6 +196,14 @@ public interface BackendAPI extends BackendAPIReadOnly {
     // Shouldn't be needed often.
     IController getController();
 
+    /**
+     * Returns the telemetry about how well commands have been streamed to the controller since
+     * the last stream was started, such as the acknowledgement latency and planner starvation.
+     *
+     * @return a snapshot of the streaming telemetry
+     */
+    StreamingTelemetry getStreamingTelemetry();
+
     /**
      * Returns the current controller state. If no controller is loaded or if it
      * is disconnected it will return {@link ControllerState#DISCONNECTED}
@@ -19,7 +19,9 @@
 package com.willwinder.universalgcodesender.model;
 
 import com.google.common.io.Files;
+import com.willwinder.universalgcodesender.CapabilitiesConstants;
 import com.willwinder.universalgcodesender.IController;
+import com.willwinder.universalgcodesender.IFileService;
 import com.willwinder.universalgcodesender.gcode.ICommandCreator;
 import com.willwinder.universalgcodesender.gcode.DefaultCommandCreator;
 import com.willwinder.universalgcodesender.gcode.GcodeParser;
@@ -30,9 +32,10 @@ import com.willwinder.universalgcodesender.gcode.processors.CommentProcessor;
 import com.willwinder.universalgcodesender.gcode.processors.DecimalProcessor;
 import com.willwinder.universalgcodesender.gcode.processors.M30Processor;
 import com.willwinder.universalgcodesender.gcode.processors.WhitespaceProcessor;
-import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.gcode.util.GcodePreprocessorPipeline;
 import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
 import com.willwinder.universalgcodesender.listeners.MessageListener;
 import com.willwinder.universalgcodesender.listeners.MessageType;
 import com.willwinder.universalgcodesender.listeners.UGSEventListener;
@@ -41,12 +44,18 @@ import com.willwinder.universalgcodesender.model.events.ControllerStateEvent;
 import com.willwinder.universalgcodesender.model.events.FileState;
 import com.willwinder.universalgcodesender.model.events.FileStateEvent;
 import com.willwinder.universalgcodesender.services.MessageService;
+import com.willwinder.universalgcodesender.services.StreamingTelemetry;
+import com.willwinder.universalgcodesender.services.StreamingTelemetryService;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
 import com.willwinder.universalgcodesender.utils.FirmwareUtils;
 import com.willwinder.universalgcodesender.utils.GcodeFileWriter;
+import com.willwinder.universalgcodesender.utils.GcodeStateIndexWriter;
+import com.willwinder.universalgcodesender.utils.GcodeStreamInputStream;
 import com.willwinder.universalgcodesender.utils.GcodeStreamReader;
 import com.willwinder.universalgcodesender.utils.GcodeStreamWriter;
+import com.willwinder.universalgcodesender.utils.IGcodeStreamReader;
 import com.willwinder.universalgcodesender.utils.IGcodeWriter;
+import com.willwinder.universalgcodesender.utils.RunFromGcodeStreamReader;
 import com.willwinder.universalgcodesender.utils.Settings;
 import com.willwinder.universalgcodesender.utils.Settings.FileStats;
 import com.willwinder.universalgcodesender.utils.SettingsFactory;
@@ -57,6 +66,7 @@ import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -77,6 +87,7 @@ public class GUIBackend implements BackendAPI {
     private final MessageService messageService = new MessageService();
     private final GcodeParser gcp = new GcodeParser();
     private final UGSEventDispatcher eventDispatcher;
+    private final StreamingTelemetryService streamingTelemetryService;
     private IController controller = null;
     private Settings settings = null;
     // GUI State
@@ -88,7 +99,13 @@ public class GUIBackend implements BackendAPI {
     /**
      * A temporary pointer to the active gcode stream. This is needed to make sure it is closed
      */
-    private GcodeStreamReader gcodeStream;
+    private IGcodeStreamReader gcodeStream;
+
+    /**
+     * The row in the processed file to start streaming from and the commands to send before it
+     */
+    private int sendStartRow = 0;
+    private List<String> sendStartCommands = Collections.emptyList();
 
     public GUIBackend() {
         this(new UGSEventDispatcher());
@@ -96,6 +113,7 @@ public class GUIBackend implements BackendAPI {
 
     public GUIBackend(UGSEventDispatcher eventDispatcher) {
         this.eventDispatcher = eventDispatcher;
+        this.streamingTelemetryService = new StreamingTelemetryService(this);
     }
 
     /////////////
@@ -134,10 +152,11 @@ public class GUIBackend implements BackendAPI {
      * stored in a GcodeStream formatted file.
      * Additional rules:
      * * Comment lines are left
+     * * Lines are processed in parallel if all command processors are stateless
      */
     protected void preprocessAndExportToFile(GcodeParser gcp, File input, IGcodeWriter gcw) throws Exception {
         logger.log(Level.INFO, "Preprocessing {0} to {1}", new Object[]{input.getCanonicalPath(), gcw.getCanonicalPath()});
-        GcodeParserUtils.processAndExport(gcp, input, gcw);
+        new GcodePreprocessorPipeline().processAndExport(gcp, input, gcw);
     }
 
     private void initGcodeParser() {
@@ -218,6 +237,7 @@ public class GUIBackend implements BackendAPI {
         logger.log(Level.INFO, "Applying settings.");
         this.settings = settings;
         this.settings.setSettingChangeListener(eventDispatcher);
+        this.eventDispatcher.setAsynchronous(settings.isAsynchronousEventDispatchEnabled());
         if (this.controller != null) {
             applySettingsToController(this.settings, this.controller);
         }
@@ -340,6 +360,11 @@ public class GUIBackend implements BackendAPI {
         return this.controller;
     }
 
+    @Override
+    public StreamingTelemetry getStreamingTelemetry() {
+        return streamingTelemetryService.getTelemetry();
+    }
+
     private File getTempDir() {
         if (tempDir == null) {
             tempDir = Files.createTempDir();
@@ -381,6 +406,7 @@ public class GUIBackend implements BackendAPI {
 
     private void processGcodeFile() throws Exception {
         this.processedGcodeFile = null;
+        setSendStart(0, Collections.emptyList());
 
         eventDispatcher.sendUGSEvent(new FileStateEvent(FileState.FILE_LOADING));
         initializeProcessedLines(true, this.gcodeFile, this.gcp);
@@ -480,7 +506,7 @@ public class GUIBackend implements BackendAPI {
             if (gcodeStream != null) {
                 gcodeStream.close();
             }
-            gcodeStream = new GcodeStreamReader(this.processedGcodeFile, getCommandCreator());
+            gcodeStream = createGcodeStream();
 
             // This will throw an exception and prevent that other stuff from
             // happening (clearing the table before it is ready for clearing.
@@ -493,6 +519,47 @@ public class GUIBackend implements BackendAPI {
         }
     }
 
+    private IGcodeStreamReader createGcodeStream() throws Exception {
+        GcodeStreamReader stream = new GcodeStreamReader(this.processedGcodeFile, getCommandCreator());
+        if (sendStartRow <= 0 && sendStartCommands.isEmpty()) {
+            return stream;
+        }
+
+        // The commands are replacing the skipped rows, use the line number of the last skipped row
+        ICommandCreator commandCreator = getCommandCreator();
+        int lineNumber = sendStartRow > 0 ? stream.getCommand(sendStartRow - 1).getCommandNumber() : 0;
+        List<GcodeCommand> commands = sendStartCommands.stream()
+                .map(command -> commandCreator.createCommand(command, command, "", lineNumber))
+                .collect(Collectors.toList());
+        return new RunFromGcodeStreamReader(stream, sendStartRow, commands);
+    }
+
+    @Override
+    public void setSendStart(int row, List<String> commands) {
+        this.sendStartRow = row;
+        this.sendStartCommands = List.copyOf(commands);
+    }
+
+    @Override
+    public void uploadAndRunFromController(String filename, FileTransferListener listener) throws Exception {
+        if (!canSend()) {
+            throw new Exception("Cannot upload the file while '" + getControlState() + "'.");
+        }
+
+        if (!controller.getCapabilities().hasCapability(CapabilitiesConstants.FILE_SYSTEM)) {
+            throw new Exception("The controller doesn't have a file system that files can be uploaded to.");
+        }
+
+        IFileService fileService = controller.getFileService();
+        logger.log(Level.INFO, String.format("Uploading gcode file (%s) to the controller as %s.", this.processedGcodeFile, filename));
+
+        // The size of the commands as text isn't known without reading them all, the progress is reported in bytes
+        try (InputStream data = new GcodeStreamInputStream(createGcodeStream())) {
+            fileService.uploadFile(filename, data, -1, listener);
+        }
+        fileService.runFile(filename);
+    }
+
     @Override
     public long getNumRows() {
         if (getControllerState() == ControllerState.RUN) {
@@ -679,6 +746,7 @@ public class GUIBackend implements BackendAPI {
         // Apply settings settings to controller.
         try {
             controller.setSingleStepMode(settings.isSingleStepMode());
+            controller.setBatchingEnabled(settings.isBatchingEnabled());
             controller.setStatusUpdatesEnabled(settings.isStatusUpdatesEnabled());
             controller.setStatusUpdateRate(settings.getStatusUpdateRate());
         } catch (Exception ex) {
@@ -780,7 +848,7 @@ public class GUIBackend implements BackendAPI {
                 }
 
                 this.processedGcodeFile = new File(this.getTempDir(), name + "_ugs_" + System.currentTimeMillis());
-                try (IGcodeWriter gcw = new GcodeStreamWriter(this.processedGcodeFile)) {
+                try (IGcodeWriter gcw = new GcodeStateIndexWriter(new GcodeStreamWriter(this.processedGcodeFile), this.processedGcodeFile)) {
                     this.preprocessAndExportToFile(gcodeParser, startFile, gcw);
                 }
 
@@ -0,0 +1,208 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.model;
+
+import com.willwinder.universalgcodesender.listeners.UGSEventListener;
+import com.willwinder.universalgcodesender.model.events.CommandEvent;
+import com.willwinder.universalgcodesender.model.events.CommandEventType;
+import com.willwinder.universalgcodesender.model.events.ControllerStatusEvent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Dispatches events to a listener from a bounded queue on a dedicated thread, so that a slow
+ * listener doesn't block the thread sending the events.
+ * <p>
+ * Events that are superseded before they are dispatched are coalesced:
+ * <ul>
+ *     <li>A queued {@link ControllerStatusEvent} is replaced by the newer status, keeping the
+ *     previous status of the replaced event</li>
+ *     <li>Consecutive COMMAND_COMPLETE events are replaced by the last one if the listener
+ *     {@link UGSEventListener#isCommandCompleteCoalescingEnabled() allows it}</li>
+ * </ul>
+ * If the queue is full the sender will wait until the listener has caught up, unless the
+ * event is sent from the listener itself in which case it is queued anyway to avoid a deadlock.
+ *
+ * @author wwinder
+ */
+class QueuedUGSEventListener {
+    private static final Logger LOGGER = Logger.getLogger(QueuedUGSEventListener.class.getSimpleName());
+    static final int DEFAULT_CAPACITY = 10_000;
+
+    private final UGSEventListener listener;
+    private final int capacity;
+    private final Deque<QueuedEvent> queue = new ArrayDeque<>();
+    private final Thread thread;
+    private boolean running = true;
+
+    /**
+     * The queued status event which hasn't been dispatched yet
+     */
+    private QueuedEvent pendingStatusEvent;
+
+    private int maxQueueDepth;
+    private long dispatchedEvents;
+    private long coalescedEvents;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+
+    QueuedUGSEventListener(UGSEventListener listener) {
+        this(listener, DEFAULT_CAPACITY);
+    }
+
+    QueuedUGSEventListener(UGSEventListener listener, int capacity) {
+        this.listener = listener;
+        this.capacity = capacity;
+        this.thread = new Thread(this::dispatchEvents, "UGSEvent-" + listener.getClass().getSimpleName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues an event to be dispatched to the listener, waits if the queue is full. Events sent
+     * from the dispatch thread are always queued as it would otherwise wait for itself.
+     *
+     * @param event the event to dispatch
+     */
+    synchronized void offer(UGSEvent event) {
+        if (!running) {
+            return;
+        }
+
+        if (coalesce(event)) {
+            coalescedEvents++;
+            return;
+        }
+
+        while (queue.size() >= capacity && running && Thread.currentThread() != thread) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        QueuedEvent queuedEvent = new QueuedEvent(event, System.nanoTime());
+        if (event instanceof ControllerStatusEvent) {
+            pendingStatusEvent = queuedEvent;
+        }
+        queue.addLast(queuedEvent);
+        maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+        notifyAll();
+    }
+
+    private boolean coalesce(UGSEvent event) {
+        if (event instanceof ControllerStatusEvent && pendingStatusEvent != null) {
+            // Move the status to the end of the queue to keep the order with other events
+            queue.removeLastOccurrence(pendingStatusEvent);
+            ControllerStatusEvent previousEvent = (ControllerStatusEvent) pendingStatusEvent.event;
+            ControllerStatusEvent statusEvent = (ControllerStatusEvent) event;
+            pendingStatusEvent.event = new ControllerStatusEvent(statusEvent.getStatus(), previousEvent.getPreviousStatus());
+            queue.addLast(pendingStatusEvent);
+            return true;
+        }
+
+        QueuedEvent lastEvent = queue.peekLast();
+        if (listener.isCommandCompleteCoalescingEnabled() && lastEvent != null
+                && isCoalescableCommandComplete(event) && isCoalescableCommandComplete(lastEvent.event)) {
+            lastEvent.event = event;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isCoalescableCommandComplete(UGSEvent event) {
+        if (!(event instanceof CommandEvent)) {
+            return false;
+        }
+
+        CommandEvent commandEvent = (CommandEvent) event;
+        return commandEvent.getCommandEventType() == CommandEventType.COMMAND_COMPLETE &&
+                !commandEvent.getCommand().isGenerated();
+    }
+
+    private synchronized QueuedEvent take() throws InterruptedException {
+        while (queue.isEmpty()) {
+            if (!running) {
+                return null;
+            }
+            wait();
+        }
+
+        QueuedEvent queuedEvent = queue.removeFirst();
+        if (queuedEvent == pendingStatusEvent) {
+            pendingStatusEvent = null;
+        }
+        notifyAll();
+        return queuedEvent;
+    }
+
+    private void dispatchEvents() {
+        try {
+            QueuedEvent queuedEvent;
+            while ((queuedEvent = take()) != null) {
+                // Recorded before notifying so the statistics include the event as soon as the listener has it
+                recordLatency(System.nanoTime() - queuedEvent.queuedNanos);
+                try {
+                    listener.UGSEvent(queuedEvent.event);
+                } catch (Exception e) {
+                    LOGGER.log(Level.SEVERE, "Could not dispatch the event " + queuedEvent.event.getClass().getSimpleName() +
+                            " to the listener " + listener.getClass().getSimpleName(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void recordLatency(long latencyNanos) {
+        dispatchedEvents++;
+        totalLatencyNanos += latencyNanos;
+        maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+    }
+
+    /**
+     * Stops accepting new events, the events already in the queue will be dispatched before
+     * the thread ends.
+     */
+    synchronized void close() {
+        running = false;
+        notifyAll();
+    }
+
+    synchronized UGSEventListenerStatistics getStatistics() {
+        long averageLatencyNanos = dispatchedEvents == 0 ? 0 : totalLatencyNanos / dispatchedEvents;
+        return new UGSEventListenerStatistics(listener.getClass().getSimpleName(), queue.size(), maxQueueDepth,
+                dispatchedEvents, coalescedEvents, averageLatencyNanos, maxLatencyNanos);
+    }
+
+    private static class QueuedEvent {
+        private final long queuedNanos;
+        private UGSEvent event;
+
+        private QueuedEvent(UGSEvent event, long queuedNanos) {
+            this.event = event;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+}
@@ -39,13 +39,20 @@ import com.willwinder.universalgcodesender.types.GcodeCommand;
 import com.willwinder.universalgcodesender.utils.SettingChangeListener;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * A class that is responsible for listening to various events from the controller and backend system and
  * dispatch them as UGS events.
+ * <p>
+ * By default the events are dispatched synchronously on the thread that generated them. In
+ * asynchronous mode each listener gets its own queue and thread so that a slow listener doesn't
+ * stall the controller communication, see {@link QueuedUGSEventListener}.
  *
  * @author Joacim Breiler
  */
@@ -53,6 +60,8 @@ public class UGSEventDispatcher implements ControllerListener, IFirmwareSettings
     private static final Logger LOGGER = Logger.getLogger(UGSEventDispatcher.class.getSimpleName());
 
     private final List<UGSEventListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<UGSEventListener, QueuedUGSEventListener> queuedListeners = new ConcurrentHashMap<>();
+    private volatile boolean asynchronous = false;
 
     /**
      * A cached instance of the controller status for preventing duplicate status events to be dispatched
@@ -61,6 +70,11 @@ public class UGSEventDispatcher implements ControllerListener, IFirmwareSettings
 
     public void sendUGSEvent(UGSEvent event) {
         LOGGER.log(Level.FINEST, "Sending event {0}.", event.getClass().getSimpleName());
+        if (asynchronous) {
+            queuedListeners.values().forEach(l -> l.offer(event));
+            return;
+        }
+
         listeners.forEach(l -> {
             try {
                 l.UGSEvent(event);
@@ -71,18 +85,64 @@ public class UGSEventDispatcher implements ControllerListener, IFirmwareSettings
         });
     }
 
-    public void addListener(UGSEventListener listener) {
+    public synchronized void addListener(UGSEventListener listener) {
         if (!listeners.contains(listener)) {
             LOGGER.log(Level.INFO, "Adding UGSEvent listener: {0}", listener.getClass().getSimpleName());
             listeners.add(listener);
+            if (asynchronous) {
+                queuedListeners.put(listener, new QueuedUGSEventListener(listener));
+            }
         }
     }
 
-    public void removeListener(UGSEventListener listener) {
+    public synchronized void removeListener(UGSEventListener listener) {
         if (listeners.contains(listener)) {
             LOGGER.log(Level.INFO, "Removing UGSEvent listener: {0}", listener.getClass().getSimpleName());
             listeners.remove(listener);
+            QueuedUGSEventListener queuedListener = queuedListeners.remove(listener);
+            if (queuedListener != null) {
+                queuedListener.close();
+            }
+        }
+    }
+
+    /**
+     * Switches between dispatching the events synchronously on the calling thread or
+     * asynchronously through a queue and thread for each listener. When switching back to
+     * synchronous mode the already queued events will still be dispatched.
+     *
+     * @param asynchronous true if the events should be dispatched asynchronously
+     */
+    public synchronized void setAsynchronous(boolean asynchronous) {
+        if (this.asynchronous == asynchronous) {
+            return;
         }
+
+        LOGGER.log(Level.INFO, "Dispatching UGSEvents {0}", asynchronous ? "asynchronously" : "synchronously");
+        if (asynchronous) {
+            listeners.forEach(l -> queuedListeners.put(l, new QueuedUGSEventListener(l)));
+            this.asynchronous = true;
+        } else {
+            this.asynchronous = false;
+            queuedListeners.values().forEach(QueuedUGSEventListener::close);
+            queuedListeners.clear();
+        }
+    }
+
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    /**
+     * Returns the queue depth and dispatch latency for each listener, these are only
+     * available when dispatching events asynchronously.
+     *
+     * @return a list with the statistics for each listener
+     */
+    public List<UGSEventListenerStatistics> getListenerStatistics() {
+        return queuedListeners.values().stream()
+                .map(QueuedUGSEventListener::getStatistics)
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -0,0 +1,89 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.model;
+
+/**
+ * A snapshot of the statistics for a listener that receives its events asynchronously
+ * through the {@link UGSEventDispatcher}.
+ *
+ * @author wwinder
+ */
+public class UGSEventListenerStatistics {
+    private final String listenerName;
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final long dispatchedEvents;
+    private final long coalescedEvents;
+    private final long averageLatencyNanos;
+    private final long maxLatencyNanos;
+
+    public UGSEventListenerStatistics(String listenerName, int queueDepth, int maxQueueDepth, long dispatchedEvents, long coalescedEvents, long averageLatencyNanos, long maxLatencyNanos) {
+        this.listenerName = listenerName;
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.dispatchedEvents = dispatchedEvents;
+        this.coalescedEvents = coalescedEvents;
+        this.averageLatencyNanos = averageLatencyNanos;
+        this.maxLatencyNanos = maxLatencyNanos;
+    }
+
+    public String getListenerName() {
+        return listenerName;
+    }
+
+    /**
+     * Returns the number of events waiting to be dispatched to the listener
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getDispatchedEvents() {
+        return dispatchedEvents;
+    }
+
+    /**
+     * Returns the number of events that were superseded by a newer event before they were dispatched
+     */
+    public long getCoalescedEvents() {
+        return coalescedEvents;
+    }
+
+    /**
+     * Returns the average time from when an event was sent until it was passed to the listener
+     */
+    public long getAverageLatencyNanos() {
+        return averageLatencyNanos;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: queue=%d (max %d), dispatched=%d, coalesced=%d, latency=%.2fms (max %.2fms)",
+                listenerName, queueDepth, maxQueueDepth, dispatchedEvents, coalescedEvents,
+                averageLatencyNanos / 1_000_000d, maxLatencyNanos / 1_000_000d);
+    }
+}
@@ -18,47 +18,80 @@
  */
 package com.willwinder.universalgcodesender.services;
 
+import com.willwinder.universalgcodesender.gcode.GcodeState;
 import com.willwinder.universalgcodesender.gcode.processors.RunFromProcessor;
 import com.willwinder.universalgcodesender.listeners.UGSEventListener;
 import com.willwinder.universalgcodesender.model.BackendAPI;
 import com.willwinder.universalgcodesender.model.UGSEvent;
+import com.willwinder.universalgcodesender.model.UnitUtils;
 import com.willwinder.universalgcodesender.model.events.FileState;
 import com.willwinder.universalgcodesender.model.events.FileStateEvent;
+import com.willwinder.universalgcodesender.utils.GcodeStateIndex;
+import com.willwinder.universalgcodesender.utils.GcodeStreamReader;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * A service that will handle skipping to given line numbers in a loaded gcode program. When this service is created it
- * will load a gcode processor to the backend which can be used to skip lines in the currently loaded program.
+ * A service that will handle skipping to given line numbers in a loaded gcode program. The state of the program
+ * at the line is looked up using the {@link GcodeStateIndex} written when the program was processed, and the
+ * backend is told to start streaming the processed program from the line.
  *
  * @author Joacim Breiler
  */
 public class RunFromService implements UGSEventListener {
+    private static final Logger LOGGER = Logger.getLogger(RunFromService.class.getName());
     private final BackendAPI backend;
     private final Set<RunFromServiceListener> listeners = new HashSet<>();
-    private final RunFromProcessor runFromProcessor = new RunFromProcessor(0);
+    private int lineNumber = 0;
 
     public RunFromService(BackendAPI backend) {
         this.backend = backend;
-        try {
-            this.backend.applyCommandProcessor(runFromProcessor);
-        } catch (Exception e) {
-            // Never mind this
-        }
         this.backend.addUGSEventListener(this);
     }
 
     public void runFromLine(int lineNumber) {
         try {
-            this.runFromProcessor.setLineNumber(lineNumber);
-            this.backend.applyCommandProcessor(runFromProcessor);
+            updateSendStart(lineNumber);
+            this.lineNumber = lineNumber;
             listeners.forEach(listener -> listener.runFromLineChanged(lineNumber));
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    private void updateSendStart(int lineNumber) throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        File processedGcodeFile = backend.getProcessedGcodeFile();
+        if (lineNumber <= 0 || processedGcodeFile == null) {
+            backend.setSendStart(0, Collections.emptyList());
+            return;
+        }
+
+        GcodeStateIndex index = GcodeStateIndex.load(processedGcodeFile);
+        try (GcodeStreamReader reader = new GcodeStreamReader(processedGcodeFile, backend.getCommandCreator())) {
+            // Uses the same line numbering as the RunFromProcessor, which compares the line number with the
+            // command number of the parser starting at -1, while the rows in the processed file are numbered from 1
+            GcodeStateIndex.Checkpoint checkpoint = index.seek(reader, lineNumber + 2);
+            if (checkpoint.getRow() >= reader.getNumRows()) {
+                throw new IllegalArgumentException("The line " + lineNumber + " is not in the program");
+            }
+
+            GcodeState state = checkpoint.getState();
+            double clearanceHeight = checkpoint.getMaxZ() / UnitUtils.scaleUnits(state.getUnits(), UnitUtils.Units.MM);
+            String command = reader.getCommand(checkpoint.getRow()).getCommandString();
+            List<String> commands = RunFromProcessor.createResumeCommands(state, clearanceHeight, command);
+
+            // The first row is replaced by its normalized version in the resume commands
+            backend.setSendStart(checkpoint.getRow() + 1, commands);
+        }
+    }
+
     public void addListener(RunFromServiceListener runFromServiceListener) {
         listeners.add(runFromServiceListener);
     }
@@ -71,6 +104,14 @@ public class RunFromService implements UGSEventListener {
     public void UGSEvent(UGSEvent evt) {
         if (evt instanceof FileStateEvent && ((FileStateEvent)evt).getFileState() == FileState.OPENING_FILE) {
             runFromLine(0);
+        } else if (evt instanceof FileStateEvent && ((FileStateEvent) evt).getFileState() == FileState.FILE_LOADED && lineNumber > 0) {
+            // The program was processed again, find the line in the new file
+            try {
+                updateSendStart(lineNumber);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Could not run from line " + lineNumber, e);
+                runFromLine(0);
+            }
         }
     }
 
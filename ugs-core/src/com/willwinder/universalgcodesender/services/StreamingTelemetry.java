@@ -0,0 +1,252 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.services;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A snapshot of the streaming telemetry collected by the {@link StreamingTelemetryService}
+ * since the last stream was started.
+ *
+ * @author wwinder
+ */
+public class StreamingTelemetry {
+    /**
+     * The upper bounds in milliseconds of the buckets in the acknowledgement latency histogram, the
+     * last bucket contains all latencies above the last bound.
+     */
+    public static final long[] LATENCY_BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private static final String CSV_HEADER = "second,commands_sent,commands_completed,ack_latency_avg_ms,ack_latency_max_ms," +
+            "rx_bytes_used_avg,planner_blocks_available_min,planner_blocks_available_avg,status_reports,starved";
+
+    private final List<Sample> samples;
+    private final List<StarvationWindow> starvationWindows;
+    private final long[] latencyHistogram;
+    private final int plannerBlockCount;
+    private final int rxBufferSize;
+
+    StreamingTelemetry(List<Sample> samples, List<StarvationWindow> starvationWindows, long[] latencyHistogram, int plannerBlockCount, int rxBufferSize) {
+        this.samples = Collections.unmodifiableList(new ArrayList<>(samples));
+        this.starvationWindows = Collections.unmodifiableList(new ArrayList<>(starvationWindows));
+        this.latencyHistogram = latencyHistogram.clone();
+        this.plannerBlockCount = plannerBlockCount;
+        this.rxBufferSize = rxBufferSize;
+    }
+
+    /**
+     * @return the telemetry for each second, the last sample is for the current second and may be incomplete
+     */
+    public List<Sample> getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return the periods where the controller was running out of planner blocks while there were more commands to send
+     */
+    public List<StarvationWindow> getStarvationWindows() {
+        return starvationWindows;
+    }
+
+    /**
+     * Returns the number of acknowledged commands for each latency bucket, see {@link #LATENCY_BUCKET_BOUNDS}
+     *
+     * @return a copy of the histogram
+     */
+    public long[] getLatencyHistogram() {
+        return latencyHistogram.clone();
+    }
+
+    /**
+     * @return the number of planner blocks in the controller as seen in the status reports, or zero if unknown
+     */
+    public int getPlannerBlockCount() {
+        return plannerBlockCount;
+    }
+
+    /**
+     * @return the size of the controller RX buffer as seen in the status reports, or zero if unknown
+     */
+    public int getRxBufferSize() {
+        return rxBufferSize;
+    }
+
+    /**
+     * @return the total time in milliseconds the controller was starved for commands
+     */
+    public long getStarvationMillis() {
+        return starvationWindows.stream().mapToLong(StarvationWindow::getDurationMillis).sum();
+    }
+
+    /**
+     * Writes the samples as comma separated values with a header row
+     *
+     * @param writer the writer to write to, it will not be closed
+     * @throws IOException if the samples couldn't be written
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        for (Sample sample : samples) {
+            writer.write(String.format(Locale.US, "%d,%d,%d,%.2f,%.2f,%.1f,%d,%.1f,%d,%d\n",
+                    sample.getSecond(), sample.getCommandsSent(), sample.getCommandsCompleted(),
+                    sample.getAverageAckLatencyMillis(), sample.getMaxAckLatencyMillis(), sample.getAverageRxBytesUsed(),
+                    sample.getMinPlannerBlocksAvailable(), sample.getAveragePlannerBlocksAvailable(),
+                    sample.getStatusReports(), sample.isStarved() ? 1 : 0));
+        }
+    }
+
+    @Override
+    public String toString() {
+        long commandsSent = samples.stream().mapToLong(Sample::getCommandsSent).sum();
+        long commandsCompleted = samples.stream().mapToLong(Sample::getCommandsCompleted).sum();
+        return String.format(Locale.US, "seconds=%d, commandsSent=%d, commandsCompleted=%d, starvationWindows=%d, starvationTime=%.3fs",
+                samples.size(), commandsSent, commandsCompleted, starvationWindows.size(), getStarvationMillis() / 1000.0);
+    }
+
+    /**
+     * The streaming telemetry during one second
+     */
+    public static class Sample {
+        private final long second;
+        private final int commandsSent;
+        private final int commandsCompleted;
+        private final double averageAckLatencyMillis;
+        private final double maxAckLatencyMillis;
+        private final double averageRxBytesUsed;
+        private final int minPlannerBlocksAvailable;
+        private final double averagePlannerBlocksAvailable;
+        private final int statusReports;
+        private final boolean starved;
+
+        Sample(long second, int commandsSent, int commandsCompleted, double averageAckLatencyMillis, double maxAckLatencyMillis,
+               double averageRxBytesUsed, int minPlannerBlocksAvailable, double averagePlannerBlocksAvailable, int statusReports, boolean starved) {
+            this.second = second;
+            this.commandsSent = commandsSent;
+            this.commandsCompleted = commandsCompleted;
+            this.averageAckLatencyMillis = averageAckLatencyMillis;
+            this.maxAckLatencyMillis = maxAckLatencyMillis;
+            this.averageRxBytesUsed = averageRxBytesUsed;
+            this.minPlannerBlocksAvailable = minPlannerBlocksAvailable;
+            this.averagePlannerBlocksAvailable = averagePlannerBlocksAvailable;
+            this.statusReports = statusReports;
+            this.starved = starved;
+        }
+
+        /**
+         * @return the number of seconds since the telemetry was started
+         */
+        public long getSecond() {
+            return second;
+        }
+
+        public int getCommandsSent() {
+            return commandsSent;
+        }
+
+        public int getCommandsCompleted() {
+            return commandsCompleted;
+        }
+
+        public double getAverageAckLatencyMillis() {
+            return averageAckLatencyMillis;
+        }
+
+        public double getMaxAckLatencyMillis() {
+            return maxAckLatencyMillis;
+        }
+
+        /**
+         * @return the average number of bytes used in the controller RX buffer according to the status reports
+         */
+        public double getAverageRxBytesUsed() {
+            return averageRxBytesUsed;
+        }
+
+        /**
+         * @return the lowest number of available planner blocks according to the status reports, -1 if there were none
+         */
+        public int getMinPlannerBlocksAvailable() {
+            return minPlannerBlocksAvailable;
+        }
+
+        public double getAveragePlannerBlocksAvailable() {
+            return averagePlannerBlocksAvailable;
+        }
+
+        public int getStatusReports() {
+            return statusReports;
+        }
+
+        /**
+         * @return true if the controller was starved for commands during the second
+         */
+        public boolean isStarved() {
+            return starved;
+        }
+    }
+
+    /**
+     * A period where the planner in the controller was running out of blocks while there were more commands to send
+     */
+    public static class StarvationWindow {
+        private final long startMillis;
+        private final long durationMillis;
+        private final int minPlannerBlocksQueued;
+        private final long commandNumber;
+
+        StarvationWindow(long startMillis, long durationMillis, int minPlannerBlocksQueued, long commandNumber) {
+            this.startMillis = startMillis;
+            this.durationMillis = durationMillis;
+            this.minPlannerBlocksQueued = minPlannerBlocksQueued;
+            this.commandNumber = commandNumber;
+        }
+
+        /**
+         * @return the number of milliseconds since the telemetry was started
+         */
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        /**
+         * @return the lowest number of blocks in the planner during the window
+         */
+        public int getMinPlannerBlocksQueued() {
+            return minPlannerBlocksQueued;
+        }
+
+        /**
+         * @return the command number of the last command sent when the window started, useful for finding the
+         * part of the program which can't be streamed fast enough
+         */
+        public long getCommandNumber() {
+            return commandNumber;
+        }
+    }
+}
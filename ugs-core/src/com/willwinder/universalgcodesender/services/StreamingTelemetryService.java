@@ -0,0 +1,440 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.services;
+
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.listeners.UGSEventListener;
+import com.willwinder.universalgcodesender.model.BackendAPI;
+import com.willwinder.universalgcodesender.model.UGSEvent;
+import com.willwinder.universalgcodesender.model.events.CommandEvent;
+import com.willwinder.universalgcodesender.model.events.CommandEventType;
+import com.willwinder.universalgcodesender.model.events.ControllerStateEvent;
+import com.willwinder.universalgcodesender.model.events.ControllerStatusEvent;
+import com.willwinder.universalgcodesender.model.events.StreamEvent;
+import com.willwinder.universalgcodesender.model.events.StreamEventType;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A service which collects telemetry about how well commands are streamed to the controller, for finding
+ * out why a machine stutters during dense programs. For each second it records the number of commands
+ * sent and acknowledged, the acknowledgement latency and the buffer state reported by the controller.
+ * <p>
+ * The planner in the controller is considered starved when it only has a few blocks left while a file is
+ * being sent and there are rows left to send. Controllers that doesn't report their buffer state, such as
+ * GRBL without the "Bf:" field, will never be considered starved.
+ * <p>
+ * The buffer sizes are taken from the idle status reports, as the buffers are empty when the controller
+ * is idle. Buffer states reported before the controller has been seen idle are ignored, as the number of
+ * queued planner blocks can't be known and the planner would otherwise look starved. The buffer sizes
+ * are detected again after the controller has been disconnected, as the next one may have other sizes.
+ * <p>
+ * The telemetry is reset each time a stream is started. Each second and each starvation window are also
+ * emitted as JFR events named {@value SampleEvent#NAME} and {@value StarvationEvent#NAME}, which can be
+ * recorded with a flight recording or consumed with a {@link jdk.jfr.consumer.RecordingStream}.
+ *
+ * @author wwinder
+ */
+public class StreamingTelemetryService implements UGSEventListener {
+    /**
+     * The number of queued planner blocks at or below which the planner is considered starved
+     */
+    public static final int DEFAULT_STARVATION_THRESHOLD = 1;
+
+    /**
+     * The maximum number of seconds to keep, one day of samples
+     */
+    private static final int MAX_SAMPLES = 24 * 60 * 60;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final BackendAPI backend;
+    private final LongSupplier clock;
+    private final int starvationThreshold;
+
+    private final ArrayDeque<StreamingTelemetry.Sample> samples = new ArrayDeque<>();
+    private final List<StreamingTelemetry.StarvationWindow> starvationWindows = new ArrayList<>();
+    private final long[] latencyHistogram = new long[StreamingTelemetry.LATENCY_BUCKET_BOUNDS.length + 1];
+    private final Map<GcodeCommand, Long> sentTimes = new IdentityHashMap<>();
+    private int plannerBlockCount;
+    private int rxBufferSize;
+    private boolean isBufferSizeKnown;
+    private long startTime;
+    private long lastCommandNumber;
+
+    // The current second
+    private long second;
+    private int commandsSent;
+    private int commandsCompleted;
+    private long latencySum;
+    private long maxLatency;
+    private int statusReports;
+    private long rxBytesUsedSum;
+    private long plannerBlocksAvailableSum;
+    private int minPlannerBlocksAvailable;
+    private boolean starvedThisSecond;
+
+    // The current starvation window
+    private long starvationStart = -1;
+    private int minPlannerBlocksQueued;
+    private long starvationCommandNumber;
+    private StarvationEvent starvationEvent;
+
+    public StreamingTelemetryService(BackendAPI backend) {
+        this(backend, System::nanoTime, DEFAULT_STARVATION_THRESHOLD);
+    }
+
+    StreamingTelemetryService(BackendAPI backend, LongSupplier clock, int starvationThreshold) {
+        this.backend = backend;
+        this.clock = clock;
+        this.starvationThreshold = starvationThreshold;
+        reset();
+        backend.addUGSEventListener(this);
+    }
+
+    /**
+     * Clears all telemetry, this is done automatically when a stream is started
+     */
+    public synchronized void reset() {
+        startTime = clock.getAsLong();
+        samples.clear();
+        starvationWindows.clear();
+        sentTimes.clear();
+        Arrays.fill(latencyHistogram, 0);
+        second = 0;
+        lastCommandNumber = 0;
+        starvationStart = -1;
+        starvationEvent = null;
+        clearCurrentSecond();
+    }
+
+    /**
+     * @return a snapshot of the telemetry collected since the last stream was started
+     */
+    public synchronized StreamingTelemetry getTelemetry() {
+        long now = clock.getAsLong();
+        rollSeconds(now);
+
+        List<StreamingTelemetry.Sample> result = new ArrayList<>(samples);
+        result.add(createSample());
+
+        List<StreamingTelemetry.StarvationWindow> windows = new ArrayList<>(starvationWindows);
+        if (starvationStart >= 0) {
+            windows.add(createStarvationWindow(now));
+        }
+        return new StreamingTelemetry(result, windows, latencyHistogram, plannerBlockCount, rxBufferSize);
+    }
+
+    /**
+     * Writes the samples of the telemetry as comma separated values to a file
+     *
+     * @param file the file to write
+     * @throws IOException if the file couldn't be written
+     */
+    public void exportCsv(File file) throws IOException {
+        StreamingTelemetry telemetry = getTelemetry();
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            telemetry.writeCsv(writer);
+        }
+    }
+
+    @Override
+    public void UGSEvent(UGSEvent event) {
+        if (event instanceof CommandEvent) {
+            CommandEvent commandEvent = (CommandEvent) event;
+            if (commandEvent.getCommandEventType() == CommandEventType.COMMAND_SENT) {
+                onCommandSent(commandEvent.getCommand());
+            } else if (commandEvent.getCommandEventType() == CommandEventType.COMMAND_COMPLETE) {
+                onCommandComplete(commandEvent.getCommand());
+            }
+        } else if (event instanceof ControllerStatusEvent) {
+            onStatus(((ControllerStatusEvent) event).getStatus());
+        } else if (event instanceof ControllerStateEvent) {
+            onStateChanged(((ControllerStateEvent) event).getState());
+        } else if (event instanceof StreamEvent) {
+            onStreamEvent(((StreamEvent) event).getType());
+        }
+    }
+
+    private void onStreamEvent(StreamEventType type) {
+        if (type == StreamEventType.STREAM_STARTED) {
+            reset();
+        } else if (type != StreamEventType.STREAM_RESUMED) {
+            synchronized (this) {
+                endStarvation(clock.getAsLong());
+                if (type == StreamEventType.STREAM_CANCELED) {
+                    sentTimes.clear();
+                }
+            }
+        }
+    }
+
+    private synchronized void onStateChanged(ControllerState state) {
+        if (state == ControllerState.DISCONNECTED) {
+            clearBufferSizes();
+        }
+    }
+
+    private void clearBufferSizes() {
+        isBufferSizeKnown = false;
+        plannerBlockCount = 0;
+        rxBufferSize = 0;
+    }
+
+    private synchronized void onCommandSent(GcodeCommand command) {
+        long now = clock.getAsLong();
+        rollSeconds(now);
+        commandsSent++;
+        lastCommandNumber = command.getCommandNumber();
+        sentTimes.put(command, now);
+    }
+
+    private synchronized void onCommandComplete(GcodeCommand command) {
+        long now = clock.getAsLong();
+        rollSeconds(now);
+        commandsCompleted++;
+
+        Long sentTime = sentTimes.remove(command);
+        if (sentTime != null) {
+            long latency = now - sentTime;
+            latencySum += latency;
+            maxLatency = Math.max(maxLatency, latency);
+            latencyHistogram[getLatencyBucket(latency)]++;
+        }
+    }
+
+    private static int getLatencyBucket(long latencyNanos) {
+        long[] bounds = StreamingTelemetry.LATENCY_BUCKET_BOUNDS;
+        for (int i = 0; i < bounds.length; i++) {
+            if (latencyNanos <= TimeUnit.MILLISECONDS.toNanos(bounds[i])) {
+                return i;
+            }
+        }
+        return bounds.length;
+    }
+
+    private synchronized void onStatus(ControllerStatus status) {
+        if (status == null) {
+            return;
+        }
+
+        long now = clock.getAsLong();
+        rollSeconds(now);
+        if (status.getState() == ControllerState.DISCONNECTED) {
+            clearBufferSizes();
+            endStarvation(now);
+            return;
+        }
+
+        ControllerStatus.BufferState bufferState = status.getBufferState();
+        if (bufferState == null) {
+            return;
+        }
+
+        // The buffers are empty when the controller is idle, the largest values seen are the buffer sizes
+        if (status.getState() == ControllerState.IDLE) {
+            isBufferSizeKnown = true;
+        } else if (!isBufferSizeKnown) {
+            return;
+        }
+        plannerBlockCount = Math.max(plannerBlockCount, bufferState.plannerBlocksAvailable);
+        rxBufferSize = Math.max(rxBufferSize, bufferState.rxBytesAvailable);
+
+        statusReports++;
+        rxBytesUsedSum += rxBufferSize - bufferState.rxBytesAvailable;
+        plannerBlocksAvailableSum += bufferState.plannerBlocksAvailable;
+        minPlannerBlocksAvailable = Math.min(minPlannerBlocksAvailable, bufferState.plannerBlocksAvailable);
+
+        int plannerBlocksQueued = plannerBlockCount - bufferState.plannerBlocksAvailable;
+        boolean starved = status.getState() == ControllerState.RUN && plannerBlocksQueued <= starvationThreshold
+                && backend.isSendingFile() && backend.getNumRows() > backend.getNumSentRows();
+        if (starved) {
+            startStarvation(now, plannerBlocksQueued);
+        } else {
+            endStarvation(now);
+        }
+    }
+
+    private void startStarvation(long now, int plannerBlocksQueued) {
+        starvedThisSecond = true;
+        if (starvationStart >= 0) {
+            minPlannerBlocksQueued = Math.min(minPlannerBlocksQueued, plannerBlocksQueued);
+            return;
+        }
+
+        starvationStart = now;
+        minPlannerBlocksQueued = plannerBlocksQueued;
+        starvationCommandNumber = lastCommandNumber;
+        starvationEvent = new StarvationEvent();
+        starvationEvent.begin();
+    }
+
+    private void endStarvation(long now) {
+        if (starvationStart < 0) {
+            return;
+        }
+
+        StreamingTelemetry.StarvationWindow window = createStarvationWindow(now);
+        starvationWindows.add(window);
+        if (starvationWindows.size() > MAX_SAMPLES) {
+            starvationWindows.remove(0);
+        }
+        starvationStart = -1;
+
+        if (starvationEvent.shouldCommit()) {
+            starvationEvent.minPlannerBlocksQueued = window.getMinPlannerBlocksQueued();
+            starvationEvent.commandNumber = window.getCommandNumber();
+            starvationEvent.commit();
+        }
+        starvationEvent = null;
+    }
+
+    private StreamingTelemetry.StarvationWindow createStarvationWindow(long now) {
+        return new StreamingTelemetry.StarvationWindow(
+                TimeUnit.NANOSECONDS.toMillis(starvationStart - startTime),
+                TimeUnit.NANOSECONDS.toMillis(now - starvationStart),
+                minPlannerBlocksQueued, starvationCommandNumber);
+    }
+
+    /**
+     * Completes the samples of all seconds before the given time
+     */
+    private void rollSeconds(long now) {
+        long currentSecond = (now - startTime) / SECOND;
+        while (second < currentSecond) {
+            StreamingTelemetry.Sample sample = createSample();
+            samples.add(sample);
+            if (samples.size() > MAX_SAMPLES) {
+                samples.removeFirst();
+            }
+            commitSampleEvent(sample);
+
+            second++;
+            clearCurrentSecond();
+
+            // An ongoing starvation continues into the next second
+            starvedThisSecond = starvationStart >= 0;
+
+            if (currentSecond - second > MAX_SAMPLES) {
+                // Skip seconds that wouldn't be kept anyway
+                second = currentSecond - MAX_SAMPLES;
+            }
+        }
+    }
+
+    private void clearCurrentSecond() {
+        commandsSent = 0;
+        commandsCompleted = 0;
+        latencySum = 0;
+        maxLatency = 0;
+        statusReports = 0;
+        rxBytesUsedSum = 0;
+        plannerBlocksAvailableSum = 0;
+        minPlannerBlocksAvailable = Integer.MAX_VALUE;
+        starvedThisSecond = false;
+    }
+
+    private StreamingTelemetry.Sample createSample() {
+        double nanosPerMilli = TimeUnit.MILLISECONDS.toNanos(1);
+        return new StreamingTelemetry.Sample(second, commandsSent, commandsCompleted,
+                commandsCompleted == 0 ? 0 : latencySum / nanosPerMilli / commandsCompleted,
+                maxLatency / nanosPerMilli,
+                statusReports == 0 ? 0 : rxBytesUsedSum / (double) statusReports,
+                statusReports == 0 ? -1 : minPlannerBlocksAvailable,
+                statusReports == 0 ? 0 : plannerBlocksAvailableSum / (double) statusReports,
+                statusReports, starvedThisSecond);
+    }
+
+    private static void commitSampleEvent(StreamingTelemetry.Sample sample) {
+        SampleEvent event = new SampleEvent();
+        if (!event.shouldCommit()) {
+            return;
+        }
+
+        event.commandsSent = sample.getCommandsSent();
+        event.commandsCompleted = sample.getCommandsCompleted();
+        event.averageAckLatency = sample.getAverageAckLatencyMillis();
+        event.maxAckLatency = sample.getMaxAckLatencyMillis();
+        event.averageRxBytesUsed = sample.getAverageRxBytesUsed();
+        event.minPlannerBlocksAvailable = sample.getMinPlannerBlocksAvailable();
+        event.starved = sample.isStarved();
+        event.commit();
+    }
+
+    @Name(SampleEvent.NAME)
+    @Label("Streaming Telemetry")
+    @Description("The streaming telemetry during one second")
+    @Category({"Universal Gcode Sender", "Streaming"})
+    static class SampleEvent extends Event {
+        static final String NAME = "com.willwinder.universalgcodesender.StreamingTelemetry";
+
+        @Label("Commands Sent")
+        int commandsSent;
+
+        @Label("Commands Completed")
+        int commandsCompleted;
+
+        @Label("Average Acknowledgement Latency (ms)")
+        double averageAckLatency;
+
+        @Label("Max Acknowledgement Latency (ms)")
+        double maxAckLatency;
+
+        @Label("Average RX Bytes Used")
+        double averageRxBytesUsed;
+
+        @Label("Min Planner Blocks Available")
+        int minPlannerBlocksAvailable;
+
+        @Label("Starved")
+        boolean starved;
+    }
+
+    @Name(StarvationEvent.NAME)
+    @Label("Planner Starvation")
+    @Description("The planner in the controller was running out of blocks while there were more commands to send")
+    @Category({"Universal Gcode Sender", "Streaming"})
+    static class StarvationEvent extends Event {
+        static final String NAME = "com.willwinder.universalgcodesender.PlannerStarvation";
+
+        @Label("Min Planner Blocks Queued")
+        int minPlannerBlocksQueued;
+
+        @Label("Command Number")
+        long commandNumber;
+    }
+}
@@ -1,5 +1,5 @@
 /*
-    Copyright 2016-2019 Will Winder
+    Copyright 2016-2023 Will Winder
 
     This file is part of Universal Gcode Sender (UGS).
 
@@ -45,6 +45,8 @@ public class ConnectionSettingsPanel extends AbstractUGSSettings {
             Localization.getString("sender.step.separateZ"));
     private final Checkbox singleStepMode = new Checkbox(
             Localization.getString("sender.singlestep"));
+    private final Checkbox batchingEnabled = new Checkbox(
+            Localization.getString("sender.batching"));
     private final Checkbox statusPollingEnabled = new Checkbox(
             Localization.getString("sender.status"));
     private final Spinner statusPollRate = new Spinner(
@@ -79,6 +81,7 @@ public class ConnectionSettingsPanel extends AbstractUGSSettings {
     public String getHelpMessage() {
         return Localization.getString("sender.help.verbose.console") + "\n\n" +
                 Localization.getString("sender.help.singlestep") + "\n\n" +
+                Localization.getString("sender.help.batching") + "\n\n" +
                 Localization.getString("sender.help.status") + "\n\n" +
                 Localization.getString("sender.help.status.rate") + "\n\n" +
                 Localization.getString("sender.help.state") + "\n\n";
@@ -89,6 +92,7 @@ public class ConnectionSettingsPanel extends AbstractUGSSettings {
         settings.setVerboseOutputEnabled(verboseConsoleOutput.getValue());
         settings.setUseZStepSize(useZStepSize.getValue());
         settings.setSingleStepMode(singleStepMode.getValue());
+        settings.setBatchingEnabled(batchingEnabled.getValue());
         settings.setSafetyHeight((int) safetyHeight.getValue());
         settings.setStatusUpdatesEnabled(statusPollingEnabled.getValue());
         settings.setStatusUpdateRate((int) statusPollRate.getValue());
@@ -124,6 +128,9 @@ public class ConnectionSettingsPanel extends AbstractUGSSettings {
         singleStepMode.setSelected(s.isSingleStepMode());
         add(singleStepMode, "spanx, wrap");
 
+        batchingEnabled.setSelected(s.isBatchingEnabled());
+        add(batchingEnabled, "spanx, wrap");
+
         statusPollingEnabled.setSelected(s.isStatusUpdatesEnabled());
         add(statusPollingEnabled, "spanx, wrap");
 
@@ -42,6 +42,16 @@ public class AutoLevelSettings implements Serializable {
     private double zSurface = 0;
 
     private boolean applyToGcode = true;
+
+    /**
+     * If the surface should first be probed with a coarse grid and then only refined where needed
+     */
+    private boolean adaptiveRefinement = false;
+
+    /**
+     * The largest allowed height error in millimeters of an interpolated point when using adaptive refinement
+     */
+    private double adaptiveRefinementThreshold = 0.05;
     private transient SettingChangeListener settingChangeListener;
 
     public AutoLevelSettings() {
@@ -52,7 +62,7 @@ public class AutoLevelSettings implements Serializable {
     }
 
     public boolean equals(AutoLevelSettings obj) {
-        return this.minX == obj.minX && this.minY == obj.minY && this.minZ == obj.minZ && this.maxX == obj.maxX && this.maxY == obj.maxY && this.maxZ == obj.maxZ && this.autoLevelProbeZeroHeight == obj.autoLevelProbeZeroHeight && Objects.equals(this.autoLevelProbeOffset, obj.autoLevelProbeOffset) && this.autoLevelArcSliceLength == obj.autoLevelArcSliceLength && this.stepResolution == obj.stepResolution && this.probeSpeed == obj.probeSpeed && this.probeScanFeedRate == obj.probeScanFeedRate && this.zRetract == obj.zRetract && this.zSurface == obj.zSurface;
+        return this.minX == obj.minX && this.minY == obj.minY && this.minZ == obj.minZ && this.maxX == obj.maxX && this.maxY == obj.maxY && this.maxZ == obj.maxZ && this.autoLevelProbeZeroHeight == obj.autoLevelProbeZeroHeight && Objects.equals(this.autoLevelProbeOffset, obj.autoLevelProbeOffset) && this.autoLevelArcSliceLength == obj.autoLevelArcSliceLength && this.stepResolution == obj.stepResolution && this.probeSpeed == obj.probeSpeed && this.probeScanFeedRate == obj.probeScanFeedRate && this.zRetract == obj.zRetract && this.zSurface == obj.zSurface && this.adaptiveRefinement == obj.adaptiveRefinement && this.adaptiveRefinementThreshold == obj.adaptiveRefinementThreshold;
     }
 
     public void setSettingChangeListener(SettingChangeListener settingChangeListener) {
@@ -231,6 +241,28 @@ public class AutoLevelSettings implements Serializable {
         }
     }
 
+    public boolean getAdaptiveRefinement() {
+        return adaptiveRefinement;
+    }
+
+    public void setAdaptiveRefinement(boolean adaptiveRefinement) {
+        if (this.adaptiveRefinement != adaptiveRefinement) {
+            this.adaptiveRefinement = adaptiveRefinement;
+            changed();
+        }
+    }
+
+    public double getAdaptiveRefinementThreshold() {
+        return adaptiveRefinementThreshold;
+    }
+
+    public void setAdaptiveRefinementThreshold(double adaptiveRefinementThreshold) {
+        if (this.adaptiveRefinementThreshold != adaptiveRefinementThreshold) {
+            this.adaptiveRefinementThreshold = adaptiveRefinementThreshold;
+            changed();
+        }
+    }
+
     public void apply(AutoLevelSettings settings) {
         if (!this.equals(settings)) {
             autoLevelProbeZeroHeight = settings.getAutoLevelProbeZeroHeight();
@@ -248,6 +280,8 @@ public class AutoLevelSettings implements Serializable {
             zSurface = settings.getZSurface();
             zRetract = settings.getZRetract();
             applyToGcode = settings.getApplyToGcode();
+            adaptiveRefinement = settings.getAdaptiveRefinement();
+            adaptiveRefinementThreshold = settings.getAdaptiveRefinementThreshold();
             changed();
         }
     }
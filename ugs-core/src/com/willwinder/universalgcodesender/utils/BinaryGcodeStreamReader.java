@@ -0,0 +1,309 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import com.willwinder.universalgcodesender.gcode.ICommandCreator;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+import static com.willwinder.universalgcodesender.utils.GcodeStream.BINARY_HEADER_INDEX_OFFSET;
+import static com.willwinder.universalgcodesender.utils.GcodeStream.BINARY_HEADER_ROWS_OFFSET;
+import static com.willwinder.universalgcodesender.utils.GcodeStream.BINARY_HEADER_SIZE;
+import static com.willwinder.universalgcodesender.utils.GcodeStream.BINARY_INDEX_ENTRY_SIZE;
+import static com.willwinder.universalgcodesender.utils.GcodeStream.BINARY_MAGIC;
+import static com.willwinder.universalgcodesender.utils.GcodeStream.BINARY_VERSION;
+
+/**
+ * Reads a binary 'GcodeStream' file written by {@link GcodeStreamWriter}. The row index is
+ * used to look up commands, which makes it possible to jump to any row in constant time using
+ * {@link #seek(int)} or {@link #getCommand(int)}.
+ * <p>
+ * The file is read with positional reads through a window of the rows and one of the index,
+ * which keeps sequential reading to a few reads per window. The file is kept open until the
+ * reader is closed.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author wwinder
+ */
+public class BinaryGcodeStreamReader implements IGcodeStreamReader {
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private final ICommandCreator commandCreator;
+    private final FileChannel channel;
+    private final Window rows;
+    private final Window index;
+    private final int numRows;
+    private final long indexOffset;
+    private int currentRow;
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Opens the given file and reads its header.
+     *
+     * @param file           a file written by a {@link GcodeStreamWriter}
+     * @param commandCreator the command creator to use for creating commands
+     * @throws IOException                           if the file could not be opened
+     * @throws GcodeStreamReader.NotGcodeStreamFile if the file is not a binary gcode stream
+     */
+    public BinaryGcodeStreamReader(File file, ICommandCreator commandCreator) throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.READ), null, commandCreator);
+    }
+
+    /**
+     * Reads a binary gcode stream from the given buffer.
+     *
+     * @param buffer         a buffer containing a complete binary gcode stream
+     * @param commandCreator the command creator to use for creating commands
+     * @throws GcodeStreamReader.NotGcodeStreamFile if the buffer does not contain a binary gcode stream
+     */
+    public BinaryGcodeStreamReader(ByteBuffer buffer, ICommandCreator commandCreator) throws GcodeStreamReader.NotGcodeStreamFile {
+        this(null, buffer, commandCreator);
+    }
+
+    private BinaryGcodeStreamReader(FileChannel channel, ByteBuffer buffer, ICommandCreator commandCreator) throws GcodeStreamReader.NotGcodeStreamFile {
+        this.commandCreator = commandCreator;
+        this.channel = channel;
+
+        try {
+            if (channel != null) {
+                long size = channel.size();
+                rows = new Window(channel, size);
+                index = new Window(channel, size);
+            } else {
+                rows = new Window(buffer);
+                index = new Window(buffer);
+            }
+
+            if (rows.size < BINARY_HEADER_SIZE) {
+                throw new GcodeStreamReader.NotGcodeStreamFile();
+            }
+
+            int offset = rows.fill(0, BINARY_HEADER_SIZE);
+            for (int i = 0; i < BINARY_MAGIC.length; i++) {
+                if (rows.buffer.get(offset + i) != BINARY_MAGIC[i]) {
+                    throw new GcodeStreamReader.NotGcodeStreamFile();
+                }
+            }
+
+            if (rows.buffer.getInt(offset + BINARY_MAGIC.length) != BINARY_VERSION) {
+                throw new GcodeStreamReader.NotGcodeStreamFile();
+            }
+
+            numRows = rows.buffer.getInt(offset + BINARY_HEADER_ROWS_OFFSET);
+            indexOffset = rows.buffer.getLong(offset + BINARY_HEADER_INDEX_OFFSET);
+            if (numRows < 0 || indexOffset < BINARY_HEADER_SIZE || indexOffset + (long) numRows * BINARY_INDEX_ENTRY_SIZE > rows.size) {
+                throw new GcodeStreamReader.NotGcodeStreamFile();
+            }
+        } catch (IOException e) {
+            closeChannel();
+            throw new GcodeStreamReader.NotGcodeStreamFile(e);
+        } catch (GcodeStreamReader.NotGcodeStreamFile | RuntimeException e) {
+            closeChannel();
+            throw e;
+        }
+        currentRow = 0;
+    }
+
+    @Override
+    public boolean ready() {
+        return getNumRowsRemaining() > 0;
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public int getNumRowsRemaining() {
+        return numRows - currentRow;
+    }
+
+    /**
+     * Moves the stream to the given row so that the next call to {@link #getNextCommand()}
+     * will return it.
+     *
+     * @param row the zero based row index, may be equal to the number of rows to skip to the end
+     */
+    public void seek(int row) {
+        if (row < 0 || row > numRows) {
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds for stream with " + numRows + " rows");
+        }
+        currentRow = row;
+    }
+
+    @Override
+    public GcodeCommand getNextCommand() throws IOException {
+        if (currentRow >= numRows) return null;
+        return getCommand(currentRow++);
+    }
+
+    /**
+     * Returns the command at the given row without changing the current stream position.
+     *
+     * @param row the zero based row index
+     * @return the command at the given row
+     * @throws IOException if the row data is corrupt or the reader has been closed
+     */
+    public GcodeCommand getCommand(int row) throws IOException {
+        Objects.checkIndex(row, numRows);
+        if (channel != null && !channel.isOpen()) {
+            throw new IOException("The gcode stream has been closed");
+        }
+
+        long indexPosition = indexOffset + (long) row * BINARY_INDEX_ENTRY_SIZE;
+        int indexEntryOffset = index.fill(indexPosition, BINARY_INDEX_ENTRY_SIZE);
+        long position = index.buffer.getLong(indexEntryOffset);
+        if (position < BINARY_HEADER_SIZE || position >= indexOffset) {
+            throw new IOException("Corrupt data found while processing gcode stream at row: " + row);
+        }
+
+        int commandNumber = readInt(position);
+        position += Integer.BYTES;
+
+        int originalLength = readInt(position);
+        String original = readString(position + Integer.BYTES, originalLength);
+        position += Integer.BYTES + originalLength;
+
+        int processedLength = readInt(position);
+        String processed = readString(position + Integer.BYTES, processedLength);
+        position += Integer.BYTES + processedLength;
+
+        int commentLength = readInt(position);
+        String comment = readString(position + Integer.BYTES, commentLength);
+
+        return commandCreator.createCommand(processed, original, comment, commandNumber);
+    }
+
+    /**
+     * Closes the file, after this no more commands can be read.
+     *
+     * @throws IOException if the file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        currentRow = numRows;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void closeChannel() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // Never mind, the file couldn't be read anyway
+        }
+    }
+
+    private int readInt(long position) throws IOException {
+        if (position + Integer.BYTES > indexOffset) {
+            throw new IOException("Corrupt data found while processing gcode stream at position: " + position);
+        }
+        int offset = rows.fill(position, Integer.BYTES);
+        return rows.buffer.getInt(offset);
+    }
+
+    private String readString(long position, int length) throws IOException {
+        if (length == 0) {
+            return "";
+        } else if (length < 0 || position + length > indexOffset) {
+            throw new IOException("Corrupt data found while processing gcode stream at position: " + position);
+        }
+
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+
+        // The window may be replaced when filled, so it is filled before getting its buffer
+        int offset = rows.fill(position, length);
+        rows.buffer.get(offset, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A part of the stream which is kept in memory. When reading from a buffer the whole
+     * stream is in the window, otherwise it is refilled from the file when reading outside it.
+     */
+    private static class Window {
+        private final FileChannel channel;
+        private final long size;
+        private ByteBuffer buffer;
+        private long start;
+
+        private Window(FileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+            this.buffer = ByteBuffer.allocate(WINDOW_SIZE).limit(0);
+        }
+
+        private Window(ByteBuffer buffer) {
+            this.channel = null;
+            this.size = buffer.limit();
+            this.buffer = buffer.duplicate();
+        }
+
+        /**
+         * Makes sure that the given range of the stream is in the window.
+         *
+         * @param position the position in the stream
+         * @param length   the number of bytes that will be read
+         * @return the offset of the position in the window
+         * @throws IOException if the range is outside the stream or could not be read
+         */
+        private int fill(long position, int length) throws IOException {
+            if (position >= start && position + length <= start + buffer.limit()) {
+                return (int) (position - start);
+            } else if (channel == null || position < 0 || position + length > size) {
+                throw new EOFException("Unexpected end of gcode stream at position: " + position);
+            }
+
+            if (buffer.capacity() < length) {
+                buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+            }
+
+            buffer.clear().limit((int) Math.min(buffer.capacity(), size - position));
+            try {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new EOFException("Unexpected end of gcode stream at position: " + (position + buffer.position()));
+                    }
+                }
+            } catch (IOException e) {
+                // Leave the window empty
+                buffer.clear().limit(0);
+                throw e;
+            }
+            start = position;
+            buffer.flip();
+            return 0;
+        }
+    }
+}
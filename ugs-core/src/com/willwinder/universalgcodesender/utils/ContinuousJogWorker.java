@@ -1,5 +1,5 @@
 /*
-    Copyright 2020-2021 Will Winder
+    Copyright 2020-2023 Will Winder
 
     This file is part of Universal Gcode Sender (UGS).
 
@@ -18,22 +18,44 @@
  */
 package com.willwinder.universalgcodesender.utils;
 
-import com.willwinder.universalgcodesender.listeners.UGSEventListener;
+import com.willwinder.universalgcodesender.IController;
+import com.willwinder.universalgcodesender.firmware.FirmwareSettingsException;
+import com.willwinder.universalgcodesender.firmware.IFirmwareSettings;
+import com.willwinder.universalgcodesender.listeners.ControllerListener;
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.model.Alarm;
 import com.willwinder.universalgcodesender.model.Axis;
 import com.willwinder.universalgcodesender.model.BackendAPI;
 import com.willwinder.universalgcodesender.model.PartialPosition;
-import com.willwinder.universalgcodesender.model.UGSEvent;
+import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UnitUtils;
-import com.willwinder.universalgcodesender.model.events.CommandEvent;
-import com.willwinder.universalgcodesender.model.events.CommandEventType;
 import com.willwinder.universalgcodesender.services.JogService;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * A continuous jog worker that will send small jog commands at a fixed interval so that
- * it will achieve the jog feed rate set in the {@link JogService#getFeedRate()}.
+ * A continuous jog worker that will stream small jog commands so that it will achieve the jog
+ * feed rate set in the {@link JogService#getFeedRate()}.
+ * <p>
+ * A number of jog commands are kept queued in the controller so that the machine never has to
+ * wait for the next command. The duration of each command is calculated using the algorithm
+ * described here: https://github.com/gnea/grbl/wiki/Grbl-v1.1-Jogging
  * <p>
- * It will attempt to listen to completed commands to determine if a new jog command
- * can be sent.
+ * The worker listens directly to the controller for completed commands instead of going
+ * through the backend event bus. When stopped it will wait for the queued commands to be
+ * acknowledged and then cancel the jog. The time from stopping until the machine has stopped
+ * jogging is emitted as a JFR event named {@value JogStopEvent#NAME}.
  * <p>
  * Example usage:
  * ContinuousJogWorker worker = new ContinuousJogWorker(backendAPI, jogService);
@@ -43,17 +65,69 @@ import com.willwinder.universalgcodesender.services.JogService;
  *
  * @author Joacim Breiler
  */
-public class ContinuousJogWorker implements UGSEventListener {
+public class ContinuousJogWorker implements ControllerListener {
+    private static final Logger LOGGER = Logger.getLogger(ContinuousJogWorker.class.getSimpleName());
+
+    /**
+     * The minimum duration of a jog command in seconds
+     */
+    static final double MIN_COMMAND_DURATION = 0.010;
+
+    /**
+     * The maximum duration of a jog command in seconds, longer commands will make the machine
+     * slow to respond to changes in direction
+     */
+    static final double MAX_COMMAND_DURATION = 0.250;
+
+    /**
+     * How long to wait for the queued jog commands to be acknowledged before canceling the jog
+     */
+    private static final long ACKNOWLEDGE_TIMEOUT_MILLIS = 1000;
+
+    private static final Axis[] AXES = {Axis.X, Axis.Y, Axis.Z, Axis.A, Axis.B, Axis.C};
+
     private final JogService jogService;
     private final BackendAPI backendAPI;
-    private float x;
-    private float y;
-    private float z;
-    private float a;
-    private float b;
-    private float c;
+    private final Object lock = new Object();
+
+    /**
+     * The send time of each jog command that hasn't been acknowledged
+     */
+    private final Deque<Long> sendTimes = new ArrayDeque<>();
+
+    private volatile float x;
+    private volatile float y;
+    private volatile float z;
+    private volatile float a;
+    private volatile float b;
+    private volatile float c;
     private boolean isRunning = false;
-    private boolean jogCanceled = true;
+    private boolean isCancelPending = false;
+    private boolean isDestroyed = false;
+    private IController controller;
+    private Thread thread;
+
+    /**
+     * The time in nanoseconds when the queued commands are estimated to be completed
+     */
+    private long queuedUntil;
+
+    /**
+     * The average time in seconds from sending a jog command until it is acknowledged
+     */
+    private double roundTripTime;
+
+    /**
+     * The largest number of available planner blocks that has been reported by the controller
+     */
+    private int plannerCapacity;
+
+    private long stopRequestedTime;
+
+    /**
+     * Measures the time from stopping until the machine has stopped jogging, null if not measuring
+     */
+    private JogStopEvent stopEvent;
 
     public ContinuousJogWorker(BackendAPI backendAPI, JogService jogService) {
         this.jogService = jogService;
@@ -64,83 +138,357 @@ public class ContinuousJogWorker implements UGSEventListener {
         this.a = 0f;
         this.b = 0f;
         this.c = 0f;
-
-        // Registers itself as a listener for completed commands
-        this.backendAPI.addUGSEventListener(this);
     }
 
     /**
-     * Destroys this instance, removing it as a listener from the backend API.
+     * Destroys this instance, stopping the worker and removing it as a listener from the controller.
+     * The worker will register itself again if it is started after being destroyed.
      */
     public void destroy() {
-        isRunning = false;
-        jogCanceled = true;
-        backendAPI.removeUGSEventListener(this);
+        synchronized (lock) {
+            isRunning = false;
+            isCancelPending = false;
+            isDestroyed = true;
+            stopEvent = null;
+            if (controller != null) {
+                controller.removeListener(this);
+                controller = null;
+            }
+            sendTimes.clear();
+            lock.notifyAll();
+        }
     }
 
     /**
-     * Starts sending continuous jogging commands at a fixed interval.
+     * Starts sending continuous jogging commands.
      * Use {@link #stop()} to stop sending jog commands
      */
     public void start() {
-        if (!isRunning) {
+        synchronized (lock) {
+            if (isRunning || !registerListener()) {
+                return;
+            }
+
             isRunning = true;
-            jogCanceled = false;
-            sendJogCommand();
+            isDestroyed = false;
+            isCancelPending = false;
+            stopEvent = null;
+            if (thread == null) {
+                thread = new Thread(this::run, "Continuous jog");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            lock.notifyAll();
         }
     }
 
     /**
-     * Stops sending continuous jogging commands
+     * Stops sending continuous jogging commands and cancels the jog as soon as the queued
+     * commands have been acknowledged
      */
     public void stop() {
-        isRunning = false;
-    }
-
-    /**
-     * puts one jog command in the buffer that will take JOG_COMMAND_INTERVAL ms to execute (excluding accelleration)
-     * 
-     * This function calculates the feedrate and magnitude of an individual jog command based
-     * on the algorithm described here: https://github.com/gnea/grbl/wiki/Grbl-v1.1-Jogging
-     * The algorithm has been simplified by reducing consideration for:
-     *    dt > v^2 / (2 * a * (N-1))
-     * Instead, we make some assumptions that are expected for good jog performance:
-     *  1) The latency from when we send a jog command to GRBL and receive the "ok" back is less than 10ms (typically 1-7ms).
-     *  2) The Jog feedrate and machine acceleration are such that the machine can accelerate to it's full jog rate within
-     *     the length of the command buffer (N=15 for regular GRBL).
-     *  3) The command buffer isn't larger than N=15 (if it is, we'll get increasing lag in response to direction/rate changes on the joystick)
-     * command to take 10ms to execute excluding acceleration time.
+        synchronized (lock) {
+            if (!isRunning) {
+                return;
+            }
+
+            isRunning = false;
+            stopRequestedTime = System.nanoTime();
+            stopEvent = new JogStopEvent();
+            stopEvent.begin();
+            if (sendTimes.isEmpty()) {
+                cancelJog();
+            } else {
+                isCancelPending = true;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private boolean registerListener() {
+        IController currentController = backendAPI.getController();
+        if (currentController != controller) {
+            if (controller != null) {
+                controller.removeListener(this);
+            }
+
+            controller = currentController;
+            sendTimes.clear();
+            plannerCapacity = 0;
+            if (controller != null) {
+                controller.addListener(this);
+            }
+        }
+        return controller != null;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                synchronized (lock) {
+                    if (isDestroyed) {
+                        thread = null;
+                        return;
+                    }
+
+                    removeUnacknowledgedCommands();
+                    if (isCancelPending && System.nanoTime() - stopRequestedTime > ACKNOWLEDGE_TIMEOUT_MILLIS * 1_000_000) {
+                        LOGGER.warning("Timed out waiting for the jog commands to be acknowledged, canceling the jog");
+                        sendTimes.clear();
+                        cancelJog();
+                    }
+
+                    if (!isRunning && !isCancelPending) {
+                        lock.wait();
+                        continue;
+                    }
+
+                    long waitTime = getWaitTimeMillis();
+                    if (waitTime > 0) {
+                        lock.wait(waitTime);
+                        continue;
+                    }
+                    sendTimes.addLast(System.nanoTime());
+                }
+
+                // Send the command outside the lock so that incoming responses aren't blocked
+                if (!sendJogCommand()) {
+                    synchronized (lock) {
+                        sendTimes.pollLast();
+                        if (isCancelPending && sendTimes.isEmpty()) {
+                            cancelJog();
+                        }
+                        lock.wait(100);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Forgets the commands that hasn't been acknowledged within the timeout, such as a jog command
+     * that the backend didn't send. Must be called while holding the lock.
+     */
+    private void removeUnacknowledgedCommands() {
+        long now = System.nanoTime();
+        while (isRunning && !sendTimes.isEmpty() && now - sendTimes.peekFirst() > ACKNOWLEDGE_TIMEOUT_MILLIS * 1_000_000) {
+            sendTimes.pollFirst();
+        }
+    }
+
+    /**
+     * Returns how long to wait before the next jog command can be sent, must be called
+     * while holding the lock.
+     *
+     * @return the time to wait in milliseconds or zero if a command should be sent now
+     */
+    private long getWaitTimeMillis() {
+        if (!isRunning) {
+            // Wait for the pending cancel
+            return 100;
+        }
+
+        int lookahead = getLookahead();
+        if (sendTimes.size() >= lookahead) {
+            return 100;
+        }
+
+        // Don't queue more than the lookahead worth of motion, even if the commands are acknowledged faster
+        long now = System.nanoTime();
+        long maxQueuedNanos = (long) (lookahead * getCommandDuration(lookahead) * 1_000_000_000L);
+        long queuedNanos = queuedUntil - now;
+        if (queuedNanos >= maxQueuedNanos) {
+            return Math.max(1, (queuedNanos - maxQueuedNanos) / 1_000_000);
+        }
+        return 0;
+    }
+
+    private int getLookahead() {
+        boolean hasContinuousJogging = controller != null && controller.getCapabilities().hasContinuousJogging();
+        return calculateLookahead(backendAPI.getSettings().getJogLookaheadBlocks(), plannerCapacity, hasContinuousJogging);
+    }
+
+    /**
+     * Calculates the number of jog commands to keep queued in the controller
+     *
+     * @param configuredLookahead  the number of commands configured by the user
+     * @param plannerCapacity      the size of the planner buffer in the controller or zero if unknown
+     * @param hasContinuousJogging if the controller supports streaming jog commands
+     * @return the number of commands to keep queued
+     */
+    static int calculateLookahead(int configuredLookahead, int plannerCapacity, boolean hasContinuousJogging) {
+        if (!hasContinuousJogging) {
+            return 1;
+        }
+
+        int lookahead = configuredLookahead;
+        if (plannerCapacity > 0) {
+            // Leave one block for other commands
+            lookahead = Math.min(lookahead, plannerCapacity - 1);
+        }
+        return Math.max(2, lookahead);
+    }
+
+    /**
+     * Calculates the duration of each jog command using the formula described here:
+     * https://github.com/gnea/grbl/wiki/Grbl-v1.1-Jogging
+     * <p>
+     * The commands needs to be long enough for the machine to reach the feed rate within the
+     * queued commands, dt > v^2 / (2 * a * (N-1)), and for the acknowledgements to arrive
+     * before the queue runs empty, dt > T / (N-1).
      *
+     * @param feedRate      the feed rate in units per second
+     * @param acceleration  the acceleration in units per second², or zero if unknown
+     * @param roundTripTime the time in seconds from sending a command until it is acknowledged
+     * @param lookahead     the number of commands that will be queued
+     * @return the duration of each command in seconds
+     */
+    static double calculateCommandDuration(double feedRate, double acceleration, double roundTripTime, int lookahead) {
+        if (lookahead < 2) {
+            return MIN_COMMAND_DURATION;
+        }
+
+        double duration = Math.max(MIN_COMMAND_DURATION, roundTripTime / (lookahead - 1));
+        if (acceleration > 0) {
+            duration = Math.max(duration, (feedRate * feedRate) / (2 * acceleration * (lookahead - 1)));
+        }
+        return Math.min(MAX_COMMAND_DURATION, duration);
+    }
+
+    private double getCommandDuration(int lookahead) {
+        float[] direction = {x, y, z, a, b, c};
+        double feedRate = jogService.getFeedRate() / 60.0 * getSpeedFactor(direction);
+        return calculateCommandDuration(feedRate, getAcceleration(direction), roundTripTime, lookahead);
+    }
+
+    /**
+     * Returns the lowest acceleration of the axes that will be moved in the jog units
+     *
+     * @param direction the jog direction for each axis
+     * @return the acceleration in units per second² or zero if it is unknown
+     */
+    private double getAcceleration(float[] direction) {
+        IFirmwareSettings firmwareSettings = controller.getFirmwareSettings();
+        if (firmwareSettings == null) {
+            return 0;
+        }
+
+        double acceleration = Double.MAX_VALUE;
+        for (int i = 0; i < AXES.length; i++) {
+            if (direction[i] == 0) {
+                continue;
+            }
+
+            try {
+                double axisAcceleration = firmwareSettings.getAcceleration(AXES[i]);
+                if (axisAcceleration <= 0) {
+                    return 0;
+                }
+                acceleration = Math.min(acceleration, axisAcceleration);
+            } catch (FirmwareSettingsException e) {
+                return 0;
+            }
+        }
+
+        if (acceleration == Double.MAX_VALUE) {
+            return 0;
+        }
+        return acceleration * UnitUtils.scaleUnits(UnitUtils.Units.MM, jogService.getUnits());
+    }
+
+    private static double getSpeedFactor(float[] direction) {
+        double sum = 0;
+        for (float value : direction) {
+            sum += value * value;
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Sends one jog command to the controller that will take the calculated command duration
+     * to execute (excluding acceleration).
+     * <p>
      * Note: the jog command total feedrate may exceed the set feedrate if moving in more than one axis at the same time. The max rate
      * in any 1 axis will never exceed the jog feedrate.
      *
+     * @return true if the command was sent
      */
-    private void sendJogCommand() {
+    private boolean sendJogCommand() {
+        IController currentController;
+        double dt;
+        synchronized (lock) {
+            currentController = controller;
+            if (currentController == null || !isRunning) {
+                return false;
+            }
+            dt = getCommandDuration(getLookahead());
+        }
+
+        if (!jogService.canJog()) {
+            LOGGER.fine("Skipping jog as the controller can't jog right now");
+            return false;
+        }
+
+        float[] direction = {x, y, z, a, b, c};
+        final double speedFactor = getSpeedFactor(direction); //FIXME? Double.min(speedFactor, 1.0); // caps jog speed at 100% (1.0) of maxFeedRate
+        if (speedFactor == 0) {
+            return false;
+        }
+
         final UnitUtils.Units units = jogService.getUnits();
-        final double jogVectorLength = Math.sqrt((x * x) + (y * y) + (z * z) + (a * a) + (b * b) + (c * c));
-        final double speedFactor = jogVectorLength; //FIXME? Double.min(jogVectorLength, 1.0); // caps jog speed at 100% (1.0) of maxFeedRate
-        final double maxFeedRate = jogService.getFeedRate() / 60.0; // maximum jog feed rate in units per second
-        final double v = maxFeedRate * speedFactor; // scaled jog feed rate in units per second
-        final double dt = 0.010; // minimum dt in ms for grbl command latency
+        final double v = jogService.getFeedRate() / 60.0 * speedFactor; // scaled jog feed rate in units per second
         final double s = v * dt; // s = distance in units that this jog command should travel
-        final double scaleFactor = s / jogVectorLength; // determine scaleFactor required to scale jogVectorLength to s
+        final double scaleFactor = s / speedFactor; // determine scaleFactor required to scale the direction vector to s
 
         PartialPosition.Builder builder = PartialPosition.builder(units);
-        setAxisIfNotZero(builder, Axis.X, x * scaleFactor);
-        setAxisIfNotZero(builder, Axis.Y, y * scaleFactor);
-        setAxisIfNotZero(builder, Axis.Z, z * scaleFactor);
-        setAxisIfNotZero(builder, Axis.A, a * scaleFactor);
-        setAxisIfNotZero(builder, Axis.B, b * scaleFactor);
-        setAxisIfNotZero(builder, Axis.C, c * scaleFactor);
-        jogService.adjustManualLocation(builder.build(), speedFactor);
+        boolean isEmpty = true;
+        for (int i = 0; i < AXES.length; i++) {
+            if (direction[i] != 0 && currentController.getCapabilities().hasAxis(AXES[i])) {
+                builder.setValue(AXES[i], direction[i] * scaleFactor);
+                isEmpty = false;
+            }
+        }
+
+        if (isEmpty) {
+            return false;
+        }
+
+        try {
+            double feedRate = backendAPI.getSettings().getJogFeedRate() * speedFactor;
+            backendAPI.adjustManualLocation(builder.build(), feedRate);
+        } catch (Exception e) {
+            // Not much we can do
+            LOGGER.log(Level.SEVERE, "Could not jog the machine", e);
+            return false;
+        }
+
+        synchronized (lock) {
+            queuedUntil = Math.max(queuedUntil, System.nanoTime()) + (long) (dt * 1_000_000_000L);
+        }
+        return true;
     }
 
-    private void setAxisIfNotZero(PartialPosition.Builder builder, Axis axis, double value) {
-        if (value != 0 && backendAPI.getController().getCapabilities().hasAxis(axis)) {
-            builder.setValue(axis, value);
+    private void cancelJog() {
+        isCancelPending = false;
+        queuedUntil = 0;
+        if (controller == null) {
+            return;
+        }
+
+        try {
+            controller.cancelJog();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not cancel the jog", e);
         }
     }
 
+    private static boolean isJogCommand(GcodeCommand command) {
+        String commandString = command.getCommandString();
+        return commandString != null && (commandString.startsWith("$J=") || commandString.contains("G91G1"));
+    }
+
     /**
      * Sets the direction to jog in a value between 1.0 to -1.0.
      * The value 0.5 would mean that that axis would move half the step distance.
@@ -176,20 +524,97 @@ public class ContinuousJogWorker implements UGSEventListener {
     }
 
     @Override
-    public void UGSEvent(UGSEvent event) {
-        if (event instanceof CommandEvent && ((CommandEvent) event).getCommandEventType() == CommandEventType.COMMAND_COMPLETE) {
-            if (isRunning) {
-                // still running, send the next jog command
-                sendJogCommand();
-            } else if (!jogCanceled) {
-                // a command has completed
-                // we've been stopped, so cancel jog commands in the buffer
-                jogService.cancelJog();
-                jogCanceled = true;
+    public void commandComplete(GcodeCommand command) {
+        if (!isJogCommand(command)) {
+            return;
+        }
+
+        synchronized (lock) {
+            Long sendTime = sendTimes.pollFirst();
+            if (sendTime != null) {
+                double commandRoundTripTime = (System.nanoTime() - sendTime) / 1_000_000_000d;
+                roundTripTime = roundTripTime == 0 ? commandRoundTripTime : roundTripTime * 0.8 + commandRoundTripTime * 0.2;
+            }
+
+            if (isCancelPending && sendTimes.isEmpty()) {
+                // We've been stopped and all commands has been acknowledged, cancel the jog commands in the buffer
+                cancelJog();
             }
+            lock.notifyAll();
         }
     }
 
+    @Override
+    public void commandSkipped(GcodeCommand command) {
+        commandComplete(command);
+    }
+
+    @Override
+    public void statusStringListener(ControllerStatus status) {
+        synchronized (lock) {
+            if (status.getBufferState() != null) {
+                plannerCapacity = Math.max(plannerCapacity, status.getBufferState().plannerBlocksAvailable);
+            }
+
+            if (stopEvent != null && !isCancelPending && status.getState() != ControllerState.JOG) {
+                stopEvent.end();
+                if (stopEvent.shouldCommit()) {
+                    stopEvent.commit();
+                }
+                stopEvent = null;
+                LOGGER.log(Level.FINE, "Jog stopped after {0} ms", (System.nanoTime() - stopRequestedTime) / 1_000_000);
+            }
+        }
+    }
+
+    @Name(JogStopEvent.NAME)
+    @Label("Jog Stop")
+    @Description("The time from stopping a continuous jog until the machine has stopped jogging")
+    @Category({"Universal Gcode Sender", "Jogging"})
+    static class JogStopEvent extends Event {
+        static final String NAME = "com.willwinder.universalgcodesender.JogStop";
+    }
+
+    @Override
+    public void streamCanceled() {
+        // Not used
+    }
+
+    @Override
+    public void streamStarted() {
+        // Not used
+    }
+
+    @Override
+    public void streamPaused() {
+        // Not used
+    }
+
+    @Override
+    public void streamResumed() {
+        // Not used
+    }
+
+    @Override
+    public void streamComplete() {
+        // Not used
+    }
+
+    @Override
+    public void receivedAlarm(Alarm alarm) {
+        // Not used
+    }
+
+    @Override
+    public void commandSent(GcodeCommand command) {
+        // Not used
+    }
+
+    @Override
+    public void probeCoordinates(Position p) {
+        // Not used
+    }
+
     public void setDirection(Axis axis, float value) {
         switch (axis) {
             case X:
@@ -0,0 +1,356 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.gcode.util.GcodeWordTokenizer;
+import com.willwinder.universalgcodesender.gcode.util.Plane;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A sparse index of the gcode state in a gcode stream file, written next to the stream file by a
+ * {@link GcodeStateIndexWriter} while the file is preprocessed. It contains snapshots of the state
+ * of the processed commands at regular intervals and after tool, offset and unit changes.
+ * <p>
+ * The index makes it possible to find the state at any line of a program by reading the rows
+ * from the nearest snapshot instead of from the start of the file, see {@link #seek(GcodeStreamReader, int)}.
+ * <p>
+ * The file format is:
+ * <pre>
+ * header:     magic (4 bytes) | version (int) | checkpoint count (int)
+ * checkpoint: row (int) | command number (int) | max z in mm (double) | state
+ * state:      motion mode | plane | distance mode | arc distance mode | feed mode | units | offset |
+ *             spindle | coolant (modified UTF-8 names) | feed rate (double) | spindle speed (double) |
+ *             x | y | z | a | b | c (double) | position units (modified UTF-8 name) | command number (int)
+ * </pre>
+ *
+ * @author wwinder
+ */
+public class GcodeStateIndex {
+    /**
+     * The default number of rows between each checkpoint
+     */
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 5000;
+
+    private static final String FILE_SUFFIX = ".state";
+    private static final byte[] MAGIC = {'U', 'G', 'S', 'I'};
+    private static final int VERSION = 1;
+
+    private final List<Checkpoint> checkpoints;
+
+    GcodeStateIndex(List<Checkpoint> checkpoints) {
+        this.checkpoints = Collections.unmodifiableList(new ArrayList<>(checkpoints));
+    }
+
+    /**
+     * Returns the file used for storing the index of the given gcode stream file.
+     *
+     * @param gcodeStreamFile a gcode stream file
+     * @return the index file
+     */
+    public static File getIndexFile(File gcodeStreamFile) {
+        return new File(gcodeStreamFile.getPath() + FILE_SUFFIX);
+    }
+
+    /**
+     * Loads the index of the given gcode stream file.
+     *
+     * @param gcodeStreamFile a gcode stream file
+     * @return the index of the file
+     * @throws IOException if the index is missing or could not be read
+     */
+    public static GcodeStateIndex load(File gcodeStreamFile) throws IOException {
+        File indexFile = getIndexFile(gcodeStreamFile);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            byte[] magic = new byte[MAGIC.length];
+            input.readFully(magic);
+            if (!Arrays.equals(MAGIC, magic) || input.readInt() != VERSION) {
+                throw new IOException("Not a gcode state index file: " + indexFile);
+            }
+
+            int count = input.readInt();
+            List<Checkpoint> checkpoints = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int row = input.readInt();
+                int commandNumber = input.readInt();
+                double maxZ = input.readDouble();
+                checkpoints.add(new Checkpoint(row, commandNumber, maxZ, readState(input)));
+            }
+            return new GcodeStateIndex(checkpoints);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt gcode state index file: " + indexFile, e);
+        }
+    }
+
+    static void write(File indexFile, List<Checkpoint> checkpoints) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+            output.write(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(checkpoints.size());
+            for (Checkpoint checkpoint : checkpoints) {
+                output.writeInt(checkpoint.row);
+                output.writeInt(checkpoint.commandNumber);
+                output.writeDouble(checkpoint.maxZ);
+                writeState(output, checkpoint.state);
+            }
+        }
+    }
+
+    /**
+     * @return all checkpoints ordered by row
+     */
+    public List<Checkpoint> getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Returns the last checkpoint before or at the given line number.
+     *
+     * @param lineNumber the line number in the original program
+     * @return the nearest checkpoint or null if the index is empty
+     */
+    public Checkpoint getCheckpoint(int lineNumber) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        Checkpoint result = null;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Checkpoint checkpoint = checkpoints.get(middle);
+            if (checkpoint.commandNumber <= lineNumber) {
+                result = checkpoint;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the first row of the given line number in a gcode stream and the state before it. Only the
+     * rows from the nearest checkpoint are read.
+     *
+     * @param reader     a reader of the gcode stream file this index was created for, it needs to support random access
+     * @param lineNumber the line number in the original program
+     * @return the state before the first row of the line, the row is equal to the number of rows
+     * in the stream if there are no rows for the line or any line after it
+     * @throws IOException if the stream could not be read or doesn't support random access
+     */
+    public Checkpoint seek(GcodeStreamReader reader, int lineNumber) throws IOException {
+        Checkpoint checkpoint = getCheckpoint(lineNumber);
+        if (checkpoint == null) {
+            checkpoint = new Checkpoint(0, 0, 0, new GcodeState());
+        }
+
+        StateTracker tracker = new StateTracker(checkpoint.getState(), checkpoint.maxZ);
+        int row = checkpoint.row;
+        while (row < reader.getNumRows()) {
+            GcodeCommand command = reader.getCommand(row);
+            if (command.getCommandNumber() >= lineNumber) {
+                break;
+            }
+
+            tracker.update(command.getCommandString());
+            row++;
+        }
+        return new Checkpoint(row, lineNumber, tracker.maxZ, tracker.state);
+    }
+
+    private static void writeState(DataOutputStream output, GcodeState state) throws IOException {
+        output.writeUTF(state.currentMotionMode.name());
+        output.writeUTF(state.plane.name());
+        output.writeUTF(state.distanceMode.name());
+        output.writeUTF(state.arcDistanceMode.name());
+        output.writeUTF(state.feedMode.name());
+        output.writeUTF(state.units.name());
+        output.writeUTF(state.offset.name());
+        output.writeUTF(state.spindle.name());
+        output.writeUTF(state.coolant.name());
+        output.writeDouble(state.feedRate);
+        output.writeDouble(state.spindleSpeed);
+
+        Position point = state.currentPoint;
+        output.writeDouble(point.x);
+        output.writeDouble(point.y);
+        output.writeDouble(point.z);
+        output.writeDouble(point.a);
+        output.writeDouble(point.b);
+        output.writeDouble(point.c);
+        output.writeUTF(point.getUnits().name());
+        output.writeInt(state.commandNumber);
+    }
+
+    private static GcodeState readState(DataInputStream input) throws IOException {
+        GcodeState state = new GcodeState();
+        state.currentMotionMode = Code.valueOf(input.readUTF());
+        state.plane = Plane.valueOf(input.readUTF());
+        state.distanceMode = Code.valueOf(input.readUTF());
+        state.inAbsoluteMode = state.distanceMode == Code.G90;
+        state.arcDistanceMode = Code.valueOf(input.readUTF());
+        state.inAbsoluteIJKMode = state.arcDistanceMode == Code.G90_1;
+        state.feedMode = Code.valueOf(input.readUTF());
+        state.units = Code.valueOf(input.readUTF());
+        state.isMetric = state.units == Code.G21;
+        state.offset = Code.valueOf(input.readUTF());
+        state.spindle = Code.valueOf(input.readUTF());
+        state.coolant = Code.valueOf(input.readUTF());
+        state.feedRate = input.readDouble();
+        state.spindleSpeed = input.readDouble();
+
+        double x = input.readDouble();
+        double y = input.readDouble();
+        double z = input.readDouble();
+        double a = input.readDouble();
+        double b = input.readDouble();
+        double c = input.readDouble();
+        state.currentPoint = new Position(x, y, z, a, b, c, UnitUtils.Units.valueOf(input.readUTF()));
+        state.commandNumber = input.readInt();
+        return state;
+    }
+
+    /**
+     * A snapshot of the gcode state before a row in a gcode stream.
+     */
+    public static class Checkpoint {
+        private final int row;
+        private final int commandNumber;
+        private final double maxZ;
+        private final GcodeState state;
+
+        Checkpoint(int row, int commandNumber, double maxZ, GcodeState state) {
+            this.row = row;
+            this.commandNumber = commandNumber;
+            this.maxZ = maxZ;
+            this.state = state;
+        }
+
+        /**
+         * @return the zero based row in the gcode stream
+         */
+        public int getRow() {
+            return row;
+        }
+
+        /**
+         * @return the line number in the original program of the row
+         */
+        public int getCommandNumber() {
+            return commandNumber;
+        }
+
+        /**
+         * @return the highest z position in millimeters of all rows before this row
+         */
+        public double getMaxZ() {
+            return maxZ;
+        }
+
+        /**
+         * @return a copy of the state before the row
+         */
+        public GcodeState getState() {
+            return state.copy();
+        }
+    }
+
+    /**
+     * Keeps track of the state of the processed commands in a gcode stream, the same way as a
+     * {@link GcodeParser} does. The same tracker is used when writing and reading the index so
+     * that replaying the rows from a checkpoint gives the same state as processing the whole file.
+     */
+    static class StateTracker {
+        private final GcodeWordTokenizer tokenizer = new GcodeWordTokenizer();
+        private GcodeState state;
+        private double maxZ;
+
+        StateTracker(GcodeState state, double maxZ) {
+            this.state = state;
+            this.maxZ = maxZ;
+        }
+
+        GcodeState getState() {
+            return state;
+        }
+
+        double getMaxZ() {
+            return maxZ;
+        }
+
+        /**
+         * Updates the state with a processed command.
+         *
+         * @param command a processed command
+         * @return true if the command changed the tool, the work coordinate offset or the units
+         */
+        boolean update(String command) {
+            GcodeState previous = state;
+            try {
+                List<GcodeParser.GcodeMeta> metas = GcodeParserUtils.processCommand(command, ++state.commandNumber, state, true);
+                if (metas != null) {
+                    for (GcodeParser.GcodeMeta meta : metas) {
+                        if (meta.state != null) {
+                            state = meta.state;
+                        }
+                    }
+                }
+            } catch (GcodeParserException e) {
+                // Commands which can't be parsed are ignored, the same as when the file is visualized
+                return false;
+            }
+
+            Position point = state.currentPoint;
+            maxZ = Math.max(maxZ, point.z * UnitUtils.scaleUnits(point.getUnits(), UnitUtils.Units.MM));
+            return state.offset != previous.offset || state.units != previous.units || isToolChange(command);
+        }
+
+        private boolean isToolChange(String command) {
+            if (command.indexOf('T') < 0 && command.indexOf('t') < 0 && command.indexOf('6') < 0) {
+                return false;
+            }
+
+            tokenizer.tokenize(command);
+            for (int i = 0; i < tokenizer.getWordCount(); i++) {
+                char letter = tokenizer.getLetter(i);
+                if (letter == 'T' || (letter == 'M' && tokenizer.getValue(i) == 6)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import com.willwinder.universalgcodesender.utils.GcodeStateIndex.Checkpoint;
+import com.willwinder.universalgcodesender.utils.GcodeStateIndex.StateTracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A gcode writer which keeps track of the state of the processed commands written to a gcode stream
+ * and writes a {@link GcodeStateIndex} for it when closed.
+ * <p>
+ * Checkpoints are only added on the first row of a line in the original program, so that all rows of a
+ * line can be found by reading from the nearest checkpoint.
+ *
+ * @author wwinder
+ */
+public class GcodeStateIndexWriter implements IGcodeWriter {
+    private final IGcodeWriter delegate;
+    private final File indexFile;
+    private final int checkpointInterval;
+    private final StateTracker tracker = new StateTracker(new GcodeState(), 0);
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+    private int row = 0;
+    private int rowsSinceCheckpoint = 0;
+    private int lastCommandNumber = Integer.MIN_VALUE;
+    private boolean checkpointPending = true;
+
+    /**
+     * Creates a writer using the default checkpoint interval
+     *
+     * @param delegate        the gcode stream writer
+     * @param gcodeStreamFile the file written by the gcode stream writer
+     */
+    public GcodeStateIndexWriter(IGcodeWriter delegate, File gcodeStreamFile) {
+        this(delegate, gcodeStreamFile, GcodeStateIndex.DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * @param delegate           the gcode stream writer
+     * @param gcodeStreamFile    the file written by the gcode stream writer
+     * @param checkpointInterval the maximum number of rows between checkpoints
+     */
+    public GcodeStateIndexWriter(IGcodeWriter delegate, File gcodeStreamFile, int checkpointInterval) {
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException("The checkpoint interval must be greater than zero");
+        }
+
+        this.delegate = delegate;
+        this.indexFile = GcodeStateIndex.getIndexFile(gcodeStreamFile);
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    @Override
+    public String getCanonicalPath() throws IOException {
+        return delegate.getCanonicalPath();
+    }
+
+    @Override
+    public void addLine(GcodeCommand command) {
+        delegate.addLine(command);
+        update(command.getCommandString(), command.getCommandNumber());
+    }
+
+    @Override
+    public void addLine(String original, String processed, String comment, int commandNumber) {
+        delegate.addLine(original, processed, comment, commandNumber);
+        update(processed, commandNumber);
+    }
+
+    private void update(String processed, int commandNumber) {
+        if (checkpointPending && commandNumber != lastCommandNumber) {
+            checkpoints.add(new Checkpoint(row, commandNumber, tracker.getMaxZ(), tracker.getState().copy()));
+            checkpointPending = false;
+            rowsSinceCheckpoint = 0;
+        }
+
+        lastCommandNumber = commandNumber;
+        row++;
+        rowsSinceCheckpoint++;
+
+        boolean changed = tracker.update(processed == null ? "" : processed);
+        if (changed || rowsSinceCheckpoint >= checkpointInterval) {
+            checkpointPending = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            delegate.close();
+        } finally {
+            GcodeStateIndex.write(indexFile, checkpoints);
+        }
+    }
+}
@@ -23,6 +23,21 @@ import java.util.regex.Pattern;
 /**
  * Reads a 'GcodeStream' file containing command processing information, actual
  * command to send and other metadata like total number of commands.
+ * <p>
+ * Two formats exist:
+ * <ul>
+ *     <li>The legacy text format, where each row is a line with the columns separated
+ *     by {@link #FIELD_SEPARATOR} and the first line contains the number of rows.</li>
+ *     <li>The binary format (version {@link #BINARY_VERSION}) written by {@link GcodeStreamWriter}:
+ *     <pre>
+ *     header:  magic (4 bytes) | version (int) | row count (int) | reserved (int) | index offset (long)
+ *     records: command number (int) | original length (int) | original (UTF-8) | processed length (int) |
+ *              processed (UTF-8) | comment length (int) | comment (UTF-8)
+ *     index:   one record offset (long) for each row
+ *     </pre>
+ *     All numbers are big endian. The index makes it possible to jump to any row without
+ *     reading the rows before it.</li>
+ * </ul>
  *
  * @author wwinder
  */
@@ -39,4 +54,31 @@ public class GcodeStream {
     protected static final Pattern SPLIT_PATTERN = Pattern.compile(Pattern.quote(FIELD_SEPARATOR));
     protected static final String META_PREFIX = "gsw_meta:";
     protected static final String METADATA_RESERVED_SIZE = "                                                  ";
+
+    protected static final byte[] BINARY_MAGIC = {'U', 'G', 'S', 'B'};
+    protected static final int BINARY_VERSION = 1;
+    protected static final int BINARY_HEADER_SIZE = 24;
+    protected static final int BINARY_HEADER_ROWS_OFFSET = 8;
+    protected static final int BINARY_HEADER_INDEX_OFFSET = 16;
+    protected static final int BINARY_INDEX_ENTRY_SIZE = Long.BYTES;
+
+    /**
+     * Checks if the given bytes starts with the binary gcode stream magic bytes
+     *
+     * @param bytes the first bytes of a file
+     * @param length the number of valid bytes in the array
+     * @return true if the bytes are from a binary gcode stream
+     */
+    protected static boolean isBinaryMagic(byte[] bytes, int length) {
+        if (length < BINARY_MAGIC.length) {
+            return false;
+        }
+
+        for (int i = 0; i < BINARY_MAGIC.length; i++) {
+            if (bytes[i] != BINARY_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,89 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An input stream with the commands of a gcode stream as plain text, one command per line. This
+ * makes it possible to send the processed gcode to the controller without writing it to a
+ * temporary file first.
+ *
+ * @author Joacim Breiler
+ */
+public class GcodeStreamInputStream extends InputStream {
+    private final IGcodeStreamReader reader;
+    private byte[] line = new byte[0];
+    private int position;
+
+    public GcodeStreamInputStream(IGcodeStreamReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fillLine()) {
+            return -1;
+        }
+        return line[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        int count = 0;
+        while (count < length && fillLine()) {
+            int bytesToCopy = Math.min(length - count, line.length - position);
+            System.arraycopy(line, position, buffer, offset + count, bytesToCopy);
+            position += bytesToCopy;
+            count += bytesToCopy;
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    /**
+     * Loads the next command if the current one has been read
+     *
+     * @return false if there are no more commands
+     */
+    private boolean fillLine() throws IOException {
+        while (position >= line.length) {
+            GcodeCommand command = reader.getNextCommand();
+            if (command == null) {
+                return false;
+            }
+
+            line = (command.getCommandString() + "\n").getBytes(StandardCharsets.UTF_8);
+            position = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -20,8 +20,10 @@ package com.willwinder.universalgcodesender.utils;
 
 import com.willwinder.universalgcodesender.gcode.ICommandCreator;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
@@ -29,8 +31,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
+import static com.willwinder.universalgcodesender.utils.GcodeStream.BINARY_MAGIC;
 import static com.willwinder.universalgcodesender.utils.GcodeStream.COL_COMMAND_NUMBER;
 import static com.willwinder.universalgcodesender.utils.GcodeStream.COL_COMMENT;
 import static com.willwinder.universalgcodesender.utils.GcodeStream.COL_ORIGINAL_COMMAND;
@@ -38,82 +42,209 @@ import static com.willwinder.universalgcodesender.utils.GcodeStream.COL_PROCESSE
 import static com.willwinder.universalgcodesender.utils.GcodeStream.META_PREFIX;
 import static com.willwinder.universalgcodesender.utils.GcodeStream.NUM_COLUMNS;
 import static com.willwinder.universalgcodesender.utils.GcodeStream.SPLIT_PATTERN;
+import static com.willwinder.universalgcodesender.utils.GcodeStream.isBinaryMagic;
 
 /**
  * Reads a 'GcodeStream' file containing command processing information, actual
  * command to send and other metadata like total number of commands.
+ * <p>
+ * Binary streams written by {@link GcodeStreamWriter} are read using a {@link BinaryGcodeStreamReader},
+ * files in the legacy text format are parsed line by line.
  *
  * @author wwinder
  */
 public class GcodeStreamReader implements IGcodeStreamReader {
-    private final ICommandCreator commandCreator;
-    private final BufferedReader reader;
-    private final int numRows;
-    private int numRowsRemaining;
+    private final IGcodeStreamReader delegate;
 
-    public static class NotGcodeStreamFile extends Exception {}
+    public static class NotGcodeStreamFile extends Exception {
+        public NotGcodeStreamFile() {
+            super();
+        }
 
-    public GcodeStreamReader(InputStream inputStream, ICommandCreator commandCreator) throws NotGcodeStreamFile {
-        this.commandCreator = commandCreator;
+        public NotGcodeStreamFile(Throwable cause) {
+            super(cause);
+        }
+    }
 
+    public GcodeStreamReader(InputStream inputStream, ICommandCreator commandCreator) throws NotGcodeStreamFile {
         try {
-            reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
-            String metadata = StringUtils.trimToEmpty(reader.readLine());
-            if (!metadata.startsWith(META_PREFIX)) {
-                throw new NotGcodeStreamFile();
+            BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream);
+            bufferedInputStream.mark(BINARY_MAGIC.length);
+            byte[] magic = bufferedInputStream.readNBytes(BINARY_MAGIC.length);
+            if (isBinaryMagic(magic, magic.length)) {
+                byte[] remaining = bufferedInputStream.readAllBytes();
+                ByteBuffer buffer = ByteBuffer.allocate(magic.length + remaining.length);
+                buffer.put(magic).put(remaining).flip();
+                delegate = new BinaryGcodeStreamReader(buffer, commandCreator);
+            } else {
+                bufferedInputStream.reset();
+                delegate = new TextGcodeStreamReader(bufferedInputStream, commandCreator);
             }
-
-            metadata = metadata.substring(META_PREFIX.length());
-            numRows = Integer.parseInt(metadata);
-            numRowsRemaining = numRows;
-        } catch (IOException | NumberFormatException e) {
-            throw new NotGcodeStreamFile();
+        } catch (IOException e) {
+            throw new NotGcodeStreamFile(e);
         }
     }
 
     public GcodeStreamReader(File f, ICommandCreator commandCreator) throws NotGcodeStreamFile, FileNotFoundException {
-        this(new FileInputStream(f), commandCreator);
+        if (isBinaryFile(f)) {
+            try {
+                delegate = new BinaryGcodeStreamReader(f, commandCreator);
+            } catch (IOException e) {
+                throw new NotGcodeStreamFile(e);
+            }
+        } else {
+            InputStream inputStream = new FileInputStream(f);
+            try {
+                delegate = new TextGcodeStreamReader(inputStream, commandCreator);
+            } catch (NotGcodeStreamFile e) {
+                IOUtils.closeQuietly(inputStream);
+                throw e;
+            }
+        }
     }
-    
+
+    private static boolean isBinaryFile(File f) throws FileNotFoundException {
+        try (InputStream inputStream = new FileInputStream(f)) {
+            byte[] magic = inputStream.readNBytes(BINARY_MAGIC.length);
+            return isBinaryMagic(magic, magic.length);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns if the stream supports jumping to a row using {@link #seek(int)} and {@link #getCommand(int)}.
+     * This is only supported by the binary stream format.
+     *
+     * @return true if random access is supported
+     */
+    public boolean isRandomAccess() {
+        return delegate instanceof BinaryGcodeStreamReader;
+    }
+
+    /**
+     * Moves the stream to the given row so that the next call to {@link #getNextCommand()}
+     * will return it.
+     *
+     * @param row the zero based row index
+     * @throws IOException if the stream does not support random access
+     */
+    public void seek(int row) throws IOException {
+        if (!isRandomAccess()) {
+            throw new IOException("Random access is not supported by the legacy gcode stream format");
+        }
+        ((BinaryGcodeStreamReader) delegate).seek(row);
+    }
+
+    /**
+     * Returns the command at the given row without changing the current stream position.
+     *
+     * @param row the zero based row index
+     * @return the command at the given row
+     * @throws IOException if the stream does not support random access or if the data is corrupt
+     */
+    public GcodeCommand getCommand(int row) throws IOException {
+        if (!isRandomAccess()) {
+            throw new IOException("Random access is not supported by the legacy gcode stream format");
+        }
+        return ((BinaryGcodeStreamReader) delegate).getCommand(row);
+    }
+
     @Override
     public boolean ready() {
-        return getNumRowsRemaining() > 0;
+        return delegate.ready();
     }
 
     @Override
     public int getNumRows() {
-        return numRows;
+        return delegate.getNumRows();
     }
 
     @Override
     public int getNumRowsRemaining() {
-        return numRowsRemaining;
-    }
-
-    private String[] parseLine(String line) {
-        return SPLIT_PATTERN.split(line, -1);
+        return delegate.getNumRowsRemaining();
     }
 
     @Override
     public GcodeCommand getNextCommand() throws IOException {
-        if (numRowsRemaining == 0) return null;
-
-        String line = reader.readLine();
-        String[] nextLine = parseLine(line);
-        if (nextLine.length != NUM_COLUMNS) {
-            throw new IOException("Corrupt data found while processing gcode stream: " + line);
-        }
-        numRowsRemaining--;
-        return commandCreator.createCommand(
-                nextLine[COL_PROCESSED_COMMAND],
-                nextLine[COL_ORIGINAL_COMMAND],
-                nextLine[COL_COMMENT],
-                Integer.parseInt(nextLine[COL_COMMAND_NUMBER]));
+        return delegate.getNextCommand();
     }
 
     @Override
     public void close() throws IOException {
-        numRowsRemaining = 0;
-        reader.close();
+        delegate.close();
+    }
+
+    /**
+     * Reads the legacy text format where each row is separated with a new line and
+     * the columns are separated with {@link GcodeStream#FIELD_SEPARATOR}.
+     */
+    private static class TextGcodeStreamReader implements IGcodeStreamReader {
+        private final ICommandCreator commandCreator;
+        private final BufferedReader reader;
+        private final int numRows;
+        private int numRowsRemaining;
+
+        TextGcodeStreamReader(InputStream inputStream, ICommandCreator commandCreator) throws NotGcodeStreamFile {
+            this.commandCreator = commandCreator;
+
+            try {
+                reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+                String metadata = StringUtils.trimToEmpty(reader.readLine());
+                if (!metadata.startsWith(META_PREFIX)) {
+                    throw new NotGcodeStreamFile();
+                }
+
+                metadata = metadata.substring(META_PREFIX.length());
+                numRows = Integer.parseInt(metadata);
+                numRowsRemaining = numRows;
+            } catch (IOException | NumberFormatException e) {
+                throw new NotGcodeStreamFile();
+            }
+        }
+
+        @Override
+        public boolean ready() {
+            return getNumRowsRemaining() > 0;
+        }
+
+        @Override
+        public int getNumRows() {
+            return numRows;
+        }
+
+        @Override
+        public int getNumRowsRemaining() {
+            return numRowsRemaining;
+        }
+
+        private String[] parseLine(String line) {
+            return SPLIT_PATTERN.split(line, -1);
+        }
+
+        @Override
+        public GcodeCommand getNextCommand() throws IOException {
+            if (numRowsRemaining == 0) return null;
+
+            String line = reader.readLine();
+            String[] nextLine = parseLine(line);
+            if (nextLine.length != NUM_COLUMNS) {
+                throw new IOException("Corrupt data found while processing gcode stream: " + line);
+            }
+            numRowsRemaining--;
+            return commandCreator.createCommand(
+                    nextLine[COL_PROCESSED_COMMAND],
+                    nextLine[COL_ORIGINAL_COMMAND],
+                    nextLine[COL_COMMENT],
+                    Integer.parseInt(nextLine[COL_COMMAND_NUMBER]));
+        }
+
+        @Override
+        public void close() throws IOException {
+            numRowsRemaining = 0;
+            reader.close();
+        }
     }
 }
@@ -20,42 +20,48 @@ package com.willwinder.universalgcodesender.utils;
 
 import com.willwinder.universalgcodesender.types.GcodeCommand;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.io.RandomAccessFile;
-import java.io.UnsupportedEncodingException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
-import static com.willwinder.universalgcodesender.utils.GcodeStream.COL_COMMAND_NUMBER;
-import static com.willwinder.universalgcodesender.utils.GcodeStream.COL_COMMENT;
-import static com.willwinder.universalgcodesender.utils.GcodeStream.COL_ORIGINAL_COMMAND;
-import static com.willwinder.universalgcodesender.utils.GcodeStream.COL_PROCESSED_COMMAND;
-import static com.willwinder.universalgcodesender.utils.GcodeStream.FIELD_SEPARATOR;
-import static com.willwinder.universalgcodesender.utils.GcodeStream.METADATA_RESERVED_SIZE;
-import static com.willwinder.universalgcodesender.utils.GcodeStream.NUM_COLUMNS;
+import static com.willwinder.universalgcodesender.utils.GcodeStream.BINARY_HEADER_INDEX_OFFSET;
+import static com.willwinder.universalgcodesender.utils.GcodeStream.BINARY_HEADER_ROWS_OFFSET;
+import static com.willwinder.universalgcodesender.utils.GcodeStream.BINARY_HEADER_SIZE;
+import static com.willwinder.universalgcodesender.utils.GcodeStream.BINARY_MAGIC;
+import static com.willwinder.universalgcodesender.utils.GcodeStream.BINARY_VERSION;
 
 /**
- * Writes a "GcodeStream" file in a machine readable format containing command processing
+ * Writes a "GcodeStream" file in a machine readable binary format containing command processing
  * information, actual command to send and other metadata like total number of commands.
+ * See {@link GcodeStream} for a description of the format.
  *
  * @author wwinder
  */
 public class GcodeStreamWriter implements IGcodeWriter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     private final File file;
-    private final PrintWriter fileWriter;
-    private Integer lineCount = 0;
+    private final DataOutputStream outputStream;
+    private long position;
+    private long[] rowOffsets = new long[1024];
+    private int lineCount = 0;
 
     public GcodeStreamWriter(File f) throws FileNotFoundException {
         file = f;
+        outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), BUFFER_SIZE));
         try {
-            fileWriter = new PrintWriter(f, StandardCharsets.UTF_8.name());
-            // 50 bytes at the beginning of the file to store metadata
-            fileWriter.append(METADATA_RESERVED_SIZE);
-            fileWriter.append("\n");
-        } catch (UnsupportedEncodingException e) {
-            throw new FileNotFoundException("Could not use UTF-8 to output gcode stream file");
+            // The header is rewritten with the row count and index offset when the file is closed
+            outputStream.write(new byte[BINARY_HEADER_SIZE]);
+            position = BINARY_HEADER_SIZE;
+        } catch (IOException e) {
+            throw new FileNotFoundException("Could not write gcode stream header: " + e.getMessage());
         }
     }
 
@@ -70,29 +76,7 @@ public class GcodeStreamWriter implements IGcodeWriter {
 
     @Override
     public void addLine(GcodeCommand command) {
-        lineCount++;
-        String sep = "";
-        for (int i = 0; i < NUM_COLUMNS; i++) {
-            fileWriter.append(sep);
-            switch (i) {
-                case COL_ORIGINAL_COMMAND:
-                    fileWriter.append(command.getOriginalCommandString());
-                    break;
-                case COL_PROCESSED_COMMAND:
-                    fileWriter.append(command.getCommandString());
-                    break;
-                case COL_COMMENT:
-                    fileWriter.append(command.getComment());
-                    break;
-                case COL_COMMAND_NUMBER:
-                    fileWriter.append(Integer.toString(command.getCommandNumber()));
-                    break;
-                default:
-                    break;
-            }
-            sep = FIELD_SEPARATOR;
-        }
-        fileWriter.append("\n");
+        writeRow(command.getOriginalCommandString(), command.getCommandString(), command.getComment(), command.getCommandNumber());
     }
 
     @Override
@@ -103,41 +87,50 @@ public class GcodeStreamWriter implements IGcodeWriter {
             throw new IllegalArgumentException("Cannot include newlines in gcode stream.");
         }
 
-        lineCount++;
-        String sep = "";
-        for (int i = 0; i < NUM_COLUMNS; i++) {
-            fileWriter.append(sep);
-            switch (i) {
-                case COL_ORIGINAL_COMMAND:
-                    fileWriter.append(getString(original));
-                    break;
-                case COL_PROCESSED_COMMAND:
-                    fileWriter.append(getString(processed));
-                    break;
-                case COL_COMMENT:
-                    fileWriter.append(getString(comment));
-                    break;
-                case COL_COMMAND_NUMBER:
-                    fileWriter.append(Integer.toString(commandNumber));
-                    break;
-                default:
-                    break;
-            }
-            sep = FIELD_SEPARATOR;
+        writeRow(getString(original), getString(processed), getString(comment), commandNumber);
+    }
+
+    private void writeRow(String original, String processed, String comment, int commandNumber) {
+        if (lineCount == rowOffsets.length) {
+            rowOffsets = Arrays.copyOf(rowOffsets, rowOffsets.length * 2);
         }
-        fileWriter.append("\n");
+        rowOffsets[lineCount++] = position;
+
+        try {
+            outputStream.writeInt(commandNumber);
+            position += Integer.BYTES;
+            writeString(original);
+            writeString(processed);
+            writeString(comment);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to gcode stream file " + file, e);
+        }
+    }
+
+    private void writeString(String str) throws IOException {
+        byte[] bytes = str == null ? new byte[0] : str.getBytes(StandardCharsets.UTF_8);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+        position += Integer.BYTES + bytes.length;
     }
 
     @Override
     public void close() throws IOException {
-        fileWriter.close();
+        long indexOffset = position;
+        try (DataOutputStream stream = outputStream) {
+            for (int i = 0; i < lineCount; i++) {
+                stream.writeLong(rowOffsets[i]);
+            }
+        }
+
         try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
             raw.seek(0);
-            String metadata = "gsw_meta:" + lineCount.toString();
-            if (metadata.length() > METADATA_RESERVED_SIZE.length()) {
-                throw new IOException("Too many lines to write metadata for GcodeStreamWriter!");
-            }
-            raw.write(metadata.getBytes(), 0, metadata.length());
+            raw.write(BINARY_MAGIC);
+            raw.writeInt(BINARY_VERSION);
+            raw.seek(BINARY_HEADER_ROWS_OFFSET);
+            raw.writeInt(lineCount);
+            raw.seek(BINARY_HEADER_INDEX_OFFSET);
+            raw.writeLong(indexOffset);
         }
     }
 }
@@ -0,0 +1,81 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A gcode stream which starts streaming a gcode stream file from a given row. The given
+ * commands are streamed before the row, which can be used for restoring the machine state
+ * of the skipped rows.
+ *
+ * @author wwinder
+ */
+public class RunFromGcodeStreamReader implements IGcodeStreamReader {
+    private final GcodeStreamReader delegate;
+    private final List<GcodeCommand> commands;
+    private final int numRows;
+    private int currentCommand;
+
+    /**
+     * @param delegate the gcode stream, it needs to support random access
+     * @param row      the zero based row to start streaming from
+     * @param commands the commands to stream before the row
+     * @throws IOException if the stream doesn't support random access
+     */
+    public RunFromGcodeStreamReader(GcodeStreamReader delegate, int row, List<GcodeCommand> commands) throws IOException {
+        this.delegate = delegate;
+        this.commands = new ArrayList<>(commands);
+        this.numRows = this.commands.size() + delegate.getNumRows() - row;
+        delegate.seek(row);
+    }
+
+    @Override
+    public boolean ready() {
+        return delegate.ready();
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public int getNumRowsRemaining() {
+        return commands.size() - currentCommand + delegate.getNumRowsRemaining();
+    }
+
+    @Override
+    public GcodeCommand getNextCommand() throws IOException {
+        if (currentCommand < commands.size()) {
+            return commands.get(currentCommand++);
+        }
+        return delegate.getNextCommand();
+    }
+
+    @Override
+    public void close() throws IOException {
+        currentCommand = commands.size();
+        delegate.close();
+    }
+}
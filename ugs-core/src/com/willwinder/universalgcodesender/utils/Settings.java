@@ -58,6 +58,7 @@ public class Settings {
     private double zJogStepSize = 1;
     private double abcJogStepSize = 1;
     private double jogFeedRate = 100;
+    private int jogLookaheadBlocks = 8;
 
     // Console
     private boolean scrollWindowEnabled = true;
@@ -68,6 +69,7 @@ public class Settings {
     private WindowSettings mainWindowSettings = new WindowSettings(0,0,640,520);
     private WindowSettings visualizerWindowSettings = new WindowSettings(0,0,640,480);
     private boolean singleStepMode = false;
+    private boolean batchingEnabled = false;
     private boolean statusUpdatesEnabled = true;
     private int statusUpdateRate = 200;
     private Units preferredUnits = Units.MM;
@@ -77,6 +79,7 @@ public class Settings {
     private boolean showSerialPortWarning = true;
     private boolean autoStartPendant = false;
     private int pendantPort = 8080;
+    private int pendantStatusUpdateRate = 100;
     private boolean autoConnect = false;
     private boolean autoReconnect = false;
 
@@ -120,6 +123,12 @@ public class Settings {
      */
     private boolean showTranslationsWarning = true;
 
+    /**
+     * If events should be dispatched to each listener on its own thread instead of on the
+     * thread communicating with the controller
+     */
+    private boolean asynchronousEventDispatchEnabled = false;
+
     /**
      * The GSON deserialization doesn't do anything beyond initialize what's in the json document.  Call finalizeInitialization() before using the Settings.
      */
@@ -301,6 +310,21 @@ public class Settings {
         changed();
     }
 
+    /**
+     * Returns the maximum number of jog commands to keep queued in the controller when jogging
+     * continuously. The number will be limited by the size of the planner buffer of the controller.
+     *
+     * @return the maximum number of queued jog commands
+     */
+    public int getJogLookaheadBlocks() {
+        return jogLookaheadBlocks;
+    }
+
+    public void setJogLookaheadBlocks(int jogLookaheadBlocks) {
+        this.jogLookaheadBlocks = jogLookaheadBlocks;
+        changed();
+    }
+
     public boolean isScrollWindowEnabled() {
         return scrollWindowEnabled;
     }
@@ -355,6 +379,15 @@ public class Settings {
         changed();
     }
 
+    public boolean isBatchingEnabled() {
+        return batchingEnabled;
+    }
+
+    public void setBatchingEnabled(boolean batchingEnabled) {
+        this.batchingEnabled = batchingEnabled;
+        changed();
+    }
+
     public boolean isStatusUpdatesEnabled() {
         return statusUpdatesEnabled;
     }
@@ -539,6 +572,18 @@ public class Settings {
         changed();
     }
 
+    /**
+     * @return the minimum time in milliseconds between the status updates pushed to the pendant
+     */
+    public int getPendantStatusUpdateRate() {
+        return pendantStatusUpdateRate;
+    }
+
+    public void setPendantStatusUpdateRate(int pendantStatusUpdateRate) {
+        this.pendantStatusUpdateRate = pendantStatusUpdateRate;
+        changed();
+    }
+
     public boolean isInvertMouseZoom() {
         return invertMouseZoom;
     }
@@ -556,6 +601,15 @@ public class Settings {
         this.showTranslationsWarning = showTranslationsWarning;
     }
 
+    public boolean isAsynchronousEventDispatchEnabled() {
+        return asynchronousEventDispatchEnabled;
+    }
+
+    public void setAsynchronousEventDispatchEnabled(boolean asynchronousEventDispatchEnabled) {
+        this.asynchronousEventDispatchEnabled = asynchronousEventDispatchEnabled;
+        changed();
+    }
+
     public static class FileStats {
         public Position minCoordinate;
         public Position maxCoordinate;
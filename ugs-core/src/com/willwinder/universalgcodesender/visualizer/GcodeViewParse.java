@@ -27,6 +27,7 @@ import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
 import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UnitUtils;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
+import com.willwinder.universalgcodesender.types.PointSegment;
 import com.willwinder.universalgcodesender.utils.IGcodeStreamReader;
 
 import java.io.IOException;
@@ -37,6 +38,13 @@ import java.util.List;
  * Gcode parser that creates an array of line segments which can be drawn.
  */
 public class GcodeViewParse {
+    /**
+     * Receives each parsed point segment together with the position it starts from.
+     */
+    private interface PointSegmentConsumer {
+        void accept(Position start, PointSegment endSegment, double spindleSpeed);
+    }
+
     // Parsed object
     private final Position min;
     private final Position max;
@@ -122,6 +130,29 @@ public class GcodeViewParse {
     public List<LineSegment> toObjFromReader(IGcodeStreamReader reader,
                                              double arcSegmentLength) throws IOException, GcodeParserException {
         lines.clear();
+        parseReader(reader, (start, endSegment, spindleSpeed) ->
+                VisualizerUtils.addLinesFromPointSegment(start, endSegment, arcSegmentLength, lines, spindleSpeed));
+
+        recalculateBoundaries();
+        return lines;
+    }
+
+    /**
+     * Same as toObjFromReader but stores the segments in a toolpath buffer instead
+     * of creating an object for each segment.
+     *
+     * @param reader           a stream with commands to parse.
+     * @param arcSegmentLength length of line segments when expanding an arc.
+     */
+    public ToolpathBuffer toToolpathFromReader(IGcodeStreamReader reader, double arcSegmentLength) throws IOException, GcodeParserException {
+        ToolpathBuffer toolpath = new ToolpathBuffer(reader.getNumRowsRemaining());
+        parseReader(reader, (start, endSegment, spindleSpeed) ->
+                VisualizerUtils.addLinesFromPointSegment(start, endSegment, arcSegmentLength, toolpath));
+
+        return completeToolpath(toolpath);
+    }
+
+    private void parseReader(IGcodeStreamReader reader, PointSegmentConsumer consumer) throws IOException, GcodeParserException {
         GcodeParser gp = getParser();
 
         // Save the state
@@ -135,16 +166,13 @@ public class GcodeViewParse {
                 List<GcodeMeta> points = gp.addCommand(command, commandObject.getCommandNumber());
                 for (GcodeMeta meta : points) {
                     if (meta.point != null) {
-                        VisualizerUtils.addLinesFromPointSegment(start, meta.point, arcSegmentLength, lines, spindleSpeed);
+                        consumer.accept(start, meta.point, spindleSpeed);
                         start = meta.point.point();
                         spindleSpeed = meta.point.getSpindleSpeed();
                     }
                 }
             }
         }
-
-        recalculateBoundaries();
-        return lines;
     }
 
     private void recalculateBoundaries() {
@@ -163,9 +191,42 @@ public class GcodeViewParse {
      * @param arcSegmentLength length of line segments when expanding an arc.
      */
     public List<LineSegment> toObjRedux(List<String> gcode, double arcSegmentLength) throws GcodeParserException {
-        GcodeParser gp = getParser();
-
         lines.clear();
+        parseLines(gcode, (start, endSegment, spindleSpeed) ->
+                VisualizerUtils.addLinesFromPointSegment(start, endSegment, arcSegmentLength, lines, spindleSpeed));
+
+        recalculateBoundaries();
+        return lines;
+    }
+
+    /**
+     * Same as toObjRedux but stores the segments in a toolpath buffer instead
+     * of creating an object for each segment.
+     *
+     * @param gcode            commands to visualize.
+     * @param arcSegmentLength length of line segments when expanding an arc.
+     */
+    public ToolpathBuffer toToolpath(List<String> gcode, double arcSegmentLength) throws GcodeParserException {
+        ToolpathBuffer toolpath = new ToolpathBuffer(gcode.size());
+        parseLines(gcode, (start, endSegment, spindleSpeed) ->
+                VisualizerUtils.addLinesFromPointSegment(start, endSegment, arcSegmentLength, toolpath));
+
+        return completeToolpath(toolpath);
+    }
+
+    private ToolpathBuffer completeToolpath(ToolpathBuffer toolpath) {
+        toolpath.trimToSize();
+
+        Position toolpathMin = toolpath.getMinimumExtremes();
+        Position toolpathMax = toolpath.getMaximumExtremes();
+        testExtremes(toolpathMin);
+        testExtremes(toolpathMax);
+        maxSpindleSpeed = Math.max(toolpath.getMaxSpindleSpeed(), maxSpindleSpeed);
+        return toolpath;
+    }
+
+    private void parseLines(List<String> gcode, PointSegmentConsumer consumer) throws GcodeParserException {
+        GcodeParser gp = getParser();
 
         // Save the state
         Position start = new Position(gp.getCurrentState().getUnits());
@@ -177,7 +238,7 @@ public class GcodeViewParse {
                 List<GcodeMeta> points = gp.addCommand(command);
                 for (GcodeMeta meta : points) {
                     if (meta.point != null) {
-                        VisualizerUtils.addLinesFromPointSegment(start, meta.point, arcSegmentLength, lines, spindleSpeed);
+                        consumer.accept(start, meta.point, spindleSpeed);
                         spindleSpeed = meta.point.getSpindleSpeed();
 
                         // if the last set point is in a different or unknown unit, crate a new point-instance with the correct unit set
@@ -199,8 +260,5 @@ public class GcodeViewParse {
                 }
             }
         }
-
-        recalculateBoundaries();
-        return lines;
     }
 }
@@ -0,0 +1,346 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.visualizer;
+
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.types.PointSegment;
+
+import java.util.Arrays;
+
+/**
+ * A compact store of the line segments in a toolpath. Instead of keeping one object per
+ * segment the properties are stored in primitive arrays, one column for each property,
+ * which can be uploaded to OpenGL without creating any intermediate objects.
+ * <p>
+ * The coordinates are stored as the cartesian start and end points of each segment with
+ * six floats per segment in the same layout as used by GL_LINES:
+ * <pre>
+ *     x1, y1, z1, x2, y2, z2, x1, y1, z1, ...
+ * </pre>
+ *
+ * @author wwinder
+ */
+public class ToolpathBuffer {
+    public static final int FLAG_RAPID = 1;
+    public static final int FLAG_ARC = 1 << 1;
+    public static final int FLAG_Z_MOVEMENT = 1 << 2;
+    public static final int FLAG_ROTATION = 1 << 3;
+    public static final int FLAG_PROBE = 1 << 4;
+
+    /**
+     * The number of floats used for the coordinates of each segment
+     */
+    public static final int COORDINATES_PER_SEGMENT = 6;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private float[] coordinates;
+    private int[] lineNumbers;
+    private byte[] flags;
+    private float[] feedRates;
+    private float[] spindleSpeeds;
+    private int size;
+    private boolean sortedByLineNumber;
+
+    private double minX, minY, minZ;
+    private double maxX, maxY, maxZ;
+    private double maxSpindleSpeed;
+
+    public ToolpathBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ToolpathBuffer(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        coordinates = new float[capacity * COORDINATES_PER_SEGMENT];
+        lineNumbers = new int[capacity];
+        flags = new byte[capacity];
+        feedRates = new float[capacity];
+        spindleSpeeds = new float[capacity];
+        clear();
+    }
+
+    /**
+     * Returns the flags for a point segment.
+     */
+    public static int getFlags(PointSegment pointSegment) {
+        int result = 0;
+        if (pointSegment.isFastTraverse()) {
+            result |= FLAG_RAPID;
+        }
+        if (pointSegment.isArc()) {
+            result |= FLAG_ARC;
+        }
+        if (pointSegment.isZMovement()) {
+            result |= FLAG_Z_MOVEMENT;
+        }
+        if (pointSegment.isRotation()) {
+            result |= FLAG_ROTATION;
+        }
+        if (pointSegment.isProbe()) {
+            result |= FLAG_PROBE;
+        }
+        return result;
+    }
+
+    /**
+     * Adds a segment between two positions using the properties of the point segment,
+     * any rotations will be converted to cartesian coordinates.
+     *
+     * @param start        the start of the segment
+     * @param end          the end of the segment
+     * @param pointSegment the point segment that the line segment is a part of
+     */
+    public void add(Position start, Position end, PointSegment pointSegment) {
+        Position cartesianStart = start;
+        Position cartesianEnd = end;
+        if (start.hasRotation() || end.hasRotation()) {
+            cartesianStart = VisualizerUtils.toCartesian(start);
+            cartesianEnd = VisualizerUtils.toCartesian(end);
+        }
+
+        add(cartesianStart.x, cartesianStart.y, cartesianStart.z,
+                cartesianEnd.x, cartesianEnd.y, cartesianEnd.z,
+                pointSegment.getLineNumber(), getFlags(pointSegment),
+                pointSegment.getFeedRate(), pointSegment.getSpindleSpeed());
+    }
+
+    /**
+     * Adds a segment with cartesian coordinates.
+     */
+    public void add(double x1, double y1, double z1, double x2, double y2, double z2, int lineNumber, int segmentFlags, double feedRate, double spindleSpeed) {
+        ensureCapacity(size + 1);
+        if (size > 0 && lineNumber < lineNumbers[size - 1]) {
+            sortedByLineNumber = false;
+        }
+
+        int offset = size * COORDINATES_PER_SEGMENT;
+        coordinates[offset] = (float) x1;
+        coordinates[offset + 1] = (float) y1;
+        coordinates[offset + 2] = (float) z1;
+        coordinates[offset + 3] = (float) x2;
+        coordinates[offset + 4] = (float) y2;
+        coordinates[offset + 5] = (float) z2;
+        lineNumbers[size] = lineNumber;
+        flags[size] = (byte) segmentFlags;
+        feedRates[size] = (float) feedRate;
+        spindleSpeeds[size] = (float) spindleSpeed;
+        size++;
+
+        updateExtremes(x1, y1, z1);
+        updateExtremes(x2, y2, z2);
+        maxSpindleSpeed = Math.max(maxSpindleSpeed, spindleSpeed);
+    }
+
+    private void updateExtremes(double x, double y, double z) {
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        minZ = Math.min(minZ, z);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+        maxZ = Math.max(maxZ, z);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= lineNumbers.length) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, lineNumbers.length + (lineNumbers.length >> 1));
+        coordinates = Arrays.copyOf(coordinates, newCapacity * COORDINATES_PER_SEGMENT);
+        lineNumbers = Arrays.copyOf(lineNumbers, newCapacity);
+        flags = Arrays.copyOf(flags, newCapacity);
+        feedRates = Arrays.copyOf(feedRates, newCapacity);
+        spindleSpeeds = Arrays.copyOf(spindleSpeeds, newCapacity);
+    }
+
+    /**
+     * Shrinks the arrays to the number of segments to release unused memory.
+     */
+    public void trimToSize() {
+        if (size == lineNumbers.length || size == 0) {
+            return;
+        }
+
+        coordinates = Arrays.copyOf(coordinates, size * COORDINATES_PER_SEGMENT);
+        lineNumbers = Arrays.copyOf(lineNumbers, size);
+        flags = Arrays.copyOf(flags, size);
+        feedRates = Arrays.copyOf(feedRates, size);
+        spindleSpeeds = Arrays.copyOf(spindleSpeeds, size);
+    }
+
+    /**
+     * Removes all segments, the allocated memory is kept.
+     */
+    public void clear() {
+        size = 0;
+        sortedByLineNumber = true;
+        minX = minY = minZ = 0;
+        maxX = maxY = maxZ = 0;
+        maxSpindleSpeed = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the coordinate array with {@link #COORDINATES_PER_SEGMENT} floats for each
+     * segment. The array is shared and may be larger than needed, only the first
+     * size() * COORDINATES_PER_SEGMENT floats are used.
+     *
+     * @return the coordinate array
+     */
+    public float[] getCoordinates() {
+        return coordinates;
+    }
+
+    public float getStartX(int index) {
+        return coordinates[index * COORDINATES_PER_SEGMENT];
+    }
+
+    public float getStartY(int index) {
+        return coordinates[index * COORDINATES_PER_SEGMENT + 1];
+    }
+
+    public float getStartZ(int index) {
+        return coordinates[index * COORDINATES_PER_SEGMENT + 2];
+    }
+
+    public float getEndX(int index) {
+        return coordinates[index * COORDINATES_PER_SEGMENT + 3];
+    }
+
+    public float getEndY(int index) {
+        return coordinates[index * COORDINATES_PER_SEGMENT + 4];
+    }
+
+    public float getEndZ(int index) {
+        return coordinates[index * COORDINATES_PER_SEGMENT + 5];
+    }
+
+    /**
+     * Creates a new position with the start of the segment.
+     */
+    public Position getStart(int index) {
+        return new Position(getStartX(index), getStartY(index), getStartZ(index), UnitUtils.Units.MM);
+    }
+
+    /**
+     * Creates a new position with the end of the segment.
+     */
+    public Position getEnd(int index) {
+        return new Position(getEndX(index), getEndY(index), getEndZ(index), UnitUtils.Units.MM);
+    }
+
+    public int getLineNumber(int index) {
+        return lineNumbers[index];
+    }
+
+    /**
+     * Returns true if the segments were added in line number order, which is the case for
+     * toolpaths generated by {@link GcodeViewParse}.
+     */
+    public boolean isSortedByLineNumber() {
+        return sortedByLineNumber;
+    }
+
+    /**
+     * Finds the first segment with a line number equal to or greater than the given line
+     * number. Together with the result for the next line number this gives the range of
+     * segments generated by a line.
+     *
+     * @param lineNumber the line number to search for
+     * @return the index of the first segment with the line number or greater, or size() if
+     * all segments have lower line numbers
+     * @throws IllegalStateException if the segments aren't sorted by line number
+     */
+    public int indexOfLineNumber(int lineNumber) {
+        if (!sortedByLineNumber) {
+            throw new IllegalStateException("The segments are not sorted by line number");
+        }
+
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (lineNumbers[middle] < lineNumber) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public int getFlags(int index) {
+        return flags[index];
+    }
+
+    public boolean isFastTraverse(int index) {
+        return (flags[index] & FLAG_RAPID) != 0;
+    }
+
+    public boolean isArc(int index) {
+        return (flags[index] & FLAG_ARC) != 0;
+    }
+
+    public boolean isZMovement(int index) {
+        return (flags[index] & FLAG_Z_MOVEMENT) != 0;
+    }
+
+    public boolean isRotation(int index) {
+        return (flags[index] & FLAG_ROTATION) != 0;
+    }
+
+    public boolean isProbe(int index) {
+        return (flags[index] & FLAG_PROBE) != 0;
+    }
+
+    public double getFeedRate(int index) {
+        return feedRates[index];
+    }
+
+    public double getSpindleSpeed(int index) {
+        return spindleSpeeds[index];
+    }
+
+    public double getMaxSpindleSpeed() {
+        return maxSpindleSpeed;
+    }
+
+    /**
+     * Returns the minimum coordinates of all segments, these always includes the origin.
+     */
+    public Position getMinimumExtremes() {
+        return new Position(minX, minY, minZ, UnitUtils.Units.MM);
+    }
+
+    /**
+     * Returns the maximum coordinates of all segments, these always includes the origin.
+     */
+    public Position getMaximumExtremes() {
+        return new Position(maxX, maxY, maxZ, UnitUtils.Units.MM);
+    }
+}
@@ -35,6 +35,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -147,6 +148,17 @@ public class VisualizerUtils {
      * Turns a point segment into one or more LineSegment. Arcs and rotations around axes are expanded
      */
     public static void addLinesFromPointSegment(final Position start, final PointSegment endSegment, double arcSegmentLength, List<LineSegment> ret, double spindleSpeed) {
+        addLinesFromPointSegment(start, endSegment, arcSegmentLength, (a, b) -> ret.add(createLineSegment(a, b, endSegment, spindleSpeed)));
+    }
+
+    /**
+     * Turns a point segment into one or more segments in the toolpath. Arcs and rotations around axes are expanded
+     */
+    public static void addLinesFromPointSegment(final Position start, final PointSegment endSegment, double arcSegmentLength, ToolpathBuffer toolpath) {
+        addLinesFromPointSegment(start, endSegment, arcSegmentLength, (a, b) -> toolpath.add(a, b, endSegment));
+    }
+
+    private static void addLinesFromPointSegment(final Position start, final PointSegment endSegment, double arcSegmentLength, BiConsumer<Position, Position> ret) {
         // For a line segment list ALL arcs must be converted to lines.
         double minArcLength = 0;
         endSegment.convertToMetric();
@@ -156,12 +168,12 @@ public class VisualizerUtils {
             if (start != null) {
                 // Expand arc for graphics.
                 if (endSegment.isArc()) {
-                    expandArc(start, endSegment, arcSegmentLength, ret, minArcLength, spindleSpeed);
+                    expandArc(start, endSegment, arcSegmentLength, ret, minArcLength);
                 } else if (endSegment.isRotation()) {
-                    expandRotationalLineSegment(start, endSegment, ret, spindleSpeed);
+                    expandRotationalLineSegment(start, endSegment, ret);
                 } else {
                     // Line
-                    ret.add(createLineSegment(start, endSegment.point(), endSegment, spindleSpeed));
+                    ret.accept(start, endSegment.point());
                 }
             }
         } catch (Exception e) {
@@ -171,7 +183,7 @@ public class VisualizerUtils {
         }
     }
 
-    private static void expandArc(Position start, PointSegment endSegment, double arcSegmentLength, List<LineSegment> ret, double minArcLength, double spindleSpeed) {
+    private static void expandArc(Position start, PointSegment endSegment, double arcSegmentLength, BiConsumer<Position, Position> ret, double minArcLength) {
         List<Position> points =
                 GcodePreprocessorUtils.generatePointsAlongArcBDring(
                         start, endSegment.point(), endSegment.center(), endSegment.isClockwise(),
@@ -180,13 +192,17 @@ public class VisualizerUtils {
         if (!points.isEmpty()) {
             Position startPoint = start;
             for (Position nextPoint : points) {
-                ret.add(createLineSegment(startPoint, nextPoint, endSegment, spindleSpeed));
+                ret.accept(startPoint, nextPoint);
                 startPoint = nextPoint;
             }
         }
     }
 
     public static void expandRotationalLineSegment(Position start, PointSegment endSegment, List<LineSegment> ret, double spindleSpeed) {
+        expandRotationalLineSegment(start, endSegment, (a, b) -> ret.add(createLineSegment(a, b, endSegment, spindleSpeed)));
+    }
+
+    private static void expandRotationalLineSegment(Position start, PointSegment endSegment, BiConsumer<Position, Position> ret) {
         double maxDegreesPerStep = 5;
         double deltaX = defaultZero(endSegment.point().x) - defaultZero(start.x);
         double deltaY = defaultZero(endSegment.point().y) - defaultZero(start.y);
@@ -217,11 +233,11 @@ public class VisualizerUtils {
             if (deltaC != 0) {
                 end.setC(defaultZero(start.c) + ((deltaC / steps) * i));
             }
-            ret.add(createLineSegment(startPoint, end, endSegment, spindleSpeed));
+            ret.accept(startPoint, end);
             startPoint = end;
         }
 
-        ret.add(createLineSegment(startPoint, endSegment.point(), endSegment, spindleSpeed));
+        ret.accept(startPoint, endSegment.point());
     }
 
     /**
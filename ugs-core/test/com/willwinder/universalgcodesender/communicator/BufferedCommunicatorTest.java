@@ -601,6 +601,60 @@ public class BufferedCommunicatorTest {
         assertTrue("Should have sent an event notifying that the command has completed in its own thread", eventDispatched.get());
     }
 
+    @Test
+    public void streamCommandsWithBatchingShouldSendAllCommandsInOneWrite() throws Exception {
+        // Given
+        Connection connection = mock(Connection.class);
+        instance.setConnection(connection);
+        instance.setBatchingEnabled(true);
+
+        ArgumentCaptor<String> commandCaptor = ArgumentCaptor.forClass(String.class);
+        doNothing().when(connection).sendStringToComm(commandCaptor.capture());
+
+        instance.queueCommand(new GcodeCommand("G1 X1"));
+        instance.queueCommand(new GcodeCommand("G1 X2"));
+        instance.queueCommand(new GcodeCommand("G1 X3"));
+
+        // When
+        instance.streamCommands();
+
+        // Then
+        assertEquals(1, commandCaptor.getAllValues().size());
+        assertEquals("G1 X1\nG1 X2\nG1 X3\n", commandCaptor.getValue());
+        assertEquals(18, instance.getBytesInFlight());
+        assertEquals(3, instance.numActiveCommands());
+        assertEquals(3.0, instance.getStreamingMetrics().getAverageCommandsPerWrite(), 0.001);
+    }
+
+    @Test
+    public void streamCommandsWithBatchingShouldNotOverflowTheControllerBuffer() throws Exception {
+        // Given
+        Connection connection = mock(Connection.class);
+        instance.setConnection(connection);
+        instance.setBatchingEnabled(true);
+
+        ArgumentCaptor<String> commandCaptor = ArgumentCaptor.forClass(String.class);
+        doNothing().when(connection).sendStringToComm(commandCaptor.capture());
+
+        for (int i = 0; i < 20; i++) {
+            instance.queueCommand(new GcodeCommand("G1 X1.234"));
+        }
+
+        // When
+        instance.streamCommands();
+        instance.handleResponseMessage("ok");
+        instance.handleResponseMessage("ok");
+        instance.handleResponseMessagesProcessed();
+
+        // Then
+        assertEquals(2, commandCaptor.getAllValues().size());
+        assertEquals("Only ten commands fits in the buffer", "G1 X1.234\n".repeat(10), commandCaptor.getAllValues().get(0));
+        assertEquals("The space of both completed commands should be filled in one write", "G1 X1.234\n".repeat(2), commandCaptor.getAllValues().get(1));
+        assertEquals(100, instance.getBytesInFlight());
+        assertEquals(2, instance.getStreamingMetrics().getWrites());
+        assertEquals(100, instance.getStreamingMetrics().getMaxBytesInFlight());
+    }
+
     public static class BufferedCommunicatorImpl extends BufferedCommunicator {
         BufferedCommunicatorImpl(LinkedBlockingDeque<GcodeCommand> cb, LinkedBlockingDeque<GcodeCommand> asl) {
             super(cb, asl, new CommunicatorEventDispatcher());
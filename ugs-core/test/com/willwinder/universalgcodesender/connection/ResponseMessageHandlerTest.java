@@ -22,6 +22,11 @@ import com.willwinder.universalgcodesender.communicator.AbstractCommunicator;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -129,4 +134,54 @@ public class ResponseMessageHandlerTest {
         verify(communicator, times(1)).handleResponseMessage(" test2 ");
         verify(communicator, times(1)).handleResponseMessage("test3");
     }
+
+    @Test
+    public void lineListenersShouldReceiveEachLine() {
+        // Given
+        List<String> lines = new ArrayList<>();
+        responseMessageHandler.addLineListener(line -> lines.add(line.toString()));
+
+        // When
+        byte[] response = "xxok\r\n<Idle|MPos:0.000,0.000,0.000>\r\nok".getBytes();
+        responseMessageHandler.handleResponse(response, 2, response.length - 2);
+        response = "\nerror:1\n".getBytes();
+        responseMessageHandler.handleResponse(response, 0, response.length);
+
+        // Then
+        assertEquals(List.of("ok", "<Idle|MPos:0.000,0.000,0.000>", "ok", "error:1"), lines);
+    }
+
+    @Test
+    public void longLinesSplitOverManyResponsesShouldDispatchMessage() {
+        // Given
+        AbstractCommunicator communicator = mock(AbstractCommunicator.class);
+        responseMessageHandler.addListener(communicator);
+        String message = "$N0=G21 G90 G17 G94 G54 M5 M9 ".repeat(50);
+
+        // When
+        byte[] response = (message + "\r\n").getBytes();
+        for (int i = 0; i < response.length; i += 7) {
+            responseMessageHandler.handleResponse(response, i, Math.min(7, response.length - i));
+        }
+
+        // Then
+        verify(communicator, times(1)).handleResponseMessage(message);
+    }
+
+    @Test
+    public void multiByteCharactersSplitOverResponsesShouldBeDecoded() {
+        // Given
+        AbstractCommunicator communicator = mock(AbstractCommunicator.class);
+        responseMessageHandler.addListener(communicator);
+        byte[] response = "[MSG:Temperatur 25°C, räknare ✓]\n".getBytes(Charset.defaultCharset());
+        String expected = new String(response, 0, response.length - 1, Charset.defaultCharset());
+
+        // When
+        for (int i = 0; i < response.length; i++) {
+            responseMessageHandler.handleResponse(response, i, 1);
+        }
+
+        // Then
+        verify(communicator, times(1)).handleResponseMessage(expected);
+    }
 }
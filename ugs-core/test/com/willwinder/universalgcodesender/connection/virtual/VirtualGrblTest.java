@@ -0,0 +1,348 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection.virtual;
+
+import com.willwinder.universalgcodesender.GrblUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class VirtualGrblTest {
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private VirtualGrbl grbl;
+    private List<String> responses;
+    private long time;
+
+    @Before
+    public void setUp() {
+        grbl = new VirtualGrbl();
+        responses = new ArrayList<>();
+        grbl.setResponseListener(responses::add);
+        grbl.start(0);
+        responses.clear();
+    }
+
+    private void send(String command) {
+        grbl.write(command.getBytes(StandardCharsets.ISO_8859_1), time);
+    }
+
+    private void send(int realTimeCommand) {
+        grbl.write(new byte[]{(byte) realTimeCommand}, time);
+    }
+
+    private void advance(long nanos) {
+        time += nanos;
+        grbl.advanceTo(time);
+    }
+
+    private String getStatus() {
+        send(GrblUtils.GRBL_STATUS_COMMAND);
+        return responses.get(responses.size() - 1);
+    }
+
+    /**
+     * Advances the time until the planner is empty
+     *
+     * @return the time it took in seconds
+     */
+    private double runUntilIdle() {
+        long start = time;
+        while (grbl.getPlannerBlocks() > 0) {
+            advance(MILLISECOND);
+        }
+        return (time - start) / (double) SECOND;
+    }
+
+    private long countResponses(String response) {
+        return responses.stream().filter(response::equals).count();
+    }
+
+    @Test
+    public void startShouldPrintTheWelcomeMessage() {
+        grbl.start(0);
+        assertEquals("Grbl 1.1h ['$' for help]", responses.get(0));
+    }
+
+    @Test
+    public void statusShouldContainTheBufferState() {
+        assertEquals("<Idle|MPos:0.000,0.000,0.000|Bf:15,128|FS:0,0|WCO:0.000,0.000,0.000|Ov:100,100,100>", getStatus());
+
+        responses.clear();
+        send("G1X10F600\n");
+        assertEquals("ok", responses.get(0));
+        assertEquals("<Run|MPos:0.000,0.000,0.000|Bf:14,128|FS:0,0|WCO:0.000,0.000,0.000|Ov:100,100,100>", getStatus());
+
+        advance(2 * SECOND);
+        assertEquals("<Idle|MPos:10.000,0.000,0.000|Bf:15,128|FS:0,0|WCO:0.000,0.000,0.000|Ov:100,100,100>", getStatus());
+    }
+
+    @Test
+    public void buildInfoShouldContainTheBufferSizes() {
+        send("$I\n");
+        assertEquals("[VER:1.1h.20190825:]\n[OPT:V,15,128]\nok", responses.get(0));
+    }
+
+    @Test
+    public void singleMoveShouldFollowATrapezoidProfile() {
+        // 50 mm/s with an acceleration of 200 mm/s^2 takes 0.25 s to reach full speed and 0.25 s to stop
+        send("G1X100F3000\n");
+        double seconds = runUntilIdle();
+
+        assertEquals(100.0 / 50.0 + 50.0 / 200.0, seconds, 0.005);
+        assertEquals(100, grbl.getMachinePosition().x, 0.0001);
+        assertEquals(1, grbl.getBlocksExecuted());
+    }
+
+    @Test
+    public void rapidsShouldUseTheMaxRateOfTheSlowestAxis() {
+        // Z is limited to 1000 mm/min and 50 mm/s^2
+        send("G0Z10\n");
+        double seconds = runUntilIdle();
+
+        double speed = 1000 / 60.0;
+        assertEquals(10 / speed + speed / 50, seconds, 0.005);
+    }
+
+    @Test
+    public void collinearMovesShouldNotSlowDownBetweenBlocks() {
+        for (int i = 1; i <= 10; i++) {
+            send("G1X" + (i * 10) + "F3000\n");
+        }
+        double seconds = runUntilIdle();
+
+        assertEquals(100.0 / 50.0 + 50.0 / 200.0, seconds, 0.005);
+        assertEquals(0, grbl.getUnderrunCount());
+    }
+
+    @Test
+    public void linesShouldWaitInTheRxBufferWhenThePlannerIsFull() {
+        for (int i = 1; i <= 20; i++) {
+            send("G1X" + i + "F100\n");
+        }
+
+        assertEquals(15, countResponses("ok"));
+        assertEquals(15, grbl.getPlannerBlocks());
+        assertEquals(4 * "G1X10F100\n".length(), grbl.getRxBufferBytes());
+        assertTrue(getStatus().contains("|Bf:0,88|"));
+
+        runUntilIdle();
+        assertEquals(20, countResponses("ok"));
+    }
+
+    @Test
+    public void bytesShouldBeLostWhenTheRxBufferOverflows() {
+        for (int i = 1; i <= 40; i++) {
+            send("G1X" + i + "F100\n");
+        }
+
+        assertTrue(grbl.getRxOverflowCount() > 0);
+        assertEquals(128, grbl.getRxBufferBytes());
+    }
+
+    @Test
+    public void serialLinkShouldDelayResponses() {
+        grbl = new VirtualGrbl(15, 128, 115200);
+        grbl.setResponseListener(responses::add);
+        grbl.start(0);
+        advance(10 * MILLISECOND);
+        responses.clear();
+
+        // Each byte takes about 87 µs at 115200 baud, both ways
+        send("G1X10F100\n");
+        assertEquals(0, responses.size());
+        advance(1000 * 1000);
+        assertEquals(0, responses.size());
+        advance(500 * 1000);
+        assertEquals("ok", responses.get(0));
+    }
+
+    @Test
+    public void emptyPlannerDuringMotionShouldCountAsUnderrun() {
+        send("G1X10F600\n");
+        runUntilIdle();
+        advance(SECOND);
+        send("G1X20F600\n");
+        runUntilIdle();
+
+        assertEquals(1, grbl.getUnderrunCount());
+        assertEquals(1.0, grbl.getUnderrunTime() / (double) SECOND, 0.005);
+    }
+
+    @Test
+    public void synchronizedCommandsShouldNotCountAsUnderrun() {
+        send("G1X10F600\n");
+        send("M5\n");
+        send("G4P0.5\n");
+        runUntilIdle();
+        advance(SECOND);
+        send("G1X20F600\n");
+        runUntilIdle();
+
+        assertEquals(0, grbl.getUnderrunCount());
+        assertEquals(4, countResponses("ok"));
+    }
+
+    @Test
+    public void dwellShouldDelayTheResponse() {
+        send("G4P0.5\n");
+        assertEquals(0, responses.size());
+        advance(490 * MILLISECOND);
+        assertEquals(0, responses.size());
+        advance(20 * MILLISECOND);
+        assertEquals("ok", responses.get(0));
+    }
+
+    @Test
+    public void feedOverrideShouldChangeTheSpeed() {
+        for (int i = 0; i < 10; i++) {
+            send(0x91);
+        }
+        assertTrue(getStatus().endsWith("|Ov:200,100,100>"));
+
+        // 10 mm/s doubled by the override
+        send("G1X100F600\n");
+        double seconds = runUntilIdle();
+        assertEquals(100.0 / 20.0 + 20.0 / 200.0, seconds, 0.005);
+
+        send(0x90);
+        assertTrue(getStatus().endsWith("|Ov:100,100,100>"));
+    }
+
+    @Test
+    public void rapidOverrideShouldChangeTheSpeed() {
+        send(0x97);
+        send("G0Z10\n");
+        double seconds = runUntilIdle();
+
+        double speed = 1000 / 60.0 / 4;
+        assertEquals(10 / speed + speed / 50, seconds, 0.005);
+    }
+
+    @Test
+    public void feedHoldShouldStopTheMachineUntilResumed() {
+        send("G1X100F3000\n");
+        advance(SECOND);
+        send(GrblUtils.GRBL_PAUSE_COMMAND);
+        assertTrue(getStatus().startsWith("<Hold:1|"));
+
+        advance(SECOND);
+        assertTrue(getStatus().startsWith("<Hold:0|"));
+        double position = grbl.getMachinePosition().x;
+        assertTrue(position < 100);
+
+        advance(SECOND);
+        assertEquals(position, grbl.getMachinePosition().x, 0);
+
+        send(GrblUtils.GRBL_RESUME_COMMAND);
+        runUntilIdle();
+        assertEquals(100, grbl.getMachinePosition().x, 0.0001);
+        assertEquals(0, grbl.getUnderrunCount());
+    }
+
+    @Test
+    public void jogCancelShouldStopAndDiscardTheJog() {
+        send("$J=G91X100F3000\n");
+        assertTrue(getStatus().startsWith("<Jog|"));
+        advance(SECOND);
+
+        send(GrblUtils.GRBL_JOG_CANCEL_COMMAND);
+        runUntilIdle();
+        assertTrue(getStatus().startsWith("<Idle|"));
+        assertTrue(grbl.getMachinePosition().x < 100);
+
+        // The parser position should continue from where the jog stopped
+        double position = grbl.getMachinePosition().x;
+        send("G91G1X1F3000\n");
+        runUntilIdle();
+        assertEquals(position + 1, grbl.getMachinePosition().x, 0.0001);
+    }
+
+    @Test
+    public void softResetDuringMotionShouldTriggerAlarm() {
+        send("G1X100F3000\n");
+        advance(SECOND);
+        responses.clear();
+        send(GrblUtils.GRBL_RESET_COMMAND);
+
+        assertEquals("ALARM:3", responses.get(0));
+        assertTrue(getStatus().startsWith("<Alarm|"));
+
+        responses.clear();
+        send("G1X10\n");
+        assertEquals("error:9", responses.get(0));
+
+        send("$X\n");
+        assertEquals("[MSG:Caution: Unlocked]\nok", responses.get(1));
+        assertTrue(getStatus().startsWith("<Idle|"));
+    }
+
+    @Test
+    public void arcsShouldBeSplitIntoSeveralBlocks() {
+        send("G2X10Y0I5J0F1000\n");
+        assertEquals(15, grbl.getPlannerBlocks());
+
+        runUntilIdle();
+        assertEquals(10, grbl.getMachinePosition().x, 0.0001);
+        assertEquals(0, grbl.getMachinePosition().y, 0.0001);
+        assertTrue(grbl.getBlocksExecuted() > 15);
+    }
+
+    @Test
+    public void workCoordinatesShouldBeOffsetByTheWorkOffset() {
+        send("G10L20P1X5\n");
+        assertTrue(getStatus().contains("|WCO:-5.000,0.000,0.000|"));
+
+        send("G0X10\n");
+        runUntilIdle();
+        assertEquals(5, grbl.getMachinePosition().x, 0.0001);
+
+        send("G53G0X10\n");
+        runUntilIdle();
+        assertEquals(10, grbl.getMachinePosition().x, 0.0001);
+
+        send("G20G0X1\n");
+        runUntilIdle();
+        assertEquals(25.4 - 5, grbl.getMachinePosition().x, 0.0001);
+    }
+
+    @Test
+    public void invalidCommandsShouldReturnErrors() {
+        send("G1X10\n");
+        send("$H\n");
+        send("$999=1\n");
+        send("G0G1X10F100\n");
+
+        assertEquals("error:22", responses.get(0));
+        assertEquals("error:5", responses.get(1));
+        assertEquals("error:3", responses.get(2));
+        assertEquals("error:20", responses.get(3));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection.xmodem;
+
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class XModemTest {
+    private PipedInputStream senderInput;
+    private PipedOutputStream senderOutput;
+    private PipedInputStream receiverInput;
+    private PipedOutputStream receiverOutput;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws IOException {
+        senderInput = new PipedInputStream(4096);
+        receiverOutput = new PipedOutputStream(senderInput);
+        receiverInput = new PipedInputStream(4096);
+        senderOutput = new PipedOutputStream(receiverInput);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void sendShouldTransferStreamUsingLongBlocks() throws Exception {
+        byte[] data = createData(3000);
+        Future<byte[]> received = startReceiver();
+
+        AtomicLong transferredBytes = new AtomicLong();
+        XModem sender = new XModem(senderInput, senderOutput);
+        sender.send(new ByteArrayInputStream(data), true, data.length, (transferred, total, bytesPerSecond) -> {
+            assertEquals(data.length, total);
+            transferredBytes.set(transferred);
+        });
+
+        assertArrayEquals(data, XModemUtils.trimEOF(received.get(10, TimeUnit.SECONDS)));
+        assertEquals(data.length, transferredBytes.get());
+    }
+
+    @Test
+    public void sendShouldResendBlocksThatWereRejected() throws Exception {
+        byte[] data = createData(2048);
+        Future<byte[]> received = startReceiver();
+
+        // Corrupt the data of the first frame that is sent
+        AtomicInteger corruptedFrames = new AtomicInteger();
+        OutputStream unreliableOutput = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                senderOutput.write(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                byte[] frame = Arrays.copyOfRange(bytes, offset, offset + length);
+                if (length > 1 && corruptedFrames.getAndIncrement() == 0) {
+                    frame[10] ^= 0xFF;
+                }
+                senderOutput.write(frame);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                senderOutput.flush();
+            }
+        };
+
+        AtomicInteger retries = new AtomicInteger();
+        XModem sender = new XModem(senderInput, unreliableOutput);
+        sender.send(new ByteArrayInputStream(data), true, data.length, new FileTransferListener() {
+            @Override
+            public void onProgress(long transferredBytes, long totalBytes, long bytesPerSecond) {
+                // Not used
+            }
+
+            @Override
+            public void onRetry(int blockNumber, int retryCount) {
+                assertEquals(1, blockNumber);
+                retries.incrementAndGet();
+            }
+        });
+
+        assertArrayEquals(data, XModemUtils.trimEOF(received.get(10, TimeUnit.SECONDS)));
+        assertEquals(1, retries.get());
+    }
+
+    @Test
+    public void calcCRCShouldOnlyUseTheGivenRange() {
+        byte[] data = createData(128);
+        byte[] buffer = new byte[data.length + 5];
+        System.arraycopy(data, 0, buffer, 3, data.length);
+
+        CRC16 crc = new CRC16();
+        assertEquals(crc.calcCRC(data), crc.calcCRC(buffer, 3, data.length));
+    }
+
+    private Future<byte[]> startReceiver() {
+        return executor.submit(() -> {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            new XModem(receiverInput, receiverOutput).receive(outputStream, true);
+            return outputStream.toByteArray();
+        });
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ('A' + (i % 26));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,103 @@
+package com.willwinder.universalgcodesender.firmware.fluidnc;
+
+import com.willwinder.universalgcodesender.IController;
+import com.willwinder.universalgcodesender.StatusPollTimer;
+import com.willwinder.universalgcodesender.communicator.ICommunicator;
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FluidNCFileServiceTest {
+    private IController controller;
+    private ICommunicator communicator;
+    private StatusPollTimer statusPollTimer;
+    private FluidNCFileService fileService;
+
+    @Before
+    public void setUp() {
+        controller = mock(IController.class);
+        communicator = mock(ICommunicator.class);
+        statusPollTimer = mock(StatusPollTimer.class);
+        when(controller.getCommunicator()).thenReturn(communicator);
+        when(controller.getActiveCommand()).thenReturn(Optional.empty());
+        fileService = new FluidNCFileService(controller, statusPollTimer);
+    }
+
+    @Test
+    public void runFileShouldSendTheRunCommand() throws Exception {
+        respondWith("ok");
+
+        fileService.runFile("test.gcode");
+
+        ArgumentCaptor<GcodeCommand> commandCaptor = ArgumentCaptor.forClass(GcodeCommand.class);
+        verify(controller).sendCommandImmediately(commandCaptor.capture());
+        assertEquals("$LocalFS/Run=test.gcode", commandCaptor.getValue().getCommandString());
+    }
+
+    @Test
+    public void runFileShouldThrowAnExceptionIfTheFileCouldNotBeRun() throws Exception {
+        respondWith("error:60");
+
+        try {
+            fileService.runFile("/sd/test.gcode");
+            fail("Should have thrown an exception");
+        } catch (IOException e) {
+            assertEquals("Could not run the file: /sd/test.gcode", e.getMessage());
+            assertNull(e.getCause());
+        }
+    }
+
+    @Test
+    public void uploadFileShouldSendTheStreamWithXModem() throws Exception {
+        InputStream data = new ByteArrayInputStream(new byte[10]);
+
+        fileService.uploadFile("test.gcode", data, 10, FileTransferListener.NONE);
+
+        ArgumentCaptor<GcodeCommand> commandCaptor = ArgumentCaptor.forClass(GcodeCommand.class);
+        verify(controller).sendCommandImmediately(commandCaptor.capture());
+        assertEquals("$XModem/Receive=/localfs/test.gcode", commandCaptor.getValue().getCommandString());
+        verify(communicator).xmodemSend(data, 10, FileTransferListener.NONE);
+        verify(statusPollTimer).stop();
+        verify(statusPollTimer).start();
+    }
+
+    @Test
+    public void uploadFileShouldRestartTheStatusPollingIfTheTransferFails() throws Exception {
+        InputStream data = new ByteArrayInputStream(new byte[10]);
+        doAnswer(invocation -> {
+            throw new IOException("Timeout");
+        }).when(communicator).xmodemSend(data, -1, FileTransferListener.NONE);
+
+        try {
+            fileService.uploadFile("test.gcode", data, -1, FileTransferListener.NONE);
+            fail("Should have thrown an exception");
+        } catch (IOException e) {
+            assertEquals("Timeout", e.getCause().getMessage());
+        }
+        verify(statusPollTimer).start();
+    }
+
+    private void respondWith(String response) throws Exception {
+        doAnswer(invocation -> {
+            GcodeCommand command = invocation.getArgument(0);
+            command.appendResponse(response);
+            return null;
+        }).when(controller).sendCommandImmediately(any());
+    }
+}
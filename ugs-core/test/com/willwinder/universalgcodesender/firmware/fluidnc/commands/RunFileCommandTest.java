@@ -0,0 +1,20 @@
+package com.willwinder.universalgcodesender.firmware.fluidnc.commands;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RunFileCommandTest {
+
+    @Test
+    public void runFileShouldUseTheLocalFileSystemByDefault() {
+        assertEquals("$LocalFS/Run=test.gcode", new RunFileCommand("test.gcode").getCommandString());
+        assertEquals("$LocalFS/Run=test.gcode", new RunFileCommand("/localfs/test.gcode").getCommandString());
+    }
+
+    @Test
+    public void runFileShouldUseTheSDCard() {
+        assertEquals("$SD/Run=test.gcode", new RunFileCommand("/sd/test.gcode").getCommandString());
+        assertEquals("$SD/Run=folder/test.gcode", new RunFileCommand("/SD/folder/test.gcode").getCommandString());
+    }
+}
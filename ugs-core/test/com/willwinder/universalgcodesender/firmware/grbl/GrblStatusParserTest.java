@@ -0,0 +1,156 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.firmware.grbl;
+
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.model.Position;
+import org.junit.Test;
+
+import static com.willwinder.universalgcodesender.model.UnitUtils.Units.INCH;
+import static com.willwinder.universalgcodesender.model.UnitUtils.Units.MM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class GrblStatusParserTest {
+
+    @Test
+    public void parseV1ShouldParseBufferState() {
+        ControllerStatus status = GrblStatusParser.parseV1(null, "<Run|MPos:1.000,2.000,3.000|Bf:15,128|FS:500,0>", MM);
+
+        assertEquals(ControllerState.RUN, status.getState());
+        assertEquals(15, status.getBufferState().plannerBlocksAvailable);
+        assertEquals(128, status.getBufferState().rxBytesAvailable);
+        assertEquals(Double.valueOf(500), status.getFeedSpeed());
+    }
+
+    @Test
+    public void parseV1WithoutBufferStateShouldReturnNull() {
+        ControllerStatus status = GrblStatusParser.parseV1(null, "<Idle|MPos:1.000,2.000,3.000|FS:0,0>", MM);
+        assertNull(status.getBufferState());
+    }
+
+    @Test
+    public void parseV1ShouldReturnLastStatusIfNothingChanged() {
+        String statusString = "<Idle|MPos:1.000,2.000,3.000|Bf:15,128|FS:0,0|Pn:XZ|WCO:1.000,1.000,1.000>";
+        ControllerStatus first = GrblStatusParser.parseV1(null, statusString, MM);
+        ControllerStatus second = GrblStatusParser.parseV1(first, statusString, MM);
+        assertSame(first, second);
+
+        // A status without the work coordinate offset should still be the same
+        ControllerStatus third = GrblStatusParser.parseV1(second, "<Idle|MPos:1.000,2.000,3.000|Bf:15,128|FS:0,0|Pn:XZ>", MM);
+        assertSame(first, third);
+    }
+
+    @Test
+    public void parseV1ShouldReuseUnchangedValues() {
+        ControllerStatus first = GrblStatusParser.parseV1(null, "<Run|MPos:1.000,2.000,3.000|Bf:15,128|FS:100,0|Pn:XZ|Ov:100,100,100|A:S>", MM);
+        ControllerStatus second = GrblStatusParser.parseV1(first, "<Run|MPos:1.500,2.000,3.000|Bf:15,128|FS:100,0|Pn:XZ|Ov:100,100,100|A:S>", MM);
+
+        assertNotSame(first, second);
+        assertEquals(new Position(1.5, 2, 3, MM), second.getMachineCoord());
+        assertEquals(first.getWorkCoordinateOffset(), second.getWorkCoordinateOffset());
+        assertNotSame(first.getWorkCoordinateOffset(), second.getWorkCoordinateOffset());
+        assertSame(first.getBufferState(), second.getBufferState());
+        assertSame(first.getEnabledPins(), second.getEnabledPins());
+        assertSame(first.getOverrides(), second.getOverrides());
+        assertSame(first.getAccessoryStates(), second.getAccessoryStates());
+    }
+
+    @Test
+    public void parseV1ShouldNotShareMutablePositions() {
+        ControllerStatus first = GrblStatusParser.parseV1(null, "<Run|MPos:1.000,2.000,3.000|FS:100,0|WCO:1.000,1.000,1.000>", MM);
+        ControllerStatus second = GrblStatusParser.parseV1(first, "<Run|MPos:1.000,2.000,3.000|FS:200,0>", MM);
+
+        assertNotSame(first.getMachineCoord(), second.getMachineCoord());
+        assertNotSame(first.getWorkCoord(), second.getWorkCoord());
+        assertNotSame(first.getWorkCoordinateOffset(), second.getWorkCoordinateOffset());
+
+        first.getMachineCoord().setX(10);
+        first.getWorkCoordinateOffset().setX(10);
+        assertEquals(new Position(1, 2, 3, MM), second.getMachineCoord());
+        assertEquals(new Position(0, 1, 2, MM), second.getWorkCoord());
+    }
+
+    @Test
+    public void parseV1ShouldNotReturnLastStatusIfItsPositionWasModified() {
+        String statusString = "<Idle|MPos:1.000,2.000,3.000|FS:0,0>";
+        ControllerStatus first = GrblStatusParser.parseV1(null, statusString, MM);
+        first.getMachineCoord().setX(10);
+
+        ControllerStatus second = GrblStatusParser.parseV1(first, statusString, MM);
+        assertNotSame(first, second);
+        assertEquals(new Position(1, 2, 3, MM), second.getMachineCoord());
+    }
+
+    @Test
+    public void parseV1ShouldNotReuseValuesWithOtherUnits() {
+        ControllerStatus first = GrblStatusParser.parseV1(null, "<Idle|MPos:1.000,2.000,3.000|FS:0,0>", MM);
+        ControllerStatus second = GrblStatusParser.parseV1(first, "<Idle|MPos:1.000,2.000,3.000|FS:0,0>", INCH);
+
+        assertNotSame(first, second);
+        assertEquals(INCH, second.getMachineCoord().getUnits());
+    }
+
+    @Test
+    public void parseV1ShouldParseNumbersLikeParseDouble() {
+        String[] numbers = {"0", "-0.000", "1.1", "-23.456", "12345.678", ".5", "5.", "0.1234567890123", "123456789.123456789"};
+        for (String number : numbers) {
+            ControllerStatus status = GrblStatusParser.parseV1(null, "<Idle|MPos:" + number + ",0,0|FS:0,0>", MM);
+            assertEquals(number, Double.doubleToLongBits(Double.parseDouble(number)), Double.doubleToLongBits(status.getMachineCoord().x));
+        }
+    }
+
+    @Test
+    public void parseV1ShouldParseSubState() {
+        ControllerStatus first = GrblStatusParser.parseV1(null, "<Hold:1|MPos:0,0,0>", MM);
+        assertEquals(ControllerState.HOLD, first.getState());
+        assertEquals("1", first.getSubState());
+
+        ControllerStatus second = GrblStatusParser.parseV1(first, "<Hold:0|MPos:0,0,0>", MM);
+        assertEquals("0", second.getSubState());
+    }
+
+    @Test
+    public void parseLegacyShouldParseStateAndPositions() {
+        ControllerStatus status = GrblStatusParser.parseLegacy("<Run,MPos:5.529,0.560,7.000,WPos:1.529,-5.440,-0.000,RX:0>", MM);
+
+        assertEquals(ControllerState.RUN, status.getState());
+        assertEquals(new Position(5.529, 0.560, 7.000, MM), status.getMachineCoord());
+        assertEquals(new Position(1.529, -5.440, -0.000, MM), status.getWorkCoord());
+    }
+
+    @Test
+    public void parseLegacyWithUnknownStateShouldReturnUnknown() {
+        ControllerStatus status = GrblStatusParser.parseLegacy("<Foo,MPos:5.529,0.560,7.000>", MM);
+
+        assertEquals(ControllerState.UNKNOWN, status.getState());
+        assertNull(status.getWorkCoord());
+    }
+
+    @Test
+    public void parsePositionShouldParseOptionalAxes() {
+        assertEquals(new Position(1, 2, 3, 4, Double.NaN, Double.NaN, MM), GrblStatusParser.parsePosition("<Idle|MPos:1,2,3,4|FS:0,0>", "MPos:", MM));
+        assertEquals(new Position(1, 2, 3, 4, 5, 6, MM), GrblStatusParser.parsePosition("<Idle|MPos:1,2,3,4,5,6>", "MPos:", MM));
+        assertNull(GrblStatusParser.parsePosition("<Idle|MPos:1,2|FS:0,0>", "MPos:", MM));
+        assertNull(GrblStatusParser.parsePosition("<Idle|FS:0,0>", "MPos:", MM));
+    }
+}
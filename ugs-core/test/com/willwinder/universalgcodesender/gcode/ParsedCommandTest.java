@@ -0,0 +1,131 @@
+package com.willwinder.universalgcodesender.gcode;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
+import com.willwinder.universalgcodesender.gcode.processors.ArcExpander;
+import com.willwinder.universalgcodesender.gcode.processors.CommandProcessorList;
+import com.willwinder.universalgcodesender.gcode.processors.CommentProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.FeedOverrideProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.LineSplitter;
+import com.willwinder.universalgcodesender.gcode.processors.TranslateProcessor;
+import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.model.Position;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.willwinder.universalgcodesender.model.UnitUtils.Units.MM;
+import static org.junit.Assert.*;
+
+public class ParsedCommandTest {
+
+    @Test
+    public void getMetasShouldBeCachedForTheSameState() throws Exception {
+        ParsedCommand command = ParsedCommand.of("G1X10Y10F100");
+        GcodeState state = new GcodeState();
+
+        List<GcodeMeta> metas = command.getMetas(state);
+        assertTrue(command.isParsed(state));
+        assertSame(metas, command.getMetas(state));
+        assertSame(metas, command.getMetas(state.copy()));
+
+        GcodeState otherState = state.copy();
+        otherState.currentPoint = new Position(1, 1, 1, MM);
+        assertFalse(command.isParsed(otherState));
+        assertNotSame(metas, command.getMetas(otherState));
+    }
+
+    @Test
+    public void getResultStateShouldReturnTheStateAfterTheCommand() throws Exception {
+        GcodeState state = new GcodeState();
+
+        GcodeState result = ParsedCommand.of("G91G1X10Y10F100").getResultState(state);
+        assertEquals(new Position(10, 10, 0, MM), result.currentPoint);
+        assertFalse(result.inAbsoluteMode);
+        assertEquals(100, result.feedRate, 0);
+
+        assertSame(state, ParsedCommand.of("").getResultState(state));
+    }
+
+    @Test
+    public void generatedCommandShouldOnlyBeFormattedOnce() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        ParsedCommand command = ParsedCommand.generated(() -> {
+            count.incrementAndGet();
+            return "G1X1";
+        });
+        assertEquals(0, count.get());
+
+        assertEquals("G1X1", command.getCommand());
+        assertEquals("G1X1", command.toString());
+        command.getMetas(new GcodeState());
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    public void generatedCommandWithMetasShouldNotBeFormattedWhenParsed() throws Exception {
+        GcodeState state = new GcodeState();
+        GcodeMeta meta = GcodeParserUtils.createLinearMotion(Code.G1, 1, 2, 3, state);
+        ParsedCommand command = ParsedCommand.generated(() -> {
+            throw new AssertionError("Should not be formatted");
+        }, List.of(meta), state);
+
+        assertTrue(command.isParsed(state));
+        assertEquals(new Position(1, 2, 3, MM), command.getResultState(state).currentPoint);
+    }
+
+    @Test
+    public void unchangedCommandsShouldKeepTheirParsedState() throws Exception {
+        CommandProcessorList processors = new CommandProcessorList();
+        processors.add(new CommentProcessor());
+        processors.add(new FeedOverrideProcessor(0));
+        processors.add(new LineSplitter(100));
+        processors.add(new TranslateProcessor(new Position(0, 0, 0, MM)));
+
+        GcodeState state = new GcodeState();
+        ParsedCommand command = ParsedCommand.of("G1X10Y10F100");
+        List<ParsedCommand> result = processors.processCommand(command, state);
+
+        assertEquals(1, result.size());
+        assertSame(command, result.get(0));
+        assertTrue(command.isParsed(state));
+    }
+
+    @Test
+    public void processingParsedCommandsShouldGiveTheSameResultAsStrings() throws Exception {
+        List<String> program = Arrays.asList(
+                "G21G90",
+                "G0X1Y1Z1 (comment)",
+                "G1X5Y5F500",
+                "G91",
+                "G1X2Y-1Z0.5",
+                "G90",
+                "G2X10Y5I2.5J0",
+                "G20",
+                "G1X0.5Y0.5");
+
+        CommandProcessorList processors = new CommandProcessorList();
+        processors.add(new CommentProcessor());
+        processors.add(new ArcExpander(true, 0.5));
+        processors.add(new LineSplitter(1));
+        processors.add(new TranslateProcessor(new Position(1, 2, 0, MM)));
+
+        GcodeState state = new GcodeState();
+        for (String line : program) {
+            List<ParsedCommand> parsedCommands = processors.processCommand(ParsedCommand.of(line), state);
+
+            // Parse the generated text of each command, it should give the same result as the parsed commands
+            GcodeState expectedState = state;
+            for (ParsedCommand parsedCommand : parsedCommands) {
+                GcodeState parsedState = parsedCommand.getResultState(expectedState);
+                expectedState = ParsedCommand.of(parsedCommand.getCommand()).getResultState(expectedState);
+                assertEquals(parsedCommand.getCommand(), expectedState.currentPoint, parsedState.currentPoint);
+            }
+
+            assertEquals(processors.processCommand(line, state), ParsedCommand.toCommands(parsedCommands));
+            state = expectedState;
+        }
+    }
+}
@@ -43,6 +43,8 @@ import static com.willwinder.universalgcodesender.model.UnitUtils.Units.MM;
  *  - Run the test once to generate out{...}/ files and commit them to the repo
  */
 public class FixturesTest {
+    private static final String STREAM_FIELD_SEPARATOR = "¶¶";
+
     @Test
     public void testArcFixtures() throws Exception {
         runAllFixturesInPath("./gcode/fixtures/arc/", "Arc", () -> {
@@ -145,12 +147,8 @@ public class FixturesTest {
             GcodeParserUtils.processAndExport(gcp, tempFile, gcw);
         }
 
-        // read the output back in and compare it to the fixture
-        //GcodeStreamReader reader = new GcodeStreamReader(output.toFile());
-        URI outputTest = output.toUri();
-
-        // compare the generated raw stream output
-        Iterator<String> testLines = Files.lines(Paths.get(outputTest)).iterator();
+        // compare the generated raw stream output, each row formatted as in the text stream format
+        Iterator<String> testLines = readStreamRows(output.toFile()).iterator();
 
         // check the generated stream
         checkOrInitializeFixture(fixtureName + "-stream", streamOutputFixture, testLines);
@@ -169,6 +167,19 @@ public class FixturesTest {
 
     }
 
+    private List<String> readStreamRows(File file) throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        List<String> rows = new ArrayList<>();
+        try (IGcodeStreamReader reader = new GcodeStreamReader(file, new DefaultCommandCreator())) {
+            rows.add("gsw_meta:" + reader.getNumRows());
+
+            GcodeCommand c;
+            while ((c = reader.getNextCommand()) != null) {
+                rows.add(Joiner.on(STREAM_FIELD_SEPARATOR).join(c.getOriginalCommandString(), c.getCommandString(), c.getCommandNumber(), c.getComment()));
+            }
+        }
+        return rows;
+    }
+
     private void checkOrInitializeFixture(String name, String fixtureResourceName, Iterator<String> testLines) throws URISyntaxException, IOException {
         // check if the fixture already exists
         URL fixtureUri = this.getClass().getClassLoader().getResource(fixtureResourceName);
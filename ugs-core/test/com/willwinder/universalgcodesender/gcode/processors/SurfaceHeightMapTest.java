@@ -0,0 +1,109 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.processors;
+
+import com.willwinder.universalgcodesender.model.Position;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.willwinder.universalgcodesender.model.UnitUtils.Units.INCH;
+import static com.willwinder.universalgcodesender.model.UnitUtils.Units.MM;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author wwinder
+ */
+public class SurfaceHeightMapTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void pointsOnALineShouldNotBeAccepted() {
+        new SurfaceHeightMap(Arrays.asList(new Position(0, 0, 0, MM), new Position(10, 0, 0, MM)));
+    }
+
+    @Test
+    public void pointsInAGridShouldBeUsedAsGridNodes() {
+        List<Position> points = new ArrayList<>();
+        for (int x = 0; x <= 20; x += 10) {
+            for (int y = 0; y <= 10; y += 5) {
+                points.add(new Position(x, y, x == 10 && y == 5 ? 1 : 0, MM));
+            }
+        }
+
+        SurfaceHeightMap surface = new SurfaceHeightMap(points);
+        assertEquals(3, surface.getXNodes());
+        assertEquals(3, surface.getYNodes());
+        assertEquals(10, surface.getCellWidth(), 0.0001);
+        assertEquals(5, surface.getCellHeight(), 0.0001);
+
+        assertEquals(1, surface.getHeightAt(10, 5), 0.0001);
+        assertEquals(0.5, surface.getHeightAt(5, 5), 0.0001);
+        assertEquals(0.25, surface.getHeightAt(15, 2.5), 0.0001);
+    }
+
+    @Test
+    public void heightsOutsideTheProbedAreaShouldUseTheNearestEdge() {
+        SurfaceHeightMap surface = new SurfaceHeightMap(Arrays.asList(
+                new Position(0, 0, 0, MM), new Position(0, 10, 0, MM),
+                new Position(10, 0, 1, MM), new Position(10, 10, 1, MM)));
+
+        assertEquals(1, surface.getHeightAt(20, 5), 0.0001);
+        assertEquals(0, surface.getHeightAt(-20, -5), 0.0001);
+    }
+
+    @Test
+    public void scatteredPointsShouldBeInterpolated() {
+        // A tilted plane sampled at random positions
+        Random random = new Random(1);
+        List<Position> points = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            double x = random.nextDouble() * 100;
+            double y = random.nextDouble() * 50;
+            points.add(new Position(x, y, x * 0.01 + y * 0.002, MM));
+        }
+
+        SurfaceHeightMap surface = new SurfaceHeightMap(points);
+        assertEquals(0.5 + 0.05, surface.getHeightAt(50, 25), 0.05);
+        assertEquals(0.2 + 0.02, surface.getHeightAt(20, 10), 0.05);
+    }
+
+    @Test
+    public void resolutionShouldGiveTheGridSize() {
+        SurfaceHeightMap surface = new SurfaceHeightMap(Arrays.asList(
+                new Position(0, 0, 0, MM), new Position(0, 10, 0, MM),
+                new Position(10, 0, 1, MM), new Position(10, 10, 1, MM)), 2.5);
+
+        assertEquals(5, surface.getXNodes());
+        assertEquals(5, surface.getYNodes());
+        assertEquals(0.5, surface.getHeightAt(5, 5), 0.0001);
+    }
+
+    @Test
+    public void pointsShouldBeConvertedToTheUnitsOfTheFirstPoint() {
+        SurfaceHeightMap surface = new SurfaceHeightMap(Arrays.asList(
+                new Position(0, 0, 0, INCH), new Position(0, 25.4, 0, MM),
+                new Position(1, 0, 1, INCH), new Position(25.4, 25.4, 25.4, MM)));
+
+        assertEquals(INCH, surface.getUnits());
+        assertEquals(1, surface.getHeightAt(1, 1), 0.0001);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.processors;
+
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.model.Position;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.willwinder.universalgcodesender.model.UnitUtils.Units.INCH;
+import static com.willwinder.universalgcodesender.model.UnitUtils.Units.MM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class SurfaceLevelerTest {
+    /**
+     * A surface with a ridge along Y at X=10, sampled every 10 mm
+     */
+    private static final SurfaceHeightMap RIDGE = new SurfaceHeightMap(Arrays.asList(
+            new Position(0, 0, 0, MM), new Position(0, 10, 0, MM),
+            new Position(10, 0, 1, MM), new Position(10, 10, 1, MM),
+            new Position(20, 0, 0, MM), new Position(20, 10, 0, MM)));
+
+    private static GcodeState createState(boolean absoluteMode) {
+        GcodeState state = new GcodeState();
+        state.currentPoint = new Position(0, 0, 0, MM);
+        state.inAbsoluteMode = absoluteMode;
+        return state;
+    }
+
+    @Test
+    public void nonMotionCommandsShouldBeUnchanged() throws GcodeParserException {
+        SurfaceLeveler leveler = new SurfaceLeveler(0, RIDGE, 1);
+        assertEquals(Arrays.asList("M3S1000"), leveler.processCommand("M3S1000", createState(true)));
+        assertEquals(Arrays.asList("F100"), leveler.processCommand("F100", createState(true)));
+    }
+
+    @Test
+    public void movesWithinACellShouldOnlyAdjustTheEndPoint() throws GcodeParserException {
+        SurfaceLeveler leveler = new SurfaceLeveler(0, RIDGE, 1);
+        assertEquals(Arrays.asList("G1X5Y5F100Z0.5"), leveler.processCommand("G1X5Y5F100", createState(true)));
+    }
+
+    @Test
+    public void materialSurfaceHeightShouldBeSubtracted() throws GcodeParserException {
+        SurfaceLeveler leveler = new SurfaceLeveler(1, RIDGE, 1);
+        assertEquals(Arrays.asList("G1X5Y5Z-0.5"), leveler.processCommand("G1X5Y5", createState(true)));
+    }
+
+    @Test
+    public void movesAcrossCellsShouldBeSplitAtTheGridLines() throws GcodeParserException {
+        SurfaceLeveler leveler = new SurfaceLeveler(0, RIDGE, 1);
+        List<String> result = leveler.processCommand("G1X20Y0Z-1F200", createState(true));
+
+        // The middle of the move is raised by the ridge
+        assertEquals(Arrays.asList("F200", "G1X10Y0Z0.5", "G1X20Y0Z-1"), result);
+    }
+
+    @Test
+    public void relativeMovesShouldBeAdjustedByTheHeightDifference() throws GcodeParserException {
+        SurfaceLeveler leveler = new SurfaceLeveler(5, RIDGE, 1);
+        List<String> result = leveler.processCommand("G91G1X20", createState(false));
+        assertEquals(Arrays.asList("G91", "G1X10Y0Z1", "G1X10Y0Z-1"), result);
+
+        assertEquals(Arrays.asList("G91G1X5Z0.5"), leveler.processCommand("G91G1X5", createState(false)));
+    }
+
+    @Test
+    public void arcsShouldBeExpandedAndLeveled() throws GcodeParserException {
+        SurfaceLeveler leveler = new SurfaceLeveler(0, RIDGE, 1);
+        GcodeState state = createState(true);
+        state.currentPoint = new Position(5, 5, 0, MM);
+
+        List<String> result = leveler.processCommand("G2X15Y5I5J0", state);
+        assertTrue(result.size() > 10);
+        assertEquals("G1X15Y5Z0.5", result.get(result.size() - 1));
+    }
+
+    @Test
+    public void inchCommandsShouldUseTheSurfaceInMillimeters() throws GcodeParserException {
+        SurfaceLeveler leveler = new SurfaceLeveler(0, RIDGE, 1);
+        GcodeState state = createState(true);
+        state.currentPoint = new Position(0, 0, 0, INCH);
+        state.units = Code.G20;
+
+        List<String> result = leveler.processCommand("G1X0.1968504", state);
+        assertEquals(Arrays.asList("G1X0.1968504Z0.0197"), result);
+    }
+}
@@ -2,6 +2,7 @@ package com.willwinder.universalgcodesender.gcode.util;
 
 import com.google.common.collect.Iterables;
 import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
 import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.model.Position;
@@ -131,4 +132,30 @@ public class GcodeParserUtilsTest {
         GcodeParser.GcodeMeta meta = Iterables.getOnlyElement(metaList);
         assertThat(meta.state.spindleSpeed).isEqualTo(100.0);
     }
+
+    @Test
+    public void createLinearMotionShouldBeTheSameAsParsingTheGeneratedLine() throws Exception {
+        Position start = new Position(1.23456, 2, 3, MM);
+        Position end = new Position(4.567891, -5.55555, 3.00005, MM);
+
+        for (boolean absoluteMode : new boolean[]{true, false}) {
+            GcodeState state = new GcodeState();
+            state.currentPoint = start;
+            state.inAbsoluteMode = absoluteMode;
+            state.feedRate = 100;
+
+            String line = GcodePreprocessorUtils.generateLineFromPoints(G1, start, end, absoluteMode, null);
+            GcodeParser.GcodeMeta expected = Iterables.getOnlyElement(GcodeParserUtils.processCommand(line, 0, state));
+            GcodeParser.GcodeMeta meta = GcodeParserUtils.createLinearMotion(G1, start, end, absoluteMode, null, state);
+
+            assertThat(meta.code).isEqualTo(expected.code);
+            assertThat(meta.point.point()).isEqualTo(expected.point.point());
+            assertThat(meta.point.getFeedRate()).isEqualTo(expected.point.getFeedRate());
+            assertThat(meta.state.currentPoint).isEqualTo(expected.state.currentPoint);
+            assertThat(meta.state.currentMotionMode).isEqualTo(G1);
+        }
+
+        assertThatThrownBy(() -> GcodeParserUtils.createLinearMotion(G3, 1, 2, 3, new GcodeState()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
 }
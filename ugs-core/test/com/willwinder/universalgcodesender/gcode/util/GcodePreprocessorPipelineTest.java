@@ -0,0 +1,192 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.processors.ArcExpander;
+import com.willwinder.universalgcodesender.gcode.processors.CommandLengthProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.CommentProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.LineSplitter;
+import com.willwinder.universalgcodesender.gcode.processors.MeshLeveler;
+import com.willwinder.universalgcodesender.gcode.processors.RunFromProcessor;
+import com.willwinder.universalgcodesender.i18n.Localization;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import com.willwinder.universalgcodesender.utils.IGcodeWriter;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.willwinder.universalgcodesender.model.UnitUtils.Units.MM;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class GcodePreprocessorPipelineTest {
+    private ForkJoinPool pool;
+    private File input;
+
+    @Before
+    public void setUp() throws IOException {
+        pool = new ForkJoinPool(4);
+        input = File.createTempFile("pipeline_test", ".nc");
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+        FileUtils.deleteQuietly(input);
+    }
+
+    @Test
+    public void processAndExportShouldGiveTheSameResultAsSequentialProcessing() throws Exception {
+        URL file = this.getClass().getClassLoader().getResource("./gcode/circle_test.nc");
+        IOUtils.copy(file.openStream(), FileUtils.openOutputStream(input));
+
+        assertSameAsSequential(3);
+        assertSameAsSequential(1);
+        assertSameAsSequential(1000);
+    }
+
+    @Test
+    public void processAndExportShouldUseModalStateFromPreviousChunks() throws Exception {
+        StringBuilder gcode = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            gcode.append(i % 2 == 0 ? "G90" : "G91").append(" ; mode ").append(i).append("\n");
+            gcode.append(i % 3 == 0 ? "G20" : "G21").append("\n");
+            gcode.append("G1 X").append(i % 7).append(" Y").append(i % 5).append(" F100\n");
+            gcode.append("X").append(i % 11).append("\n");
+            gcode.append("G2 X0 Y0 I1 J1\n");
+            gcode.append("\n");
+        }
+        FileUtils.writeStringToFile(input, gcode.toString(), StandardCharsets.UTF_8);
+
+        assertSameAsSequential(5);
+        assertSameAsSequential(64);
+    }
+
+    @Test
+    public void processAndExportShouldWriteProcessedLinesBeforeThrowingError() throws Exception {
+        FileUtils.writeStringToFile(input, "G0 X1\nG1 X2 F100\nG1 X3 Y4 Z5 F100\nG1 X4\n", StandardCharsets.UTF_8);
+
+        List<String> sequential = new ArrayList<>();
+        assertThatThrownBy(() -> GcodeParserUtils.processAndExport(createLengthLimitedParser(), input, new CollectingWriter(sequential)))
+                .isInstanceOf(GcodeParserException.class);
+
+        List<String> parallel = new ArrayList<>();
+        assertThatThrownBy(() -> new GcodePreprocessorPipeline(pool, 1).processAndExport(createLengthLimitedParser(), input, new CollectingWriter(parallel)))
+                .isInstanceOf(GcodeParserException.class);
+
+        assertThat(parallel).containsExactlyElementsOf(sequential);
+        assertThat(parallel).hasSize(2);
+    }
+
+    @Test
+    public void processAndExportShouldFallbackToSequentialWithStatefulProcessors() throws Exception {
+        FileUtils.writeStringToFile(input, "G0 X1\nG0 X2\nG0 X3\nG0 X4\n", StandardCharsets.UTF_8);
+
+        GcodeParser gcp = new GcodeParser();
+        gcp.addCommandProcessor(new RunFromProcessor(3));
+        assertThat(gcp.isPreprocessingStateless()).isFalse();
+
+        List<String> parallel = new ArrayList<>();
+        new GcodePreprocessorPipeline(pool, 1).processAndExport(gcp, input, new CollectingWriter(parallel));
+
+        List<String> sequential = new ArrayList<>();
+        GcodeParser sequentialGcp = new GcodeParser();
+        sequentialGcp.addCommandProcessor(new RunFromProcessor(3));
+        GcodeParserUtils.processAndExport(sequentialGcp, input, new CollectingWriter(sequential));
+
+        assertThat(parallel).containsExactlyElementsOf(sequential);
+    }
+
+    private void assertSameAsSequential(int chunkSize) throws Exception {
+        GcodeParser sequentialGcp = createParser();
+        List<String> sequential = new ArrayList<>();
+        GcodeParserUtils.processAndExport(sequentialGcp, input, new CollectingWriter(sequential));
+
+        GcodeParser parallelGcp = createParser();
+        assertThat(parallelGcp.isPreprocessingStateless()).isTrue();
+        List<String> parallel = new ArrayList<>();
+        new GcodePreprocessorPipeline(pool, chunkSize).processAndExport(parallelGcp, input, new CollectingWriter(parallel));
+
+        assertThat(parallel).isNotEmpty();
+        assertThat(parallel).containsExactlyElementsOf(sequential);
+        assertThat(parallelGcp.getCurrentState().currentPoint).isEqualTo(sequentialGcp.getCurrentState().currentPoint);
+        assertThat(parallelGcp.getCurrentState().commandNumber).isEqualTo(sequentialGcp.getCurrentState().commandNumber);
+        assertThat(parallelGcp.getCurrentStats().getCommandCount()).isEqualTo(sequentialGcp.getCurrentStats().getCommandCount());
+        assertThat(parallelGcp.getCurrentStats().getMax()).isEqualTo(sequentialGcp.getCurrentStats().getMax());
+    }
+
+    private static GcodeParser createParser() {
+        GcodeParser gcp = new GcodeParser();
+        gcp.addCommandProcessor(new CommentProcessor());
+        gcp.addCommandProcessor(new ArcExpander(true, 0.1, new DecimalFormat("#.####", Localization.dfs)));
+        gcp.addCommandProcessor(new LineSplitter(1));
+        Position[][] grid = {
+                {new Position(-5, -5, 0, MM), new Position(-5, 35, 1, MM)},
+                {new Position(35, -5, 0, MM), new Position(35, 35, 2, MM)}
+        };
+        gcp.addCommandProcessor(new MeshLeveler(0, grid));
+        return gcp;
+    }
+
+    private static GcodeParser createLengthLimitedParser() {
+        GcodeParser gcp = new GcodeParser();
+        gcp.addCommandProcessor(new CommandLengthProcessor(12));
+        return gcp;
+    }
+
+    private static class CollectingWriter implements IGcodeWriter {
+        private final List<String> rows;
+
+        private CollectingWriter(List<String> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public String getCanonicalPath() {
+            return "";
+        }
+
+        @Override
+        public void addLine(GcodeCommand command) {
+            addLine(command.getOriginalCommandString(), command.getCommandString(), command.getComment(), command.getCommandNumber());
+        }
+
+        @Override
+        public void addLine(String original, String processed, String comment, int commandNumber) {
+            rows.add(original + "|" + processed + "|" + comment + "|" + commandNumber);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
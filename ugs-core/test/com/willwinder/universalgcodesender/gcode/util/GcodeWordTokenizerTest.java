@@ -0,0 +1,155 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class GcodeWordTokenizerTest {
+    private static final char[] LETTERS = {'A', 'B', 'C', 'F', 'G', 'I', 'J', 'K', 'M', 'P', 'R', 'S', 'T', 'X', 'Y', 'Z'};
+
+    @Test
+    public void tokenizeShouldSplitWordsAndParseValues() {
+        GcodeWordTokenizer words = new GcodeWordTokenizer().tokenize("g1 x-0.5 Y 10 f100 (comment)");
+
+        assertThat(words.getWordCount()).isEqualTo(5);
+        assertThat(words.getLetter(0)).isEqualTo('G');
+        assertThat(words.getCode(0)).isEqualTo(Code.G1);
+        assertThat(words.getLetter(1)).isEqualTo('X');
+        assertThat(words.getValue(1)).isEqualTo(-0.5);
+        assertThat(words.getWord(2)).isEqualTo("Y10");
+        assertThat(words.getValue(2)).isEqualTo(10d);
+        assertThat(words.getCoord('f')).isEqualTo(100d);
+        assertThat(words.isComment(4)).isTrue();
+        assertThat(words.hasValue(4)).isFalse();
+        assertThat(words.getWord(4)).isEqualTo("(comment)");
+        assertThat(words.hasAxisWords()).isTrue();
+    }
+
+    @Test
+    public void tokenizeShouldKeepTrackOfSourceOffsets() {
+        GcodeWordTokenizer words = new GcodeWordTokenizer().tokenize("G1 X 10 ;comment");
+
+        assertThat(words.getWordCount()).isEqualTo(3);
+        assertThat(words.getSourceStart(1)).isEqualTo(3);
+        assertThat(words.getSourceEnd(1)).isEqualTo(7);
+        assertThat(words.getSourceStart(2)).isEqualTo(8);
+        assertThat(words.getSourceEnd(2)).isEqualTo(16);
+    }
+
+    @Test
+    public void tokenizeShouldReplacePreviousCommand() {
+        GcodeWordTokenizer words = new GcodeWordTokenizer();
+        words.tokenize("G0 X1 Y2 Z3 A4 B5 C6 F7 S8 M3 M8 (a long comment to make the buffers grow) G1 X9");
+        words.tokenize("G2 X1");
+
+        assertThat(words.getWordCount()).isEqualTo(2);
+        assertThat(words.getCode(0)).isEqualTo(Code.G2);
+        assertThat(words.getCoord('Y')).isNaN();
+        assertThatThrownBy(() -> words.getLetter(2)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    public void getCodeShouldStripLeadingZeros() {
+        GcodeWordTokenizer words = new GcodeWordTokenizer().tokenize("G00 G01 G038.2 M03 G1.0 G");
+
+        assertThat(words.getCode(0)).isEqualTo(Code.G0);
+        assertThat(words.getCode(1)).isEqualTo(Code.G1);
+        assertThat(words.getCode(2)).isEqualTo(Code.G38_2);
+        assertThat(words.getCode(3)).isEqualTo(Code.M3);
+        assertThat(words.getCode(4)).isEqualTo(Code.UNKNOWN);
+        assertThat(words.getCode(5)).isEqualTo(Code.UNKNOWN);
+    }
+
+    @Test
+    public void tokenizeShouldNotSplitSystemCommands() {
+        GcodeWordTokenizer words = new GcodeWordTokenizer().tokenize("$H X");
+
+        assertThat(words.getWordCount()).isEqualTo(1);
+        assertThat(words.getWord(0)).isEqualTo("$H X");
+        assertThat(words.hasAxisWords()).isFalse();
+    }
+
+    @Test
+    public void tokenizeShouldNotReturnEmptyWordsAfterComments() throws Exception {
+        GcodeWordTokenizer words = new GcodeWordTokenizer().tokenize("G1 X1 (comment) Y2");
+
+        assertThat(words.getWordCount()).isEqualTo(4);
+        assertThat(words.getWord(3)).isEqualTo("Y2");
+
+        List<GcodeParser.GcodeMeta> meta = GcodeParserUtils.processCommand("G1 X1 (comment) Y2", 0, new GcodeState());
+        assertThat(meta.get(0).point.point().x).isEqualTo(1d);
+        assertThat(meta.get(0).point.point().y).isEqualTo(2d);
+    }
+
+    @Test
+    public void tokenizeShouldGiveTheSameResultAsSplitCommandForFixtures() throws Exception {
+        GcodeWordTokenizer words = new GcodeWordTokenizer();
+        List<String> commands = readFixtureCommands();
+        assertThat(commands).isNotEmpty();
+
+        for (String command : commands) {
+            List<String> args = GcodePreprocessorUtils.splitCommand(command).stream()
+                    .filter(word -> !word.isEmpty())
+                    .collect(Collectors.toList());
+            words.tokenize(command);
+
+            List<String> tokens = new ArrayList<>();
+            for (int i = 0; i < words.getWordCount(); i++) {
+                tokens.add(words.getWord(i));
+                assertThat(words.getCode(i)).isEqualTo(Code.lookupCode(args.get(i)));
+            }
+            assertThat(tokens).containsExactlyElementsOf(args);
+            assertThat(words.hasAxisWords()).isEqualTo(GcodePreprocessorUtils.hasAxisWords(args));
+
+            for (char letter : LETTERS) {
+                assertThat(Double.doubleToLongBits(words.getCoord(letter)))
+                        .isEqualTo(Double.doubleToLongBits(GcodePreprocessorUtils.parseCoord(args, letter)));
+                assertThat(words.count(letter)).isEqualTo(GcodePreprocessorUtils.parseCodes(args, letter).size());
+            }
+        }
+    }
+
+    private List<String> readFixtureCommands() throws URISyntaxException, IOException {
+        Path fixtures = Paths.get(this.getClass().getClassLoader().getResource("./gcode").toURI());
+        List<String> commands = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(fixtures)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".nc")).collect(Collectors.toList())) {
+                commands.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+            }
+        }
+        return commands;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.model;
+
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.listeners.UGSEventListener;
+import com.willwinder.universalgcodesender.model.events.CommandEvent;
+import com.willwinder.universalgcodesender.model.events.CommandEventType;
+import com.willwinder.universalgcodesender.model.events.ControllerStatusEvent;
+import com.willwinder.universalgcodesender.model.events.StreamEvent;
+import com.willwinder.universalgcodesender.model.events.StreamEventType;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class UGSEventDispatcherTest {
+    private UGSEventDispatcher dispatcher;
+    private BlockingListener listener;
+
+    @Before
+    public void setUp() {
+        dispatcher = new UGSEventDispatcher();
+        listener = new BlockingListener(false);
+    }
+
+    @After
+    public void tearDown() {
+        listener.release();
+        dispatcher.setAsynchronous(false);
+    }
+
+    @Test
+    public void sendUGSEventShouldDispatchOnTheCallingThreadByDefault() {
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        dispatcher.addListener(event -> threads.add(Thread.currentThread()));
+
+        dispatcher.sendUGSEvent(new StreamEvent(StreamEventType.STREAM_STARTED));
+
+        assertFalse(dispatcher.isAsynchronous());
+        assertEquals(List.of(Thread.currentThread()), threads);
+        assertTrue(dispatcher.getListenerStatistics().isEmpty());
+    }
+
+    @Test
+    public void sendUGSEventShouldNotWaitForSlowListenersWhenAsynchronous() throws InterruptedException {
+        dispatcher.setAsynchronous(true);
+        dispatcher.addListener(listener);
+
+        StreamEvent started = new StreamEvent(StreamEventType.STREAM_STARTED);
+        StreamEvent paused = new StreamEvent(StreamEventType.STREAM_PAUSED);
+        StreamEvent resumed = new StreamEvent(StreamEventType.STREAM_RESUMED);
+        dispatcher.sendUGSEvent(started);
+        dispatcher.sendUGSEvent(paused);
+        dispatcher.sendUGSEvent(resumed);
+        assertTrue(listener.awaitFirstEvent());
+        assertEquals(2, dispatcher.getListenerStatistics().get(0).getQueueDepth());
+
+        listener.release();
+        listener.awaitEvents(3);
+        assertEquals(List.of(started, paused, resumed), listener.events);
+        assertFalse(listener.threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void statusEventsShouldBeCoalescedWhenAsynchronous() throws InterruptedException {
+        dispatcher.setAsynchronous(true);
+        dispatcher.addListener(listener);
+
+        ControllerStatus status1 = new ControllerStatus();
+        ControllerStatus status2 = new ControllerStatus();
+        ControllerStatus status3 = new ControllerStatus();
+        ControllerStatus status4 = new ControllerStatus();
+        StreamEvent started = new StreamEvent(StreamEventType.STREAM_STARTED);
+        StreamEvent paused = new StreamEvent(StreamEventType.STREAM_PAUSED);
+        dispatcher.sendUGSEvent(started);
+        assertTrue(listener.awaitFirstEvent());
+        dispatcher.sendUGSEvent(new ControllerStatusEvent(status2, status1));
+        dispatcher.sendUGSEvent(paused);
+        dispatcher.sendUGSEvent(new ControllerStatusEvent(status3, status2));
+        dispatcher.sendUGSEvent(new ControllerStatusEvent(status4, status3));
+
+        listener.release();
+        listener.awaitEvents(3);
+        assertEquals(3, listener.events.size());
+        assertSame(started, listener.events.get(0));
+        assertSame(paused, listener.events.get(1));
+        ControllerStatusEvent statusEvent = (ControllerStatusEvent) listener.events.get(2);
+        assertSame(status4, statusEvent.getStatus());
+        assertSame(status1, statusEvent.getPreviousStatus());
+
+        UGSEventListenerStatistics statistics = dispatcher.getListenerStatistics().get(0);
+        assertEquals(2, statistics.getCoalescedEvents());
+        assertEquals(3, statistics.getDispatchedEvents());
+        assertEquals(2, statistics.getMaxQueueDepth());
+    }
+
+    @Test
+    public void commandCompleteEventsShouldOnlyBeCoalescedIfEnabledByTheListener() throws InterruptedException {
+        BlockingListener coalescingListener = new BlockingListener(true);
+        dispatcher.setAsynchronous(true);
+        dispatcher.addListener(listener);
+        dispatcher.addListener(coalescingListener);
+
+        dispatcher.sendUGSEvent(new StreamEvent(StreamEventType.STREAM_STARTED));
+        assertTrue(listener.awaitFirstEvent());
+        assertTrue(coalescingListener.awaitFirstEvent());
+        for (int i = 1; i <= 5; i++) {
+            dispatcher.sendUGSEvent(new CommandEvent(CommandEventType.COMMAND_COMPLETE, new GcodeCommand("G0 X" + i, "G0 X" + i, "", i)));
+        }
+
+        listener.release();
+        coalescingListener.release();
+        listener.awaitEvents(6);
+        coalescingListener.awaitEvents(2);
+        assertEquals(6, listener.events.size());
+        assertEquals(2, coalescingListener.events.size());
+        assertEquals(5, ((CommandEvent) coalescingListener.events.get(1)).getCommand().getCommandNumber());
+    }
+
+    @Test
+    public void removeListenerShouldStopDispatchingEvents() throws InterruptedException {
+        dispatcher.setAsynchronous(true);
+        dispatcher.addListener(listener);
+        listener.release();
+        dispatcher.sendUGSEvent(new StreamEvent(StreamEventType.STREAM_STARTED));
+        listener.awaitEvents(1);
+
+        dispatcher.removeListener(listener);
+        dispatcher.sendUGSEvent(new StreamEvent(StreamEventType.STREAM_PAUSED));
+
+        assertTrue(dispatcher.getListenerStatistics().isEmpty());
+        Thread.sleep(50);
+        assertEquals(1, listener.events.size());
+    }
+
+    @Test
+    public void eventsSentFromTheListenerShouldNotWaitForAFullQueue() throws InterruptedException {
+        List<UGSEvent> events = new CopyOnWriteArrayList<>();
+        CountDownLatch dispatched = new CountDownLatch(3);
+        QueuedUGSEventListener[] queuedListener = new QueuedUGSEventListener[1];
+        UGSEventListener resendingListener = event -> {
+            events.add(event);
+            if (((StreamEvent) event).getType() == StreamEventType.STREAM_STARTED) {
+                queuedListener[0].offer(new StreamEvent(StreamEventType.STREAM_PAUSED));
+                queuedListener[0].offer(new StreamEvent(StreamEventType.STREAM_RESUMED));
+            }
+            dispatched.countDown();
+        };
+
+        queuedListener[0] = new QueuedUGSEventListener(resendingListener, 1);
+        queuedListener[0].offer(new StreamEvent(StreamEventType.STREAM_STARTED));
+
+        assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+        assertEquals(3, events.size());
+        queuedListener[0].close();
+    }
+
+    /**
+     * A listener that blocks when receiving the first event until released
+     */
+    private static class BlockingListener implements UGSEventListener {
+        private final boolean coalesceCommandComplete;
+        private final CountDownLatch firstEvent = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final List<UGSEvent> events = new CopyOnWriteArrayList<>();
+        private final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+        private BlockingListener(boolean coalesceCommandComplete) {
+            this.coalesceCommandComplete = coalesceCommandComplete;
+        }
+
+        @Override
+        public void UGSEvent(UGSEvent evt) {
+            events.add(evt);
+            threads.add(Thread.currentThread());
+            firstEvent.countDown();
+            try {
+                released.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean isCommandCompleteCoalescingEnabled() {
+            return coalesceCommandComplete;
+        }
+
+        private boolean awaitFirstEvent() throws InterruptedException {
+            return firstEvent.await(5, TimeUnit.SECONDS);
+        }
+
+        private void release() {
+            released.countDown();
+        }
+
+        private void awaitEvents(int count) throws InterruptedException {
+            long timeout = System.currentTimeMillis() + 5000;
+            while (events.size() < count && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.services;
+
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.model.BackendAPI;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.model.events.CommandEvent;
+import com.willwinder.universalgcodesender.model.events.CommandEventType;
+import com.willwinder.universalgcodesender.model.events.ControllerStateEvent;
+import com.willwinder.universalgcodesender.model.events.ControllerStatusEvent;
+import com.willwinder.universalgcodesender.model.events.StreamEvent;
+import com.willwinder.universalgcodesender.model.events.StreamEventType;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author wwinder
+ */
+public class StreamingTelemetryServiceTest {
+    private BackendAPI backend;
+    private StreamingTelemetryService instance;
+    private long time;
+
+    @Before
+    public void setUp() {
+        backend = mock(BackendAPI.class);
+        when(backend.isSendingFile()).thenReturn(true);
+        when(backend.getNumRows()).thenReturn(100L);
+        when(backend.getNumSentRows()).thenReturn(10L);
+        instance = new StreamingTelemetryService(backend, () -> time, 1);
+    }
+
+    private void advanceMillis(long millis) {
+        time += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private void status(ControllerState state, int plannerBlocksAvailable, int rxBytesAvailable) {
+        ControllerStatus status = new ControllerStatus(state, null, Position.ZERO, Position.ZERO, 0d, UnitUtils.Units.MM, 0d,
+                null, null, null, null, new ControllerStatus.BufferState(plannerBlocksAvailable, rxBytesAvailable));
+        instance.UGSEvent(new ControllerStatusEvent(status, status));
+    }
+
+    private GcodeCommand send(int commandNumber) {
+        GcodeCommand command = new GcodeCommand("G1X" + commandNumber, commandNumber);
+        instance.UGSEvent(new CommandEvent(CommandEventType.COMMAND_SENT, command));
+        return command;
+    }
+
+    private void complete(GcodeCommand command) {
+        instance.UGSEvent(new CommandEvent(CommandEventType.COMMAND_COMPLETE, command));
+    }
+
+    @Test
+    public void samplesShouldCountCommandsAndLatencyPerSecond() {
+        GcodeCommand first = send(1);
+        GcodeCommand second = send(2);
+        advanceMillis(4);
+        complete(first);
+        advanceMillis(20);
+        complete(second);
+
+        advanceMillis(1000);
+        complete(send(3));
+
+        List<StreamingTelemetry.Sample> samples = instance.getTelemetry().getSamples();
+        assertEquals(2, samples.size());
+        assertEquals(2, samples.get(0).getCommandsSent());
+        assertEquals(2, samples.get(0).getCommandsCompleted());
+        assertEquals(14, samples.get(0).getAverageAckLatencyMillis(), 0.001);
+        assertEquals(24, samples.get(0).getMaxAckLatencyMillis(), 0.001);
+        assertEquals(1, samples.get(1).getSecond());
+        assertEquals(1, samples.get(1).getCommandsSent());
+
+        // 0 ms, 4 ms and 24 ms
+        assertArrayEquals(new long[]{1, 0, 1, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0}, instance.getTelemetry().getLatencyHistogram());
+    }
+
+    @Test
+    public void samplesShouldBeAddedForSecondsWithoutEvents() {
+        send(1);
+        advanceMillis(3500);
+
+        List<StreamingTelemetry.Sample> samples = instance.getTelemetry().getSamples();
+        assertEquals(4, samples.size());
+        assertEquals(0, samples.get(2).getCommandsSent());
+        assertEquals(-1, samples.get(2).getMinPlannerBlocksAvailable());
+    }
+
+    @Test
+    public void samplesShouldContainTheBufferState() {
+        status(ControllerState.IDLE, 15, 128);
+        advanceMillis(1000);
+        status(ControllerState.RUN, 10, 100);
+        status(ControllerState.RUN, 4, 28);
+
+        StreamingTelemetry telemetry = instance.getTelemetry();
+        assertEquals(15, telemetry.getPlannerBlockCount());
+        assertEquals(128, telemetry.getRxBufferSize());
+
+        StreamingTelemetry.Sample sample = telemetry.getSamples().get(1);
+        assertEquals(2, sample.getStatusReports());
+        assertEquals(4, sample.getMinPlannerBlocksAvailable());
+        assertEquals(7, sample.getAveragePlannerBlocksAvailable(), 0.001);
+        assertEquals(64, sample.getAverageRxBytesUsed(), 0.001);
+        assertFalse(sample.isStarved());
+    }
+
+    @Test
+    public void starvationShouldBeDetectedWhenThePlannerRunsEmptyWhileStreaming() {
+        status(ControllerState.IDLE, 15, 128);
+        send(41);
+        status(ControllerState.RUN, 5, 128);
+        advanceMillis(200);
+        status(ControllerState.RUN, 14, 128);
+        advanceMillis(300);
+        status(ControllerState.RUN, 15, 128);
+        advanceMillis(100);
+        status(ControllerState.RUN, 12, 128);
+
+        StreamingTelemetry telemetry = instance.getTelemetry();
+        assertEquals(1, telemetry.getStarvationWindows().size());
+        StreamingTelemetry.StarvationWindow window = telemetry.getStarvationWindows().get(0);
+        assertEquals(200, window.getStartMillis());
+        assertEquals(400, window.getDurationMillis());
+        assertEquals(0, window.getMinPlannerBlocksQueued());
+        assertEquals(41, window.getCommandNumber());
+        assertTrue(telemetry.getSamples().get(0).isStarved());
+    }
+
+    @Test
+    public void bufferStateShouldBeIgnoredUntilTheControllerHasBeenIdle() {
+        // Connected while running, the buffer sizes can't be known
+        send(1);
+        status(ControllerState.RUN, 2, 20);
+        advanceMillis(100);
+        status(ControllerState.RUN, 3, 40);
+
+        StreamingTelemetry telemetry = instance.getTelemetry();
+        assertEquals(0, telemetry.getStarvationWindows().size());
+        assertEquals(0, telemetry.getPlannerBlockCount());
+        assertEquals(0, telemetry.getSamples().get(0).getStatusReports());
+        assertFalse(telemetry.getSamples().get(0).isStarved());
+
+        status(ControllerState.IDLE, 15, 128);
+        status(ControllerState.RUN, 15, 128);
+        advanceMillis(100);
+        status(ControllerState.RUN, 10, 100);
+
+        telemetry = instance.getTelemetry();
+        assertEquals(15, telemetry.getPlannerBlockCount());
+        assertEquals(128, telemetry.getRxBufferSize());
+        assertEquals(1, telemetry.getStarvationWindows().size());
+    }
+
+    @Test
+    public void bufferSizesShouldBeDetectedAgainAfterReconnecting() {
+        // A controller with larger buffers
+        status(ControllerState.IDLE, 35, 1024);
+        assertEquals(35, instance.getTelemetry().getPlannerBlockCount());
+
+        instance.UGSEvent(new ControllerStateEvent(ControllerState.DISCONNECTED, ControllerState.IDLE));
+        assertEquals(0, instance.getTelemetry().getPlannerBlockCount());
+        assertEquals(0, instance.getTelemetry().getRxBufferSize());
+
+        // Reconnected to a controller with smaller buffers which is already running
+        instance.UGSEvent(new ControllerStateEvent(ControllerState.IDLE, ControllerState.DISCONNECTED));
+        status(ControllerState.RUN, 10, 100);
+        assertEquals(0, instance.getTelemetry().getPlannerBlockCount());
+
+        status(ControllerState.IDLE, 15, 128);
+        send(1);
+        status(ControllerState.RUN, 15, 128);
+        advanceMillis(100);
+        status(ControllerState.RUN, 10, 100);
+
+        StreamingTelemetry telemetry = instance.getTelemetry();
+        assertEquals(15, telemetry.getPlannerBlockCount());
+        assertEquals(128, telemetry.getRxBufferSize());
+        assertEquals(1, telemetry.getStarvationWindows().size());
+    }
+
+    @Test
+    public void starvationShouldNotBeDetectedWhenAllRowsHaveBeenSent() {
+        when(backend.getNumSentRows()).thenReturn(100L);
+        status(ControllerState.IDLE, 15, 128);
+        status(ControllerState.RUN, 15, 128);
+        advanceMillis(100);
+        status(ControllerState.IDLE, 15, 128);
+
+        assertEquals(0, instance.getTelemetry().getStarvationWindows().size());
+    }
+
+    @Test
+    public void starvationShouldNotBeDetectedWhenPaused() {
+        status(ControllerState.IDLE, 15, 128);
+        status(ControllerState.HOLD, 15, 128);
+        advanceMillis(100);
+
+        assertEquals(0, instance.getTelemetry().getStarvationWindows().size());
+    }
+
+    @Test
+    public void telemetryShouldBeResetWhenAStreamIsStarted() {
+        status(ControllerState.IDLE, 15, 128);
+        complete(send(1));
+        advanceMillis(2000);
+
+        instance.UGSEvent(new StreamEvent(StreamEventType.STREAM_STARTED));
+        StreamingTelemetry telemetry = instance.getTelemetry();
+        assertEquals(1, telemetry.getSamples().size());
+        assertEquals(0, telemetry.getSamples().get(0).getCommandsSent());
+        assertEquals(15, telemetry.getPlannerBlockCount());
+    }
+
+    @Test
+    public void writeCsvShouldWriteOneRowPerSecond() throws Exception {
+        status(ControllerState.IDLE, 15, 128);
+        GcodeCommand command = send(1);
+        advanceMillis(5);
+        complete(command);
+        advanceMillis(1000);
+
+        StringWriter writer = new StringWriter();
+        instance.getTelemetry().writeCsv(writer);
+        String[] rows = writer.toString().split("\n");
+        assertEquals(3, rows.length);
+        assertEquals("second,commands_sent,commands_completed,ack_latency_avg_ms,ack_latency_max_ms,rx_bytes_used_avg," +
+                "planner_blocks_available_min,planner_blocks_available_avg,status_reports,starved", rows[0]);
+        assertEquals("0,1,1,5.00,5.00,0.0,15,15.0,1,0", rows[1]);
+        assertEquals("1,0,0,0.00,0.00,0.0,-1,0.0,0,0", rows[2]);
+    }
+}
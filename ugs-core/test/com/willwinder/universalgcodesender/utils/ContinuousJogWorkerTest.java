@@ -0,0 +1,166 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import com.willwinder.universalgcodesender.Capabilities;
+import com.willwinder.universalgcodesender.CapabilitiesConstants;
+import com.willwinder.universalgcodesender.IController;
+import com.willwinder.universalgcodesender.model.BackendAPI;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.services.JogService;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ContinuousJogWorkerTest {
+    private static final int LOOKAHEAD = 3;
+
+    private BackendAPI backendAPI;
+    private IController controller;
+    private ContinuousJogWorker worker;
+
+    @Before
+    public void setUp() {
+        Capabilities capabilities = new Capabilities();
+        capabilities.addCapability(CapabilitiesConstants.JOGGING);
+        capabilities.addCapability(CapabilitiesConstants.CONTINUOUS_JOGGING);
+        capabilities.addCapability(CapabilitiesConstants.X_AXIS);
+        controller = mock(IController.class);
+        when(controller.getCapabilities()).thenReturn(capabilities);
+
+        Settings settings = new Settings();
+        settings.setJogLookaheadBlocks(LOOKAHEAD);
+        backendAPI = mock(BackendAPI.class);
+        when(backendAPI.getSettings()).thenReturn(settings);
+        when(backendAPI.getController()).thenReturn(controller);
+
+        JogService jogService = mock(JogService.class);
+        when(jogService.canJog()).thenReturn(true);
+        when(jogService.getFeedRate()).thenReturn(100);
+        when(jogService.getUnits()).thenReturn(UnitUtils.Units.MM);
+
+        worker = new ContinuousJogWorker(backendAPI, jogService);
+        worker.setDirection(1, 0, 0);
+    }
+
+    @After
+    public void tearDown() {
+        worker.destroy();
+    }
+
+    @Test
+    public void startShouldNotSendMoreCommandsThanTheLookaheadUntilTheyAreAcknowledged() throws Exception {
+        worker.start();
+        verify(backendAPI, timeout(1000).times(LOOKAHEAD)).adjustManualLocation(any(), anyDouble());
+
+        Thread.sleep(200);
+        verify(backendAPI, times(LOOKAHEAD)).adjustManualLocation(any(), anyDouble());
+
+        worker.commandComplete(createJogCommand());
+        verify(backendAPI, timeout(1000).times(LOOKAHEAD + 1)).adjustManualLocation(any(), anyDouble());
+    }
+
+    @Test
+    public void stopShouldCancelTheJogWhenAllCommandsHaveBeenAcknowledged() throws Exception {
+        worker.start();
+        verify(backendAPI, timeout(1000).times(LOOKAHEAD)).adjustManualLocation(any(), anyDouble());
+
+        worker.stop();
+        worker.commandComplete(createJogCommand());
+        worker.commandComplete(createJogCommand());
+        verify(controller, never()).cancelJog();
+
+        worker.commandComplete(createJogCommand());
+        verify(controller).cancelJog();
+        verify(backendAPI, times(LOOKAHEAD)).adjustManualLocation(any(), anyDouble());
+    }
+
+    @Test
+    public void stopShouldCancelTheJogIfTheCommandsAreNotAcknowledged() throws Exception {
+        worker.start();
+        verify(backendAPI, timeout(1000).times(LOOKAHEAD)).adjustManualLocation(any(), anyDouble());
+
+        worker.stop();
+        verify(controller, never()).cancelJog();
+        verify(controller, timeout(3000)).cancelJog();
+    }
+
+    @Test
+    public void startShouldRegisterTheWorkerAgainAfterBeingDestroyed() throws Exception {
+        worker.start();
+        verify(backendAPI, timeout(1000).times(LOOKAHEAD)).adjustManualLocation(any(), anyDouble());
+
+        worker.destroy();
+        verify(controller).removeListener(worker);
+
+        worker.start();
+        verify(controller, times(2)).addListener(worker);
+        verify(backendAPI, timeout(1000).times(LOOKAHEAD * 2)).adjustManualLocation(any(), anyDouble());
+    }
+
+    private static GcodeCommand createJogCommand() {
+        return new GcodeCommand("$J=G21G91X0.1F100");
+    }
+
+    @Test
+    public void calculateLookaheadShouldOnlyUseOneCommandWithoutContinuousJogging() {
+        assertEquals(1, ContinuousJogWorker.calculateLookahead(8, 15, false));
+    }
+
+    @Test
+    public void calculateLookaheadShouldBeLimitedByThePlannerCapacity() {
+        assertEquals(8, ContinuousJogWorker.calculateLookahead(8, 0, true));
+        assertEquals(8, ContinuousJogWorker.calculateLookahead(8, 15, true));
+        assertEquals(3, ContinuousJogWorker.calculateLookahead(8, 4, true));
+        assertEquals(2, ContinuousJogWorker.calculateLookahead(8, 1, true));
+    }
+
+    @Test
+    public void calculateCommandDurationShouldUseMinimumDurationWithoutAcceleration() {
+        assertEquals(ContinuousJogWorker.MIN_COMMAND_DURATION, ContinuousJogWorker.calculateCommandDuration(100, 0, 0, 8), 0.0001);
+        assertEquals(ContinuousJogWorker.MIN_COMMAND_DURATION, ContinuousJogWorker.calculateCommandDuration(100, 500, 0, 1), 0.0001);
+    }
+
+    @Test
+    public void calculateCommandDurationShouldAllowReachingTheFeedRate() {
+        // v^2 / (2 * a * (N - 1)) = 30^2 / (2 * 500 * 7)
+        assertEquals(900.0 / 7000, ContinuousJogWorker.calculateCommandDuration(30, 500, 0, 8), 0.0001);
+    }
+
+    @Test
+    public void calculateCommandDurationShouldCoverTheRoundTripTime() {
+        assertEquals(0.1 / 7, ContinuousJogWorker.calculateCommandDuration(5, 500, 0.1, 8), 0.0001);
+    }
+
+    @Test
+    public void calculateCommandDurationShouldBeLimited() {
+        assertEquals(ContinuousJogWorker.MAX_COMMAND_DURATION, ContinuousJogWorker.calculateCommandDuration(500, 10, 0, 8), 0.0001);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import com.willwinder.universalgcodesender.gcode.DefaultCommandCreator;
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author wwinder
+ */
+public class GcodeStateIndexTest {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    /**
+     * Writes a program where some lines are split into several rows, each line has a Z move
+     * so that the max z changes over the program.
+     */
+    private File writeProgram(int lines, int checkpointInterval) throws IOException {
+        File file = new File(tempFolder.getRoot(), "program");
+        try (IGcodeWriter writer = new GcodeStateIndexWriter(new GcodeStreamWriter(file), file, checkpointInterval)) {
+            for (int line = 1; line <= lines; line++) {
+                String command;
+                if (line % 50 == 0) {
+                    command = line % 100 == 0 ? "G21" : "G20";
+                } else if (line % 37 == 0) {
+                    command = "M6 T" + (line % 5);
+                } else if (line % 23 == 0) {
+                    command = line % 46 == 0 ? "G90" : "G91";
+                } else if (line % 41 == 0) {
+                    command = "G55";
+                } else {
+                    command = "G1X" + line + "Y" + (line % 7) + "Z" + (line % 13) + "F" + (100 + line);
+                }
+
+                writer.addLine(command, command, "", line);
+                if (line % 3 == 0) {
+                    writer.addLine(command, "G0X" + (line % 11), "", line);
+                }
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void seekShouldGiveTheSameStateAsProcessingAllRows() throws Exception {
+        File file = writeProgram(500, 20);
+        GcodeStateIndex index = GcodeStateIndex.load(file);
+
+        try (GcodeStreamReader reader = new GcodeStreamReader(file, new DefaultCommandCreator())) {
+            List<GcodeCommand> rows = new ArrayList<>();
+            while (reader.getNumRowsRemaining() > 0) {
+                rows.add(reader.getNextCommand());
+            }
+
+            for (int line = 1; line <= 501; line += 3) {
+                GcodeParser parser = new GcodeParser();
+                int expectedRow = 0;
+                double expectedMaxZ = 0;
+                while (expectedRow < rows.size() && rows.get(expectedRow).getCommandNumber() < line) {
+                    parser.addCommand(rows.get(expectedRow).getCommandString());
+                    GcodeState state = parser.getCurrentState();
+                    expectedMaxZ = Math.max(expectedMaxZ, state.isMetric ? state.currentPoint.z : state.currentPoint.z * 25.4);
+                    expectedRow++;
+                }
+
+                GcodeStateIndex.Checkpoint checkpoint = index.seek(reader, line);
+                GcodeState expected = parser.getCurrentState();
+                GcodeState actual = checkpoint.getState();
+                String message = "Line " + line;
+                assertEquals(message, expectedRow, checkpoint.getRow());
+                assertEquals(message, expected.currentPoint, actual.currentPoint);
+                assertEquals(message, expected.units, actual.units);
+                assertEquals(message, expected.offset, actual.offset);
+                assertEquals(message, expected.distanceMode, actual.distanceMode);
+                assertEquals(message, expected.inAbsoluteMode, actual.inAbsoluteMode);
+                assertEquals(message, expected.currentMotionMode, actual.currentMotionMode);
+                assertEquals(message, expected.feedRate, actual.feedRate, 0);
+                assertEquals(message, expectedMaxZ, checkpoint.getMaxZ(), 0.0001);
+            }
+        }
+    }
+
+    @Test
+    public void checkpointsShouldBeAddedAfterToolOffsetAndUnitChanges() throws Exception {
+        File file = new File(tempFolder.getRoot(), "program");
+        try (IGcodeWriter writer = new GcodeStateIndexWriter(new GcodeStreamWriter(file), file, 1000)) {
+            writer.addLine("G1X10", "G1X10", "", 1);
+            writer.addLine("G1X20", "G1X20", "", 2);
+            writer.addLine("G20", "G20", "", 3);
+            writer.addLine("G1X1", "G1X1", "", 4);
+            writer.addLine("G55", "G55", "", 5);
+            writer.addLine("G1X2", "G1X2", "", 6);
+            writer.addLine("M6 T2", "M6 T2", "", 7);
+            writer.addLine("G1X3", "G1X3", "", 8);
+            writer.addLine("G1X4", "G1X4", "", 9);
+        }
+
+        List<GcodeStateIndex.Checkpoint> checkpoints = GcodeStateIndex.load(file).getCheckpoints();
+        assertEquals(4, checkpoints.size());
+        assertEquals(0, checkpoints.get(0).getRow());
+        assertEquals(3, checkpoints.get(1).getRow());
+        assertEquals(Code.G20, checkpoints.get(1).getState().units);
+        assertEquals(5, checkpoints.get(2).getRow());
+        assertEquals(Code.G55, checkpoints.get(2).getState().offset);
+        assertEquals(7, checkpoints.get(3).getRow());
+        assertEquals(8, checkpoints.get(3).getCommandNumber());
+    }
+
+    @Test
+    public void checkpointsShouldOnlyBeAddedOnTheFirstRowOfALine() throws Exception {
+        File file = new File(tempFolder.getRoot(), "program");
+        try (IGcodeWriter writer = new GcodeStateIndexWriter(new GcodeStreamWriter(file), file, 1)) {
+            writer.addLine("G2X10Y0I5J0", "G1X1Y1", "", 1);
+            writer.addLine("G2X10Y0I5J0", "G1X2Y1", "", 1);
+            writer.addLine("G2X10Y0I5J0", "G1X3Y1", "", 1);
+            writer.addLine("G1X4", "G1X4", "", 2);
+        }
+
+        List<GcodeStateIndex.Checkpoint> checkpoints = GcodeStateIndex.load(file).getCheckpoints();
+        assertEquals(2, checkpoints.size());
+        assertEquals(3, checkpoints.get(1).getRow());
+        assertEquals(3, checkpoints.get(1).getState().currentPoint.x, 0);
+    }
+
+    @Test
+    public void getCheckpointShouldReturnTheNearestCheckpointBeforeTheLine() throws Exception {
+        File file = writeProgram(100, 10);
+        GcodeStateIndex index = GcodeStateIndex.load(file);
+
+        assertNull(index.getCheckpoint(0));
+        for (int line = 1; line <= 100; line++) {
+            GcodeStateIndex.Checkpoint checkpoint = index.getCheckpoint(line);
+            assertTrue(checkpoint.getCommandNumber() <= line);
+            assertTrue(line - checkpoint.getCommandNumber() <= 10);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void loadShouldThrowAnErrorIfTheIndexIsMissing() throws Exception {
+        GcodeStateIndex.load(new File(tempFolder.getRoot(), "missing"));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class GcodeStreamInputStreamTest {
+
+    @Test
+    public void readShouldReturnTheCommandsOnePerLine() throws IOException {
+        try (InputStream inputStream = new GcodeStreamInputStream(new SimpleGcodeStreamReader("G0 X1", "G1 Y2 F100", "M30"))) {
+            assertEquals("G0 X1\nG1 Y2 F100\nM30\n", new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void readShouldReturnEndOfStreamWhenThereAreNoMoreCommands() throws IOException {
+        try (InputStream inputStream = new GcodeStreamInputStream(new SimpleGcodeStreamReader("G0"))) {
+            byte[] buffer = new byte[10];
+            assertEquals(3, inputStream.read(buffer, 0, buffer.length));
+            assertEquals(-1, inputStream.read(buffer, 0, buffer.length));
+            assertEquals(-1, inputStream.read());
+        }
+
+        try (InputStream inputStream = new GcodeStreamInputStream(new SimpleGcodeStreamReader(Collections.emptyList()))) {
+            assertEquals(-1, inputStream.read());
+            assertEquals(-1, inputStream.read(new byte[10], 0, 10));
+        }
+    }
+
+    @Test
+    public void readShouldNotReadAnythingForAnEmptyBuffer() throws IOException {
+        try (InputStream inputStream = new GcodeStreamInputStream(new SimpleGcodeStreamReader("G0"))) {
+            assertEquals(0, inputStream.read(new byte[10], 0, 0));
+            assertEquals('G', inputStream.read());
+        }
+    }
+
+    @Test
+    public void readShouldEncodeMultiByteCharactersAsUtf8() throws IOException {
+        String command = "G0 X1 (Fräs ø5 → 10°)";
+        byte[] expected = (command + "\n").getBytes(StandardCharsets.UTF_8);
+
+        try (InputStream inputStream = new GcodeStreamInputStream(new SimpleGcodeStreamReader(command))) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            int value;
+            while ((value = inputStream.read()) != -1) {
+                result.write(value);
+            }
+            assertArrayEquals(expected, result.toByteArray());
+        }
+
+        // Reading in small chunks splits the multi-byte characters
+        try (InputStream inputStream = new GcodeStreamInputStream(new SimpleGcodeStreamReader(command))) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[3];
+            int count;
+            while ((count = inputStream.read(buffer, 0, buffer.length)) != -1) {
+                result.write(buffer, 0, count);
+            }
+            assertArrayEquals(expected, result.toByteArray());
+        }
+    }
+}
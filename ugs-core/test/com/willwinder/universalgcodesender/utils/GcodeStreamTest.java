@@ -1,5 +1,5 @@
 /*
-    Copyright 2012-2017 Will Winder
+    Copyright 2012-2023 Will Winder
 
     This file is part of Universal Gcode Sender (UGS).
 
@@ -26,12 +26,14 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.BeforeClass;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  *
@@ -104,6 +106,110 @@ public class GcodeStreamTest {
         }
     }
 
+    @Test
+    public void testGcodeStreamRandomAccess() throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        int rows = 1000;
+        File f = new File(tempDir,"gcodeFile");
+        try {
+            try (GcodeStreamWriter gsw = new GcodeStreamWriter(f)) {
+                for (int i = 0; i < rows; i++) {
+                    gsw.addLine("Line " + i + " before", "Line " + i + " after", "Comment " + i, i);
+                }
+            }
+
+            try (GcodeStreamReader gsr = new GcodeStreamReader(f, new DefaultCommandCreator())) {
+                assertThat(gsr.isRandomAccess()).isTrue();
+
+                GcodeCommand command = gsr.getCommand(500);
+                assertThat(command.getOriginalCommandString()).isEqualTo("Line 500 before");
+                assertThat(command.getCommandString()).isEqualTo("Line 500 after");
+                assertThat(command.getComment()).isEqualTo("Comment 500");
+                assertThat(command.getCommandNumber()).isEqualTo(500);
+                assertThat(gsr.getNumRowsRemaining()).isEqualTo(rows);
+
+                gsr.seek(998);
+                assertThat(gsr.getNumRowsRemaining()).isEqualTo(2);
+                assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("Line 998 after");
+                assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("Line 999 after");
+                assertThat(gsr.getNextCommand()).isNull();
+
+                gsr.seek(0);
+                assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("Line 0 after");
+            }
+        } finally {
+            FileUtils.forceDelete(f);
+        }
+    }
+
+    @Test
+    public void testGcodeStreamReadRowsLargerThanTheReadWindow() throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        String longComment = StringUtils.repeat('x', 100_000);
+        File f = new File(tempDir,"gcodeFile");
+        try {
+            try (GcodeStreamWriter gsw = new GcodeStreamWriter(f)) {
+                gsw.addLine("G0 X1", "G0X1", "", 1);
+                gsw.addLine("G0 X2", "G0X2", longComment, 2);
+                gsw.addLine("G0 X3", "G0X3", "", 3);
+            }
+
+            try (GcodeStreamReader gsr = new GcodeStreamReader(f, new DefaultCommandCreator())) {
+                assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("G0X1");
+                assertThat(gsr.getNextCommand().getComment()).isEqualTo(longComment);
+                assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("G0X3");
+            }
+        } finally {
+            FileUtils.forceDelete(f);
+        }
+    }
+
+    @Test
+    public void testGcodeStreamReaderShouldCloseTheFile() throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        File f = new File(tempDir,"gcodeFile");
+        try {
+            try (GcodeStreamWriter gsw = new GcodeStreamWriter(f)) {
+                gsw.addLine("G0 X1", "G0X1", "", 1);
+            }
+
+            GcodeStreamReader gsr = new GcodeStreamReader(f, new DefaultCommandCreator());
+            assertThat(gsr.getCommand(0).getCommandString()).isEqualTo("G0X1");
+            gsr.close();
+
+            assertThat(gsr.ready()).isFalse();
+            assertThatThrownBy(() -> gsr.getCommand(0)).isInstanceOf(IOException.class);
+        } finally {
+            FileUtils.forceDelete(f);
+        }
+    }
+
+    @Test
+    public void testGcodeStreamReadFromInputStream() throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        File f = new File(tempDir,"gcodeFile");
+        try {
+            try (GcodeStreamWriter gsw = new GcodeStreamWriter(f)) {
+                gsw.addLine("G0 X1 ; Ä comment", "G0X1", "Ä comment", 1);
+                gsw.addLine("G0 X2", "G0X2", "", 2);
+            }
+
+            try (InputStream inputStream = new FileInputStream(f);
+                 GcodeStreamReader gsr = new GcodeStreamReader(inputStream, new DefaultCommandCreator())) {
+                assertThat(gsr.getNumRows()).isEqualTo(2);
+
+                GcodeCommand command = gsr.getNextCommand();
+                assertThat(command.getOriginalCommandString()).isEqualTo("G0 X1 ; Ä comment");
+                assertThat(command.getCommandString()).isEqualTo("G0X1");
+                assertThat(command.getComment()).isEqualTo("Ä comment");
+                assertThat(command.getCommandNumber()).isEqualTo(1);
+
+                command = gsr.getNextCommand();
+                assertThat(command.getCommandString()).isEqualTo("G0X2");
+                assertThat(command.getCommandNumber()).isEqualTo(2);
+                assertThat(gsr.getNumRowsRemaining()).isEqualTo(0);
+            }
+        } finally {
+            FileUtils.forceDelete(f);
+        }
+    }
+
     /**
      * Make sure all the gcode stream metadata is removed when using a {@link GcodeFileWriter}.
      */
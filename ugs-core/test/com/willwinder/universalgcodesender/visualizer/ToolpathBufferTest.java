@@ -0,0 +1,150 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.visualizer;
+
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.types.PointSegment;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ToolpathBufferTest {
+
+    @Test
+    public void addShouldStoreSegmentProperties() {
+        PointSegment pointSegment = new PointSegment(new Position(1, 2, 3, UnitUtils.Units.MM), 7);
+        pointSegment.setIsFastTraverse(true);
+        pointSegment.setIsZMovement(true);
+        pointSegment.setFeedRate(100);
+        pointSegment.setSpindleSpeed(12000);
+
+        ToolpathBuffer toolpath = new ToolpathBuffer(1);
+        toolpath.add(new Position(0, 0, 0, UnitUtils.Units.MM), pointSegment.point(), pointSegment);
+
+        assertEquals(1, toolpath.size());
+        assertEquals(7, toolpath.getLineNumber(0));
+        assertTrue(toolpath.isFastTraverse(0));
+        assertTrue(toolpath.isZMovement(0));
+        assertFalse(toolpath.isArc(0));
+        assertFalse(toolpath.isProbe(0));
+        assertEquals(ToolpathBuffer.FLAG_RAPID | ToolpathBuffer.FLAG_Z_MOVEMENT, toolpath.getFlags(0));
+        assertEquals(100, toolpath.getFeedRate(0), 0.01);
+        assertEquals(12000, toolpath.getSpindleSpeed(0), 0.01);
+        assertEquals(12000, toolpath.getMaxSpindleSpeed(), 0.01);
+        VisualizerUtilsTest.assertPosition(0, 0, 0, Double.NaN, Double.NaN, Double.NaN, toolpath.getStart(0));
+        VisualizerUtilsTest.assertPosition(1, 2, 3, Double.NaN, Double.NaN, Double.NaN, toolpath.getEnd(0));
+    }
+
+    @Test
+    public void addShouldGrowTheBuffersAndTrackTheExtremes() {
+        ToolpathBuffer toolpath = new ToolpathBuffer(1);
+        for (int i = 0; i < 100; i++) {
+            toolpath.add(i, -i, 0, i + 1, -i - 1, -2, i, 0, 0, 0);
+        }
+        toolpath.trimToSize();
+
+        assertEquals(100, toolpath.size());
+        assertEquals(100 * ToolpathBuffer.COORDINATES_PER_SEGMENT, toolpath.getCoordinates().length);
+        assertEquals(99, toolpath.getLineNumber(99));
+        assertEquals(100, toolpath.getEndX(99), 0.001);
+        assertEquals(-100, toolpath.getEndY(99), 0.001);
+        VisualizerUtilsTest.assertPosition(0, -100, -2, Double.NaN, Double.NaN, Double.NaN, toolpath.getMinimumExtremes());
+        VisualizerUtilsTest.assertPosition(100, 0, 0, Double.NaN, Double.NaN, Double.NaN, toolpath.getMaximumExtremes());
+    }
+
+    @Test
+    public void indexOfLineNumberShouldFindTheFirstSegmentOfALine() {
+        ToolpathBuffer toolpath = new ToolpathBuffer();
+        int[] lineNumbers = {1, 1, 2, 4, 4, 4, 5};
+        for (int lineNumber : lineNumbers) {
+            toolpath.add(0, 0, 0, 1, 1, 1, lineNumber, 0, 0, 0);
+        }
+
+        assertTrue(toolpath.isSortedByLineNumber());
+        assertEquals(0, toolpath.indexOfLineNumber(0));
+        assertEquals(0, toolpath.indexOfLineNumber(1));
+        assertEquals(2, toolpath.indexOfLineNumber(2));
+        assertEquals(3, toolpath.indexOfLineNumber(3));
+        assertEquals(3, toolpath.indexOfLineNumber(4));
+        assertEquals(6, toolpath.indexOfLineNumber(5));
+        assertEquals(7, toolpath.indexOfLineNumber(6));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void indexOfLineNumberShouldThrowIfNotSorted() {
+        ToolpathBuffer toolpath = new ToolpathBuffer();
+        toolpath.add(0, 0, 0, 1, 1, 1, 2, 0, 0, 0);
+        toolpath.add(0, 0, 0, 1, 1, 1, 1, 0, 0, 0);
+
+        assertFalse(toolpath.isSortedByLineNumber());
+        toolpath.indexOfLineNumber(1);
+    }
+
+    @Test
+    public void addShouldConvertRotationsToCartesianCoordinates() {
+        PointSegment pointSegment = new PointSegment(new Position(10, 10, 10, 180, 0, 0, UnitUtils.Units.MM), 1);
+
+        ToolpathBuffer toolpath = new ToolpathBuffer();
+        toolpath.add(new Position(10, 10, 10, 0, 0, 0, UnitUtils.Units.MM), pointSegment.point(), pointSegment);
+
+        VisualizerUtilsTest.assertPosition(10, 10, 10, Double.NaN, Double.NaN, Double.NaN, toolpath.getStart(0));
+        VisualizerUtilsTest.assertPosition(10, -10, -10, Double.NaN, Double.NaN, Double.NaN, toolpath.getEnd(0));
+    }
+
+    @Test
+    public void toToolpathShouldGiveTheSameSegmentsAsLineSegments() throws GcodeParserException {
+        List<String> gcode = Arrays.asList(
+                "G21 G90",
+                "G0 X10 Y10 Z5",
+                "G1 Z-1 F100 S1000",
+                "G2 X20 Y10 I5 J0",
+                "G3 X10 Y10 R5",
+                "G20",
+                "G1 X1 Y1",
+                "G21 G38.2 Z-10",
+                "G1 X0 Y0 A90");
+
+        List<LineSegment> lineSegments = new GcodeViewParse().toObjRedux(gcode, 0.5);
+        ToolpathBuffer toolpath = new GcodeViewParse().toToolpath(gcode, 0.5);
+
+        assertEquals(lineSegments.size(), toolpath.size());
+        for (int i = 0; i < lineSegments.size(); i++) {
+            LineSegment lineSegment = VisualizerUtils.toCartesian(lineSegments.get(i));
+            assertEquals(lineSegment.getLineNumber(), toolpath.getLineNumber(i));
+            assertEquals(lineSegment.isArc(), toolpath.isArc(i));
+            assertEquals(lineSegment.isFastTraverse(), toolpath.isFastTraverse(i));
+            assertEquals(lineSegment.isZMovement(), toolpath.isZMovement(i));
+            assertEquals(lineSegment.getSpindleSpeed(), toolpath.getSpindleSpeed(i), 0.01);
+            assertEquals(lineSegment.getFeedRate(), toolpath.getFeedRate(i), 0.01);
+            assertEquals(lineSegment.getStart().x, toolpath.getStartX(i), 0.001);
+            assertEquals(lineSegment.getStart().y, toolpath.getStartY(i), 0.001);
+            assertEquals(lineSegment.getStart().z, toolpath.getStartZ(i), 0.001);
+            assertEquals(lineSegment.getEnd().x, toolpath.getEndX(i), 0.001);
+            assertEquals(lineSegment.getEnd().y, toolpath.getEndY(i), 0.001);
+            assertEquals(lineSegment.getEnd().z, toolpath.getEndZ(i), 0.001);
+        }
+    }
+}
@@ -11,6 +11,8 @@ import com.willwinder.universalgcodesender.services.JogService;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.spi.Container;
+import org.glassfish.jersey.server.spi.ContainerLifecycleListener;
 
 import javax.ws.rs.ApplicationPath;
 
@@ -29,12 +31,31 @@ public class AppConfig extends ResourceConfig {
 
         BackendAPI backendAPI = BackendAPIFactory.getInstance().getBackendAPI();
         JogService jogService = new JogService(backendAPI);
+        StatusService statusService = new StatusService(backendAPI);
 
         register(new AbstractBinder() {
             @Override
             protected void configure() {
                 bind(backendAPI).to(BackendAPI.class);
                 bind(jogService).to(JogService.class);
+                bind(statusService).to(StatusService.class);
+            }
+        });
+
+        register(new ContainerLifecycleListener() {
+            @Override
+            public void onStartup(Container container) {
+                // Not used
+            }
+
+            @Override
+            public void onReload(Container container) {
+                // Not used
+            }
+
+            @Override
+            public void onShutdown(Container container) {
+                statusService.close();
             }
         });
     }
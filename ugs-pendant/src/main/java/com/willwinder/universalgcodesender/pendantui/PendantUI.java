@@ -95,6 +95,7 @@ public class PendantUI implements UGSEventListener {
         servletContextHandler.setContextPath("/api");
         ServletHolder servletHolder = servletContextHandler.addServlet(ServletContainer.class, "/*");
         servletHolder.setInitOrder(1);
+        servletHolder.setAsyncSupported(true);
         servletHolder.setInitParameter("javax.ws.rs.Application", AppConfig.class.getCanonicalName());
 
         HandlerList handlers = new HandlerList();
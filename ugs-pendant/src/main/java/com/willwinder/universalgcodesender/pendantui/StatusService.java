@@ -0,0 +1,238 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.pendantui;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.willwinder.universalgcodesender.IController;
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.listeners.UGSEventListener;
+import com.willwinder.universalgcodesender.model.BackendAPI;
+import com.willwinder.universalgcodesender.model.UGSEvent;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.pendantui.v1.model.Status;
+
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates the status of the machine and pushes it to all connected pendants. The service listens
+ * to the backend once and coalesces the events so that the status is created at most once per
+ * {@link com.willwinder.universalgcodesender.utils.Settings#getPendantStatusUpdateRate()}. Only the
+ * fields that changed since the last update are sent, serialized once and shared by all clients.
+ *
+ * @author Joacim Breiler
+ */
+public class StatusService implements UGSEventListener {
+    public static final String STATUS_EVENT_NAME = "status";
+    private static final Logger LOGGER = Logger.getLogger(StatusService.class.getSimpleName());
+
+    private final BackendAPI backendAPI;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<SseEventSink> eventSinks = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean isUpdateScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService executor;
+
+    private Sse sse;
+    private ObjectNode lastStatus;
+    private volatile long lastUpdateTime;
+
+    public StatusService(BackendAPI backendAPI) {
+        this.backendAPI = backendAPI;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Pendant status");
+            thread.setDaemon(true);
+            return thread;
+        });
+        backendAPI.addUGSEventListener(this);
+    }
+
+    /**
+     * Creates the current status of the machine
+     *
+     * @return the status
+     */
+    public Status getStatus() {
+        Status status = new Status();
+
+        IController controller = backendAPI.getController();
+        if (controller != null) {
+            UnitUtils.Units preferredUnits = backendAPI.getSettings().getPreferredUnits();
+            ControllerStatus controllerStatus = controller.getControllerStatus();
+            if (controllerStatus != null) {
+                status.setMachineCoord(controllerStatus.getMachineCoord().getPositionIn(preferredUnits));
+                status.setWorkCoord(controllerStatus.getWorkCoord().getPositionIn(preferredUnits));
+                status.setState(controllerStatus.getState());
+                status.setFeedSpeed(controllerStatus.getFeedSpeed());
+                status.setSpindleSpeed(controllerStatus.getSpindleSpeed());
+            } else {
+                // Hack, we are connected so we need to set it to an unknown state
+                status.setState(ControllerState.UNKNOWN);
+            }
+
+            status.setRowCount(backendAPI.getNumRows());
+            status.setCompletedRowCount(backendAPI.getNumCompletedRows());
+            status.setRemainingRowCount(backendAPI.getNumRemainingRows());
+            if (backendAPI.getGcodeFile() != null) {
+                status.setFileName(backendAPI.getGcodeFile().getName());
+            } else {
+                status.setFileName("");
+            }
+            status.setSendDuration(backendAPI.getSendDuration());
+            status.setSendRemainingDuration(backendAPI.getSendRemainingDuration());
+        }
+
+        return status;
+    }
+
+    /**
+     * Adds a client that should receive the status updates. The client will first get the full
+     * status and then only the fields that have changed.
+     *
+     * @param eventSink the event sink of the client
+     * @param sse       the server sent events context used for creating events
+     */
+    public synchronized void subscribe(SseEventSink eventSink, Sse sse) {
+        this.sse = sse;
+
+        // The last status may be outdated, the new client always needs the current one. Existing
+        // clients still need the changes since the last status, so it is only replaced if there
+        // are no other clients.
+        ObjectNode status = objectMapper.valueToTree(getStatus());
+        if (eventSinks.isEmpty()) {
+            lastStatus = status;
+        }
+
+        OutboundSseEvent event = createEvent(status);
+        if (event != null) {
+            send(eventSink, event);
+            eventSinks.add(eventSink);
+        }
+    }
+
+    /**
+     * Stops listening to the backend and closes all connected clients
+     */
+    public void close() {
+        backendAPI.removeUGSEventListener(this);
+        executor.shutdownNow();
+        eventSinks.forEach(this::closeQuietly);
+        eventSinks.clear();
+    }
+
+    @Override
+    public void UGSEvent(UGSEvent event) {
+        if (eventSinks.isEmpty() || !isUpdateScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        long delay = lastUpdateTime + backendAPI.getSettings().getPendantStatusUpdateRate() - System.currentTimeMillis();
+        executor.schedule(this::sendUpdate, Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void sendUpdate() {
+        // Any event from now on needs a new update
+        isUpdateScheduled.set(false);
+        lastUpdateTime = System.currentTimeMillis();
+        if (eventSinks.isEmpty()) {
+            lastStatus = null;
+            return;
+        }
+
+        try {
+            ObjectNode status = objectMapper.valueToTree(getStatus());
+            ObjectNode changedFields = getChangedFields(lastStatus, status);
+            lastStatus = status;
+            if (changedFields.size() == 0) {
+                return;
+            }
+
+            OutboundSseEvent event = createEvent(changedFields);
+            if (event != null) {
+                eventSinks.forEach(eventSink -> send(eventSink, event));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not send the status to the pendant", e);
+        }
+    }
+
+    private ObjectNode getChangedFields(ObjectNode previousStatus, ObjectNode status) {
+        if (previousStatus == null) {
+            return status;
+        }
+
+        ObjectNode changedFields = objectMapper.createObjectNode();
+        Iterator<Map.Entry<String, JsonNode>> fields = status.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (!field.getValue().equals(previousStatus.get(field.getKey()))) {
+                changedFields.set(field.getKey(), field.getValue());
+            }
+        }
+        return changedFields;
+    }
+
+    private OutboundSseEvent createEvent(ObjectNode status) {
+        try {
+            return sse.newEventBuilder()
+                    .name(STATUS_EVENT_NAME)
+                    .data(String.class, objectMapper.writeValueAsString(status))
+                    .build();
+        } catch (JsonProcessingException e) {
+            LOGGER.log(Level.WARNING, "Could not serialize the status", e);
+            return null;
+        }
+    }
+
+    private void send(SseEventSink eventSink, OutboundSseEvent event) {
+        if (eventSink.isClosed()) {
+            eventSinks.remove(eventSink);
+            return;
+        }
+
+        eventSink.send(event).whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                eventSinks.remove(eventSink);
+                closeQuietly(eventSink);
+            }
+        });
+    }
+
+    private void closeQuietly(SseEventSink eventSink) {
+        try {
+            eventSink.close();
+        } catch (Exception e) {
+            // Never mind, the client is already gone
+        }
+    }
+}
@@ -2,8 +2,7 @@ import {Injectable} from '@angular/core';
 import {HttpClient} from '@angular/common/http';
 import {Observable} from 'rxjs/Observable';
 import {Subject} from 'rxjs/Subject';
-import {interval, timer} from 'rxjs';
-import {delayWhen, map, retryWhen, switchMap, tap} from 'rxjs/operators';
+import {map, tap} from 'rxjs/operators';
 
 import {Status} from '../model/status';
 import {StateEnum} from '../model/state-enum';
@@ -24,51 +23,51 @@ export class StatusService {
     }
 
     /**
-     * Starts a timer and refreshes the status with event intervals
+     * Listens to the status stream from the server, where the first event contains the full status
+     * and the following only the fields that have changed. The browser reconnects automatically if
+     * the connection is lost.
      */
     start() {
-        interval(200)
-            .pipe(
-                switchMap(_ => this.refreshStatus()),
-                retryWhen(errors =>
-                    // Retry on errors
-                    errors.pipe(
-                        // On error send an invalid status
-                        tap(error => {
-                            let status = new Status();
-                            status.state = StateEnum.UNAVAILABLE;
-                            this.statusSubject.next(status);
-                        }),
-                        // Restart in 5 seconds
-                        delayWhen(error => timer(5000))
-                    )
-                )
-            )
-            .subscribe();
+        let response: any = {};
+        const eventSource = new EventSource('/api/v1/status/stream');
+        eventSource.addEventListener('status', (event: MessageEvent) => {
+            response = Object.assign({}, response, JSON.parse(event.data));
+            this.statusSubject.next(this.toStatus(response));
+        });
+
+        eventSource.onerror = () => {
+            // The server sends the full status again when reconnected
+            response = {};
+            let status = new Status();
+            status.state = StateEnum.UNAVAILABLE;
+            this.statusSubject.next(status);
+        };
     }
 
     refreshStatus(): Observable<Status> {
         return this.http.get<Status>('/api/v1/status/getStatus')
-            .pipe(map(response => {
-                    let status = new Status();
-                    status.state = response.state;
-                    status.fileName = response.fileName;
-                    status.rowCount = response.rowCount;
-                    status.completedRowCount = response.completedRowCount;
-                    status.remainingRowCount = response.remainingRowCount;
-                    status.sendDuration = response.sendDuration;
-                    status.sendRemainingDuration = response.sendRemainingDuration;
-
-                    if (response.workCoord) {
-                        status.workCoord = new Position(response.workCoord.x, response.workCoord.y, response.workCoord.z, response.workCoord.units);
-                    }
-
-                    if (response.machineCoord) {
-                        status.machineCoord = new Position(response.machineCoord.x, response.machineCoord.y, response.machineCoord.z, response.machineCoord.units);
-                    }
-                    return status;
-                }),
+            .pipe(map(response => this.toStatus(response)),
                 tap(status => this.statusSubject.next(status))
             );
     }
+
+    private toStatus(response: any): Status {
+        let status = new Status();
+        status.state = response.state;
+        status.fileName = response.fileName;
+        status.rowCount = response.rowCount;
+        status.completedRowCount = response.completedRowCount;
+        status.remainingRowCount = response.remainingRowCount;
+        status.sendDuration = response.sendDuration;
+        status.sendRemainingDuration = response.sendRemainingDuration;
+
+        if (response.workCoord) {
+            status.workCoord = new Position(response.workCoord.x, response.workCoord.y, response.workCoord.z, response.workCoord.units);
+        }
+
+        if (response.machineCoord) {
+            status.machineCoord = new Position(response.machineCoord.x, response.machineCoord.y, response.machineCoord.z, response.machineCoord.units);
+        }
+        return status;
+    }
 }
@@ -0,0 +1,133 @@
+package com.willwinder.universalgcodesender.pendantui;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.willwinder.universalgcodesender.IController;
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.listeners.ControllerStatusBuilder;
+import com.willwinder.universalgcodesender.model.BackendAPI;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UGSEvent;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.utils.Settings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Answers;
+
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
+import javax.ws.rs.sse.SseEventSink;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class StatusServiceTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private BackendAPI backendAPI;
+    private IController controller;
+    private Sse sse;
+    private OutboundSseEvent.Builder eventBuilder;
+    private StatusService statusService;
+
+    @Before
+    public void setUp() {
+        Settings settings = new Settings();
+        settings.setPreferredUnits(UnitUtils.Units.MM);
+        settings.setPendantStatusUpdateRate(0);
+
+        controller = mock(IController.class);
+        backendAPI = mock(BackendAPI.class);
+        when(backendAPI.getSettings()).thenReturn(settings);
+        when(backendAPI.getController()).thenReturn(controller);
+
+        eventBuilder = mock(OutboundSseEvent.Builder.class, Answers.RETURNS_SELF);
+        doReturn(mock(OutboundSseEvent.class)).when(eventBuilder).build();
+        sse = mock(Sse.class);
+        when(sse.newEventBuilder()).thenReturn(eventBuilder);
+
+        statusService = new StatusService(backendAPI);
+    }
+
+    @After
+    public void tearDown() {
+        statusService.close();
+    }
+
+    @Test
+    public void subscribeShouldSendTheFullStatusAndThenOnlyChangedFields() throws Exception {
+        setControllerStatus(createStatus(ControllerState.IDLE, 0));
+        statusService.subscribe(createEventSink(), sse);
+
+        JsonNode fullStatus = getSentStatuses(1).get(0);
+        assertEquals("IDLE", fullStatus.get("state").asText());
+        assertTrue(fullStatus.has("machineCoord"));
+        assertTrue(fullStatus.has("spindleSpeed"));
+
+        setControllerStatus(createStatus(ControllerState.IDLE, 1000));
+        statusService.UGSEvent(mock(UGSEvent.class));
+
+        JsonNode changedFields = getSentStatuses(2).get(1);
+        assertEquals(1, changedFields.size());
+        assertEquals(1000, changedFields.get("spindleSpeed").asDouble(), 0.01);
+    }
+
+    @Test
+    public void subscribeShouldSendTheCurrentStatusEvenIfAnOlderStatusExists() throws Exception {
+        SseEventSink firstEventSink = createEventSink();
+        setControllerStatus(createStatus(ControllerState.IDLE, 0));
+        statusService.subscribe(firstEventSink, sse);
+        when(firstEventSink.isClosed()).thenReturn(true);
+
+        // The status changes after the only client has disconnected
+        setControllerStatus(createStatus(ControllerState.RUN, 1000));
+        statusService.subscribe(createEventSink(), sse);
+
+        JsonNode fullStatus = getSentStatuses(2).get(1);
+        assertEquals("RUN", fullStatus.get("state").asText());
+        assertEquals(1000, fullStatus.get("spindleSpeed").asDouble(), 0.01);
+    }
+
+    private void setControllerStatus(ControllerStatus controllerStatus) {
+        when(controller.getControllerStatus()).thenReturn(controllerStatus);
+    }
+
+    private static ControllerStatus createStatus(ControllerState state, double spindleSpeed) {
+        return ControllerStatusBuilder.newInstance()
+                .setState(state)
+                .setMachineCoord(new Position(1, 2, 3, UnitUtils.Units.MM))
+                .setWorkCoord(new Position(1, 2, 3, UnitUtils.Units.MM))
+                .setFeedSpeed(0d)
+                .setSpindleSpeed(spindleSpeed)
+                .build();
+    }
+
+    private static SseEventSink createEventSink() {
+        SseEventSink eventSink = mock(SseEventSink.class);
+        when(eventSink.send(any())).thenAnswer(invocation -> CompletableFuture.completedFuture(null));
+        return eventSink;
+    }
+
+    private List<JsonNode> getSentStatuses(int count) throws Exception {
+        ArgumentCaptor<String> dataCaptor = ArgumentCaptor.forClass(String.class);
+        verify(eventBuilder, timeout(1000).times(count)).data(eq(String.class), dataCaptor.capture());
+
+        List<JsonNode> statuses = new ArrayList<>();
+        for (String data : dataCaptor.getAllValues()) {
+            statuses.add(objectMapper.readTree(data));
+        }
+        return statuses;
+    }
+}
@@ -18,6 +18,7 @@
 */
 package com.willwinder.ugs.nbp.editor;
 
+import com.willwinder.ugs.nbp.editor.largefile.LargeFileTopComponent;
 import com.willwinder.ugs.nbp.lib.lookup.EditorCookie;
 import org.openide.cookies.OpenCookie;
 import org.openide.filesystems.FileObject;
@@ -49,13 +50,19 @@ import static com.willwinder.ugs.nbp.editor.EditorUtils.openFile;
         position = 300
 )
 public class GcodeDataObject extends MultiDataObject {
+    private transient LargeFileTopComponent largeFileTopComponent;
     public GcodeDataObject(FileObject pf, MultiFileLoader loader) throws IOException {
         super(pf, loader);
 
         Preferences prefs = NbPreferences.forModule(EditorOptionsPanel.class);
         boolean loadEditor = prefs.getBoolean(EditorOptionsPanel.SHOW_ON_OPEN, true);
+        long largeFileSize = prefs.getInt(EditorOptionsPanel.LARGE_FILE_SIZE, EditorOptionsPanel.DEFAULT_LARGE_FILE_SIZE) * 1024L * 1024L;
 
-        if (loadEditor) {
+        if (loadEditor && pf.getSize() > largeFileSize) {
+            // The file is too large for the editor, use a read only viewer instead
+            getCookieSet().add((OpenCookie) this::openLargeFileViewer);
+            getCookieSet().add((EditorCookie) this::openLargeFileViewer);
+        } else if (loadEditor) {
             registerEditor(GcodeLanguageConfig.MIME_TYPE, true);
 
             // Add an editor cookie so that EditorUtils can find it
@@ -70,6 +77,14 @@ public class GcodeDataObject extends MultiDataObject {
         }
     }
 
+    private void openLargeFileViewer() {
+        if (largeFileTopComponent == null || !largeFileTopComponent.isOpened()) {
+            largeFileTopComponent = new LargeFileTopComponent(this);
+            largeFileTopComponent.open();
+        }
+        largeFileTopComponent.requestActive();
+    }
+
     @Override
     protected int associateLookup() {
         return 1;
@@ -0,0 +1,236 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.willwinder.ugs.nbp.editor.largefile;
+
+import com.willwinder.ugs.nbp.editor.EditorUtils;
+import com.willwinder.ugs.nbp.editor.GcodeDataObject;
+import com.willwinder.ugs.nbp.editor.GcodeLanguageConfig;
+import com.willwinder.ugs.nbp.editor.actions.FollowAction;
+import com.willwinder.ugs.nbp.lib.lookup.CentralLookup;
+import com.willwinder.universalgcodesender.i18n.Localization;
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.UGSEventListener;
+import com.willwinder.universalgcodesender.model.BackendAPI;
+import com.willwinder.universalgcodesender.model.UGSEvent;
+import com.willwinder.universalgcodesender.model.events.CommandEvent;
+import com.willwinder.universalgcodesender.model.events.CommandEventType;
+import com.willwinder.universalgcodesender.model.events.ControllerStateEvent;
+import com.willwinder.universalgcodesender.utils.ThreadHelper;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.netbeans.api.editor.mimelookup.MimeLookup;
+import org.netbeans.api.editor.mimelookup.MimePath;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.nodes.Node;
+import org.openide.util.ImageUtilities;
+import org.openide.windows.TopComponent;
+
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.JToggleButton;
+import javax.swing.SwingUtilities;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Toolkit;
+import java.beans.BeanInfo;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.prefs.Preferences;
+
+/**
+ * A window for viewing gcode files that are too large to be opened in the editor. The file is
+ * indexed in the background and then shown using a {@link LargeFileViewer}.
+ *
+ * @author Joacim Breiler
+ */
+public class LargeFileTopComponent extends TopComponent implements UGSEventListener {
+    private static final Logger LOGGER = Logger.getLogger(LargeFileTopComponent.class.getSimpleName());
+
+    private final transient GcodeDataObject dataObject;
+    private final transient BackendAPI backend;
+    private final transient Preferences preferences;
+    private final AtomicBoolean isScrollScheduled = new AtomicBoolean();
+    private final JLabel statusLabel = new JLabel();
+    private final JTextField goToLineField = new JTextField(8);
+    private final JToggleButton followButton = new JToggleButton();
+    private transient LineIndex lineIndex;
+    private LargeFileViewer viewer;
+
+    public LargeFileTopComponent(GcodeDataObject dataObject) {
+        this.dataObject = dataObject;
+        backend = CentralLookup.getDefault().lookup(BackendAPI.class);
+        preferences = MimeLookup.getLookup(MimePath.get(GcodeLanguageConfig.MIME_TYPE)).lookup(Preferences.class);
+
+        FileObject fileObject = dataObject.getPrimaryFile();
+        setName(fileObject.getNameExt());
+        setDisplayName(fileObject.getNameExt());
+        setToolTipText(fileObject.getPath());
+        setIcon(dataObject.getNodeDelegate().getIcon(BeanInfo.ICON_COLOR_16x16));
+
+        // Makes it possible to find and close this window as an editor
+        setActivatedNodes(new Node[]{dataObject.getNodeDelegate()});
+
+        setLayout(new BorderLayout());
+        add(createToolbar(), BorderLayout.NORTH);
+        statusLabel.setText(String.format(Localization.getString("platform.plugin.editor.largeFile.loading"), fileObject.getNameExt()));
+    }
+
+    private JPanel createToolbar() {
+        goToLineField.setEnabled(false);
+        goToLineField.addActionListener(e -> goToLine());
+
+        followButton.setIcon(ImageUtilities.loadImageIcon(FollowAction.ICON_BASE, false));
+        followButton.setToolTipText(Localization.getString("platform.plugin.editor.largeFile.follow"));
+        followButton.setSelected(isFollowing());
+        followButton.addActionListener(e -> preferences.putBoolean(FollowAction.PREFERENCE_KEY, followButton.isSelected()));
+
+        JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 2));
+        toolbar.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+        toolbar.add(followButton);
+        toolbar.add(new JLabel(Localization.getString("platform.plugin.editor.largeFile.goToLine")));
+        toolbar.add(goToLineField);
+        toolbar.add(statusLabel);
+        return toolbar;
+    }
+
+    @Override
+    public int getPersistenceType() {
+        return PERSISTENCE_NEVER;
+    }
+
+    @Override
+    protected void componentOpened() {
+        super.componentOpened();
+        FileObject fileObject = dataObject.getPrimaryFile();
+        EditorUtils.openFile(fileObject);
+        backend.addUGSEventListener(this);
+
+        File file = FileUtil.toFile(fileObject);
+        ThreadHelper.invokeLater(() -> loadFile(file));
+    }
+
+    private void loadFile(File file) {
+        try {
+            LineIndex index = new LineIndex(file.toPath());
+            SwingUtilities.invokeLater(() -> showFile(index));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not index the file " + file, e);
+            SwingUtilities.invokeLater(() -> statusLabel.setText(String.format(Localization.getString("platform.plugin.editor.largeFile.error"), file.getName())));
+        }
+    }
+
+    private void showFile(LineIndex index) {
+        if (!isOpened()) {
+            closeQuietly(index);
+            return;
+        }
+
+        lineIndex = index;
+        viewer = new LargeFileViewer(index);
+        JScrollPane scrollPane = new JScrollPane(viewer);
+        scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        scrollPane.getViewport().setBackground(viewer.getBackground());
+        add(scrollPane, BorderLayout.CENTER);
+
+        goToLineField.setEnabled(true);
+        statusLabel.setText(String.format(Localization.getString("platform.plugin.editor.largeFile.lines"), index.getLineCount()));
+        revalidate();
+        repaint();
+    }
+
+    private void goToLine() {
+        int line = NumberUtils.toInt(StringUtils.trimToEmpty(goToLineField.getText()), -1);
+        if (viewer == null || line < 1) {
+            Toolkit.getDefaultToolkit().beep();
+            return;
+        }
+
+        viewer.scrollToLine(line - 1);
+        viewer.setCurrentLine(Math.min(line, lineIndex.getLineCount()) - 1);
+    }
+
+    private boolean isFollowing() {
+        return preferences != null && preferences.getBoolean(FollowAction.PREFERENCE_KEY, false);
+    }
+
+    @Override
+    protected void componentClosed() {
+        backend.removeUGSEventListener(this);
+        if (lineIndex != null) {
+            closeQuietly(lineIndex);
+            lineIndex = null;
+        }
+        EditorUtils.unloadFile();
+        super.componentClosed();
+    }
+
+    private void closeQuietly(LineIndex index) {
+        try {
+            index.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not close the file", e);
+        }
+    }
+
+    @Override
+    public void UGSEvent(UGSEvent event) {
+        LargeFileViewer currentViewer = viewer;
+        if (currentViewer == null) {
+            return;
+        }
+
+        if (event instanceof ControllerStateEvent && ((ControllerStateEvent) event).getState() == ControllerState.IDLE) {
+            currentViewer.setSentLineCount(0);
+            currentViewer.setCurrentLine(-1);
+        } else if (event instanceof CommandEvent && backend.isSendingFile() &&
+                ((CommandEvent) event).getCommandEventType() == CommandEventType.COMMAND_COMPLETE) {
+            int lineNumber = ((CommandEvent) event).getCommand().getCommandNumber();
+            if (lineNumber >= 0) {
+                currentViewer.setSentLineCount(lineNumber);
+                currentViewer.setCurrentLine(lineNumber);
+                scrollToCurrentLine();
+            }
+        }
+    }
+
+    /**
+     * Scrolls to the current line if following, the scrolling is coalesced so that the event
+     * dispatch thread isn't flooded when commands are completed quickly.
+     */
+    private void scrollToCurrentLine() {
+        if (!isFollowing() || !isScrollScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        SwingUtilities.invokeLater(() -> {
+            isScrollScheduled.set(false);
+            followButton.setSelected(true);
+            if (viewer != null) {
+                viewer.scrollToLine(viewer.getCurrentLine());
+            }
+        });
+    }
+}
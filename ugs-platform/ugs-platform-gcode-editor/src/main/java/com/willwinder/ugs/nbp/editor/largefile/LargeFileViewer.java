@@ -0,0 +1,247 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.willwinder.ugs.nbp.editor.largefile;
+
+import com.willwinder.ugs.nbp.editor.GcodeLanguageConfig;
+import com.willwinder.ugs.nbp.editor.lexer.GcodeTokenId;
+import com.willwinder.ugs.nbp.editor.lexer.GcodeTokenizer;
+import org.netbeans.api.editor.mimelookup.MimeLookup;
+import org.netbeans.api.editor.settings.FontColorNames;
+import org.netbeans.api.editor.settings.FontColorSettings;
+
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.UIManager;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.StyleConstants;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A read only view of a gcode file that is too large for the editor. Only the visible lines are
+ * read from the {@link LineIndex} and tokenized using the same rules as the editor, which makes
+ * it possible to view files of any size without loading them into memory.
+ *
+ * @author Joacim Breiler
+ */
+public class LargeFileViewer extends JComponent implements Scrollable {
+    private static final String EXECUTED_STYLE = "EXECUTED";
+    private static final int GUTTER_PADDING = 8;
+
+    private final transient LineIndex lineIndex;
+    private final transient GcodeTokenizer.CharArrayInput input = new GcodeTokenizer.CharArrayInput();
+    private final transient GcodeTokenizer tokenizer = new GcodeTokenizer(input);
+    private final Map<GcodeTokenId, Color> tokenColors = new EnumMap<>(GcodeTokenId.class);
+    private final Map<GcodeTokenId, Boolean> tokenBold = new EnumMap<>(GcodeTokenId.class);
+    private final Font font;
+    private final Font boldFont;
+    private final int lineHeight;
+    private final int ascent;
+    private final int characterWidth;
+    private final int gutterWidth;
+    private Color foreground;
+    private Color background;
+    private Color executedColor;
+    private Color gutterColor;
+    private Color currentLineColor;
+    private char[] lineBuffer = new char[256];
+
+    /**
+     * The number of lines from the start of the file that has been sent
+     */
+    private volatile int sentLineCount;
+
+    /**
+     * The line that is currently being executed, or -1 if none
+     */
+    private volatile int currentLine = -1;
+
+    public LargeFileViewer(LineIndex lineIndex) {
+        this.lineIndex = lineIndex;
+        loadColors();
+
+        Font defaultFont = getDefaultFont();
+        font = new Font(Font.MONOSPACED, Font.PLAIN, defaultFont.getSize());
+        boldFont = font.deriveFont(Font.BOLD);
+        FontMetrics fontMetrics = getFontMetrics(font);
+        lineHeight = fontMetrics.getHeight();
+        ascent = fontMetrics.getAscent();
+        characterWidth = fontMetrics.charWidth('m');
+        gutterWidth = (String.valueOf(lineIndex.getLineCount()).length() * characterWidth) + GUTTER_PADDING * 2;
+
+        setFont(font);
+        setOpaque(true);
+        setBackground(background);
+    }
+
+    private Font getDefaultFont() {
+        Font defaultFont = UIManager.getFont("TextArea.font");
+        return defaultFont != null ? defaultFont : new Font(Font.MONOSPACED, Font.PLAIN, 13);
+    }
+
+    private void loadColors() {
+        FontColorSettings fontColorSettings = MimeLookup.getLookup(GcodeLanguageConfig.MIME_TYPE).lookup(FontColorSettings.class);
+        AttributeSet defaultColors = fontColorSettings != null ? fontColorSettings.getFontColors(FontColorNames.DEFAULT_COLORING) : null;
+        foreground = getColor(defaultColors, StyleConstants.Foreground, UIManager.getColor("TextArea.foreground"), Color.BLACK);
+        background = getColor(defaultColors, StyleConstants.Background, UIManager.getColor("TextArea.background"), Color.WHITE);
+        gutterColor = new Color(foreground.getRed(), foreground.getGreen(), foreground.getBlue(), 128);
+        currentLineColor = new Color(foreground.getRed(), foreground.getGreen(), foreground.getBlue(), 32);
+
+        for (GcodeTokenId tokenId : GcodeTokenId.values()) {
+            AttributeSet attributes = fontColorSettings != null ? fontColorSettings.getTokenFontColors(tokenId.name()) : null;
+            tokenColors.put(tokenId, getColor(attributes, StyleConstants.Foreground, foreground, foreground));
+            tokenBold.put(tokenId, attributes != null && Boolean.TRUE.equals(attributes.getAttribute(StyleConstants.Bold)));
+        }
+
+        AttributeSet executedAttributes = fontColorSettings != null ? fontColorSettings.getTokenFontColors(EXECUTED_STYLE) : null;
+        executedColor = getColor(executedAttributes, StyleConstants.Foreground, gutterColor, gutterColor);
+    }
+
+    private static Color getColor(AttributeSet attributes, Object key, Color defaultColor, Color fallbackColor) {
+        Object color = attributes != null ? attributes.getAttribute(key) : null;
+        if (color instanceof Color) {
+            return (Color) color;
+        }
+        return defaultColor != null ? defaultColor : fallbackColor;
+    }
+
+    /**
+     * Sets the number of lines from the start of the file that has been sent, they will
+     * be styled as executed. Can be called from any thread.
+     *
+     * @param sentLineCount the number of sent lines
+     */
+    public void setSentLineCount(int sentLineCount) {
+        if (this.sentLineCount != sentLineCount) {
+            this.sentLineCount = sentLineCount;
+            repaint();
+        }
+    }
+
+    /**
+     * Sets the line that is currently being executed. Can be called from any thread.
+     *
+     * @param line the line index starting from zero, or -1 to remove the highlight
+     */
+    public void setCurrentLine(int line) {
+        if (this.currentLine != line) {
+            this.currentLine = line;
+            repaint();
+        }
+    }
+
+    public int getCurrentLine() {
+        return currentLine;
+    }
+
+    /**
+     * Scrolls the view so that the given line is visible in the middle of the view. Needs to be
+     * called from the event dispatch thread.
+     *
+     * @param line the line index starting from zero
+     */
+    public void scrollToLine(int line) {
+        int clampedLine = Math.max(0, Math.min(lineIndex.getLineCount() - 1, line));
+        Rectangle visibleRect = getVisibleRect();
+        int y = clampedLine * lineHeight - (visibleRect.height - lineHeight) / 2;
+        scrollRectToVisible(new Rectangle(visibleRect.x, Math.max(0, y), 1, visibleRect.height));
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        long height = (long) lineIndex.getLineCount() * lineHeight;
+        long width = gutterWidth + (long) (lineIndex.getMaxLineLength() + 1) * characterWidth;
+        return new Dimension((int) Math.min(Integer.MAX_VALUE, width), (int) Math.min(Integer.MAX_VALUE, height));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        g.setColor(background);
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int firstLine = Math.max(0, clip.y / lineHeight);
+        int endLine = Math.min(lineIndex.getLineCount(), (clip.y + clip.height) / lineHeight + 1);
+        int current = currentLine;
+        int sent = sentLineCount;
+        for (int line = firstLine; line < endLine; line++) {
+            int y = line * lineHeight;
+            if (line == current) {
+                g.setColor(currentLineColor);
+                g.fillRect(clip.x, y, clip.width, lineHeight);
+            }
+
+            g.setFont(font);
+            g.setColor(gutterColor);
+            String lineNumber = String.valueOf(line + 1);
+            g.drawString(lineNumber, gutterWidth - GUTTER_PADDING - lineNumber.length() * characterWidth, y + ascent);
+            paintLine(g, line, y + ascent, line < sent);
+        }
+    }
+
+    private void paintLine(Graphics g, int line, int baseline, boolean isExecuted) {
+        int length = lineIndex.getLineLength(line);
+        lineBuffer = lineIndex.getLine(line, lineBuffer);
+        input.reset(lineBuffer, length);
+
+        int start = 0;
+        GcodeTokenId tokenId;
+        while ((tokenId = tokenizer.nextToken()) != null) {
+            int end = input.getPosition();
+            if (tokenId != GcodeTokenId.WHITESPACE && tokenId != GcodeTokenId.END_OF_LINE && end > start) {
+                g.setFont(tokenBold.get(tokenId) ? boldFont : font);
+                g.setColor(isExecuted ? executedColor : tokenColors.get(tokenId));
+                g.drawChars(lineBuffer, start, end - start, gutterWidth + start * characterWidth, baseline);
+            }
+            start = end;
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? lineHeight : characterWidth;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? Math.max(lineHeight, visibleRect.height - lineHeight) : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
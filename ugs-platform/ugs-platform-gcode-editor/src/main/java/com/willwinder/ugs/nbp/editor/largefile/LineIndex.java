@@ -0,0 +1,233 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.willwinder.ugs.nbp.editor.largefile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An index with the start offset of every line in a memory mapped file. The file is never read
+ * into the heap, only the line offsets are kept which makes it possible to look up any line in
+ * constant time.
+ * <p>
+ * The offsets are stored relative to the start of a block of lines so that only four bytes
+ * are needed per line.
+ *
+ * @author Joacim Breiler
+ */
+public class LineIndex implements Closeable {
+    /**
+     * The size of each mapped segment of the file
+     */
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    private static final int BLOCK_SHIFT = 16;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long fileSize;
+
+    /**
+     * The absolute offset of the first line in each block
+     */
+    private long[] blockStarts = new long[16];
+
+    /**
+     * The offset of each line relative to the start of its block
+     */
+    private int[] lineOffsets = new int[BLOCK_SIZE];
+    private int lineCount;
+    private int maxLineLength;
+
+    /**
+     * Maps the file and builds the line index
+     *
+     * @param path the file to index
+     * @throws IOException if the file couldn't be read
+     */
+    public LineIndex(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            fileSize = channel.size();
+            int segmentCount = (int) ((fileSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            segments = new MappedByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                long position = (long) i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, fileSize - position));
+            }
+            buildIndex();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void buildIndex() throws IOException {
+        long lineStart = 0;
+        for (int i = 0; i < segments.length; i++) {
+            MappedByteBuffer segment = segments[i];
+            long segmentStart = (long) i * SEGMENT_SIZE;
+            int limit = segment.limit();
+            for (int position = 0; position < limit; position++) {
+                if (segment.get(position) == '\n') {
+                    long lineEnd = segmentStart + position + 1;
+                    addLine(lineStart, lineEnd);
+                    lineStart = lineEnd;
+                }
+            }
+        }
+
+        if (lineStart < fileSize || lineCount == 0) {
+            addLine(lineStart, fileSize);
+        }
+    }
+
+    private void addLine(long start, long end) throws IOException {
+        int block = lineCount >>> BLOCK_SHIFT;
+        if (block == blockStarts.length) {
+            blockStarts = Arrays.copyOf(blockStarts, blockStarts.length * 2);
+        }
+        if (lineCount == lineOffsets.length) {
+            lineOffsets = Arrays.copyOf(lineOffsets, lineOffsets.length * 2);
+        }
+
+        if ((lineCount & (BLOCK_SIZE - 1)) == 0) {
+            blockStarts[block] = start;
+        }
+
+        long offset = start - blockStarts[block];
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("The lines in the file are too long to be indexed");
+        }
+
+        lineOffsets[lineCount] = (int) offset;
+        lineCount++;
+        maxLineLength = (int) Math.max(maxLineLength, Math.min(Integer.MAX_VALUE, end - start));
+    }
+
+    /**
+     * @return the number of lines in the file
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return the length of the longest line in the file including line endings
+     */
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * @return the size of the file in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Returns the offset in the file where the line starts
+     *
+     * @param line the line index starting from zero
+     * @return the offset in bytes
+     */
+    public long getLineStart(int line) {
+        if (line < 0 || line > lineCount) {
+            throw new IndexOutOfBoundsException("Line " + line + " is outside of the file with " + lineCount + " lines");
+        }
+
+        if (line == lineCount) {
+            return fileSize;
+        }
+        return blockStarts[line >>> BLOCK_SHIFT] + lineOffsets[line];
+    }
+
+    /**
+     * Returns the offset in the file where the line ends, excluding the line endings
+     *
+     * @param line the line index starting from zero
+     * @return the offset in bytes
+     */
+    public long getLineEnd(int line) {
+        long start = getLineStart(line);
+        long end = getLineStart(line + 1);
+        while (end > start && isLineEnding(getByte(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isLineEnding(byte character) {
+        return character == '\n' || character == '\r';
+    }
+
+    private byte getByte(long position) {
+        return segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+    }
+
+    /**
+     * Reads the characters of a line, excluding the line endings, into the given buffer. The file
+     * is expected to be in a single byte character set, which is the case for gcode.
+     *
+     * @param line   the line index starting from zero
+     * @param buffer the buffer to read to, if it is too small a new buffer will be created
+     * @return the buffer with the characters of the line
+     */
+    public char[] getLine(int line, char[] buffer) {
+        long start = getLineStart(line);
+        int length = (int) (getLineEnd(line) - start);
+        char[] result = buffer == null || buffer.length < length ? new char[length] : buffer;
+        for (int i = 0; i < length; i++) {
+            result[i] = (char) (getByte(start + i) & 0xFF);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the length of a line excluding the line endings
+     *
+     * @param line the line index starting from zero
+     * @return the number of characters in the line
+     */
+    public int getLineLength(int line) {
+        return (int) (getLineEnd(line) - getLineStart(line));
+    }
+
+    /**
+     * Returns the text of a line, excluding line endings
+     *
+     * @param line the line index starting from zero
+     * @return the text of the line
+     */
+    public String getLineText(int line) {
+        return new String(getLine(line, null), 0, getLineLength(line));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -23,202 +23,39 @@ import org.netbeans.spi.lexer.Lexer;
 import org.netbeans.spi.lexer.LexerInput;
 import org.netbeans.spi.lexer.LexerRestartInfo;
 
-import static org.apache.commons.lang3.CharUtils.isAsciiNumeric;
-
 /**
  * A basic lexer for parsing a gcode file to tokens for describing the gcode elements.
+ * The rules are defined in the {@link GcodeTokenizer}.
  *
  * @author Joacim Breiler
  */
 public class GcodeLexer implements Lexer<GcodeTokenId> {
     private final LexerRestartInfo<GcodeTokenId> info;
-    private final LexerInput input;
+    private final GcodeTokenizer tokenizer;
 
     public GcodeLexer(LexerRestartInfo<GcodeTokenId> info) {
         this.info = info;
-        this.input = info.input();
-    }
-
-    @Override
-    public Token<GcodeTokenId> nextToken() {
-        int character = input.read();
-        switch (Character.toUpperCase(character)) {
-            case '%':
-                return parseStartOrEnd();
-
-            case ';':
-                return parseComment();
-
-            case '(':
-                return parseCommentSection();
-
-            case 'A':
-            case 'B':
-            case 'C':
-            case 'U':
-            case 'V':
-            case 'W':
-            case 'X':
-            case 'Y':
-            case 'Z':
-                return parseNumericField(GcodeTokenId.AXIS);
-
-            case 'D':
-            case 'E':
-            case 'F':
-            case 'H':
-            case 'I':
-            case 'J':
-            case 'K':
-            case 'L':
-            case 'P':
-            case 'Q':
-            case 'R':
-            case 'S':
-                return parseNumericField(GcodeTokenId.PARAMETER);
-
-            case 'T':
-                return parseCommand(GcodeTokenId.TOOL);
-
-            case 'M':
-                return parseCommand(GcodeTokenId.MACHINE);
-
-            case 'N':
-            case 'O':
-                return parseCommand(GcodeTokenId.PROGRAM);
-
-            case 'G':
-                return parseCommand(GcodeTokenId.MOVEMENT);
-
-            case LexerInput.EOF:
-                return null;
-
-            default:
-                return parseWhitespace(character);
-        }
-
-    }
-
-    private Token<GcodeTokenId> parseStartOrEnd() {
-        while (true) {
-            int character = input.read();
-
-            if (character == LexerInput.EOF || character == '\r' || character == '\n') {
-                input.backup(1);
-                break;
-            }
-        }
-        return createToken(GcodeTokenId.START_OR_END);
-    }
-
-    private Token<GcodeTokenId> parseWhitespace(int character) {
-        if (character == '\n') {
-            return createToken(GcodeTokenId.END_OF_LINE);
-        } else if (Character.isWhitespace((char) character)) {
-            character = input.read();
-            while (character != LexerInput.EOF && Character.isWhitespace((char) character)) {
-                character = input.read();
-            }
-            input.backup(1);
-            return createToken(GcodeTokenId.WHITESPACE);
-        } else {
-            input.read();
-            return createToken(GcodeTokenId.ERROR);
-        }
-    }
-
-    private Token<GcodeTokenId> parseCommentSection() {
-        int ch;
-        while (true) {
-            ch = input.read();
-
-            if (ch == LexerInput.EOF || ch == '\r' || ch == '\n') {
-                input.backup(1);
-                return createToken(GcodeTokenId.ERROR);
-            } else if (ch == ')') {
-                break;
+        LexerInput input = info.input();
+        this.tokenizer = new GcodeTokenizer(new GcodeTokenizer.Input() {
+            @Override
+            public int read() {
+                return input.read();
             }
-        }
-        return createToken(GcodeTokenId.COMMENT);
-    }
-
-    private Token<GcodeTokenId> parseComment() {
-        int ch;
-        while (true) {
-            ch = input.read();
-
-            if (ch == LexerInput.EOF || ch == '\r' || ch == '\n') {
-                input.backup(1);
-                break;
-            }
-        }
-        return createToken(GcodeTokenId.COMMENT);
-    }
-
-    private Token<GcodeTokenId> parseNumericField(GcodeTokenId tokenId) {
-        int length = 0;
-        int minusCount = 0;
-        int commaCount = 0;
-        int numberCount = 0;
 
-        while (true) {
-            char character = (char) input.read();
-            if ((character == ' ' || character == '\t') && numberCount == 0 && minusCount == 0 && commaCount == 0) {
-                // It's allowed to have a leading space after parameter name
-            } else if (!isNumeric(character)) {
-                input.backup(1);
-                break;
-            } else if (character == ',' || character == '.') {
-                commaCount++;
-            } else if (character == '-') {
-                minusCount++;
+            @Override
+            public void backup(int count) {
+                input.backup(count);
             }
-
-            if (isNumeric(character)) {
-                numberCount++;
-            }
-
-            length++;
-        }
-
-        if (length == 0 || minusCount > 1 || commaCount > 1 || numberCount == 0) {
-            return createToken(GcodeTokenId.ERROR);
-        }
-
-        return createToken(tokenId);
+        });
     }
 
-    /**
-     * Returns if the character is a part of a numeric string. That includes minus and commas.
-     *
-     * @param character the character to check
-     * @return true if the character is a part of a numeric field.
-     */
-    private boolean isNumeric(char character) {
-        return isAsciiNumeric(character) || character == '-' || character == '.' || character == ',';
-    }
-
-    private Token<GcodeTokenId> parseCommand(GcodeTokenId tokenId) {
-        int length = 0;
-        int commaCount = 0;
-        while (true) {
-            char character = (char) input.read();
-            if (!(isAsciiNumeric(character) || character == '.')) {
-                input.backup(1);
-                break;
-            }
-
-            if (character == '.') {
-                commaCount++;
-            }
-            length++;
-        }
-
-        if (length == 0 || commaCount > 1) {
-            return createToken(GcodeTokenId.ERROR);
+    @Override
+    public Token<GcodeTokenId> nextToken() {
+        GcodeTokenId tokenId = tokenizer.nextToken();
+        if (tokenId == null) {
+            return null;
         }
-
-        return createToken(tokenId);
+        return info.tokenFactory().createToken(tokenId);
     }
 
     @Override
@@ -229,8 +66,4 @@ public class GcodeLexer implements Lexer<GcodeTokenId> {
     @Override
     public void release() {
     }
-
-    private Token<GcodeTokenId> createToken(GcodeTokenId tokenId) {
-        return info.tokenFactory().createToken(tokenId);
-    }
-}
\ No newline at end of file
+}
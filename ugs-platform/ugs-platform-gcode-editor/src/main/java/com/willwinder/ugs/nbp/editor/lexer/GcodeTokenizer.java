@@ -0,0 +1,289 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.willwinder.ugs.nbp.editor.lexer;
+
+import static org.apache.commons.lang3.CharUtils.isAsciiNumeric;
+
+/**
+ * The rules for splitting gcode into tokens. They are used by the {@link GcodeLexer} in the
+ * editor and can be used without the NetBeans lexer infrastructure on any character input.
+ *
+ * @author Joacim Breiler
+ */
+public class GcodeTokenizer {
+
+    /**
+     * The character returned when there are no more characters to read
+     */
+    public static final int EOF = -1;
+
+    private final Input input;
+
+    public GcodeTokenizer(Input input) {
+        this.input = input;
+    }
+
+    /**
+     * Reads the next token from the input
+     *
+     * @return the type of the token or null if there are no more characters
+     */
+    public GcodeTokenId nextToken() {
+        int character = input.read();
+        switch (Character.toUpperCase(character)) {
+            case '%':
+                return parseStartOrEnd();
+
+            case ';':
+                return parseComment();
+
+            case '(':
+                return parseCommentSection();
+
+            case 'A':
+            case 'B':
+            case 'C':
+            case 'U':
+            case 'V':
+            case 'W':
+            case 'X':
+            case 'Y':
+            case 'Z':
+                return parseNumericField(GcodeTokenId.AXIS);
+
+            case 'D':
+            case 'E':
+            case 'F':
+            case 'H':
+            case 'I':
+            case 'J':
+            case 'K':
+            case 'L':
+            case 'P':
+            case 'Q':
+            case 'R':
+            case 'S':
+                return parseNumericField(GcodeTokenId.PARAMETER);
+
+            case 'T':
+                return parseCommand(GcodeTokenId.TOOL);
+
+            case 'M':
+                return parseCommand(GcodeTokenId.MACHINE);
+
+            case 'N':
+            case 'O':
+                return parseCommand(GcodeTokenId.PROGRAM);
+
+            case 'G':
+                return parseCommand(GcodeTokenId.MOVEMENT);
+
+            case EOF:
+                return null;
+
+            default:
+                return parseWhitespace(character);
+        }
+    }
+
+    private GcodeTokenId parseStartOrEnd() {
+        while (true) {
+            int character = input.read();
+
+            if (character == EOF || character == '\r' || character == '\n') {
+                input.backup(1);
+                break;
+            }
+        }
+        return GcodeTokenId.START_OR_END;
+    }
+
+    private GcodeTokenId parseWhitespace(int character) {
+        if (character == '\n') {
+            return GcodeTokenId.END_OF_LINE;
+        } else if (Character.isWhitespace((char) character)) {
+            character = input.read();
+            while (character != EOF && Character.isWhitespace((char) character)) {
+                character = input.read();
+            }
+            input.backup(1);
+            return GcodeTokenId.WHITESPACE;
+        } else {
+            input.read();
+            return GcodeTokenId.ERROR;
+        }
+    }
+
+    private GcodeTokenId parseCommentSection() {
+        int ch;
+        while (true) {
+            ch = input.read();
+
+            if (ch == EOF || ch == '\r' || ch == '\n') {
+                input.backup(1);
+                return GcodeTokenId.ERROR;
+            } else if (ch == ')') {
+                break;
+            }
+        }
+        return GcodeTokenId.COMMENT;
+    }
+
+    private GcodeTokenId parseComment() {
+        int ch;
+        while (true) {
+            ch = input.read();
+
+            if (ch == EOF || ch == '\r' || ch == '\n') {
+                input.backup(1);
+                break;
+            }
+        }
+        return GcodeTokenId.COMMENT;
+    }
+
+    private GcodeTokenId parseNumericField(GcodeTokenId tokenId) {
+        int length = 0;
+        int minusCount = 0;
+        int commaCount = 0;
+        int numberCount = 0;
+
+        while (true) {
+            char character = (char) input.read();
+            if ((character == ' ' || character == '\t') && numberCount == 0 && minusCount == 0 && commaCount == 0) {
+                // It's allowed to have a leading space after parameter name
+            } else if (!isNumeric(character)) {
+                input.backup(1);
+                break;
+            } else if (character == ',' || character == '.') {
+                commaCount++;
+            } else if (character == '-') {
+                minusCount++;
+            }
+
+            if (isNumeric(character)) {
+                numberCount++;
+            }
+
+            length++;
+        }
+
+        if (length == 0 || minusCount > 1 || commaCount > 1 || numberCount == 0) {
+            return GcodeTokenId.ERROR;
+        }
+
+        return tokenId;
+    }
+
+    /**
+     * Returns if the character is a part of a numeric string. That includes minus and commas.
+     *
+     * @param character the character to check
+     * @return true if the character is a part of a numeric field.
+     */
+    private boolean isNumeric(char character) {
+        return isAsciiNumeric(character) || character == '-' || character == '.' || character == ',';
+    }
+
+    private GcodeTokenId parseCommand(GcodeTokenId tokenId) {
+        int length = 0;
+        int commaCount = 0;
+        while (true) {
+            char character = (char) input.read();
+            if (!(isAsciiNumeric(character) || character == '.')) {
+                input.backup(1);
+                break;
+            }
+
+            if (character == '.') {
+                commaCount++;
+            }
+            length++;
+        }
+
+        if (length == 0 || commaCount > 1) {
+            return GcodeTokenId.ERROR;
+        }
+
+        return tokenId;
+    }
+
+    /**
+     * The characters to tokenize
+     */
+    public interface Input {
+        /**
+         * Reads the next character, reading past the end is counted as a read character.
+         *
+         * @return the character or {@link #EOF} if there are no more characters
+         */
+        int read();
+
+        /**
+         * Moves back the given number of characters
+         *
+         * @param count the number of characters to move back
+         */
+        void backup(int count);
+    }
+
+    /**
+     * An input reading the characters from a char array
+     */
+    public static class CharArrayInput implements Input {
+        private char[] characters = new char[0];
+        private int length;
+        private int position;
+
+        /**
+         * Resets the input to read the given characters
+         *
+         * @param characters the characters to read
+         * @param length     the number of characters to read
+         */
+        public void reset(char[] characters, int length) {
+            this.characters = characters;
+            this.length = length;
+            this.position = 0;
+        }
+
+        @Override
+        public int read() {
+            int character = position < length ? characters[position] : EOF;
+            position++;
+            return character;
+        }
+
+        @Override
+        public void backup(int count) {
+            position -= count;
+        }
+
+        /**
+         * Returns the position of the next character to read. If the tokenizer read past the
+         * end the position is moved back to the end.
+         *
+         * @return the position of the next character
+         */
+        public int getPosition() {
+            position = Math.min(position, length);
+            return position;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.willwinder.ugs.nbp.editor.parser;
+
+import com.willwinder.ugs.nbp.editor.parser.errors.ErrorParser;
+import org.netbeans.api.lexer.Token;
+import org.netbeans.api.lexer.TokenSequence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Finds errors in a gcode document using a list of {@link ErrorParser}s. The errors found on
+ * each line are kept between the analyses together with the state of the error parsers at
+ * regular line intervals. When the document is changed only the changed lines are analyzed,
+ * starting from the closest saved state and continuing until the state of the error parsers
+ * is the same as before the change.
+ *
+ * @author Joacim Breiler
+ */
+public class ErrorAnalyzer {
+    /**
+     * The number of lines between each saved state of the error parsers
+     */
+    static final int CHECKPOINT_INTERVAL = 1000;
+
+    private final Supplier<List<ErrorParser>> errorParserFactory;
+
+    /**
+     * The errors on each line with offsets relative to the start of the line
+     */
+    private NavigableMap<Integer, List<GcodeError>> lineErrors = new TreeMap<>();
+
+    /**
+     * The state of the error parsers at the start of a line
+     */
+    private NavigableMap<Integer, Object[]> checkpoints = new TreeMap<>();
+
+    /**
+     * The offset where each line starts, line one is at index zero
+     */
+    private int[] lineStarts = new int[0];
+    private int lineCount;
+    private int lastAnalyzedLineCount;
+
+    /**
+     * @param errorParserFactory a factory creating new error parsers for each analysis
+     */
+    public ErrorAnalyzer(Supplier<List<ErrorParser>> errorParserFactory) {
+        this.errorParserFactory = errorParserFactory;
+    }
+
+    /**
+     * Analyzes the document for errors. If the changed area is given only the affected lines
+     * are analyzed, otherwise the whole document is analyzed.
+     *
+     * @param text          the text of the document
+     * @param tokenSequence the tokens of the document
+     * @param changeStart   the start offset of the changed area or -1 if unknown
+     * @param changeEnd     the end offset of the changed area in the changed document or -1 if unknown
+     * @return all errors in the document
+     */
+    public List<GcodeError> analyze(CharSequence text, TokenSequence<?> tokenSequence, int changeStart, int changeEnd) {
+        int previousLineCount = lineCount;
+        findLineStarts(text);
+
+        int firstLine = 1;
+        int lastLine = lineCount;
+        int lineDelta = lineCount - previousLineCount;
+        boolean isFullAnalysis = changeStart < 0 || checkpoints.isEmpty() || changeStart > text.length();
+        if (!isFullAnalysis) {
+            firstLine = getLine(changeStart);
+            lastLine = getLine(Math.min(text.length(), Math.max(changeStart, changeEnd)));
+
+            // The change needs to cover all lines that were added or removed
+            int previousLastLine = lastLine - lineDelta;
+            isFullAnalysis = previousLastLine < firstLine - 1 || previousLastLine > previousLineCount;
+        }
+
+        if (isFullAnalysis) {
+            lineErrors = new TreeMap<>();
+            checkpoints = new TreeMap<>();
+            firstLine = 1;
+            lastLine = lineCount;
+        } else {
+            int previousLastLine = lastLine - lineDelta;
+            lineErrors = moveLines(lineErrors, firstLine, previousLastLine, lineDelta);
+            checkpoints = moveLines(checkpoints, firstLine, previousLastLine, lineDelta);
+        }
+
+        analyzeLines(tokenSequence, firstLine, lastLine);
+        return getErrors();
+    }
+
+    /**
+     * Moves the lines after the changed lines with the number of added or removed lines and
+     * removes the changed lines
+     */
+    private static <T> NavigableMap<Integer, T> moveLines(NavigableMap<Integer, T> lines, int firstLine, int previousLastLine, int lineDelta) {
+        NavigableMap<Integer, T> result = new TreeMap<>(lines.headMap(firstLine, false));
+        for (Map.Entry<Integer, T> entry : lines.tailMap(previousLastLine, false).entrySet()) {
+            result.put(entry.getKey() + lineDelta, entry.getValue());
+        }
+        return result;
+    }
+
+    private void analyzeLines(TokenSequence<?> tokenSequence, int firstLine, int lastLine) {
+        // Restart the parsing from the closest saved state
+        Map.Entry<Integer, Object[]> checkpoint = checkpoints.floorEntry(firstLine);
+        int startLine = checkpoint != null ? checkpoint.getKey() : 1;
+        List<ErrorParser> errorParsers = errorParserFactory.get();
+        if (checkpoint != null) {
+            setStates(errorParsers, checkpoint.getValue());
+        }
+
+        NavigableMap<Integer, Object[]> newCheckpoints = new TreeMap<>();
+        newCheckpoints.put(startLine, getStates(errorParsers));
+
+        int startOffset = lineStarts[startLine - 1];
+        int stopLine = lineCount + 1;
+        int line = startLine;
+        tokenSequence.move(startOffset);
+        while (tokenSequence.moveNext()) {
+            int offset = tokenSequence.offset();
+            if (offset < startOffset) {
+                // The token started on a line that was already analyzed
+                continue;
+            }
+
+            int tokenLine = line;
+            while (tokenLine < lineCount && offset >= lineStarts[tokenLine]) {
+                tokenLine++;
+            }
+
+            if (tokenLine != line && isStateUnchanged(errorParsers, line, tokenLine, lastLine, newCheckpoints)) {
+                stopLine = newCheckpoints.lastKey();
+                newCheckpoints.remove(stopLine);
+                break;
+            }
+
+            line = tokenLine;
+            Token<?> token = tokenSequence.token();
+            final int currentLine = line;
+            errorParsers.forEach(errorParser -> errorParser.handleToken(token, currentLine));
+        }
+
+        // Replace the analyzed lines
+        lineErrors.subMap(startLine, true, stopLine, false).clear();
+        checkpoints.subMap(startLine, true, stopLine, false).clear();
+        checkpoints.putAll(newCheckpoints);
+        for (ErrorParser errorParser : errorParsers) {
+            for (GcodeError error : errorParser.getErrors()) {
+                int errorLine = getLine(error.getStartPosition());
+                lineErrors.computeIfAbsent(errorLine, l -> new ArrayList<>())
+                        .add(error.move(-lineStarts[errorLine - 1]));
+            }
+        }
+        lastAnalyzedLineCount = stopLine - startLine;
+    }
+
+    /**
+     * Saves the states of the error parsers for each new line at the checkpoint intervals and
+     * checks if the states are the same as before the change.
+     *
+     * @return true if the remaining lines doesn't need to be analyzed
+     */
+    private boolean isStateUnchanged(List<ErrorParser> errorParsers, int previousLine, int line, int lastLine, NavigableMap<Integer, Object[]> newCheckpoints) {
+        Object[] states = null;
+        for (int currentLine = previousLine + 1; currentLine <= line; currentLine++) {
+            Object[] previousStates = currentLine > lastLine ? checkpoints.get(currentLine) : null;
+            boolean isCheckpoint = (currentLine - 1) % CHECKPOINT_INTERVAL == 0;
+            if (previousStates == null && !isCheckpoint) {
+                continue;
+            }
+
+            if (states == null) {
+                states = getStates(errorParsers);
+            }
+
+            newCheckpoints.put(currentLine, states);
+            if (previousStates != null && Arrays.equals(previousStates, states)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Object[] getStates(List<ErrorParser> errorParsers) {
+        Object[] states = new Object[errorParsers.size()];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = errorParsers.get(i).getState();
+        }
+        return states;
+    }
+
+    private static void setStates(List<ErrorParser> errorParsers, Object[] states) {
+        for (int i = 0; i < states.length && i < errorParsers.size(); i++) {
+            errorParsers.get(i).setState(states[i]);
+        }
+    }
+
+    private List<GcodeError> getErrors() {
+        List<GcodeError> errors = new ArrayList<>();
+        lineErrors.forEach((line, errorList) -> {
+            int lineStart = lineStarts[line - 1];
+            errorList.forEach(error -> errors.add(error.move(lineStart)));
+        });
+        return errors;
+    }
+
+    /**
+     * @return the number of lines that was analyzed in the last analysis
+     */
+    public int getLastAnalyzedLineCount() {
+        return lastAnalyzedLineCount;
+    }
+
+    /**
+     * Returns the line of the given offset
+     *
+     * @param offset the offset in the document
+     * @return the line number starting from one
+     */
+    private int getLine(int offset) {
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private void findLineStarts(CharSequence text) {
+        if (lineStarts.length == 0) {
+            lineStarts = new int[1024];
+        }
+
+        int count = 1;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                if (count == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+                }
+                lineStarts[count++] = i + 1;
+            }
+        }
+        lineCount = count;
+    }
+}
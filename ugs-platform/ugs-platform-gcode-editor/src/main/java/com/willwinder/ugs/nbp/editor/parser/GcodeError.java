@@ -1,5 +1,5 @@
 /*
-    Copyright 2016-2019 Will Winder
+    Copyright 2016-2023 Will Winder
 
     This file is part of Universal Gcode Sender (UGS).
 
@@ -31,4 +31,14 @@ public class GcodeError extends DefaultError {
     public GcodeError(String key, String displayName, String description, FileObject file, int start, int end, boolean lineError, Severity severity) {
         super(key, displayName, description, file, start, end, lineError, severity);
     }
+
+    /**
+     * Creates a copy of this error moved by the given number of characters
+     *
+     * @param offset the number of characters to move the error
+     * @return a new error
+     */
+    public GcodeError move(int offset) {
+        return new GcodeError(getKey(), getDisplayName(), getDescription(), getFile(), getStartPosition() + offset, getEndPosition() + offset, isLineError(), getSeverity());
+    }
 }
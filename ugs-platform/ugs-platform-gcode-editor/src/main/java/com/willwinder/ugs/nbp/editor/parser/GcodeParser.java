@@ -1,5 +1,5 @@
 /*
-    Copyright 2016-2019 Will Winder
+    Copyright 2016-2023 Will Winder
 
     This file is part of Universal Gcode Sender (UGS).
 
@@ -18,9 +18,7 @@
 */
 package com.willwinder.ugs.nbp.editor.parser;
 
-import com.willwinder.ugs.nbp.editor.lexer.GcodeTokenId;
 import com.willwinder.ugs.nbp.editor.parser.errors.*;
-import org.netbeans.api.lexer.Token;
 import org.netbeans.api.lexer.TokenSequence;
 import org.netbeans.modules.parsing.api.Snapshot;
 import org.netbeans.modules.parsing.api.Task;
@@ -33,7 +31,9 @@ import org.openide.util.lookup.ServiceProvider;
 import javax.swing.event.ChangeListener;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A gcode parser that parses errors from gcode tokens
@@ -42,8 +42,7 @@ import java.util.stream.Collectors;
  */
 @ServiceProvider(service = GcodeParser.class)
 public class GcodeParser extends Parser {
-
-
+    private static final Logger LOGGER = Logger.getLogger(GcodeParser.class.getSimpleName());
 
     /**
      * A support object for notifying listeners about that we need to reparse the document
@@ -51,36 +50,41 @@ public class GcodeParser extends Parser {
     private final ChangeSupport changeSupport = new ChangeSupport(this);
     private List<GcodeError> errors;
     private Snapshot snapshot;
+    private ErrorAnalyzer errorAnalyzer;
+    private FileObject analyzedFileObject;
 
     @Override
     public void parse(Snapshot snapshot, Task task, SourceModificationEvent sourceModificationEvent) {
         this.snapshot = snapshot;
 
         FileObject fileObject = snapshot.getSource().getFileObject();
+        if (errorAnalyzer == null || !Objects.equals(fileObject, analyzedFileObject)) {
+            analyzedFileObject = fileObject;
+            errorAnalyzer = new ErrorAnalyzer(() -> createErrorParsers(fileObject));
+        }
+
+        // Only analyze the changed lines if the document was edited, otherwise analyze everything
+        // as the errors may depend on the connected controller
+        int changeStart = -1;
+        int changeEnd = -1;
+        if (sourceModificationEvent != null && sourceModificationEvent.sourceChanged()) {
+            changeStart = sourceModificationEvent.getAffectedStartOffset();
+            changeEnd = sourceModificationEvent.getAffectedEndOffset();
+        }
+
+        TokenSequence<?> tokenSequence = snapshot.getTokenHierarchy().tokenSequence();
+        this.errors = errorAnalyzer.analyze(snapshot.getText(), tokenSequence, changeStart, changeEnd);
+        LOGGER.log(Level.FINE, "Analyzed {0} lines for errors", errorAnalyzer.getLastAnalyzedLineCount());
+    }
+
+    private static List<ErrorParser> createErrorParsers(FileObject fileObject) {
         List<ErrorParser> errorParserList = new ArrayList<>();
         errorParserList.add(new FeedRateMissingErrorParser(fileObject));
         errorParserList.add(new InvalidGrblCommandErrorParser(fileObject));
         errorParserList.add(new MovementInMachineCoordinatesErrorParser(fileObject));
         errorParserList.add(new InvalidG2CommandErrorParser(fileObject));
         errorParserList.add(new InvalidGcodeErrorParser(fileObject));
-
-        TokenSequence<?> tokenSequence = snapshot.getTokenHierarchy().tokenSequence();
-        tokenSequence.moveStart();
-
-        int line = 1; // The snapshot starts on line 1
-        while (tokenSequence.moveNext()) {
-            Token<?> token = tokenSequence.token();
-            if (GcodeTokenId.END_OF_LINE.equals(token.id())) {
-                line++;
-            }
-
-            final int currentLine = line;
-            errorParserList.forEach(errorParser -> errorParser.handleToken(token, currentLine));
-        }
-
-        this.errors = errorParserList.stream()
-                .flatMap(ep -> ep.getErrors().stream())
-                .collect(Collectors.toList());
+        return errorParserList;
     }
 
     @Override
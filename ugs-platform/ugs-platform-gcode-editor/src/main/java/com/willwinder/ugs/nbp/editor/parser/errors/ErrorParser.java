@@ -1,5 +1,5 @@
 /*
-    Copyright 2016-2019 Will Winder
+    Copyright 2016-2023 Will Winder
 
     This file is part of Universal Gcode Sender (UGS).
 
@@ -32,4 +32,25 @@ public interface ErrorParser {
     void handleToken(Token<?> token, int line);
 
     List<GcodeError> getErrors();
+
+    /**
+     * Returns the state that is needed for resuming the parsing at the start of the next line.
+     * It is only called between lines and is used for restarting the parsing in the middle of
+     * a file. The state needs to be immutable and implement equals.
+     *
+     * @return the state or null if the parser doesn't depend on previous lines
+     */
+    default Object getState() {
+        return null;
+    }
+
+    /**
+     * Restores a state previously returned from {@link #getState()} before parsing
+     * from the middle of a file.
+     *
+     * @param state the state to restore
+     */
+    default void setState(Object state) {
+        // Stateless parsers have nothing to restore
+    }
 }
@@ -1,5 +1,5 @@
 /*
-    Copyright 2016-2019 Will Winder
+    Copyright 2016-2023 Will Winder
 
     This file is part of Universal Gcode Sender (UGS).
 
@@ -29,12 +29,19 @@ import org.openide.filesystems.FileObject;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * Finds the first movement command that is made before a feed rate has been assigned. A feed
+ * rate on the same line as the movement is accepted.
+ *
+ * @author Joacim Breiler
+ */
 public class FeedRateMissingErrorParser implements ErrorParser {
     private final FileObject fileObject;
-    private int firstFeedRateLine = 0;
-    private int firstMovementLine = 0;
-    private Token<?> firstMovementToken;
-    private Token<?> firstFeedRateToken;
+    private boolean hasFeedRate;
+    private boolean hasError;
+    private Token<?> pendingMovementToken;
+    private int pendingMovementLine;
+    private GcodeError error;
 
     public FeedRateMissingErrorParser(FileObject fileObject) {
         this.fileObject = fileObject;
@@ -42,17 +49,35 @@ public class FeedRateMissingErrorParser implements ErrorParser {
 
     @Override
     public void handleToken(Token<?> token, int line) {
+        if (pendingMovementToken != null && line != pendingMovementLine) {
+            addPendingError();
+        }
+
+        if (hasFeedRate || hasError) {
+            return;
+        }
+
         if (GcodeTokenId.MOVEMENT.equals(token.id())) {
-            if (isMovementCommand(token) && firstMovementToken == null) {
-                firstMovementToken = token;
-                firstMovementLine = line;
+            if (isMovementCommand(token) && pendingMovementToken == null) {
+                pendingMovementToken = token;
+                pendingMovementLine = line;
             }
-        } else if (GcodeTokenId.PARAMETER.equals(token.id()) && StringUtils.startsWithIgnoreCase(token.text(), "F") && firstFeedRateToken == null) {
-            firstFeedRateToken = token;
-            firstFeedRateLine = line;
+        } else if (GcodeTokenId.PARAMETER.equals(token.id()) && StringUtils.startsWithIgnoreCase(token.text(), "F")) {
+            hasFeedRate = true;
+            pendingMovementToken = null;
         }
     }
 
+    /**
+     * The movement line has ended without a feed rate
+     */
+    private void addPendingError() {
+        int offset = pendingMovementToken.offset(null);
+        error = new GcodeError("no-feed-rate", "No feed rate", "No feed rate has been assigned before movement command", fileObject, offset, offset + pendingMovementToken.length(), true, Severity.ERROR);
+        hasError = true;
+        pendingMovementToken = null;
+    }
+
     private boolean isMovementCommand(Token<?> token) {
         return StringUtils.equalsIgnoreCase(token.text(), Code.G1.name()) ||
                 StringUtils.equalsIgnoreCase(token.text(), "G01") ||
@@ -65,14 +90,38 @@ public class FeedRateMissingErrorParser implements ErrorParser {
 
     @Override
     public List<GcodeError> getErrors() {
-        if (firstFeedRateToken == null && firstMovementToken == null) {
+        if (pendingMovementToken != null) {
+            addPendingError();
+        }
+
+        if (error == null) {
             return Collections.emptyList();
-        } else if (firstMovementToken != null && (firstFeedRateToken == null || firstMovementLine < firstFeedRateLine)) {
-            int offset = firstMovementToken.offset(null);
-            GcodeError error = new GcodeError("no-feed-rate", "No feed rate", "No feed rate has been assigned before movement command", fileObject, offset, offset + firstMovementToken.length(), true, Severity.ERROR);
-            return Collections.singletonList(error);
         }
+        return Collections.singletonList(error);
+    }
+
+    @Override
+    public Object getState() {
+        if (hasFeedRate) {
+            return State.FEED_RATE_ASSIGNED;
+        } else if (hasError || pendingMovementToken != null) {
+            // A pending movement will become an error as its line has ended
+            return State.ERROR_FOUND;
+        }
+        return State.NO_FEED_RATE;
+    }
+
+    @Override
+    public void setState(Object state) {
+        hasFeedRate = state == State.FEED_RATE_ASSIGNED;
+        hasError = state == State.ERROR_FOUND;
+        pendingMovementToken = null;
+        error = null;
+    }
 
-        return Collections.emptyList();
+    private enum State {
+        NO_FEED_RATE,
+        FEED_RATE_ASSIGNED,
+        ERROR_FOUND
     }
 }
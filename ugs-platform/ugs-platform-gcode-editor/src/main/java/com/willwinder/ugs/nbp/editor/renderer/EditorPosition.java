@@ -26,6 +26,7 @@ import com.willwinder.ugs.nbm.visualizer.options.VisualizerOptions;
 import com.willwinder.ugs.nbm.visualizer.renderables.GcodeModel;
 import com.willwinder.ugs.nbm.visualizer.shared.Renderable;
 import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.visualizer.ToolpathBuffer;
 
 import java.awt.Color;
 
@@ -92,10 +93,13 @@ public class EditorPosition extends Renderable {
             return;
         }
 
-        model.getLineList().stream()
-                .filter(lineSegment -> lineSegment.getLineNumber() == lineNumber + 1)
-                .findFirst()
-                .ifPresent(lineSegment -> position = lineSegment.getEnd());
+        ToolpathBuffer toolpath = model.getToolpath();
+        for (int i = 0; i < toolpath.size(); i++) {
+            if (toolpath.getLineNumber(i) == lineNumber + 1) {
+                position = toolpath.getEnd(i);
+                return;
+            }
+        }
     }
 
     @Override
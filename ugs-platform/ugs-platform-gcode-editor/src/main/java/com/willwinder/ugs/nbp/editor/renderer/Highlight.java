@@ -28,13 +28,12 @@ import com.willwinder.universalgcodesender.gcode.util.Plane;
 import com.willwinder.universalgcodesender.gcode.util.PlaneFormatter;
 import com.willwinder.universalgcodesender.model.CNCPoint;
 import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.visualizer.ToolpathBuffer;
 
 import java.awt.Color;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static com.willwinder.ugs.nbm.visualizer.options.VisualizerOptions.VISUALIZER_OPTION_HIGHLIGHT;
 import static com.willwinder.ugs.nbm.visualizer.options.VisualizerOptions.VISUALIZER_OPTION_HIGHLIGHT_COLOR;
@@ -125,20 +124,25 @@ public class Highlight extends Renderable {
         points.clear();
         double offset = LINE_WIDTH / scaleFactor / 2d;
         double halfPI = Math.PI / 2d;
-        List<CNCPoint> newPoints = model.getLineList().stream()
-                .filter(ls -> ls.getLineNumber() > startLine && ls.getLineNumber() - 1 <= endLine)
-                .flatMap(lineSegment -> {
-                    double angle = getAngle(lineSegment.getStart(), lineSegment.getEnd(), new PlaneFormatter(Plane.XY));
-                    Position xyOffset = new Position(offset * Math.cos(angle - halfPI), offset * Math.sin(angle - halfPI), 0.0);
-                    Position zOffset = new Position(0, 0, 0.01);
-
-                    CNCPoint aPoint = new Position(lineSegment.getStart()).sub(xyOffset).add(zOffset);
-                    CNCPoint bPoint = new Position(lineSegment.getEnd()).sub(xyOffset).add(zOffset);
-                    CNCPoint cPoint = new Position(lineSegment.getEnd()).add(xyOffset).add(zOffset);
-                    CNCPoint dPoint = new Position(lineSegment.getStart()).add(xyOffset).add(zOffset);
-                    return Stream.of(aPoint, bPoint, cPoint, dPoint);
-                })
-                .collect(Collectors.toList());
+        ToolpathBuffer toolpath = model.getToolpath();
+        List<CNCPoint> newPoints = new ArrayList<>();
+        for (int i = 0; i < toolpath.size(); i++) {
+            int lineNumber = toolpath.getLineNumber(i);
+            if (lineNumber <= startLine || lineNumber - 1 > endLine) {
+                continue;
+            }
+
+            Position start = toolpath.getStart(i);
+            Position end = toolpath.getEnd(i);
+            double angle = getAngle(start, end, new PlaneFormatter(Plane.XY));
+            Position xyOffset = new Position(offset * Math.cos(angle - halfPI), offset * Math.sin(angle - halfPI), 0.0);
+            Position zOffset = new Position(0, 0, 0.01);
+
+            newPoints.add(new Position(start).sub(xyOffset).add(zOffset));
+            newPoints.add(new Position(end).sub(xyOffset).add(zOffset));
+            newPoints.add(new Position(end).add(xyOffset).add(zOffset));
+            newPoints.add(new Position(start).add(xyOffset).add(zOffset));
+        }
 
         points.addAll(newPoints);
     }
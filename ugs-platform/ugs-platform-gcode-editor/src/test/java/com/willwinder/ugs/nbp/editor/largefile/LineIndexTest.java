@@ -0,0 +1,86 @@
+package com.willwinder.ugs.nbp.editor.largefile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+
+public class LineIndexTest {
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("lineindex", ".gcode");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void indexShouldFindAllLines() throws IOException {
+        Files.write(file, "G21\r\nG0 X10\n\nM30".getBytes(StandardCharsets.US_ASCII));
+
+        try (LineIndex lineIndex = new LineIndex(file)) {
+            assertEquals(4, lineIndex.getLineCount());
+            assertEquals("G21", lineIndex.getLineText(0));
+            assertEquals("G0 X10", lineIndex.getLineText(1));
+            assertEquals("", lineIndex.getLineText(2));
+            assertEquals("M30", lineIndex.getLineText(3));
+            assertEquals(5, lineIndex.getLineStart(1));
+            assertEquals(7, lineIndex.getMaxLineLength());
+        }
+    }
+
+    @Test
+    public void indexShouldNotAddAnEmptyLineAfterTheLastLineEnding() throws IOException {
+        Files.write(file, "G21\nM30\n".getBytes(StandardCharsets.US_ASCII));
+
+        try (LineIndex lineIndex = new LineIndex(file)) {
+            assertEquals(2, lineIndex.getLineCount());
+            assertEquals("M30", lineIndex.getLineText(1));
+        }
+    }
+
+    @Test
+    public void indexShouldHandleEmptyFiles() throws IOException {
+        try (LineIndex lineIndex = new LineIndex(file)) {
+            assertEquals(1, lineIndex.getLineCount());
+            assertEquals("", lineIndex.getLineText(0));
+        }
+    }
+
+    @Test
+    public void indexShouldHandleMoreLinesThanFitsInABlock() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) {
+            content.append("G1X").append(i).append('\n');
+        }
+        Files.write(file, content.toString().getBytes(StandardCharsets.US_ASCII));
+
+        try (LineIndex lineIndex = new LineIndex(file)) {
+            assertEquals(200_000, lineIndex.getLineCount());
+            assertEquals("G1X0", lineIndex.getLineText(0));
+            assertEquals("G1X65536", lineIndex.getLineText(65536));
+            assertEquals("G1X199999", lineIndex.getLineText(199_999));
+        }
+    }
+
+    @Test
+    public void getLineShouldReuseTheBuffer() throws IOException {
+        Files.write(file, "G21\nG0 X10\n".getBytes(StandardCharsets.US_ASCII));
+
+        try (LineIndex lineIndex = new LineIndex(file)) {
+            char[] buffer = new char[10];
+            assertEquals(buffer, lineIndex.getLine(1, buffer));
+            assertEquals("G0 X10", new String(buffer, 0, lineIndex.getLineLength(1)));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.willwinder.ugs.nbp.editor.parser;
+
+import com.willwinder.ugs.nbp.editor.lexer.GcodeTokenId;
+import com.willwinder.ugs.nbp.editor.parser.errors.ErrorParser;
+import com.willwinder.ugs.nbp.editor.parser.errors.FeedRateMissingErrorParser;
+import com.willwinder.ugs.nbp.editor.parser.errors.InvalidGcodeErrorParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.netbeans.api.lexer.TokenHierarchy;
+import org.netbeans.api.lexer.TokenSequence;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ErrorAnalyzerTest {
+    private ErrorAnalyzer errorAnalyzer;
+
+    @Before
+    public void setUp() {
+        errorAnalyzer = createErrorAnalyzer();
+    }
+
+    private static ErrorAnalyzer createErrorAnalyzer() {
+        return new ErrorAnalyzer(() -> Arrays.<ErrorParser>asList(new FeedRateMissingErrorParser(null), new InvalidGcodeErrorParser(null)));
+    }
+
+    private static TokenSequence<?> parseTokenSequence(String text) {
+        TokenHierarchy<?> hi = TokenHierarchy.create(text, GcodeTokenId.getLanguage());
+        return hi.tokenSequence();
+    }
+
+    private static List<String> analyzeFull(String text) {
+        return toStrings(createErrorAnalyzer().analyze(text, parseTokenSequence(text), -1, -1));
+    }
+
+    private List<String> analyzeChange(String text, int changeStart, int changeEnd) {
+        return toStrings(errorAnalyzer.analyze(text, parseTokenSequence(text), changeStart, changeEnd));
+    }
+
+    private static List<String> toStrings(List<GcodeError> errors) {
+        return errors.stream()
+                .map(error -> error.getKey() + ":" + error.getStartPosition() + "-" + error.getEndPosition())
+                .collect(Collectors.toList());
+    }
+
+    private static String createProgram(int lines) {
+        StringBuilder text = new StringBuilder("G21\nG1 X0 F100\n");
+        for (int i = 0; i < lines; i++) {
+            text.append("G1 X").append(i).append('\n');
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void analyzeShouldFindErrors() {
+        String text = "G21\nG1 X10\nG1 Y10 F100\n(comment";
+        List<String> errors = analyzeChange(text, -1, -1);
+
+        assertEquals(Arrays.asList("no-feed-rate:4-6", "command-not-supported:23-31"), errors);
+    }
+
+    @Test
+    public void analyzeShouldOnlyAnalyzeTheChangedLines() {
+        String text = createProgram(5000);
+        analyzeChange(text, -1, -1);
+        assertEquals(5003, errorAnalyzer.getLastAnalyzedLineCount());
+
+        // Change a line in the middle of the program
+        int changeStart = text.indexOf("G1 X2500\n");
+        String changedText = text.substring(0, changeStart) + "G1 X2500.5\n" + text.substring(changeStart + 9);
+        List<String> errors = analyzeChange(changedText, changeStart, changeStart + 11);
+
+        assertEquals(analyzeFull(changedText), errors);
+        assertTrue(errorAnalyzer.getLastAnalyzedLineCount() <= ErrorAnalyzer.CHECKPOINT_INTERVAL + 1);
+    }
+
+    @Test
+    public void analyzeShouldMoveErrorsAfterInsertedLines() {
+        String text = createProgram(3000) + "(comment";
+        analyzeChange(text, -1, -1);
+
+        int changeStart = text.indexOf("G1 X1500\n");
+        String insertedText = "G1 Y1\nG1 Y2\n";
+        String changedText = text.substring(0, changeStart) + insertedText + text.substring(changeStart);
+        List<String> errors = analyzeChange(changedText, changeStart, changeStart + insertedText.length());
+
+        assertEquals(analyzeFull(changedText), errors);
+        assertTrue(errorAnalyzer.getLastAnalyzedLineCount() < 3000);
+    }
+
+    @Test
+    public void analyzeShouldMoveErrorsAfterRemovedLines() {
+        String text = createProgram(3000) + "(comment";
+        analyzeChange(text, -1, -1);
+
+        int changeStart = text.indexOf("G1 X1500\n");
+        String changedText = text.substring(0, changeStart) + text.substring(changeStart + 9);
+        List<String> errors = analyzeChange(changedText, changeStart, changeStart);
+
+        assertEquals(analyzeFull(changedText), errors);
+        assertTrue(errorAnalyzer.getLastAnalyzedLineCount() < 3000);
+    }
+
+    @Test
+    public void analyzeShouldContinueWhenTheStateChanges() {
+        String text = createProgram(3000);
+        analyzeChange(text, -1, -1);
+
+        // Removing the feed rate will cause an error on the next movement
+        int changeStart = text.indexOf(" F100");
+        String changedText = text.substring(0, changeStart) + text.substring(changeStart + 5);
+        List<String> errors = analyzeChange(changedText, changeStart, changeStart);
+
+        assertEquals(1, errors.size());
+        assertEquals(analyzeFull(changedText), errors);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.console;
+
+import com.willwinder.universalgcodesender.listeners.MessageType;
+
+/**
+ * A bounded buffer with the lines of the console. The text is kept in a ring of characters and
+ * the lines as offsets into that ring, so no objects are created per line. When the buffer is
+ * full the oldest lines are removed.
+ * <p>
+ * Each line gets a line number that never changes, starting with zero for the first line ever
+ * added. Messages can be appended from any thread.
+ *
+ * @author Joacim Breiler
+ */
+public class ConsoleBuffer {
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+
+    private final char[] characters;
+    private final long[] lineStarts;
+    private final int[] lineLengths;
+    private final byte[] lineTypes;
+
+    /**
+     * The total number of characters ever added
+     */
+    private long characterEnd;
+
+    /**
+     * The number of the oldest line still in the buffer
+     */
+    private long firstLine;
+
+    /**
+     * The number of the line after the last line in the buffer
+     */
+    private long endLine;
+
+    /**
+     * If the last line hasn't been ended with a new line yet
+     */
+    private boolean isLastLineOpen;
+
+    private long modificationCount;
+
+    /**
+     * @param maxLines      the maximum number of lines to keep
+     * @param maxCharacters the maximum number of characters to keep
+     */
+    public ConsoleBuffer(int maxLines, int maxCharacters) {
+        if (maxLines < 1 || maxCharacters < 1) {
+            throw new IllegalArgumentException("The buffer must be able to contain at least one line and character");
+        }
+
+        characters = new char[maxCharacters];
+        lineStarts = new long[maxLines];
+        lineLengths = new int[maxLines];
+        lineTypes = new byte[maxLines];
+    }
+
+    /**
+     * Appends a message to the buffer. A message without a trailing new line will be continued
+     * by the next message.
+     *
+     * @param type    the type of the message
+     * @param message the message
+     */
+    public synchronized void append(MessageType type, String message) {
+        for (int i = 0; i < message.length(); i++) {
+            char character = message.charAt(i);
+            if (character == '\r') {
+                continue;
+            }
+
+            if (!isLastLineOpen) {
+                startLine(type);
+            }
+
+            if (character == '\n') {
+                isLastLineOpen = false;
+            } else {
+                ensureCharacterCapacity();
+                characters[(int) (characterEnd % characters.length)] = character;
+                characterEnd++;
+                lineLengths[getSlot(endLine - 1)]++;
+            }
+        }
+        modificationCount++;
+    }
+
+    private void startLine(MessageType type) {
+        if (endLine - firstLine == lineStarts.length) {
+            firstLine++;
+        }
+
+        int slot = getSlot(endLine);
+        lineStarts[slot] = characterEnd;
+        lineLengths[slot] = 0;
+        lineTypes[slot] = (byte) type.ordinal();
+        endLine++;
+        isLastLineOpen = true;
+    }
+
+    private void ensureCharacterCapacity() {
+        while (characterEnd - lineStarts[getSlot(firstLine)] >= characters.length) {
+            int slot = getSlot(firstLine);
+            if (firstLine == endLine - 1) {
+                // A single line filling the whole buffer, remove its first character
+                lineStarts[slot]++;
+                lineLengths[slot]--;
+            } else {
+                firstLine++;
+            }
+        }
+    }
+
+    private int getSlot(long line) {
+        return (int) (line % lineStarts.length);
+    }
+
+    public synchronized void clear() {
+        firstLine = endLine;
+        isLastLineOpen = false;
+        modificationCount++;
+    }
+
+    /**
+     * @return the number of the oldest line in the buffer
+     */
+    public synchronized long getFirstLine() {
+        return firstLine;
+    }
+
+    /**
+     * @return the number of the line after the last line in the buffer
+     */
+    public synchronized long getEndLine() {
+        return endLine;
+    }
+
+    /**
+     * @return a number that is changed every time the buffer is changed
+     */
+    public synchronized long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Returns the text of a line
+     *
+     * @param line the line number
+     * @return the text or an empty string if the line is no longer in the buffer
+     */
+    public synchronized String getLine(long line) {
+        if (line < firstLine || line >= endLine) {
+            return "";
+        }
+
+        int slot = getSlot(line);
+        int start = (int) (lineStarts[slot] % characters.length);
+        int length = lineLengths[slot];
+        if (start + length <= characters.length) {
+            return new String(characters, start, length);
+        }
+
+        StringBuilder result = new StringBuilder(length);
+        result.append(characters, start, characters.length - start);
+        result.append(characters, 0, length - (characters.length - start));
+        return result.toString();
+    }
+
+    /**
+     * Returns the length of a line
+     *
+     * @param line the line number
+     * @return the number of characters or zero if the line is no longer in the buffer
+     */
+    public synchronized int getLength(long line) {
+        if (line < firstLine || line >= endLine) {
+            return 0;
+        }
+        return lineLengths[getSlot(line)];
+    }
+
+    /**
+     * Returns the message type of a line
+     *
+     * @param line the line number
+     * @return the message type or null if the line is no longer in the buffer
+     */
+    public synchronized MessageType getType(long line) {
+        if (line < firstLine || line >= endLine) {
+            return null;
+        }
+        return MESSAGE_TYPES[lineTypes[getSlot(line)]];
+    }
+
+    /**
+     * Checks if a line contains the given text, ignoring case. The text is searched for directly
+     * in the buffer without copying the line.
+     *
+     * @param line the line number
+     * @param text the text to search for
+     * @return true if the line contains the text
+     */
+    public synchronized boolean contains(long line, String text) {
+        if (line < firstLine || line >= endLine) {
+            return false;
+        }
+
+        int slot = getSlot(line);
+        long start = lineStarts[slot];
+        int length = lineLengths[slot];
+        for (int offset = 0; offset <= length - text.length(); offset++) {
+            if (regionMatches(start + offset, text)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean regionMatches(long position, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char character = characters[(int) ((position + i) % characters.length)];
+            char other = text.charAt(i);
+            if (character != other && Character.toLowerCase(character) != Character.toLowerCase(other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Searches for the next line containing the given text, ignoring case
+     *
+     * @param text     the text to search for
+     * @param fromLine the line to start searching from, it will be included in the search
+     * @param forward  if the search should be made towards newer lines
+     * @return the line number of the matching line or -1 if no line was found
+     */
+    public synchronized long find(String text, long fromLine, boolean forward) {
+        if (forward) {
+            for (long line = Math.max(fromLine, firstLine); line < endLine; line++) {
+                if (contains(line, text)) {
+                    return line;
+                }
+            }
+        } else {
+            for (long line = Math.min(fromLine, endLine - 1); line >= firstLine; line--) {
+                if (contains(line, text)) {
+                    return line;
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.console;
+
+import org.apache.commons.lang3.StringUtils;
+
+import javax.swing.AbstractListModel;
+import java.util.Arrays;
+
+/**
+ * A list model with the line numbers of a {@link ConsoleBuffer}, optionally filtered to only the
+ * lines containing a text. The model only changes when {@link #update()} is called, which is
+ * meant to be done on the event dispatch thread at a fixed rate.
+ *
+ * @author Joacim Breiler
+ */
+public class ConsoleListModel extends AbstractListModel<Long> {
+    private final transient ConsoleBuffer buffer;
+    private long modificationCount = -1;
+    private String filter = "";
+
+    /**
+     * The first line in the model when not filtered
+     */
+    private long firstLine;
+    private int size;
+
+    /**
+     * The line numbers matching the filter
+     */
+    private long[] matches = new long[1024];
+
+    /**
+     * The line after the last line that has been checked against the filter
+     */
+    private long filteredEndLine;
+
+    /**
+     * The length of the longest line that has been added to the model since it was last empty
+     */
+    private int maxLineLength;
+
+    public ConsoleListModel(ConsoleBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Updates the model with the changes in the buffer
+     *
+     * @return the number of lines that were removed from the start of the model
+     */
+    public int update() {
+        long currentModificationCount = buffer.getModificationCount();
+        if (currentModificationCount == modificationCount) {
+            return 0;
+        }
+        modificationCount = currentModificationCount;
+
+        long bufferFirstLine = buffer.getFirstLine();
+        long bufferEndLine = Math.max(bufferFirstLine, buffer.getEndLine());
+        if (StringUtils.isEmpty(filter)) {
+            return updateLines(bufferFirstLine, bufferEndLine);
+        }
+        return updateFilteredLines(bufferFirstLine, bufferEndLine);
+    }
+
+    private int updateLines(long bufferFirstLine, long bufferEndLine) {
+        int removedCount = (int) Math.min(size, Math.max(0, bufferFirstLine - firstLine));
+        if (removedCount > 0) {
+            size -= removedCount;
+            fireIntervalRemoved(this, 0, removedCount - 1);
+            resetMaxLineLengthIfEmpty();
+        }
+
+        // The last line may have been continued
+        int changedIndex = Math.max(0, size - 1);
+        long previousEndLine = firstLine + removedCount + size;
+        firstLine = bufferFirstLine;
+        int newSize = (int) (bufferEndLine - bufferFirstLine);
+        for (long line = Math.max(bufferFirstLine, previousEndLine - 1); line < bufferEndLine; line++) {
+            maxLineLength = Math.max(maxLineLength, buffer.getLength(line));
+        }
+        fireChanges(changedIndex, size, newSize);
+        return removedCount;
+    }
+
+    private int updateFilteredLines(long bufferFirstLine, long bufferEndLine) {
+        int removedCount = 0;
+        while (removedCount < size && matches[removedCount] < bufferFirstLine) {
+            removedCount++;
+        }
+        if (removedCount > 0) {
+            System.arraycopy(matches, removedCount, matches, 0, size - removedCount);
+            size -= removedCount;
+            fireIntervalRemoved(this, 0, removedCount - 1);
+            resetMaxLineLengthIfEmpty();
+        }
+
+        // The last checked line may have been continued, check it again
+        int oldSize = size;
+        long fromLine = Math.max(bufferFirstLine, filteredEndLine - 1);
+        int changedIndex = size;
+        if (size > 0 && matches[size - 1] >= fromLine) {
+            changedIndex = size - 1;
+            size--;
+        }
+
+        for (long line = fromLine; line < bufferEndLine; line++) {
+            if (buffer.contains(line, filter)) {
+                if (size == matches.length) {
+                    matches = Arrays.copyOf(matches, matches.length * 2);
+                }
+                matches[size++] = line;
+                maxLineLength = Math.max(maxLineLength, buffer.getLength(line));
+            }
+        }
+        filteredEndLine = bufferEndLine;
+
+        fireChanges(changedIndex, oldSize, size);
+        return removedCount;
+    }
+
+    /**
+     * When all lines have been removed, for instance when the buffer was cleared, the longest
+     * line is measured again from the lines that are added after this.
+     */
+    private void resetMaxLineLengthIfEmpty() {
+        if (size == 0) {
+            maxLineLength = 0;
+        }
+    }
+
+    private void fireChanges(int changedIndex, int oldSize, int newSize) {
+        size = newSize;
+        if (changedIndex < Math.min(oldSize, newSize)) {
+            fireContentsChanged(this, changedIndex, Math.min(oldSize, newSize) - 1);
+        }
+
+        if (newSize > oldSize) {
+            fireIntervalAdded(this, oldSize, newSize - 1);
+        } else if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        }
+    }
+
+    /**
+     * Only shows the lines containing the given text, ignoring case
+     *
+     * @param filter the text to filter on or an empty string to show all lines
+     */
+    public void setFilter(String filter) {
+        this.filter = StringUtils.defaultString(filter);
+        int oldSize = size;
+        size = 0;
+        maxLineLength = 0;
+        firstLine = buffer.getFirstLine();
+        filteredEndLine = firstLine;
+        modificationCount = -1;
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        update();
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return the length of the longest line that has been added to the model since it was last empty
+     */
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * @param index the index in the model
+     * @return the line number in the buffer
+     */
+    public long getLine(int index) {
+        return StringUtils.isEmpty(filter) ? firstLine + index : matches[index];
+    }
+
+    /**
+     * @param line the line number in the buffer
+     * @return the index in the model or -1 if the line isn't in the model
+     */
+    public int getIndex(long line) {
+        if (StringUtils.isEmpty(filter)) {
+            return line >= firstLine && line < firstLine + size ? (int) (line - firstLine) : -1;
+        }
+
+        int index = Arrays.binarySearch(matches, 0, size, line);
+        return index >= 0 ? index : -1;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public Long getElementAt(int index) {
+        return getLine(index);
+    }
+}
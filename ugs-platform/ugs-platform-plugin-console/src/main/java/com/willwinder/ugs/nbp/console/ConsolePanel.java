@@ -19,63 +19,164 @@
 package com.willwinder.ugs.nbp.console;
 
 import com.willwinder.ugs.nbp.console.actions.EnableDisableVerboseAction;
+import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.listeners.MessageListener;
 import com.willwinder.universalgcodesender.listeners.MessageType;
 import com.willwinder.universalgcodesender.model.BackendAPI;
-import org.openide.windows.IOColorPrint;
-import org.openide.windows.IOColors;
-import org.openide.windows.IOContainer;
-import org.openide.windows.IOProvider;
-import org.openide.windows.InputOutput;
+import com.willwinder.universalgcodesender.uielements.helpers.ThemeColors;
+import org.apache.commons.lang3.StringUtils;
 
-import javax.swing.Action;
+import javax.swing.AbstractAction;
+import javax.swing.BorderFactory;
+import javax.swing.BoundedRangeModel;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JPanel;
-import javax.swing.text.JTextComponent;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.JToggleButton;
+import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.BorderLayout;
-import java.awt.Color;
-import java.io.IOException;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
 /**
- * A panel that loads a netbeans console and dispatches UGS messages to it
+ * A panel that displays the UGS messages in a console. The messages are appended to a bounded
+ * {@link ConsoleBuffer} from any thread and the list is refreshed from the buffer at a fixed
+ * frame rate on the event dispatch thread. Only the visible rows are rendered.
  *
  * @author Joacim Breiler
  */
 public class ConsolePanel extends JPanel implements MessageListener {
     /**
-     * The IO name that will be used for writing log messages
+     * The maximum number of lines to keep in the console
      */
-    public static final String IO_CHANNEL_NAME = "Console";
+    private static final int MAX_LINES = 50_000;
 
     /**
-     * Actions to be shown in the popup menu
+     * The maximum number of characters to keep in the console
      */
-    private static final Action[] ACTIONS = {
-            new EnableDisableVerboseAction()
-    };
+    private static final int MAX_CHARACTERS = 5_000_000;
+
+    /**
+     * The number of times per second the console is refreshed
+     */
+    private static final int FRAME_RATE = 30;
 
-    private final transient InputOutput io;
     private final transient BackendAPI backend;
+    private final transient ConsoleBuffer buffer = new ConsoleBuffer(MAX_LINES, MAX_CHARACTERS);
+    private final ConsoleListModel model = new ConsoleListModel(buffer);
+    private final JList<Long> list = new JList<>(model);
+    private final JScrollPane scrollPane = new JScrollPane(list);
+    private final JTextField searchField = new JTextField(20);
+    private final JToggleButton filterButton = new JToggleButton(Localization.getString("platform.plugin.console.filter"));
+    private final Timer refreshTimer;
+    private final int characterWidth;
 
     public ConsolePanel(BackendAPI backend) {
         super(new BorderLayout());
+        this.backend = backend;
 
-        ConsoleProvider consoleProvider = new ConsoleProvider(this);
-        IOContainer ioContainer = IOContainer.create(consoleProvider);
+        Font font = new Font(Font.MONOSPACED, Font.PLAIN, list.getFont().getSize());
+        FontMetrics fontMetrics = list.getFontMetrics(font);
+        characterWidth = fontMetrics.charWidth('m');
 
-        io = IOProvider.getDefault().getIO(IO_CHANNEL_NAME, ACTIONS, ioContainer);
-        io.select();
-        io.setInputVisible(false);
+        // Using fixed cell sizes prevents the list from measuring every row
+        list.setFont(font);
+        list.setFixedCellHeight(fontMetrics.getHeight());
+        list.setFixedCellWidth(characterWidth);
+        list.setCellRenderer(new ConsoleCellRenderer());
+        list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        list.setComponentPopupMenu(createPopupMenu());
+        list.getInputMap(JComponent.WHEN_FOCUSED).put(KeyStroke.getKeyStroke(KeyEvent.VK_C, Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx()), "copy");
+        list.getActionMap().put("copy", new CopyAction());
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                list.requestFocusInWindow();
+            }
+        });
 
-        // After the IO has been loaded, get the text component and disable some properties
-        JTextComponent textView = consoleProvider.getTextComponent();
-        textView.setEditable(false);
+        scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        add(createToolbar(), BorderLayout.NORTH);
+        add(scrollPane, BorderLayout.CENTER);
 
-        this.backend = backend;
+        refreshTimer = new Timer(1000 / FRAME_RATE, e -> refresh());
+        refreshTimer.start();
         backend.addMessageListener(this);
     }
 
+    private JPanel createToolbar() {
+        searchField.addActionListener(e -> findNext(true));
+        searchField.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, InputEvent.SHIFT_DOWN_MASK), "findPrevious");
+        searchField.getActionMap().put("findPrevious", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                findNext(false);
+            }
+        });
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                updateFilter();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                updateFilter();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                updateFilter();
+            }
+        });
+        filterButton.addActionListener(e -> updateFilter());
+
+        JPanel searchPanel = new JPanel(new BorderLayout(4, 0));
+        searchPanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+        searchPanel.add(new JLabel(Localization.getString("platform.plugin.console.search")), BorderLayout.WEST);
+        searchPanel.add(searchField, BorderLayout.CENTER);
+        searchPanel.add(filterButton, BorderLayout.EAST);
+
+        JPanel toolbar = new JPanel(new BorderLayout());
+        toolbar.add(searchPanel, BorderLayout.EAST);
+        return toolbar;
+    }
+
+    private JPopupMenu createPopupMenu() {
+        JPopupMenu popupMenu = new JPopupMenu();
+        popupMenu.add(new CopyAction());
+        popupMenu.add(new AbstractAction(Localization.getString("platform.plugin.console.clear")) {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                buffer.clear();
+                refresh();
+            }
+        });
+        popupMenu.addSeparator();
+        popupMenu.add(new EnableDisableVerboseAction());
+        return popupMenu;
+    }
+
     public void close() {
-        io.closeInputOutput();
+        refreshTimer.stop();
+        backend.removeMessageListener(this);
     }
 
     @Override
@@ -84,17 +185,127 @@ public class ConsolePanel extends JPanel implements MessageListener {
             return;
         }
 
-        Color color = IOColors.getColor(io, IOColors.OutputType.OUTPUT);
-        if (messageType == MessageType.ERROR) {
-            color = IOColors.getColor(io, IOColors.OutputType.LOG_FAILURE);
-        } else if (messageType == MessageType.VERBOSE) {
-            color = IOColors.getColor(io, IOColors.OutputType.LOG_DEBUG);
+        buffer.append(messageType, message);
+    }
+
+    /**
+     * Updates the list with the new messages in the buffer, keeps the view at the bottom if it
+     * was there and otherwise at the same lines.
+     */
+    private void refresh() {
+        BoundedRangeModel scrollModel = scrollPane.getVerticalScrollBar().getModel();
+        boolean isAtBottom = scrollModel.getValue() + scrollModel.getExtent() >= scrollModel.getMaximum();
+        int previousValue = scrollModel.getValue();
+        int previousSize = model.getSize();
+
+        int removedRows = model.update();
+        boolean isWidthChanged = updateCellWidth();
+        if (model.getSize() == previousSize && removedRows == 0 && !isWidthChanged) {
+            return;
+        }
+
+        list.revalidate();
+        scrollPane.validate();
+        if (isAtBottom) {
+            scrollModel.setValue(scrollModel.getMaximum());
+        } else if (removedRows > 0) {
+            scrollModel.setValue(previousValue - removedRows * list.getFixedCellHeight());
         }
+    }
+
+    /**
+     * Fits the cell width to the longest line, which shrinks again when the console has been cleared
+     *
+     * @return true if the width was changed
+     */
+    private boolean updateCellWidth() {
+        int width = (model.getMaxLineLength() + 1) * characterWidth;
+        if (list.getFixedCellWidth() == width) {
+            return false;
+        }
+
+        list.setFixedCellWidth(width);
+        return true;
+    }
+
+    private void updateFilter() {
+        String filter = filterButton.isSelected() ? searchField.getText() : "";
+        if (!StringUtils.equals(filter, model.getFilter())) {
+            model.setFilter(filter);
+            refresh();
+        }
+    }
+
+    private void findNext(boolean forward) {
+        String text = searchField.getText();
+        if (StringUtils.isEmpty(text)) {
+            return;
+        }
+
+        int selectedIndex = forward ? list.getMaxSelectionIndex() : list.getMinSelectionIndex();
+        long fromLine;
+        if (selectedIndex < 0) {
+            fromLine = forward ? buffer.getFirstLine() : buffer.getEndLine() - 1;
+        } else {
+            fromLine = model.getLine(selectedIndex) + (forward ? 1 : -1);
+        }
+
+        long line = buffer.find(text, fromLine, forward);
+        if (line < 0) {
+            // Wrap around
+            line = buffer.find(text, forward ? buffer.getFirstLine() : buffer.getEndLine() - 1, forward);
+        }
+
+        model.update();
+        int index = line < 0 ? -1 : model.getIndex(line);
+        if (index < 0) {
+            Toolkit.getDefaultToolkit().beep();
+            return;
+        }
+
+        list.setSelectedIndex(index);
+        list.ensureIndexIsVisible(index);
+    }
+
+    private class CopyAction extends AbstractAction {
+        public CopyAction() {
+            super(Localization.getString("platform.plugin.console.copy"));
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            int[] selectedIndices = list.getSelectedIndices();
+            if (selectedIndices.length == 0) {
+                return;
+            }
+
+            StringBuilder text = new StringBuilder();
+            for (int index : selectedIndices) {
+                text.append(buffer.getLine(model.getLine(index))).append(System.lineSeparator());
+            }
+
+            StringSelection selection = new StringSelection(text.toString());
+            Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection, selection);
+        }
+    }
+
+    /**
+     * Renders a line from the buffer, only called for the visible rows
+     */
+    private class ConsoleCellRenderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            long line = (Long) value;
+            super.getListCellRendererComponent(list, buffer.getLine(line), index, isSelected, cellHasFocus);
+            setBorder(BorderFactory.createEmptyBorder());
 
-        try {
-            IOColorPrint.print(io, message, color);
-        } catch (IOException e) {
-            // Ignore any errors
+            MessageType type = buffer.getType(line);
+            if (!isSelected && type == MessageType.ERROR) {
+                setForeground(ThemeColors.RED);
+            } else if (!isSelected && type == MessageType.VERBOSE) {
+                setForeground(ThemeColors.GREY);
+            }
+            return this;
         }
     }
 }
@@ -0,0 +1,117 @@
+package com.willwinder.ugs.nbp.console;
+
+import com.willwinder.universalgcodesender.listeners.MessageType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConsoleBufferTest {
+
+    @Test
+    public void appendShouldSplitMessagesIntoLines() {
+        ConsoleBuffer buffer = new ConsoleBuffer(10, 100);
+        buffer.append(MessageType.INFO, "first\r\nsecond\n");
+
+        assertEquals(0, buffer.getFirstLine());
+        assertEquals(2, buffer.getEndLine());
+        assertEquals("first", buffer.getLine(0));
+        assertEquals("second", buffer.getLine(1));
+        assertEquals(MessageType.INFO, buffer.getType(0));
+    }
+
+    @Test
+    public void appendShouldContinueLinesWithoutNewLine() {
+        ConsoleBuffer buffer = new ConsoleBuffer(10, 100);
+        buffer.append(MessageType.ERROR, "first ");
+        buffer.append(MessageType.INFO, "part\n");
+        buffer.append(MessageType.INFO, "second");
+
+        assertEquals(2, buffer.getEndLine());
+        assertEquals("first part", buffer.getLine(0));
+        assertEquals(MessageType.ERROR, buffer.getType(0));
+        assertEquals("second", buffer.getLine(1));
+    }
+
+    @Test
+    public void appendShouldRemoveTheOldestLinesWhenTheMaxLinesIsReached() {
+        ConsoleBuffer buffer = new ConsoleBuffer(3, 100);
+        for (int i = 0; i < 5; i++) {
+            buffer.append(MessageType.INFO, "line " + i + "\n");
+        }
+
+        assertEquals(2, buffer.getFirstLine());
+        assertEquals(5, buffer.getEndLine());
+        assertEquals("", buffer.getLine(1));
+        assertNull(buffer.getType(1));
+        assertEquals("line 2", buffer.getLine(2));
+        assertEquals("line 4", buffer.getLine(4));
+    }
+
+    @Test
+    public void appendShouldRemoveTheOldestLinesWhenTheMaxCharactersIsReached() {
+        ConsoleBuffer buffer = new ConsoleBuffer(100, 10);
+        buffer.append(MessageType.INFO, "abcd\n");
+        buffer.append(MessageType.INFO, "efgh\n");
+        buffer.append(MessageType.INFO, "ijkl\n");
+
+        assertEquals(1, buffer.getFirstLine());
+        assertEquals("efgh", buffer.getLine(1));
+
+        // The last line wraps around the end of the character ring
+        assertEquals("ijkl", buffer.getLine(2));
+    }
+
+    @Test
+    public void appendShouldTruncateLinesLongerThanTheBuffer() {
+        ConsoleBuffer buffer = new ConsoleBuffer(10, 5);
+        buffer.append(MessageType.INFO, "abcdefgh");
+
+        assertEquals(0, buffer.getFirstLine());
+        assertEquals(1, buffer.getEndLine());
+        assertEquals("defgh", buffer.getLine(0));
+        assertEquals(5, buffer.getLength(0));
+    }
+
+    @Test
+    public void containsShouldIgnoreCase() {
+        ConsoleBuffer buffer = new ConsoleBuffer(10, 12);
+        buffer.append(MessageType.INFO, "ok\n");
+        buffer.append(MessageType.INFO, "<Idle|MPos>\n");
+
+        // Evicts the first line and makes the second one wrap around
+        assertTrue(buffer.contains(1, "idle"));
+        assertTrue(buffer.contains(1, "MPOS"));
+        assertFalse(buffer.contains(1, "run"));
+        assertFalse(buffer.contains(0, "ok"));
+    }
+
+    @Test
+    public void findShouldSearchInBothDirections() {
+        ConsoleBuffer buffer = new ConsoleBuffer(10, 100);
+        buffer.append(MessageType.INFO, "ok\nerror:1\nok\nerror:2\n");
+
+        assertEquals(1, buffer.find("error", 0, true));
+        assertEquals(3, buffer.find("error", 2, true));
+        assertEquals(-1, buffer.find("error", 4, true));
+        assertEquals(1, buffer.find("error", 2, false));
+        assertEquals(-1, buffer.find("alarm", 3, false));
+    }
+
+    @Test
+    public void clearShouldRemoveAllLinesButKeepTheLineNumbers() {
+        ConsoleBuffer buffer = new ConsoleBuffer(10, 100);
+        buffer.append(MessageType.INFO, "first\nsecond");
+        long modificationCount = buffer.getModificationCount();
+
+        buffer.clear();
+        assertEquals(2, buffer.getFirstLine());
+        assertEquals(2, buffer.getEndLine());
+        assertTrue(buffer.getModificationCount() > modificationCount);
+
+        buffer.append(MessageType.INFO, "third\n");
+        assertEquals("third", buffer.getLine(2));
+    }
+}
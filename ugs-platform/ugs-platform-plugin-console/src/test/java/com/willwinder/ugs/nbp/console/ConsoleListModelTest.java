@@ -0,0 +1,91 @@
+package com.willwinder.ugs.nbp.console;
+
+import com.willwinder.universalgcodesender.listeners.MessageType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConsoleListModelTest {
+
+    @Test
+    public void updateShouldAddAppendedLines() {
+        ConsoleBuffer buffer = new ConsoleBuffer(10, 1000);
+        ConsoleListModel model = new ConsoleListModel(buffer);
+
+        buffer.append(MessageType.INFO, "first\nsecond line\n");
+        assertEquals(0, model.update());
+
+        assertEquals(2, model.getSize());
+        assertEquals(Long.valueOf(0), model.getElementAt(0));
+        assertEquals(Long.valueOf(1), model.getElementAt(1));
+        assertEquals(11, model.getMaxLineLength());
+    }
+
+    @Test
+    public void updateShouldUpdateContinuedLines() {
+        ConsoleBuffer buffer = new ConsoleBuffer(10, 1000);
+        ConsoleListModel model = new ConsoleListModel(buffer);
+
+        buffer.append(MessageType.INFO, "first");
+        model.update();
+        buffer.append(MessageType.INFO, " line\n");
+        model.update();
+
+        assertEquals(1, model.getSize());
+        assertEquals(10, model.getMaxLineLength());
+    }
+
+    @Test
+    public void updateShouldRemoveLinesTrimmedFromTheBuffer() {
+        ConsoleBuffer buffer = new ConsoleBuffer(3, 1000);
+        ConsoleListModel model = new ConsoleListModel(buffer);
+        buffer.append(MessageType.INFO, "line 0\nline 1\nline 2\n");
+        model.update();
+
+        buffer.append(MessageType.INFO, "line 3\nline 4\n");
+        assertEquals(2, model.update());
+
+        assertEquals(3, model.getSize());
+        assertEquals(2, model.getLine(0));
+        assertEquals(4, model.getLine(2));
+        assertEquals(-1, model.getIndex(1));
+        assertEquals(2, model.getIndex(4));
+    }
+
+    @Test
+    public void updateShouldRemoveAllLinesWhenTheBufferIsCleared() {
+        ConsoleBuffer buffer = new ConsoleBuffer(10, 1000);
+        ConsoleListModel model = new ConsoleListModel(buffer);
+        buffer.append(MessageType.INFO, "a very long line\nline\n");
+        model.update();
+
+        buffer.clear();
+        assertEquals(2, model.update());
+        assertEquals(0, model.getSize());
+        assertEquals(0, model.getMaxLineLength());
+
+        buffer.append(MessageType.INFO, "short\n");
+        model.update();
+        assertEquals(1, model.getSize());
+        assertEquals(2, model.getLine(0));
+        assertEquals(5, model.getMaxLineLength());
+    }
+
+    @Test
+    public void setFilterShouldOnlyShowMatchingLines() {
+        ConsoleBuffer buffer = new ConsoleBuffer(10, 1000);
+        ConsoleListModel model = new ConsoleListModel(buffer);
+        buffer.append(MessageType.INFO, "ok\nerror: alarm\nok\nERROR\n");
+
+        model.setFilter("error");
+        assertEquals(2, model.getSize());
+        assertEquals(1, model.getLine(0));
+        assertEquals(3, model.getLine(1));
+        assertEquals(12, model.getMaxLineLength());
+
+        buffer.clear();
+        model.update();
+        assertEquals(0, model.getSize());
+        assertEquals(0, model.getMaxLineLength());
+    }
+}
@@ -1,5 +1,5 @@
 /*
-    Copyright 2022 Will Winder
+    Copyright 2022-2023 Will Winder
 
     This file is part of Universal Gcode Sender (UGS).
 
@@ -20,20 +20,15 @@ package com.willwinder.ugs.nbp.designer.gui.imagetracer;
 
 import com.willwinder.ugs.nbp.designer.Throttler;
 import com.willwinder.ugs.nbp.designer.entities.Entity;
-import com.willwinder.ugs.nbp.designer.entities.cuttable.Group;
-import com.willwinder.ugs.nbp.designer.io.svg.SvgReader;
-import com.willwinder.ugs.nbp.designer.model.Design;
 import com.willwinder.universalgcodesender.utils.ThreadHelper;
 import net.miginfocom.swing.MigLayout;
-import org.apache.commons.lang3.StringUtils;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
-import java.io.ByteArrayInputStream;
+import java.awt.image.BufferedImage;
 import java.io.File;
-import java.nio.charset.Charset;
-import java.util.*;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -42,11 +37,11 @@ import java.util.List;
 public class ImageTracerDialog extends JDialog {
     private transient List<Entity> entities = new ArrayList<>();
     private final transient Throttler refreshThrottler;
-    private final SVGCanvas svgCanvas = new SVGCanvas();
+    private final TracePreviewPanel previewPanel = new TracePreviewPanel();
     private final TraceSettingsPanel settingsPanel = new TraceSettingsPanel();
 
-    private File selectedFile;
-    private String generatedSvgData;
+    private transient volatile BufferedImage image;
+    private transient volatile List<TracedShape> tracedShapes = new ArrayList<>();
 
     public ImageTracerDialog() {
         super((JFrame) null, true);
@@ -55,9 +50,9 @@ public class ImageTracerDialog extends JDialog {
         setMinimumSize(new Dimension(500, 500));
         setLayout(new MigLayout("fill, insets 5", "[170px][grow]", "[grow][20px]"));
 
-        svgCanvas.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY, 1));
+        previewPanel.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY, 1));
         add(settingsPanel, "grow");
-        add(svgCanvas, "grow, wrap");
+        add(previewPanel, "grow, wrap");
 
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         JButton openImage = new JButton("Open");
@@ -73,19 +68,21 @@ public class ImageTracerDialog extends JDialog {
         buttonPanel.add(okButton);
         add(buttonPanel, "spanx, grow");
 
-        refreshThrottler = new Throttler(this::refreshSvg, 1000);
+        refreshThrottler = new Throttler(this::refreshPreview, 1000);
         settingsPanel.addListener(e -> refreshThrottler.run());
         setResizable(true);
         pack();
     }
 
-    private void refreshSvg() {
+    private void refreshPreview() {
         ThreadHelper.invokeLater(() -> {
-            if (selectedFile != null) {
-                generatedSvgData = TraceUtils.traceImage(selectedFile, settingsPanel.getSettings());
-                svgCanvas.setSvgData(generatedSvgData);
+            BufferedImage currentImage = image;
+            if (currentImage != null) {
+                tracedShapes = TraceUtils.traceImage(currentImage, settingsPanel.getSettings());
+                previewPanel.setTracedShapes(tracedShapes, new Dimension(currentImage.getWidth(), currentImage.getHeight()));
             } else {
-                svgCanvas.setSVGDocument(null);
+                tracedShapes = new ArrayList<>();
+                previewPanel.setTracedShapes(tracedShapes, new Dimension());
             }
         });
     }
@@ -100,35 +97,19 @@ public class ImageTracerDialog extends JDialog {
     }
 
     private void generateEntities() {
-        SvgReader svgReader = new SvgReader();
-        Optional<Design> designOptional = svgReader.read(new ByteArrayInputStream(generatedSvgData.getBytes(Charset.defaultCharset())));
-        designOptional.ifPresent(design -> {
-            Map<String, List<Entity>> entityLayersMap = new HashMap<>();
-            ((Group) design.getEntities().get(0)).getAllChildren().forEach(entity -> {
-                String layerId = StringUtils.substringBetween(entity.getDescription(), "l ", " ");
-                List<Entity> layerEntities = entityLayersMap.getOrDefault(layerId, new ArrayList<>());
-                layerEntities.add(entity);
-                entityLayersMap.put(layerId, layerEntities);
-            });
-
-            List<String> layerIds = new ArrayList<>(entityLayersMap.keySet());
-            Collections.reverse(layerIds);
-
-            entities = new ArrayList<>();
-            layerIds.forEach(layerId -> {
-                Group layerGroup = new Group();
-                layerGroup.setName(layerId);
-                layerGroup.addAll(entityLayersMap.get(layerId));
-                entities.add(layerGroup);
-            });
-            dispose();
-        });
+        entities = TraceUtils.createEntities(tracedShapes);
+        dispose();
     }
 
-
     private void setSelectedFile(File selectedFile) {
-        this.selectedFile = selectedFile;
-        refreshThrottler.run();
+        if (selectedFile == null) {
+            return;
+        }
+
+        ThreadHelper.invokeLater(() -> {
+            image = TraceUtils.readImage(selectedFile);
+            refreshThrottler.run();
+        });
     }
 
     public static void main(String[] args) {
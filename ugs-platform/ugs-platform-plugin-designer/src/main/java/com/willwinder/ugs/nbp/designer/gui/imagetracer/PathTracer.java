@@ -0,0 +1,592 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.gui.imagetracer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Traces a grayscale image into closed shapes for each color layer. This is a port of the
+ * tracing in {@link jankovicsandras.imagetracer.ImageTracer} that works on primitive arrays,
+ * traces the color layers in parallel and creates the shapes directly instead of an SVG.
+ * <p>
+ * As the image is grayscale, the color quantization is made on a histogram of the gray levels
+ * which gives the same result as comparing every pixel.
+ *
+ * @author Joacim Breiler
+ */
+public class PathTracer {
+    /**
+     * The maximum number of colors, limited by the indexed image using a byte for each pixel
+     */
+    public static final int MAX_NUMBER_OF_COLORS = 127;
+
+    private static final int ROWS_PER_TASK = 64;
+    private static final int GRAY_LEVELS = 256;
+
+    // Edge node types ( ▓:light or 1; ░:dark or 0 )
+    // ░░  ▓░  ░▓  ▓▓  ░░  ▓░  ░▓  ▓▓  ░░  ▓░  ░▓  ▓▓  ░░  ▓░  ░▓  ▓▓
+    // ░░  ░░  ░░  ░░  ░▓  ░▓  ░▓  ░▓  ▓░  ▓░  ▓░  ▓░  ▓▓  ▓▓  ▓▓  ▓▓
+    // 0   1   2   3   4   5   6   7   8   9   10  11  12  13  14  15
+    private static final byte[] PATHSCAN_DIR_LOOKUP = {0, 0, 3, 0, 1, 0, 3, 0, 0, 3, 3, 1, 0, 3, 0, 0};
+    private static final boolean[] PATHSCAN_HOLEPATH_LOOKUP = {false, false, false, false, false, false, false, true, false, false, false, true, false, true, true, false};
+
+    /**
+     * The lookup [edge node type][walk direction] = [next edge node type, next direction, delta x, delta y]
+     */
+    private static final byte[][][] PATHSCAN_COMBINED_LOOKUP = {
+            {{-1, -1, -1, -1}, {-1, -1, -1, -1}, {-1, -1, -1, -1}, {-1, -1, -1, -1}},
+            {{0, 1, 0, -1}, {-1, -1, -1, -1}, {-1, -1, -1, -1}, {0, 2, -1, 0}},
+            {{-1, -1, -1, -1}, {-1, -1, -1, -1}, {0, 1, 0, -1}, {0, 0, 1, 0}},
+            {{0, 0, 1, 0}, {-1, -1, -1, -1}, {0, 2, -1, 0}, {-1, -1, -1, -1}},
+
+            {{-1, -1, -1, -1}, {0, 0, 1, 0}, {0, 3, 0, 1}, {-1, -1, -1, -1}},
+            {{13, 3, 0, 1}, {13, 2, -1, 0}, {7, 1, 0, -1}, {7, 0, 1, 0}},
+            {{-1, -1, -1, -1}, {0, 1, 0, -1}, {-1, -1, -1, -1}, {0, 3, 0, 1}},
+            {{0, 3, 0, 1}, {0, 2, -1, 0}, {-1, -1, -1, -1}, {-1, -1, -1, -1}},
+
+            {{0, 3, 0, 1}, {0, 2, -1, 0}, {-1, -1, -1, -1}, {-1, -1, -1, -1}},
+            {{-1, -1, -1, -1}, {0, 1, 0, -1}, {-1, -1, -1, -1}, {0, 3, 0, 1}},
+            {{11, 1, 0, -1}, {14, 0, 1, 0}, {14, 3, 0, 1}, {11, 2, -1, 0}},
+            {{-1, -1, -1, -1}, {0, 0, 1, 0}, {0, 3, 0, 1}, {-1, -1, -1, -1}},
+
+            {{0, 0, 1, 0}, {-1, -1, -1, -1}, {0, 2, -1, 0}, {-1, -1, -1, -1}},
+            {{-1, -1, -1, -1}, {-1, -1, -1, -1}, {0, 1, 0, -1}, {0, 0, 1, 0}},
+            {{0, 1, 0, -1}, {-1, -1, -1, -1}, {-1, -1, -1, -1}, {0, 2, -1, 0}},
+            {{-1, -1, -1, -1}, {-1, -1, -1, -1}, {-1, -1, -1, -1}, {-1, -1, -1, -1}}
+    };
+
+    private static final double[][] GAUSSIAN_KERNELS = {
+            {0.27901, 0.44198, 0.27901},
+            {0.135336, 0.228569, 0.272192, 0.228569, 0.135336},
+            {0.086776, 0.136394, 0.178908, 0.195843, 0.178908, 0.136394, 0.086776},
+            {0.063327, 0.093095, 0.122589, 0.144599, 0.152781, 0.144599, 0.122589, 0.093095, 0.063327},
+            {0.049692, 0.069304, 0.089767, 0.107988, 0.120651, 0.125194, 0.120651, 0.107988, 0.089767, 0.069304, 0.049692}
+    };
+
+    private final ForkJoinPool pool;
+
+    public PathTracer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool the pool to run the color quantization and the tracing of each layer in
+     */
+    public PathTracer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Traces the image into shapes. The shapes are ordered by their start position in the image
+     * so that enclosing shapes are drawn before the shapes within them.
+     *
+     * @param image    the image to trace, will be converted to grayscale if needed
+     * @param settings the trace settings
+     * @return a list of traced shapes in image pixel coordinates
+     */
+    public List<TracedShape> trace(BufferedImage image, TraceSettings settings) {
+        int numberOfColors = settings.getNumberOfColors();
+        if (numberOfColors < 1 || numberOfColors > MAX_NUMBER_OF_COLORS) {
+            throw new IllegalArgumentException("The number of colors must be between 1 and " + MAX_NUMBER_OF_COLORS);
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] pixels = getGrayPixels(image);
+        if (settings.getBlurRadius() > 0) {
+            pixels = blur(pixels, width, height, settings.getBlurRadius(), settings.getBlurDelta());
+        }
+
+        int[] palette = generatePalette(numberOfColors, settings.getStartColor(), settings.getEndColor());
+        byte[] colorIndexLookup = quantize(pixels, palette, settings.getColorQuantize());
+        byte[] indexedImage = createIndexedImage(pixels, width, height, colorIndexLookup);
+
+        List<ForkJoinTask<List<TracedPath>>> layerTasks = new ArrayList<>(palette.length);
+        for (int layer = 0; layer < palette.length; layer++) {
+            final int currentLayer = layer;
+            Color color = new Color(palette[layer], palette[layer], palette[layer]);
+            layerTasks.add(pool.submit(() -> traceLayer(indexedImage, width, height, currentLayer, color, settings)));
+        }
+
+        List<TracedPath> tracedPaths = new ArrayList<>();
+        layerTasks.forEach(task -> tracedPaths.addAll(task.join()));
+
+        // Sorting is stable which will keep the layer order for paths starting at the same position
+        tracedPaths.sort(Comparator.comparingDouble(tracedPath -> tracedPath.label));
+
+        List<TracedShape> result = new ArrayList<>(tracedPaths.size());
+        tracedPaths.forEach(tracedPath -> result.add(tracedPath.shape));
+        return result;
+    }
+
+    /**
+     * Returns the gray level of each pixel as they are given by {@link BufferedImage#getRGB}, which
+     * converts the linear gray levels of the image to the sRGB color space
+     */
+    private static byte[] getGrayPixels(BufferedImage image) {
+        BufferedImage grayImage = image;
+        if (image.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+            grayImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D graphics = grayImage.createGraphics();
+            graphics.drawImage(image, 0, 0, null);
+            graphics.dispose();
+        }
+
+        byte[] pixels = (byte[]) grayImage.getRaster().getDataElements(0, 0, grayImage.getWidth(), grayImage.getHeight(), null);
+        byte[] levelLookup = createGrayLevelLookup();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = levelLookup[pixels[i] & 0xFF];
+        }
+        return pixels;
+    }
+
+    private static byte[] createGrayLevelLookup() {
+        BufferedImage levels = new BufferedImage(GRAY_LEVELS, 1, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] levelLookup = new byte[GRAY_LEVELS];
+        for (int level = 0; level < GRAY_LEVELS; level++) {
+            levels.getRaster().setSample(level, 0, 0, level);
+            levelLookup[level] = (byte) levels.getRGB(level, 0);
+        }
+        return levelLookup;
+    }
+
+    /**
+     * Generates a palette of gray levels going from the end color to the start color
+     */
+    static int[] generatePalette(int numberOfColors, int startColor, int endColor) {
+        int step = (startColor - endColor) / numberOfColors;
+        int[] palette = new int[numberOfColors];
+        for (int i = 0; i < numberOfColors; i++) {
+            palette[i] = endColor + (i * step);
+        }
+        return palette;
+    }
+
+    /**
+     * Clusters the gray levels around the palette colors using K-means. The palette is updated
+     * with the average of the levels in each cluster between each cycle.
+     *
+     * @return a lookup table with the palette index for each gray level
+     */
+    private static byte[] quantize(byte[] pixels, int[] palette, int cycles) {
+        long[] histogram = new long[GRAY_LEVELS];
+        for (byte pixel : pixels) {
+            histogram[pixel & 0xFF]++;
+        }
+
+        byte[] colorIndexLookup = new byte[GRAY_LEVELS];
+        long[] levelSum = new long[palette.length];
+        long[] pixelCount = new long[palette.length];
+        for (int cycle = 0; cycle < Math.max(1, cycles); cycle++) {
+            if (cycle > 0) {
+                for (int i = 0; i < palette.length; i++) {
+                    if (pixelCount[i] > 0) {
+                        palette[i] = (int) (levelSum[i] / pixelCount[i]);
+                    }
+                }
+            }
+
+            Arrays.fill(levelSum, 0);
+            Arrays.fill(pixelCount, 0);
+            for (int level = 0; level < GRAY_LEVELS; level++) {
+                int closestIndex = findClosestColor(palette, level);
+                colorIndexLookup[level] = (byte) closestIndex;
+                levelSum[closestIndex] += histogram[level] * level;
+                pixelCount[closestIndex] += histogram[level];
+            }
+        }
+        return colorIndexLookup;
+    }
+
+    private static int findClosestColor(int[] palette, int level) {
+        int closestDistance = Integer.MAX_VALUE;
+        int closestIndex = 0;
+        for (int i = 0; i < palette.length; i++) {
+            int distance = Math.abs(palette[i] - level);
+            if (distance < closestDistance) {
+                closestDistance = distance;
+                closestIndex = i;
+            }
+        }
+        return closestIndex;
+    }
+
+    /**
+     * Creates an image with the palette index of each pixel with a border of -1 in every direction
+     */
+    private byte[] createIndexedImage(byte[] pixels, int width, int height, byte[] colorIndexLookup) {
+        int paddedWidth = width + 2;
+        byte[] indexedImage = new byte[paddedWidth * (height + 2)];
+        Arrays.fill(indexedImage, 0, paddedWidth, (byte) -1);
+        Arrays.fill(indexedImage, indexedImage.length - paddedWidth, indexedImage.length, (byte) -1);
+
+        forEachRow(height, row -> {
+            int offset = (row + 1) * paddedWidth;
+            indexedImage[offset] = -1;
+            indexedImage[offset + paddedWidth - 1] = -1;
+            for (int x = 0; x < width; x++) {
+                indexedImage[offset + x + 1] = colorIndexLookup[pixels[row * width + x] & 0xFF];
+            }
+        });
+        return indexedImage;
+    }
+
+    private List<TracedPath> traceLayer(byte[] indexedImage, int width, int height, int layer, Color color, TraceSettings settings) {
+        byte[] edgeNodes = findEdgeNodes(indexedImage, width + 2, height + 2, layer);
+        List<TracedPath> result = new ArrayList<>();
+        scanPaths(edgeNodes, width + 2, height + 2, settings.getPathOmit(), (xs, ys, length) -> {
+            double[] internodeX = new double[length];
+            double[] internodeY = new double[length];
+            byte[] directions = new byte[length];
+            createInternodes(xs, ys, length, internodeX, internodeY, directions);
+
+            Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, length);
+            path.moveTo(internodeX[0], internodeY[0]);
+            tracePath(internodeX, internodeY, directions, settings.getLineThreshold(), settings.getQuadThreshold(), path);
+            path.closePath();
+
+            double label = (internodeY[0] * width) + internodeX[0];
+            result.add(new TracedPath(label, new TracedShape(layer, color, path)));
+        });
+        return result;
+    }
+
+    /**
+     * Finds the edge node type for every pixel of the given layer, see the edge node types above
+     */
+    private static byte[] findEdgeNodes(byte[] indexedImage, int paddedWidth, int paddedHeight, int layer) {
+        byte[] edgeNodes = new byte[paddedWidth * paddedHeight];
+        for (int y = 1; y < paddedHeight - 1; y++) {
+            int row = y * paddedWidth;
+            for (int x = 1; x < paddedWidth - 1; x++) {
+                if (indexedImage[row + x] != layer) {
+                    continue;
+                }
+
+                // Are neighbor pixel colors the same?
+                int previousRow = row - paddedWidth;
+                int nextRow = row + paddedWidth;
+                int n1 = indexedImage[previousRow + x - 1] == layer ? 1 : 0;
+                int n2 = indexedImage[previousRow + x] == layer ? 1 : 0;
+                int n3 = indexedImage[previousRow + x + 1] == layer ? 1 : 0;
+                int n4 = indexedImage[row + x - 1] == layer ? 1 : 0;
+                int n5 = indexedImage[row + x + 1] == layer ? 1 : 0;
+                int n6 = indexedImage[nextRow + x - 1] == layer ? 1 : 0;
+                int n7 = indexedImage[nextRow + x] == layer ? 1 : 0;
+                int n8 = indexedImage[nextRow + x + 1] == layer ? 1 : 0;
+
+                // This pixel's type and looking back on previous pixels
+                edgeNodes[nextRow + x + 1] = (byte) (1 + (n5 * 2) + (n8 * 4) + (n7 * 8));
+                if (n4 == 0) {
+                    edgeNodes[nextRow + x] = (byte) (2 + (n7 * 4) + (n6 * 8));
+                }
+                if (n2 == 0) {
+                    edgeNodes[row + x + 1] = (byte) ((n3 * 2) + (n5 * 4) + 8);
+                }
+                if (n1 == 0) {
+                    edgeNodes[row + x] = (byte) ((n2 * 2) + 4 + (n4 * 8));
+                }
+            }
+        }
+        return edgeNodes;
+    }
+
+    /**
+     * Walks through the edge nodes creating paths, the walked edge nodes are cleared. Hole paths
+     * and paths shorter than the path omit limit are discarded.
+     */
+    private static void scanPaths(byte[] edgeNodes, int paddedWidth, int paddedHeight, int pathOmit, PathConsumer consumer) {
+        int[] xs = new int[256];
+        int[] ys = new int[256];
+        for (int y = 0; y < paddedHeight; y++) {
+            for (int x = 0; x < paddedWidth; x++) {
+                int nodeType = edgeNodes[y * paddedWidth + x];
+                if (nodeType == 0 || nodeType == 15) {
+                    continue;
+                }
+
+                int px = x;
+                int py = y;
+                int direction = PATHSCAN_DIR_LOOKUP[nodeType];
+                boolean isHolePath = PATHSCAN_HOLEPATH_LOOKUP[nodeType];
+                int length = 0;
+                do {
+                    if (length == xs.length) {
+                        xs = Arrays.copyOf(xs, length * 2);
+                        ys = Arrays.copyOf(ys, length * 2);
+                    }
+                    xs[length] = px - 1;
+                    ys[length] = py - 1;
+                    length++;
+
+                    // Look up the replacement, direction and coordinate changes, clear this cell, turn if required, walk forward
+                    int index = py * paddedWidth + px;
+                    byte[] lookup = PATHSCAN_COMBINED_LOOKUP[edgeNodes[index]][direction];
+                    edgeNodes[index] = lookup[0];
+                    direction = lookup[1];
+                    px += lookup[2];
+                    py += lookup[3];
+                } while (px - 1 != xs[0] || py - 1 != ys[0]);
+
+                if (!isHolePath && length >= pathOmit) {
+                    consumer.accept(xs, ys, length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Interpolates between the path points creating nodes with eight directions
+     * (E, SE, S, SW, W, NW, N, NE)
+     */
+    private static void createInternodes(int[] xs, int[] ys, int length, double[] internodeX, double[] internodeY, byte[] directions) {
+        for (int i = 0; i < length; i++) {
+            int next = (i + 1) % length;
+            int nextNext = (i + 2) % length;
+            double x = (xs[i] + xs[next]) / 2.0;
+            double y = (ys[i] + ys[next]) / 2.0;
+            double nextX = (xs[next] + xs[nextNext]) / 2.0;
+            double nextY = (ys[next] + ys[nextNext]) / 2.0;
+            internodeX[i] = x;
+            internodeY[i] = y;
+
+            if (x < nextX) {
+                directions[i] = (byte) (y < nextY ? 1 : (y > nextY ? 7 : 0));
+            } else if (x > nextX) {
+                directions[i] = (byte) (y < nextY ? 3 : (y > nextY ? 5 : 4));
+            } else {
+                directions[i] = (byte) (y < nextY ? 2 : (y > nextY ? 6 : 8));
+            }
+        }
+    }
+
+    /**
+     * Splits the path into sequences of points with only two directions and fits straight lines
+     * or quadratic curves on them
+     */
+    private static void tracePath(double[] xs, double[] ys, byte[] directions, float lineThreshold, float quadThreshold, Path2D path) {
+        int length = xs.length;
+        int pointIndex = 0;
+        while (pointIndex < length) {
+            int direction1 = directions[pointIndex];
+            int direction2 = -1;
+            int sequenceEnd = pointIndex + 1;
+            while ((directions[sequenceEnd] == direction1 || directions[sequenceEnd] == direction2 || direction2 == -1) && sequenceEnd < length - 1) {
+                if (directions[sequenceEnd] != direction1 && direction2 == -1) {
+                    direction2 = directions[sequenceEnd];
+                }
+                sequenceEnd++;
+            }
+
+            if (sequenceEnd == length - 1) {
+                sequenceEnd = 0;
+            }
+
+            fitSequence(xs, ys, lineThreshold, quadThreshold, pointIndex, sequenceEnd, path);
+            pointIndex = sequenceEnd > 0 ? sequenceEnd : length;
+        }
+    }
+
+    /**
+     * Recursively fits a straight line or a quadratic curve on the sequence of points. If neither
+     * fits, the sequence is split at the point with the largest error.
+     */
+    private static void fitSequence(double[] xs, double[] ys, float lineThreshold, float quadThreshold, int sequenceStart, int sequenceEnd, Path2D path) {
+        int length = xs.length;
+        if (sequenceEnd > length || sequenceEnd < 0) {
+            return;
+        }
+
+        int errorPoint = sequenceStart;
+        boolean curvePass = true;
+        double errorValue = 0;
+        double totalLength = sequenceEnd - sequenceStart;
+        if (totalLength < 0) {
+            totalLength += length;
+        }
+
+        // Fit a straight line on the sequence
+        double vx = (xs[sequenceEnd] - xs[sequenceStart]) / totalLength;
+        double vy = (ys[sequenceEnd] - ys[sequenceStart]) / totalLength;
+        int pointIndex = (sequenceStart + 1) % length;
+        while (pointIndex != sequenceEnd) {
+            double pointLength = pointIndex - sequenceStart;
+            if (pointLength < 0) {
+                pointLength += length;
+            }
+
+            double px = xs[sequenceStart] + (vx * pointLength);
+            double py = ys[sequenceStart] + (vy * pointLength);
+            double distance = ((xs[pointIndex] - px) * (xs[pointIndex] - px)) + ((ys[pointIndex] - py) * (ys[pointIndex] - py));
+            if (distance > lineThreshold) {
+                curvePass = false;
+            }
+            if (distance > errorValue) {
+                errorPoint = pointIndex;
+                errorValue = distance;
+            }
+            pointIndex = (pointIndex + 1) % length;
+        }
+
+        if (curvePass) {
+            path.lineTo(xs[sequenceEnd], ys[sequenceEnd]);
+            return;
+        }
+
+        // Fit a quadratic curve through the point with the biggest error
+        int fitPoint = errorPoint;
+        curvePass = true;
+        errorValue = 0;
+        double t = (fitPoint - sequenceStart) / totalLength;
+        double t1 = (1.0 - t) * (1.0 - t);
+        double t2 = 2.0 * (1.0 - t) * t;
+        double t3 = t * t;
+        double cpx = (((t1 * xs[sequenceStart]) + (t3 * xs[sequenceEnd])) - xs[fitPoint]) / -t2;
+        double cpy = (((t1 * ys[sequenceStart]) + (t3 * ys[sequenceEnd])) - ys[fitPoint]) / -t2;
+
+        pointIndex = (sequenceStart + 1) % length;
+        while (pointIndex != sequenceEnd) {
+            t = (pointIndex - sequenceStart) / totalLength;
+            t1 = (1.0 - t) * (1.0 - t);
+            t2 = 2.0 * (1.0 - t) * t;
+            t3 = t * t;
+            double px = (t1 * xs[sequenceStart]) + (t2 * cpx) + (t3 * xs[sequenceEnd]);
+            double py = (t1 * ys[sequenceStart]) + (t2 * cpy) + (t3 * ys[sequenceEnd]);
+            double distance = ((xs[pointIndex] - px) * (xs[pointIndex] - px)) + ((ys[pointIndex] - py) * (ys[pointIndex] - py));
+            if (distance > quadThreshold) {
+                curvePass = false;
+            }
+            if (distance > errorValue) {
+                errorPoint = pointIndex;
+                errorValue = distance;
+            }
+            pointIndex = (pointIndex + 1) % length;
+        }
+
+        if (curvePass) {
+            path.quadTo(cpx, cpy, xs[sequenceEnd], ys[sequenceEnd]);
+            return;
+        }
+
+        // Split the sequence between the fitting point and the error point
+        int splitPoint = (fitPoint + errorPoint) / 2;
+        fitSequence(xs, ys, lineThreshold, quadThreshold, sequenceStart, splitPoint, path);
+        fitSequence(xs, ys, lineThreshold, quadThreshold, splitPoint, sequenceEnd, path);
+    }
+
+    /**
+     * A selective gaussian blur, pixels that differ more than the delta from the blurred pixel
+     * are kept as they are
+     */
+    private byte[] blur(byte[] pixels, int width, int height, int blurRadius, int blurDelta) {
+        int radius = Math.min(blurRadius, GAUSSIAN_KERNELS.length);
+        int delta = Math.min(Math.abs(blurDelta), 1024);
+        double[] kernel = GAUSSIAN_KERNELS[radius - 1];
+
+        // Horizontal blur
+        byte[] horizontal = new byte[pixels.length];
+        forEachRow(height, y -> {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                double sum = 0;
+                double weight = 0;
+                for (int k = -radius; k <= radius; k++) {
+                    if (x + k > 0 && x + k < width) {
+                        sum += (pixels[row + x + k] & 0xFF) * kernel[k + radius];
+                        weight += kernel[k + radius];
+                    }
+                }
+                horizontal[row + x] = weight > 0 ? (byte) Math.floor(sum / weight) : pixels[row + x];
+            }
+        });
+
+        // Vertical blur, keeping the original pixel if the difference is larger than delta
+        byte[] result = new byte[pixels.length];
+        forEachRow(height, y -> {
+            for (int x = 0; x < width; x++) {
+                double sum = 0;
+                double weight = 0;
+                for (int k = -radius; k <= radius; k++) {
+                    if (y + k > 0 && y + k < height) {
+                        sum += (horizontal[((y + k) * width) + x] & 0xFF) * kernel[k + radius];
+                        weight += kernel[k + radius];
+                    }
+                }
+
+                int index = (y * width) + x;
+                int original = pixels[index] & 0xFF;
+                int blurred = weight > 0 ? (int) Math.floor(sum / weight) : (horizontal[index] & 0xFF);
+
+                // The difference is counted for each of the red, green and blue channels
+                result[index] = Math.abs(blurred - original) * 3 > delta ? pixels[index] : (byte) blurred;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Runs the row task in parallel for bands of rows and waits for them to finish
+     */
+    private void forEachRow(int rowCount, RowTask rowTask) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int start = 0; start < rowCount; start += ROWS_PER_TASK) {
+            int bandStart = start;
+            int bandEnd = Math.min(rowCount, start + ROWS_PER_TASK);
+            tasks.add(pool.submit(() -> {
+                for (int row = bandStart; row < bandEnd; row++) {
+                    rowTask.run(row);
+                }
+            }));
+        }
+        tasks.forEach(ForkJoinTask::join);
+    }
+
+    private interface RowTask {
+        void run(int row);
+    }
+
+    private interface PathConsumer {
+        /**
+         * Accepts the points of a path, the arrays are reused and only valid during the call
+         */
+        void accept(int[] xs, int[] ys, int length);
+    }
+
+    private static class TracedPath {
+        /**
+         * The start position of the path used for ordering the paths
+         */
+        private final double label;
+        private final TracedShape shape;
+
+        private TracedPath(double label, TracedShape shape) {
+            this.label = label;
+            this.shape = shape;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.gui.imagetracer;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows a preview of the traced shapes scaled to fit the panel
+ *
+ * @author Joacim Breiler
+ */
+public class TracePreviewPanel extends JPanel {
+    private transient List<TracedShape> tracedShapes = new ArrayList<>();
+    private Dimension imageSize = new Dimension();
+
+    public TracePreviewPanel() {
+        setBackground(Color.WHITE);
+    }
+
+    /**
+     * Sets the shapes to show, can be called from any thread
+     *
+     * @param tracedShapes the traced shapes in image pixel coordinates
+     * @param imageSize    the size of the traced image
+     */
+    public void setTracedShapes(List<TracedShape> tracedShapes, Dimension imageSize) {
+        SwingUtilities.invokeLater(() -> {
+            this.tracedShapes = tracedShapes;
+            this.imageSize = imageSize;
+            repaint();
+        });
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (tracedShapes.isEmpty() || imageSize.width == 0 || imageSize.height == 0) {
+            return;
+        }
+
+        Insets insets = getInsets();
+        int width = getWidth() - insets.left - insets.right;
+        int height = getHeight() - insets.top - insets.bottom;
+        double scale = Math.min(width / (double) imageSize.width, height / (double) imageSize.height);
+
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.translate(insets.left + (width - imageSize.width * scale) / 2, insets.top + (height - imageSize.height * scale) / 2);
+        g2.transform(AffineTransform.getScaleInstance(scale, scale));
+        for (TracedShape tracedShape : tracedShapes) {
+            g2.setColor(tracedShape.getColor());
+            g2.fill(tracedShape.getShape());
+            g2.draw(tracedShape.getShape());
+        }
+        g2.dispose();
+    }
+}
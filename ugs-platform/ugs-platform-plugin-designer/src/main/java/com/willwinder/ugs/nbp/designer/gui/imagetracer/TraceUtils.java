@@ -1,5 +1,5 @@
 /*
-    Copyright 2022 Will Winder
+    Copyright 2022-2023 Will Winder
 
     This file is part of Universal Gcode Sender (UGS).
 
@@ -18,71 +18,103 @@
  */
 package com.willwinder.ugs.nbp.designer.gui.imagetracer;
 
-import jankovicsandras.imagetracer.ImageTracer;
+import com.willwinder.ugs.nbp.designer.entities.Entity;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Group;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Path;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * @author Joacim Breiler
  */
 public class TraceUtils {
 
-    public static String traceImage(File selectedFile, TraceSettings settingsPanel) {
-        // Options
-        HashMap<String, Float> options = new HashMap<>();
+    /**
+     * The size of an image pixel in millimeters, using the same resolution as SVG files
+     */
+    private static final double MM_PER_PIXEL = 25.4 / 96.0;
 
-        // Tracing
-        options.put("ltres", settingsPanel.getLineThreshold());
-        options.put("qtres", settingsPanel.getQuadThreshold());
-        options.put("pathomit", Integer.valueOf(settingsPanel.getPathOmit()).floatValue());
-
-        // Color quantization
-        options.put("colorsampling", 0f); // 1f means true ; 0f means false: starting with generated palette
-        int numberOfColors = settingsPanel.getNumberOfColors();
-        options.put("numberofcolors", Integer.valueOf(numberOfColors).floatValue());
-        options.put("mincolorratio", 0f);
-        options.put("colorquantcycles", Integer.valueOf(settingsPanel.getColorQuantize()).floatValue());
-
-        // SVG rendering
-        options.put("scale", 1f);
-        options.put("roundcoords", 0f); // 1f means rounded to 1 decimal places, like 7.3 ; 3f means rounded to 3 places, like 7.356 ; etc.
-        options.put("lcpr", 0f);
-        options.put("qcpr", 0f);
-        options.put("desc", 1f); // 1f means true ; 0f means false: SVG descriptions deactivated
-        options.put("viewbox", 0f); // 1f means true ; 0f means false: fixed width and height
-
-        // Selective Gauss Blur
-        options.put("blurradius", Integer.valueOf(settingsPanel.getBlurRadius()).floatValue()); // 0f means deactivated; 1f .. 5f : blur with this radius
-        options.put("blurdelta", Integer.valueOf(settingsPanel.getBlurDelta()).floatValue()); // smaller than this RGB difference will be blurred
+    private static final PathTracer PATH_TRACER = new PathTracer();
 
+    private TraceUtils() {
+    }
 
+    /**
+     * Reads the image file and converts it to grayscale
+     *
+     * @param selectedFile the image file
+     * @return a grayscale image
+     */
+    public static BufferedImage readImage(File selectedFile) {
         try {
             BufferedImage img = ImageIO.read(selectedFile);
+            if (img == null) {
+                throw new IOException("Unsupported image format");
+            }
+
             BufferedImage gray = new BufferedImage(img.getWidth(), img.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
             Graphics2D g = gray.createGraphics();
             g.drawImage(img, 0, 0, null);
+            g.dispose();
+            return gray;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read image", e);
+        }
+    }
 
-            byte[][] palette = generatePalette(numberOfColors, settingsPanel.getStartColor(), settingsPanel.getEndColor());
-            return ImageTracer.imageToSVG(gray, options, palette);
+    public static List<TracedShape> traceImage(BufferedImage image, TraceSettings settings) {
+        try {
+            return PATH_TRACER.trace(image, settings);
         } catch (Exception e) {
             throw new RuntimeException("Could not trace image", e);
         }
     }
 
-    private static byte[][] generatePalette(int numberOfColors, int startColorValue, int endColorValue) {
-        int step = (startColorValue - endColorValue) / numberOfColors;
-        byte[][] palette = new byte[numberOfColors][4];
-        for (int colorcnt = 0; colorcnt < numberOfColors; colorcnt++) {
-            int value = endColorValue + (colorcnt * step);
-            palette[colorcnt][0] = (byte) (-128 + value); // R
-            palette[colorcnt][1] = (byte) (-128 + value); // G
-            palette[colorcnt][2] = (byte) (-128 + value); // B
-            palette[colorcnt][3] = (byte) 127;              // A
+    /**
+     * Creates a group of paths for each color layer of the traced shapes. The image is converted
+     * to millimeters with the Y-axis inverted and moved to origin.
+     *
+     * @param tracedShapes the traced shapes in image pixel coordinates
+     * @return a list of groups, one for each layer
+     */
+    public static List<Entity> createEntities(List<TracedShape> tracedShapes) {
+        if (tracedShapes.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Rectangle2D bounds = tracedShapes.get(0).getShape().getBounds2D();
+        for (TracedShape tracedShape : tracedShapes) {
+            Rectangle2D.union(bounds, tracedShape.getShape().getBounds2D(), bounds);
+        }
+
+        AffineTransform transform = new AffineTransform();
+        transform.scale(MM_PER_PIXEL, -MM_PER_PIXEL);
+        transform.translate(-bounds.getMinX(), -bounds.getMaxY());
+
+        // The layers are added in reverse order
+        Map<Integer, Group> layerGroups = new TreeMap<>((layer1, layer2) -> Integer.compare(layer2, layer1));
+        for (TracedShape tracedShape : tracedShapes) {
+            Group layerGroup = layerGroups.computeIfAbsent(tracedShape.getLayer(), layer -> {
+                Group group = new Group();
+                group.setName(String.valueOf(layer));
+                return group;
+            });
+
+            Path path = new Path();
+            path.append(new Path2D.Double(tracedShape.getShape(), transform));
+            layerGroup.addChild(path);
         }
-        return palette;
+        return new ArrayList<>(layerGroups.values());
     }
 }
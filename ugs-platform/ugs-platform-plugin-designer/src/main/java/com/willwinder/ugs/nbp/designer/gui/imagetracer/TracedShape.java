@@ -0,0 +1,54 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.gui.imagetracer;
+
+import java.awt.Color;
+import java.awt.geom.Path2D;
+
+/**
+ * A closed shape traced from one of the color layers of an image, in image pixel coordinates.
+ *
+ * @author Joacim Breiler
+ */
+public class TracedShape {
+    private final int layer;
+    private final Color color;
+    private final Path2D shape;
+
+    public TracedShape(int layer, Color color, Path2D shape) {
+        this.layer = layer;
+        this.color = color;
+        this.shape = shape;
+    }
+
+    /**
+     * @return the index of the color layer in the palette
+     */
+    public int getLayer() {
+        return layer;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public Path2D getShape() {
+        return shape;
+    }
+}
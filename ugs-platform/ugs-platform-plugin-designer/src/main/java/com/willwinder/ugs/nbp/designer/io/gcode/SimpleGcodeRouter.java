@@ -32,7 +32,10 @@ import org.apache.commons.lang3.StringUtils;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.logging.Logger;
 
 /**
@@ -43,6 +46,20 @@ public class SimpleGcodeRouter {
     private static final Logger LOGGER = Logger.getLogger(SimpleGcodeRouter.class.getSimpleName());
     private static final String HEADER = "; This file was generated with \"Universal Gcode Sender " + Version.getVersionString() + "\"\n;\n";
 
+    /**
+     * The tool paths are shared between all routers so that consecutive exports and previews
+     * only needs to regenerate the entities that have been changed
+     */
+    private static final ToolPathCache TOOL_PATH_CACHE = new ToolPathCache(2000);
+
+    /**
+     * The maximum time to spend on reordering the tool paths
+     */
+    private static final long OPTIMIZATION_TIME_BUDGET_MS = 2000;
+
+    private final ForkJoinPool pool;
+    private final ToolPathCache toolPathCache;
+
     /**
      * The feed rate to move tool in material as mm/min
      */
@@ -80,6 +97,24 @@ public class SimpleGcodeRouter {
      */
     private double spindleSpeed = 1000;
 
+    /**
+     * If the tool paths should be reordered to minimize the rapid movements
+     */
+    private boolean optimizeRapidMovements = true;
+
+    public SimpleGcodeRouter() {
+        this(ForkJoinPool.commonPool(), TOOL_PATH_CACHE);
+    }
+
+    /**
+     * @param pool          the pool to generate the tool paths for each entity in
+     * @param toolPathCache the cache of previously generated tool paths
+     */
+    public SimpleGcodeRouter(ForkJoinPool pool, ToolPathCache toolPathCache) {
+        this.pool = pool;
+        this.toolPathCache = toolPathCache;
+    }
+
     public int getFeedSpeed() {
         return feedSpeed;
     }
@@ -136,6 +171,14 @@ public class SimpleGcodeRouter {
         this.spindleSpeed = spindleSpeed;
     }
 
+    public boolean isOptimizeRapidMovements() {
+        return optimizeRapidMovements;
+    }
+
+    public void setOptimizeRapidMovements(boolean optimizeRapidMovements) {
+        this.optimizeRapidMovements = optimizeRapidMovements;
+    }
+
     protected String toGcode(GcodePath gcodePath) throws IOException {
         ToolPathStats toolPathStats = ToolPathUtils.getToolPathStats(gcodePath);
         LOGGER.info("Generated a tool path with total length of " +  Math.round(toolPathStats.getTotalFeedLength()) + "mm and " + Math.round(toolPathStats.getTotalRapidLength()) + "mm of rapid movement");
@@ -168,67 +211,87 @@ public class SimpleGcodeRouter {
     }
 
     private GcodePath getGcodePathFromCuttables(List<Cuttable> cuttables) {
-        GcodePath gcodePath = new GcodePath();
-        int index = 0;
+        // The keys are created on the calling thread as the entities aren't thread safe
+        List<ForkJoinTask<GcodePath>> toolPaths = new ArrayList<>(cuttables.size());
         for (Cuttable cuttable : cuttables) {
-            index++;
-            gcodePath.addSegment(new Segment(" " + cuttable.getName() + " - " + cuttable.getCutType().getName() + " (" + index + "/" + cuttables.size() + ")"));
-            switch (cuttable.getCutType()) {
-                case POCKET:
-                    PocketToolPath simplePocket = new PocketToolPath(cuttable);
-                    simplePocket.setStartDepth(cuttable.getStartDepth());
-                    simplePocket.setTargetDepth(cuttable.getTargetDepth());
-                    simplePocket.setToolDiameter(toolDiameter);
-                    simplePocket.setDepthPerPass(depthPerPass);
-                    simplePocket.setSafeHeight(safeHeight);
-                    simplePocket.setStepOver(toolStepOver);
-
-                    gcodePath.appendGcodePath(simplePocket.toGcodePath());
-                    break;
-                case OUTSIDE_PATH:
-                    OutlineToolPath simpleOutsidePath = new OutlineToolPath(cuttable);
-                    simpleOutsidePath.setOffset(toolDiameter / 2d);
-                    simpleOutsidePath.setStartDepth(cuttable.getStartDepth());
-                    simpleOutsidePath.setTargetDepth(cuttable.getTargetDepth());
-                    simpleOutsidePath.setToolDiameter(toolDiameter);
-                    simpleOutsidePath.setDepthPerPass(depthPerPass);
-                    simpleOutsidePath.setSafeHeight(safeHeight);
-                    gcodePath.appendGcodePath(simpleOutsidePath.toGcodePath());
-                    break;
-                case INSIDE_PATH:
-                    OutlineToolPath simpleInsidePath = new OutlineToolPath(cuttable);
-                    simpleInsidePath.setOffset(-toolDiameter / 2d);
-                    simpleInsidePath.setStartDepth(cuttable.getStartDepth());
-                    simpleInsidePath.setTargetDepth(cuttable.getTargetDepth());
-                    simpleInsidePath.setToolDiameter(toolDiameter);
-                    simpleInsidePath.setDepthPerPass(depthPerPass);
-                    simpleInsidePath.setSafeHeight(safeHeight);
-                    gcodePath.appendGcodePath(simpleInsidePath.toGcodePath());
-                    break;
-                case ON_PATH:
-                    OutlineToolPath simpleOnPath = new OutlineToolPath(cuttable);
-                    simpleOnPath.setStartDepth(cuttable.getStartDepth());
-                    simpleOnPath.setTargetDepth(cuttable.getTargetDepth());
-                    simpleOnPath.setToolDiameter(toolDiameter);
-                    simpleOnPath.setDepthPerPass(depthPerPass);
-                    simpleOnPath.setSafeHeight(safeHeight);
-                    gcodePath.appendGcodePath(simpleOnPath.toGcodePath());
-                    break;
-                case CENTER_DRILL:
-                    DrillCenterToolPath drillToolPath = new DrillCenterToolPath(cuttable);
-                    drillToolPath.setStartDepth(cuttable.getStartDepth());
-                    drillToolPath.setTargetDepth(cuttable.getTargetDepth());
-                    drillToolPath.setToolDiameter(toolDiameter);
-                    drillToolPath.setDepthPerPass(depthPerPass);
-                    drillToolPath.setSafeHeight(safeHeight);
-                    gcodePath.appendGcodePath(drillToolPath.toGcodePath());
-                    break;
-                default:
+            ToolPathCache.Key key = ToolPathCache.Key.of(cuttable, this);
+            toolPaths.add(pool.submit(() -> toolPathCache.get(key, this::createToolPath)));
+        }
+
+        if (optimizeRapidMovements) {
+            ToolPathOptimizer optimizer = new ToolPathOptimizer(safeHeight, toolDiameter, OPTIMIZATION_TIME_BUDGET_MS);
+            for (int index = 0; index < cuttables.size(); index++) {
+                Cuttable cuttable = cuttables.get(index);
+                optimizer.add(getLabel(cuttable, index, cuttables.size()), cuttable.getCutType(), toolPaths.get(index).join());
             }
+
+            GcodePath gcodePath = optimizer.optimize();
+            LOGGER.info("Optimized the rapid movement from " + Math.round(optimizer.getOriginalStats().getTotalRapidLength()) + "mm to " + Math.round(optimizer.getOptimizedStats().getTotalRapidLength()) + "mm");
+            return gcodePath;
+        }
+
+        GcodePath gcodePath = new GcodePath();
+        for (int index = 0; index < cuttables.size(); index++) {
+            gcodePath.addSegment(new Segment(getLabel(cuttables.get(index), index, cuttables.size())));
+            gcodePath.appendGcodePath(toolPaths.get(index).join());
         }
         return gcodePath;
     }
 
+    private static String getLabel(Cuttable cuttable, int index, int count) {
+        return " " + cuttable.getName() + " - " + cuttable.getCutType().getName() + " (" + (index + 1) + "/" + count + ")";
+    }
+
+    private GcodePath createToolPath(ToolPathCache.Key key) {
+        switch (key.getCutType()) {
+            case POCKET:
+                PocketToolPath simplePocket = new PocketToolPath(key.getShape());
+                simplePocket.setStartDepth(key.getStartDepth());
+                simplePocket.setTargetDepth(key.getTargetDepth());
+                simplePocket.setToolDiameter(toolDiameter);
+                simplePocket.setDepthPerPass(depthPerPass);
+                simplePocket.setSafeHeight(safeHeight);
+                simplePocket.setStepOver(toolStepOver);
+                return simplePocket.toGcodePath();
+            case OUTSIDE_PATH:
+                OutlineToolPath simpleOutsidePath = new OutlineToolPath(key.getShape());
+                simpleOutsidePath.setOffset(toolDiameter / 2d);
+                simpleOutsidePath.setStartDepth(key.getStartDepth());
+                simpleOutsidePath.setTargetDepth(key.getTargetDepth());
+                simpleOutsidePath.setToolDiameter(toolDiameter);
+                simpleOutsidePath.setDepthPerPass(depthPerPass);
+                simpleOutsidePath.setSafeHeight(safeHeight);
+                return simpleOutsidePath.toGcodePath();
+            case INSIDE_PATH:
+                OutlineToolPath simpleInsidePath = new OutlineToolPath(key.getShape());
+                simpleInsidePath.setOffset(-toolDiameter / 2d);
+                simpleInsidePath.setStartDepth(key.getStartDepth());
+                simpleInsidePath.setTargetDepth(key.getTargetDepth());
+                simpleInsidePath.setToolDiameter(toolDiameter);
+                simpleInsidePath.setDepthPerPass(depthPerPass);
+                simpleInsidePath.setSafeHeight(safeHeight);
+                return simpleInsidePath.toGcodePath();
+            case ON_PATH:
+                OutlineToolPath simpleOnPath = new OutlineToolPath(key.getShape());
+                simpleOnPath.setStartDepth(key.getStartDepth());
+                simpleOnPath.setTargetDepth(key.getTargetDepth());
+                simpleOnPath.setToolDiameter(toolDiameter);
+                simpleOnPath.setDepthPerPass(depthPerPass);
+                simpleOnPath.setSafeHeight(safeHeight);
+                return simpleOnPath.toGcodePath();
+            case CENTER_DRILL:
+                DrillCenterToolPath drillToolPath = new DrillCenterToolPath(key.getCenter());
+                drillToolPath.setStartDepth(key.getStartDepth());
+                drillToolPath.setTargetDepth(key.getTargetDepth());
+                drillToolPath.setToolDiameter(toolDiameter);
+                drillToolPath.setDepthPerPass(depthPerPass);
+                drillToolPath.setSafeHeight(safeHeight);
+                return drillToolPath.toGcodePath();
+            default:
+                return new GcodePath();
+        }
+    }
+
     private String generateToolHeader() {
         return "; Tool: " + getToolDiameter() + "mm\n" +
                 "; Depth per pass: " + getDepthPerPass() + "mm\n" +
@@ -0,0 +1,225 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.gcode;
+
+import com.willwinder.ugs.nbp.designer.entities.cuttable.CutType;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Cuttable;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.GcodePath;
+
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A cache of generated tool paths so that only the entities whose geometry or cut settings have
+ * changed needs to be regenerated. The least recently used tool paths are removed when the cache
+ * is full.
+ *
+ * @author Joacim Breiler
+ */
+public class ToolPathCache {
+    private final Map<Key, GcodePath> toolPaths;
+    private int hits;
+    private int misses;
+
+    /**
+     * @param maxSize the maximum number of tool paths to keep
+     */
+    public ToolPathCache(int maxSize) {
+        toolPaths = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, GcodePath> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached tool path for the key or generates it. The generation is done outside
+     * any locks so several tool paths can be generated in parallel.
+     *
+     * @param key       the key of the tool path
+     * @param generator the function to generate the tool path if it isn't cached
+     * @return the tool path, it must not be modified
+     */
+    public GcodePath get(Key key, Function<Key, GcodePath> generator) {
+        synchronized (toolPaths) {
+            GcodePath toolPath = toolPaths.get(key);
+            if (toolPath != null) {
+                hits++;
+                return toolPath;
+            }
+            misses++;
+        }
+
+        GcodePath toolPath = generator.apply(key);
+        synchronized (toolPaths) {
+            toolPaths.put(key, toolPath);
+        }
+        return toolPath;
+    }
+
+    public void clear() {
+        synchronized (toolPaths) {
+            toolPaths.clear();
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    public int getHits() {
+        synchronized (toolPaths) {
+            return hits;
+        }
+    }
+
+    public int getMisses() {
+        synchronized (toolPaths) {
+            return misses;
+        }
+    }
+
+    /**
+     * Identifies a tool path by the geometry of the entity together with the cut and tool settings.
+     * The geometry is copied when the key is created so the key can be used on other threads even
+     * if the entity is changed.
+     */
+    public static final class Key {
+        private final Shape shape;
+        private final Point2D center;
+        private final double[] coordinates;
+        private final int[] segmentTypes;
+        private final CutType cutType;
+        private final double[] settings;
+        private final int hashCode;
+
+        private Key(Shape shape, Point2D center, CutType cutType, double[] settings) {
+            this.shape = shape;
+            this.center = center;
+            this.cutType = cutType;
+            this.settings = settings;
+
+            double[] segment = new double[6];
+            double[] points = new double[64];
+            int[] types = new int[16];
+            int pointCount = 0;
+            int typeCount = 0;
+            for (PathIterator iterator = shape.getPathIterator(null); !iterator.isDone(); iterator.next()) {
+                int type = iterator.currentSegment(segment);
+                if (typeCount == types.length) {
+                    types = Arrays.copyOf(types, typeCount * 2);
+                }
+                types[typeCount++] = type;
+
+                int length = getCoordinateCount(type);
+                if (pointCount + length > points.length) {
+                    points = Arrays.copyOf(points, Math.max(points.length * 2, pointCount + length));
+                }
+                System.arraycopy(segment, 0, points, pointCount, length);
+                pointCount += length;
+            }
+            this.coordinates = Arrays.copyOf(points, pointCount);
+            this.segmentTypes = Arrays.copyOf(types, typeCount);
+
+            int hash = Objects.hash(cutType, center);
+            hash = 31 * hash + Arrays.hashCode(coordinates);
+            hash = 31 * hash + Arrays.hashCode(segmentTypes);
+            this.hashCode = 31 * hash + Arrays.hashCode(settings);
+        }
+
+        /**
+         * Creates a key from the current geometry and cut settings of the cuttable and the given tool settings
+         *
+         * @param cuttable the entity to cut
+         * @param router   the router with the tool settings
+         * @return a new key
+         */
+        public static Key of(Cuttable cuttable, SimpleGcodeRouter router) {
+            double[] settings = {
+                    cuttable.getStartDepth(),
+                    cuttable.getTargetDepth(),
+                    router.getToolDiameter(),
+                    router.getToolStepOver(),
+                    router.getDepthPerPass(),
+                    router.getSafeHeight()
+            };
+            return new Key(cuttable.getShape(), cuttable.getCenter(), cuttable.getCutType(), settings);
+        }
+
+        private static int getCoordinateCount(int segmentType) {
+            switch (segmentType) {
+                case PathIterator.SEG_MOVETO:
+                case PathIterator.SEG_LINETO:
+                    return 2;
+                case PathIterator.SEG_QUADTO:
+                    return 4;
+                case PathIterator.SEG_CUBICTO:
+                    return 6;
+                default:
+                    return 0;
+            }
+        }
+
+        /**
+         * @return the shape of the entity when the key was created
+         */
+        public Shape getShape() {
+            return shape;
+        }
+
+        public Point2D getCenter() {
+            return center;
+        }
+
+        public CutType getCutType() {
+            return cutType;
+        }
+
+        public double getStartDepth() {
+            return settings[0];
+        }
+
+        public double getTargetDepth() {
+            return settings[1];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return hashCode == key.hashCode &&
+                    cutType == key.cutType &&
+                    Objects.equals(center, key.center) &&
+                    Arrays.equals(coordinates, key.coordinates) &&
+                    Arrays.equals(segmentTypes, key.segmentTypes) &&
+                    Arrays.equals(settings, key.settings);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,546 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.gcode;
+
+import com.willwinder.ugs.nbp.designer.entities.cuttable.CutType;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.GcodePath;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.Segment;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.SegmentType;
+import com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.ToolPathStats;
+import com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.ToolPathUtils;
+import com.willwinder.universalgcodesender.model.Axis;
+import com.willwinder.universalgcodesender.model.PartialPosition;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reorders the tool paths of a design to minimize the rapid movements between them.
+ * <p>
+ * The tool paths are split into sections that can be cut independently. An outline is split into
+ * one section for each of its rings with all its depth passes, while pockets and drills are kept as
+ * one section. The sections are ordered using a nearest neighbour search followed by 2-opt
+ * improvements until no more improvements are found or the time budget runs out. Closed rings are
+ * entered at the point nearest to where the previous section ended.
+ * <p>
+ * Sections that are close to each other keep their original order as they may depend on each other,
+ * with the exception of sections inside an outline which are always cut before the outline. Otherwise
+ * a part may come loose before all its features have been cut.
+ *
+ * @author Joacim Breiler
+ */
+public class ToolPathOptimizer {
+    private static final double EPSILON = 0.0001;
+
+    private final double safeHeight;
+    private final double clearance;
+    private final long timeBudgetMillis;
+    private final List<Section> sections = new ArrayList<>();
+    private int entityCount;
+    private ToolPathStats originalStats;
+    private ToolPathStats optimizedStats;
+
+    /**
+     * @param safeHeight       the height to retract to between the sections
+     * @param clearance        the distance within which sections are considered to depend on each other, usually the tool diameter
+     * @param timeBudgetMillis the maximum time to spend on improving the order
+     */
+    public ToolPathOptimizer(double safeHeight, double clearance, long timeBudgetMillis) {
+        this.safeHeight = safeHeight;
+        this.clearance = clearance;
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * Adds the tool path of an entity to be optimized
+     *
+     * @param label    the label to write before the sections of the tool path
+     * @param cutType  the cut type used for generating the tool path
+     * @param toolPath the generated tool path, it will not be modified
+     */
+    public void add(String label, CutType cutType, GcodePath toolPath) {
+        int entity = entityCount++;
+        List<List<Segment>> runs = splitIntoRuns(toolPath);
+        if (!isOutline(cutType)) {
+            if (!runs.isEmpty()) {
+                sections.add(new Section(sections.size(), entity, label, false, runs));
+            }
+            return;
+        }
+
+        // Each ring of an outline is cut with all its depth passes before moving on to the next ring
+        List<List<Segment>> stack = new ArrayList<>();
+        for (List<Segment> run : runs) {
+            if (!stack.isEmpty() && !hasSameXY(stack.get(0), run)) {
+                sections.add(new Section(sections.size(), entity, label, true, stack));
+                stack = new ArrayList<>();
+            }
+            stack.add(run);
+        }
+        if (!stack.isEmpty()) {
+            sections.add(new Section(sections.size(), entity, label, true, stack));
+        }
+    }
+
+    /**
+     * Orders the added tool paths to minimize the rapid movements
+     *
+     * @return the combined tool path
+     */
+    public GcodePath optimize() {
+        long deadline = System.currentTimeMillis() + timeBudgetMillis;
+        GcodePath originalPath = toGcodePath(sections);
+        originalStats = ToolPathUtils.getToolPathStats(originalPath);
+        if (sections.size() < 2) {
+            optimizedStats = originalStats;
+            return originalPath;
+        }
+
+        List<List<Section>> predecessors = getPredecessors();
+        List<Section> order = getNearestNeighbourOrder(predecessors);
+        double length = getRapidLength(order);
+        while (System.currentTimeMillis() < deadline) {
+            improveWithTwoOpt(order, predecessors, deadline);
+            updateEntryPoints(order);
+            double improvedLength = getRapidLength(order);
+            if (improvedLength > length - EPSILON) {
+                break;
+            }
+            length = improvedLength;
+        }
+
+        GcodePath optimizedPath = toGcodePath(order);
+        optimizedStats = ToolPathUtils.getToolPathStats(optimizedPath);
+        if (optimizedStats.getTotalRapidLength() >= originalStats.getTotalRapidLength()) {
+            optimizedStats = originalStats;
+            return originalPath;
+        }
+        return optimizedPath;
+    }
+
+    /**
+     * @return the statistics of the tool path in its original order, available after {@link #optimize()}
+     */
+    public ToolPathStats getOriginalStats() {
+        return originalStats;
+    }
+
+    /**
+     * @return the statistics of the optimized tool path, available after {@link #optimize()}
+     */
+    public ToolPathStats getOptimizedStats() {
+        return optimizedStats;
+    }
+
+    private static boolean isOutline(CutType cutType) {
+        return cutType == CutType.OUTSIDE_PATH || cutType == CutType.INSIDE_PATH || cutType == CutType.ON_PATH;
+    }
+
+    private static boolean hasXY(Segment segment) {
+        return segment.point != null && segment.point.hasX() && segment.point.hasY();
+    }
+
+    /**
+     * Splits a tool path into runs that each starts with a rapid move to its XY position. The
+     * retracts between the runs are removed and added back when the runs are combined.
+     */
+    private static List<List<Segment>> splitIntoRuns(GcodePath toolPath) {
+        List<List<Segment>> runs = new ArrayList<>();
+        List<Segment> run = null;
+        for (Segment segment : toolPath.getSegments()) {
+            if (segment.type == SegmentType.MOVE && hasXY(segment)) {
+                run = new ArrayList<>();
+                runs.add(run);
+            }
+
+            if (run != null) {
+                run.add(segment);
+            }
+        }
+
+        for (List<Segment> r : runs) {
+            while (r.size() > 1 && r.get(r.size() - 1).type == SegmentType.MOVE && !hasXY(r.get(r.size() - 1))) {
+                r.remove(r.size() - 1);
+            }
+        }
+        return runs;
+    }
+
+    private static boolean hasSameXY(List<Segment> run, List<Segment> otherRun) {
+        if (run.size() != otherRun.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < run.size(); i++) {
+            PartialPosition point = run.get(i).point;
+            PartialPosition otherPoint = otherRun.get(i).point;
+            if (hasXY(run.get(i)) != hasXY(otherRun.get(i))) {
+                return false;
+            } else if (hasXY(run.get(i)) && (Math.abs(point.getX() - otherPoint.getX()) > EPSILON || Math.abs(point.getY() - otherPoint.getY()) > EPSILON)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private GcodePath toGcodePath(List<Section> orderedSections) {
+        GcodePath gcodePath = new GcodePath();
+        int currentEntity = -1;
+        for (Section section : orderedSections) {
+            if (section.entity != currentEntity) {
+                gcodePath.addSegment(new Segment(section.label));
+                currentEntity = section.entity;
+            }
+
+            for (List<Segment> run : section.getRuns()) {
+                gcodePath.addSegment(SegmentType.MOVE, PartialPosition.from(Axis.Z, safeHeight, UnitUtils.Units.MM));
+                run.forEach(gcodePath::addSegment);
+            }
+        }
+
+        if (!orderedSections.isEmpty()) {
+            gcodePath.addSegment(SegmentType.MOVE, PartialPosition.from(Axis.Z, safeHeight, UnitUtils.Units.MM));
+        }
+        return gcodePath;
+    }
+
+    /**
+     * Finds the sections that needs to be cut before each section. Sections that are close to each
+     * other are cut inner most first and then in their original order, which never creates a cycle.
+     */
+    private List<List<Section>> getPredecessors() {
+        int[] depth = new int[sections.size()];
+        for (Section section : sections) {
+            for (Section outer : sections) {
+                if (outer != section && outer.isOutline && outer.contains(section)) {
+                    depth[section.index]++;
+                }
+            }
+        }
+
+        List<List<Section>> predecessors = new ArrayList<>(sections.size());
+        for (Section section : sections) {
+            List<Section> sectionPredecessors = new ArrayList<>();
+            for (Section other : sections) {
+                if (other == section || !other.intersects(section, clearance)) {
+                    continue;
+                }
+
+                boolean isBefore = depth[other.index] > depth[section.index] ||
+                        (depth[other.index] == depth[section.index] && other.index < section.index);
+                if (isBefore) {
+                    sectionPredecessors.add(other);
+                }
+            }
+            predecessors.add(sectionPredecessors);
+        }
+        return predecessors;
+    }
+
+    private List<Section> getNearestNeighbourOrder(List<List<Section>> predecessors) {
+        List<Section> order = new ArrayList<>(sections.size());
+        boolean[] done = new boolean[sections.size()];
+        double x = 0;
+        double y = 0;
+        while (order.size() < sections.size()) {
+            Section nearest = null;
+            double nearestDistance = Double.MAX_VALUE;
+            for (Section section : sections) {
+                if (done[section.index] || !isAvailable(predecessors.get(section.index), done)) {
+                    continue;
+                }
+
+                double distance = section.distanceTo(x, y);
+                if (distance < nearestDistance) {
+                    nearest = section;
+                    nearestDistance = distance;
+                }
+            }
+
+            // Should never happen as the predecessors can't have any cycles
+            if (nearest == null) {
+                throw new IllegalStateException("Could not find the next section to cut");
+            }
+
+            nearest.enterNearest(x, y);
+            done[nearest.index] = true;
+            order.add(nearest);
+            x = nearest.getExitX();
+            y = nearest.getExitY();
+        }
+        return order;
+    }
+
+    private static boolean isAvailable(List<Section> predecessors, boolean[] done) {
+        for (Section predecessor : predecessors) {
+            if (!done[predecessor.index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reverses parts of the order as long as it makes the rapid movements shorter. As the sections
+     * have different entry and exit points, prefix sums of the distances in both directions are used
+     * for calculating the gain of a reversal.
+     */
+    private void improveWithTwoOpt(List<Section> order, List<List<Section>> predecessors, long deadline) {
+        int count = order.size();
+        int[] position = new int[sections.size()];
+        double[] forward = new double[count + 1];
+        double[] backward = new double[count];
+        updateDistances(order, position, forward, backward);
+
+        boolean improved = true;
+        while (improved && System.currentTimeMillis() < deadline) {
+            improved = false;
+            for (int i = 0; i < count - 1 && System.currentTimeMillis() < deadline; i++) {
+                double fromX = i == 0 ? 0 : order.get(i - 1).getExitX();
+                double fromY = i == 0 ? 0 : order.get(i - 1).getExitY();
+                for (int j = i + 1; j < count; j++) {
+                    double oldLength = forward[Math.min(j + 2, count)] - forward[i];
+                    double newLength = distance(fromX, fromY, order.get(j).getEntryX(), order.get(j).getEntryY()) +
+                            backward[j] - backward[i];
+                    if (j + 1 < count) {
+                        newLength += distance(order.get(i).getExitX(), order.get(i).getExitY(), order.get(j + 1).getEntryX(), order.get(j + 1).getEntryY());
+                    }
+
+                    if (newLength < oldLength - EPSILON && canReverse(order, predecessors, position, i, j)) {
+                        Collections.reverse(order.subList(i, j + 1));
+                        updateDistances(order, position, forward, backward);
+                        improved = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the positions of the sections, the prefix sum of the distances between the sections
+     * in the current order and the prefix sum of the distances if the sections were visited in reverse.
+     */
+    private static void updateDistances(List<Section> order, int[] position, double[] forward, double[] backward) {
+        double x = 0;
+        double y = 0;
+        for (int i = 0; i < order.size(); i++) {
+            Section section = order.get(i);
+            position[section.index] = i;
+            forward[i + 1] = forward[i] + distance(x, y, section.getEntryX(), section.getEntryY());
+            x = section.getExitX();
+            y = section.getExitY();
+
+            if (i > 0) {
+                Section previous = order.get(i - 1);
+                backward[i] = backward[i - 1] + distance(section.getExitX(), section.getExitY(), previous.getEntryX(), previous.getEntryY());
+            }
+        }
+    }
+
+    /**
+     * A reversal changes the order between all sections within it, which is only allowed if none
+     * of them needs to be cut before any of the others.
+     */
+    private static boolean canReverse(List<Section> order, List<List<Section>> predecessors, int[] position, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            for (Section predecessor : predecessors.get(order.get(i).index)) {
+                int predecessorPosition = position[predecessor.index];
+                if (predecessorPosition >= from && predecessorPosition <= to) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void updateEntryPoints(List<Section> order) {
+        double x = 0;
+        double y = 0;
+        for (Section section : order) {
+            section.enterNearest(x, y);
+            x = section.getExitX();
+            y = section.getExitY();
+        }
+    }
+
+    private static double getRapidLength(List<Section> order) {
+        double length = 0;
+        double x = 0;
+        double y = 0;
+        for (Section section : order) {
+            length += distance(x, y, section.getEntryX(), section.getEntryY());
+            x = section.getExitX();
+            y = section.getExitY();
+        }
+        return length;
+    }
+
+    private static double distance(double x1, double y1, double x2, double y2) {
+        return Math.hypot(x2 - x1, y2 - y1);
+    }
+
+    /**
+     * A part of a tool path that can be cut independently, consisting of one or more runs that
+     * each starts with a rapid move.
+     */
+    private static class Section {
+        private final int index;
+        private final int entity;
+        private final String label;
+        private final boolean isOutline;
+        private final List<List<Segment>> runs;
+        private final Coordinate[] ring;
+        private final double minX;
+        private final double minY;
+        private final double maxX;
+        private final double maxY;
+        private final PartialPosition exit;
+        private int entryIndex;
+
+        private Section(int index, int entity, String label, boolean isOutline, List<List<Segment>> runs) {
+            this.index = index;
+            this.entity = entity;
+            this.label = label;
+            this.isOutline = isOutline;
+            this.runs = runs;
+            this.ring = isOutline ? getRing(runs) : null;
+
+            double lowX = Double.MAX_VALUE;
+            double lowY = Double.MAX_VALUE;
+            double highX = -Double.MAX_VALUE;
+            double highY = -Double.MAX_VALUE;
+            PartialPosition lastPoint = null;
+            for (List<Segment> run : runs) {
+                for (Segment segment : run) {
+                    if (hasXY(segment)) {
+                        lowX = Math.min(lowX, segment.point.getX());
+                        lowY = Math.min(lowY, segment.point.getY());
+                        highX = Math.max(highX, segment.point.getX());
+                        highY = Math.max(highY, segment.point.getY());
+                        lastPoint = segment.point;
+                    }
+                }
+            }
+            this.minX = lowX;
+            this.minY = lowY;
+            this.maxX = highX;
+            this.maxY = highY;
+            this.exit = lastPoint;
+        }
+
+        /**
+         * Returns the points of the ring if all runs follow a closed ring that can be entered at any
+         * of its points, the runs are then expected to be a rapid move, a plunge and the ring.
+         */
+        private static Coordinate[] getRing(List<List<Segment>> runs) {
+            List<Segment> run = runs.get(0);
+            for (List<Segment> r : runs) {
+                if (r.size() < 6 || r.get(1).type != SegmentType.MOVE || hasXY(r.get(1)) || r.get(2).type != SegmentType.POINT) {
+                    return null;
+                }
+
+                for (int i = 3; i < r.size(); i++) {
+                    if (r.get(i).type != SegmentType.LINE) {
+                        return null;
+                    }
+                }
+            }
+
+            PartialPosition first = run.get(3).point;
+            PartialPosition last = run.get(run.size() - 1).point;
+            if (Math.abs(first.getX() - last.getX()) > EPSILON || Math.abs(first.getY() - last.getY()) > EPSILON) {
+                return null;
+            }
+
+            Coordinate[] coordinates = new Coordinate[run.size() - 4];
+            for (int i = 0; i < coordinates.length; i++) {
+                PartialPosition point = run.get(i + 3).point;
+                coordinates[i] = new Coordinate(point.getX(), point.getY());
+            }
+            return coordinates;
+        }
+
+        private boolean contains(Section other) {
+            boolean isEqual = minX == other.minX && minY == other.minY && maxX == other.maxX && maxY == other.maxY;
+            return !isEqual && minX <= other.minX && minY <= other.minY && maxX >= other.maxX && maxY >= other.maxY;
+        }
+
+        private boolean intersects(Section other, double clearance) {
+            return minX - clearance <= other.maxX && maxX + clearance >= other.minX &&
+                    minY - clearance <= other.maxY && maxY + clearance >= other.minY;
+        }
+
+        private double distanceTo(double x, double y) {
+            if (ring == null) {
+                return distance(x, y, getEntryX(), getEntryY());
+            }
+
+            Coordinate nearest = ring[ToolPathUtils.findNearestCoordinateIndex(ring, new Coordinate(x, y))];
+            return distance(x, y, nearest.getX(), nearest.getY());
+        }
+
+        private void enterNearest(double x, double y) {
+            if (ring != null) {
+                entryIndex = ToolPathUtils.findNearestCoordinateIndex(ring, new Coordinate(x, y));
+            }
+        }
+
+        private double getEntryX() {
+            return ring == null ? runs.get(0).get(0).point.getX() : ring[entryIndex].getX();
+        }
+
+        private double getEntryY() {
+            return ring == null ? runs.get(0).get(0).point.getY() : ring[entryIndex].getY();
+        }
+
+        private double getExitX() {
+            return ring == null ? exit.getX() : ring[entryIndex].getX();
+        }
+
+        private double getExitY() {
+            return ring == null ? exit.getY() : ring[entryIndex].getY();
+        }
+
+        /**
+         * @return the runs, where rings are rotated to start at the chosen entry point
+         */
+        private List<List<Segment>> getRuns() {
+            if (ring == null || entryIndex == 0) {
+                return runs;
+            }
+
+            List<List<Segment>> rotatedRuns = new ArrayList<>(runs.size());
+            for (List<Segment> run : runs) {
+                List<Segment> lines = run.subList(3, run.size());
+                Segment entry = lines.get(entryIndex);
+                List<Segment> rotatedRun = new ArrayList<>(run.size());
+                rotatedRun.add(new Segment(SegmentType.MOVE, new PartialPosition(entry.point.getX(), entry.point.getY(), UnitUtils.Units.MM)));
+                rotatedRun.add(run.get(1));
+                rotatedRun.add(new Segment(SegmentType.POINT, entry.point));
+                rotatedRun.addAll(lines.subList(entryIndex, lines.size() - 1));
+                rotatedRun.addAll(lines.subList(0, entryIndex + 1));
+                rotatedRuns.add(rotatedRun);
+            }
+            return rotatedRuns;
+        }
+    }
+}
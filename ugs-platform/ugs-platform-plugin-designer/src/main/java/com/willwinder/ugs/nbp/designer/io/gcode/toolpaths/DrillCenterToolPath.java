@@ -14,10 +14,17 @@ import java.awt.geom.Point2D;
  * @author Joacim Breiler
  */
 public class DrillCenterToolPath extends AbstractToolPath {
-    private final Cuttable source;
+    private final Point2D center;
 
     public DrillCenterToolPath(Cuttable source) {
-        this.source = source;
+        this(source.getCenter());
+    }
+
+    /**
+     * @param center the position to drill
+     */
+    public DrillCenterToolPath(Point2D center) {
+        this.center = center;
     }
 
     @Override
@@ -52,7 +59,6 @@ public class DrillCenterToolPath extends AbstractToolPath {
     }
 
     private PartialPosition getCenterPosition() {
-        Point2D center = source.getCenter();
         return PartialPosition.builder(UnitUtils.Units.MM)
                 .setX(center.getX())
                 .setY(center.getY())
@@ -23,6 +23,7 @@ import com.willwinder.ugs.nbp.designer.io.gcode.path.GcodePath;
 import com.willwinder.universalgcodesender.model.PartialPosition;
 import org.locationtech.jts.geom.Geometry;
 
+import java.awt.Shape;
 import java.awt.geom.Area;
 import java.util.ArrayList;
 import java.util.List;
@@ -32,23 +33,30 @@ import java.util.stream.Collectors;
  * @author Joacim Breiler
  */
 public class OutlineToolPath extends AbstractToolPath {
-    private final Cuttable source;
+    private final Shape shape;
 
     private double offset;
 
     public OutlineToolPath(Cuttable source) {
-        this.source = source;
+        this(source.getShape());
+    }
+
+    /**
+     * @param shape the shape to follow, it must not be modified while the tool path is generated
+     */
+    public OutlineToolPath(Shape shape) {
+        this.shape = shape;
     }
 
     @Override
     public GcodePath toGcodePath() {
         List<Geometry> geometries;
-        if (ToolPathUtils.isClosedGeometry(source.getShape())) {
-            Geometry geometry = ToolPathUtils.convertAreaToGeometry(new Area(source.getShape()), getGeometryFactory());
+        if (ToolPathUtils.isClosedGeometry(shape)) {
+            Geometry geometry = ToolPathUtils.convertAreaToGeometry(new Area(shape), getGeometryFactory());
             Geometry bufferedGeometry = geometry.buffer(offset);
             geometries = ToolPathUtils.toGeometryList(bufferedGeometry);
         } else {
-            geometries = ToolPathUtils.convertShapeToGeometry(source.getShape(), getGeometryFactory());
+            geometries = ToolPathUtils.convertShapeToGeometry(shape, getGeometryFactory());
         }
 
 
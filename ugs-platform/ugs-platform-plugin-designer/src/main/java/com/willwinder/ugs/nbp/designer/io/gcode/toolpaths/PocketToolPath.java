@@ -28,6 +28,7 @@ import org.locationtech.jts.geom.LinearRing;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.simplify.DouglasPeuckerSimplifier;
 
+import java.awt.Shape;
 import java.awt.geom.Area;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -42,7 +43,7 @@ import static com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.ToolPathUtils.t
  */
 public class PocketToolPath extends AbstractToolPath {
     public static final double DISTANCE_TOLERANCE = 0.1;
-    private final Cuttable source;
+    private final Shape shape;
 
     /**
      * How much should the tool cut for each pass. Should be larger than 0 and smaller than 1.
@@ -51,12 +52,19 @@ public class PocketToolPath extends AbstractToolPath {
     private double stepOver = 0.3;
 
     public PocketToolPath(Cuttable source) {
-        this.source = source;
+        this(source.getShape());
+    }
+
+    /**
+     * @param shape the shape to pocket, it must not be modified while the tool path is generated
+     */
+    public PocketToolPath(Shape shape) {
+        this.shape = shape;
     }
 
     @Override
     public GcodePath toGcodePath() {
-        Geometry geometryCollection = convertAreaToGeometry(new Area(source.getShape()), getGeometryFactory());
+        Geometry geometryCollection = convertAreaToGeometry(new Area(shape), getGeometryFactory());
         Geometry shell = geometryCollection.buffer(-getToolDiameter() / 2d);
         List<Geometry> geometries = bufferAndCollectGeometries(geometryCollection);
 
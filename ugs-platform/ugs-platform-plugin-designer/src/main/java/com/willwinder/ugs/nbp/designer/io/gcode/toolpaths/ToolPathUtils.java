@@ -196,6 +196,10 @@ public class ToolPathUtils {
         return point1.distanceXYZ(point2);
     }
 
+    private static PartialPosition moveTo(PartialPosition position, PartialPosition point) {
+        return new PartialPosition(point.hasX() ? point.getX() : position.getX(), point.hasY() ? point.getY() : position.getY(), point.hasZ() ? point.getZ() : position.getZ(), UnitUtils.Units.MM);
+    }
+
     public static ToolPathStats getToolPathStats(GcodePath gcodePath) {
         PartialPosition position = new PartialPosition(0d, 0d, 0d, UnitUtils.Units.MM);
         double totalRapidLength = 0;
@@ -205,8 +209,10 @@ public class ToolPathUtils {
                 // Do nothing
             } else if (segment.getType() == SegmentType.MOVE) {
                 totalRapidLength += distanceBetween(position, segment.getPoint());
+                position = moveTo(position, segment.getPoint());
             } else {
                 totalFeedLength += distanceBetween(position, segment.getPoint());
+                position = moveTo(position, segment.getPoint());
             }
         }
 
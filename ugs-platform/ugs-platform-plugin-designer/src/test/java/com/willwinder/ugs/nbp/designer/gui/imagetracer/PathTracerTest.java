@@ -0,0 +1,157 @@
+package com.willwinder.ugs.nbp.designer.gui.imagetracer;
+
+import jankovicsandras.imagetracer.ImageTracer;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class PathTracerTest {
+
+    private static TraceSettings createSettings(int numberOfColors) {
+        TraceSettings settings = new TraceSettings();
+        settings.setNumberOfColors(numberOfColors);
+        settings.setStartColor(0);
+        settings.setEndColor(255);
+        settings.setColorQuantize(3);
+        settings.setLineThreshold(1);
+        settings.setQuadThreshold(1);
+        settings.setPathOmit(0);
+        return settings;
+    }
+
+    private static BufferedImage createImage() {
+        BufferedImage image = new BufferedImage(120, 80, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 120, 80);
+        graphics.setColor(Color.GRAY);
+        graphics.fillOval(10, 10, 60, 50);
+        graphics.setColor(Color.BLACK);
+        graphics.fillRect(30, 25, 15, 20);
+        graphics.fillOval(80, 20, 30, 45);
+        graphics.dispose();
+        return image;
+    }
+
+    @Test
+    public void traceShouldFindShapesForEachColor() {
+        BufferedImage image = new BufferedImage(20, 20, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, 20, 20);
+        graphics.setColor(Color.BLACK);
+        graphics.fillRect(5, 5, 10, 10);
+        graphics.dispose();
+
+        List<TracedShape> shapes = new PathTracer().trace(image, createSettings(2));
+
+        assertEquals(2, shapes.size());
+        assertEquals(Color.WHITE, shapes.get(0).getColor());
+        assertEquals(new Rectangle2D.Double(0, 0, 20, 20), shapes.get(0).getShape().getBounds2D());
+        assertEquals(Color.BLACK, shapes.get(1).getColor());
+        assertEquals(new Rectangle2D.Double(5, 5, 10, 10), shapes.get(1).getShape().getBounds2D());
+    }
+
+    @Test
+    public void traceShouldGiveTheSameResultAsImageTracer() throws Exception {
+        BufferedImage image = createImage();
+        TraceSettings settings = createSettings(4);
+
+        List<TracedShape> shapes = new PathTracer(new ForkJoinPool(4)).trace(image, settings);
+
+        ImageTracer.IndexedImage expected = traceWithImageTracer(image, settings);
+        for (int layer = 0; layer < expected.layers.size(); layer++) {
+            List<String> expectedPaths = new ArrayList<>();
+            expected.layers.get(layer).forEach(segments -> expectedPaths.add(toString(segments)));
+            Collections.sort(expectedPaths);
+
+            final int currentLayer = layer;
+            List<String> paths = shapes.stream()
+                    .filter(shape -> shape.getLayer() == currentLayer)
+                    .map(shape -> toString(shape.getShape().getPathIterator(null)))
+                    .sorted()
+                    .collect(Collectors.toList());
+
+            assertEquals(expectedPaths, paths);
+        }
+    }
+
+    @Test
+    public void traceWithBlurShouldGiveTheSameResultAsImageTracer() throws Exception {
+        BufferedImage image = createImage();
+        TraceSettings settings = createSettings(3);
+        settings.setBlurRadius(2);
+        settings.setBlurDelta(60);
+
+        List<TracedShape> shapes = new PathTracer().trace(image, settings);
+
+        ImageTracer.IndexedImage expected = traceWithImageTracer(image, settings);
+        int expectedPathCount = expected.layers.stream().mapToInt(List::size).sum();
+        assertEquals(expectedPathCount, shapes.size());
+    }
+
+    private static ImageTracer.IndexedImage traceWithImageTracer(BufferedImage image, TraceSettings settings) throws Exception {
+        HashMap<String, Float> options = new HashMap<>();
+        options.put("ltres", settings.getLineThreshold());
+        options.put("qtres", settings.getQuadThreshold());
+        options.put("pathomit", (float) settings.getPathOmit());
+        options.put("colorsampling", 0f);
+        options.put("numberofcolors", (float) settings.getNumberOfColors());
+        options.put("mincolorratio", 0f);
+        options.put("colorquantcycles", (float) settings.getColorQuantize());
+        options.put("blurradius", (float) settings.getBlurRadius());
+        options.put("blurdelta", (float) settings.getBlurDelta());
+        ImageTracer.checkoptions(options);
+
+        int[] levels = PathTracer.generatePalette(settings.getNumberOfColors(), settings.getStartColor(), settings.getEndColor());
+        byte[][] palette = new byte[levels.length][4];
+        for (int i = 0; i < levels.length; i++) {
+            palette[i][0] = (byte) (-128 + levels[i]);
+            palette[i][1] = (byte) (-128 + levels[i]);
+            palette[i][2] = (byte) (-128 + levels[i]);
+            palette[i][3] = (byte) 127;
+        }
+        return ImageTracer.imagedataToTracedata(ImageTracer.loadImageData(image), options, palette);
+    }
+
+    private static String toString(List<Double[]> segments) {
+        StringBuilder result = new StringBuilder("M " + segments.get(0)[1] + " " + segments.get(0)[2]);
+        for (Double[] segment : segments) {
+            if (segment[0] == 1.0) {
+                result.append(" L ").append(segment[3]).append(" ").append(segment[4]);
+            } else {
+                result.append(" Q ").append(segment[3]).append(" ").append(segment[4]).append(" ").append(segment[5]).append(" ").append(segment[6]);
+            }
+        }
+        return result.toString();
+    }
+
+    private static String toString(PathIterator pathIterator) {
+        StringBuilder result = new StringBuilder();
+        double[] coords = new double[6];
+        while (!pathIterator.isDone()) {
+            int type = pathIterator.currentSegment(coords);
+            if (type == PathIterator.SEG_MOVETO) {
+                result.append("M ").append(coords[0]).append(" ").append(coords[1]);
+            } else if (type == PathIterator.SEG_LINETO) {
+                result.append(" L ").append(coords[0]).append(" ").append(coords[1]);
+            } else if (type == PathIterator.SEG_QUADTO) {
+                result.append(" Q ").append(coords[0]).append(" ").append(coords[1]).append(" ").append(coords[2]).append(" ").append(coords[3]);
+            }
+            pathIterator.next();
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.willwinder.ugs.nbp.designer.io.gcode;
+
+import com.willwinder.ugs.nbp.designer.entities.cuttable.CutType;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Cuttable;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Rectangle;
+import com.willwinder.ugs.nbp.designer.model.Size;
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ToolPathCacheTest {
+
+    private static Rectangle createRectangle(double x, double y) {
+        Rectangle rectangle = new Rectangle();
+        rectangle.setSize(new Size(15, 15));
+        rectangle.setPosition(new Point2D.Double(x, y));
+        rectangle.setCutType(CutType.POCKET);
+        rectangle.setTargetDepth(5);
+        return rectangle;
+    }
+
+    @Test
+    public void keysShouldBeEqualForTheSameGeometryAndSettings() {
+        SimpleGcodeRouter router = new SimpleGcodeRouter(ForkJoinPool.commonPool(), new ToolPathCache(10));
+        ToolPathCache.Key key = ToolPathCache.Key.of(createRectangle(10, 10), router);
+
+        assertEquals(key, ToolPathCache.Key.of(createRectangle(10, 10), router));
+        assertEquals(key.hashCode(), ToolPathCache.Key.of(createRectangle(10, 10), router).hashCode());
+        assertNotEquals(key, ToolPathCache.Key.of(createRectangle(10, 11), router));
+
+        router.setToolDiameter(router.getToolDiameter() * 2);
+        assertNotEquals(key, ToolPathCache.Key.of(createRectangle(10, 10), router));
+    }
+
+    @Test
+    public void onlyChangedEntitiesShouldBeRegenerated() {
+        ToolPathCache cache = new ToolPathCache(10);
+        SimpleGcodeRouter router = new SimpleGcodeRouter(ForkJoinPool.commonPool(), cache);
+        Rectangle first = createRectangle(10, 10);
+        Rectangle second = createRectangle(40, 10);
+        List<Cuttable> cuttables = Arrays.asList(first, second);
+
+        String gcode = router.toGcode(cuttables);
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        assertEquals(gcode, router.toGcode(cuttables));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        second.setPosition(new Point2D.Double(50, 10));
+        router.toGcode(cuttables);
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void leastRecentlyUsedToolPathsShouldBeRemoved() {
+        ToolPathCache cache = new ToolPathCache(1);
+        SimpleGcodeRouter router = new SimpleGcodeRouter(ForkJoinPool.commonPool(), cache);
+
+        router.toGcode(Arrays.asList(createRectangle(10, 10)));
+        router.toGcode(Arrays.asList(createRectangle(40, 10)));
+        router.toGcode(Arrays.asList(createRectangle(10, 10)));
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+}
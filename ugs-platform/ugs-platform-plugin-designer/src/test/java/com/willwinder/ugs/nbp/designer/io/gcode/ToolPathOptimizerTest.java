@@ -0,0 +1,145 @@
+package com.willwinder.ugs.nbp.designer.io.gcode;
+
+import com.willwinder.ugs.nbp.designer.entities.cuttable.CutType;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.GcodePath;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.Segment;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.SegmentType;
+import com.willwinder.universalgcodesender.model.Axis;
+import com.willwinder.universalgcodesender.model.PartialPosition;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ToolPathOptimizerTest {
+
+    /**
+     * Creates a tool path in the same way as the tool paths in the designer with a retract, rapid
+     * move and plunge before each pass
+     */
+    private static GcodePath createToolPath(double[][] points, double... depths) {
+        GcodePath gcodePath = new GcodePath();
+        for (double depth : depths) {
+            gcodePath.addSegment(SegmentType.MOVE, PartialPosition.from(Axis.Z, 10d, UnitUtils.Units.MM));
+            gcodePath.addSegment(SegmentType.MOVE, new PartialPosition(points[0][0], points[0][1], UnitUtils.Units.MM));
+            gcodePath.addSegment(SegmentType.MOVE, PartialPosition.from(Axis.Z, 0d, UnitUtils.Units.MM));
+            gcodePath.addSegment(SegmentType.POINT, new PartialPosition(points[0][0], points[0][1], -depth, UnitUtils.Units.MM));
+            for (double[] point : points) {
+                gcodePath.addSegment(SegmentType.LINE, new PartialPosition(point[0], point[1], -depth, UnitUtils.Units.MM));
+            }
+        }
+        gcodePath.addSegment(SegmentType.MOVE, PartialPosition.from(Axis.Z, 10d, UnitUtils.Units.MM));
+        return gcodePath;
+    }
+
+    private static double[][] createSquare(double x, double y, double size) {
+        return new double[][]{{x, y}, {x + size, y}, {x + size, y + size}, {x, y + size}, {x, y}};
+    }
+
+    private static List<String> getLabels(GcodePath gcodePath) {
+        return gcodePath.getSegments().stream()
+                .filter(segment -> segment.type == SegmentType.SEAM)
+                .map(Segment::getLabel)
+                .collect(Collectors.toList());
+    }
+
+    private static List<PartialPosition> getRapidMoves(GcodePath gcodePath) {
+        return gcodePath.getSegments().stream()
+                .filter(segment -> segment.type == SegmentType.MOVE && segment.point.hasX())
+                .map(segment -> segment.point)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void sectionsShouldBeOrderedToMinimizeRapidMovements() {
+        ToolPathOptimizer optimizer = new ToolPathOptimizer(10, 3, 1000);
+        optimizer.add("far", CutType.ON_PATH, createToolPath(createSquare(100, 0, 10), 1));
+        optimizer.add("near", CutType.ON_PATH, createToolPath(createSquare(0, 0, 10), 1));
+        optimizer.add("middle", CutType.ON_PATH, createToolPath(createSquare(50, 0, 10), 1));
+
+        GcodePath gcodePath = optimizer.optimize();
+
+        assertEquals(Arrays.asList("near", "middle", "far"), getLabels(gcodePath));
+        assertTrue(optimizer.getOptimizedStats().getTotalRapidLength() < optimizer.getOriginalStats().getTotalRapidLength());
+        assertEquals(optimizer.getOptimizedStats().getTotalFeedLength(), optimizer.getOriginalStats().getTotalFeedLength(), 0.001);
+    }
+
+    @Test
+    public void closedRingsShouldBeEnteredAtTheNearestPoint() {
+        ToolPathOptimizer optimizer = new ToolPathOptimizer(10, 3, 1000);
+        optimizer.add("first", CutType.ON_PATH, createToolPath(createSquare(0, 0, 10), 1));
+        optimizer.add("second", CutType.ON_PATH, createToolPath(createSquare(-30, 20, 10), 1));
+
+        GcodePath gcodePath = optimizer.optimize();
+
+        // The second square is entered at its corner closest to the start of the first square
+        List<PartialPosition> rapidMoves = getRapidMoves(gcodePath);
+        assertEquals(-20, rapidMoves.get(1).getX(), 0.001);
+        assertEquals(20, rapidMoves.get(1).getY(), 0.001);
+
+        // The rotated ring is still closed and starts with a plunge at the entry point
+        List<Segment> segments = gcodePath.getSegments();
+        Segment lastLine = segments.get(segments.size() - 2);
+        assertEquals(SegmentType.LINE, lastLine.type);
+        assertEquals(-20, lastLine.point.getX(), 0.001);
+        assertEquals(20, lastLine.point.getY(), 0.001);
+        assertEquals(-1, lastLine.point.getZ(), 0.001);
+    }
+
+    @Test
+    public void depthPassesOfARingShouldBeKeptTogether() {
+        ToolPathOptimizer optimizer = new ToolPathOptimizer(10, 3, 1000);
+        optimizer.add("far", CutType.ON_PATH, createToolPath(createSquare(100, 0, 10), 1, 2));
+        optimizer.add("near", CutType.ON_PATH, createToolPath(createSquare(0, 0, 10), 1, 2));
+
+        GcodePath gcodePath = optimizer.optimize();
+
+        List<Double> plungeDepths = gcodePath.getSegments().stream()
+                .filter(segment -> segment.type == SegmentType.POINT)
+                .map(segment -> segment.point.getZ())
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(-1d, -2d, -1d, -2d), plungeDepths);
+        assertEquals(Arrays.asList("near", "far"), getLabels(gcodePath));
+    }
+
+    @Test
+    public void sectionsInsideAnOutlineShouldBeCutBeforeTheOutline() {
+        ToolPathOptimizer optimizer = new ToolPathOptimizer(10, 3, 1000);
+        optimizer.add("outline", CutType.OUTSIDE_PATH, createToolPath(createSquare(0, 0, 100), 1));
+        optimizer.add("far", CutType.ON_PATH, createToolPath(createSquare(500, 500, 10), 1));
+        optimizer.add("hole", CutType.INSIDE_PATH, createToolPath(createSquare(80, 80, 10), 1));
+
+        GcodePath gcodePath = optimizer.optimize();
+
+        List<String> labels = getLabels(gcodePath);
+        assertTrue(labels.indexOf("hole") < labels.indexOf("outline"));
+    }
+
+    @Test
+    public void overlappingSectionsShouldKeepTheirOriginalOrder() {
+        ToolPathOptimizer optimizer = new ToolPathOptimizer(10, 3, 1000);
+        optimizer.add("pocket", CutType.POCKET, createToolPath(createSquare(40, 0, 10), 1));
+        optimizer.add("text", CutType.ON_PATH, createToolPath(createSquare(0, 0, 45), 2));
+
+        GcodePath gcodePath = optimizer.optimize();
+
+        assertEquals(Arrays.asList("pocket", "text"), getLabels(gcodePath));
+    }
+
+    @Test
+    public void singleToolPathShouldBeKeptAsIs() {
+        ToolPathOptimizer optimizer = new ToolPathOptimizer(10, 3, 1000);
+        GcodePath toolPath = createToolPath(createSquare(10, 10, 10), 1, 2);
+        optimizer.add("single", CutType.POCKET, toolPath);
+
+        GcodePath gcodePath = optimizer.optimize();
+
+        assertEquals(toolPath.getSize() + 1, gcodePath.getSize());
+        assertEquals(optimizer.getOriginalStats().getTotalRapidLength(), optimizer.getOptimizedStats().getTotalRapidLength(), 0.001);
+    }
+}
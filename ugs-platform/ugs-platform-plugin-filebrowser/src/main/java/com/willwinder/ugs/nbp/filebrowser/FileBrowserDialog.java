@@ -20,6 +20,7 @@ package com.willwinder.ugs.nbp.filebrowser;
 
 import com.willwinder.universalgcodesender.model.File;
 import com.willwinder.universalgcodesender.IFileService;
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
 import com.willwinder.universalgcodesender.uielements.components.TableCellListener;
 import com.willwinder.universalgcodesender.uielements.helpers.LoaderDialogHelper;
 import com.willwinder.universalgcodesender.utils.ThreadHelper;
@@ -45,6 +46,7 @@ import java.awt.event.ActionEvent;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.logging.Logger;
 
 public class FileBrowserDialog extends JDialog implements ListSelectionListener {
@@ -149,9 +151,9 @@ public class FileBrowserDialog extends JDialog implements ListSelectionListener
             setEnabled(false);
             LoaderDialogHelper.showDialog("Uploading file", 1500, this);
             ThreadHelper.invokeLater(() -> {
-                try {
-                    byte[] buffer = IOUtils.toByteArray(new FileInputStream(fileChooser.getSelectedFile()));
-                    fileService.uploadFile(fileChooser.getSelectedFile().getName(), buffer);
+                java.io.File selectedFile = fileChooser.getSelectedFile();
+                try (InputStream inputStream = new FileInputStream(selectedFile)) {
+                    fileService.uploadFile(selectedFile.getName(), inputStream, selectedFile.length(), FileTransferListener.NONE);
                 } catch (IOException ex) {
                     ex.printStackTrace();
                 } finally {
@@ -20,8 +20,10 @@ package com.willwinder.ugs.nbp.filebrowser;
 
 import com.willwinder.universalgcodesender.File;
 import com.willwinder.universalgcodesender.IFileService;
+import com.willwinder.universalgcodesender.listeners.FileTransferListener;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
@@ -48,6 +50,16 @@ public class FileBrowserDialogTest {
                 fileList.add(new File(filename, filename, data.length));
             }
 
+            @Override
+            public void uploadFile(String filename, InputStream data, long size, FileTransferListener listener) throws IOException {
+                fileList.add(new File(filename, filename, data.readAllBytes().length));
+            }
+
+            @Override
+            public void runFile(String filename) throws IOException {
+                // Not supported
+            }
+
             @Override
             public void deleteFile(File file) throws IOException {
                 fileList.removeIf(f -> f.getAbsolutePath().equalsIgnoreCase(file.getAbsolutePath()));
@@ -88,8 +88,6 @@ public final class JogTopComponent extends TopComponent implements UGSEventListe
         updateSettings();
         jogPanel.addListener(this);
 
-        backend.addUGSEventListener(this);
-
         setLayout(new BorderLayout());
         add(jogPanel, BorderLayout.CENTER);
 
@@ -116,6 +114,7 @@ public final class JogTopComponent extends TopComponent implements UGSEventListe
     @Override
     protected void componentOpened() {
         super.componentOpened();
+        backend.addUGSEventListener(this);
         setName(LocalizingService.JogControlTitle);
         setToolTipText(LocalizingService.JogControlTooltip);
         updateControls();
@@ -18,16 +18,19 @@
  */
 package com.willwinder.ugs.platform.surfacescanner;
 
-import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
-import com.willwinder.universalgcodesender.gcode.processors.ArcExpander;
 import com.willwinder.universalgcodesender.gcode.processors.CommandProcessorList;
-import com.willwinder.universalgcodesender.gcode.processors.LineSplitter;
-import com.willwinder.universalgcodesender.gcode.processors.MeshLeveler;
+import com.willwinder.universalgcodesender.gcode.processors.SurfaceHeightMap;
+import com.willwinder.universalgcodesender.gcode.processors.SurfaceLeveler;
 import com.willwinder.universalgcodesender.model.BackendAPI;
+import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.utils.AutoLevelSettings;
 import com.willwinder.universalgcodesender.utils.GUIHelpers;
 import org.openide.util.Exceptions;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * A mesh leveler manager that handles all required command processors
  * to be able to do a mesh leveling
@@ -51,18 +54,17 @@ public class MeshLevelManager {
                 return;
             }
 
-            commandProcessorList = new CommandProcessorList();
-
-            // Step 1: Convert arcs to line segments.
-            commandProcessorList.add(new ArcExpander(true, autoLevelSettings.getAutoLevelArcSliceLength(), GcodePreprocessorUtils.getDecimalFormatter()));
-
-            // Step 2: Line splitter. No line should be longer than some fraction of "resolution"
-            commandProcessorList.add(new LineSplitter(autoLevelSettings.getStepResolution() / 4));
+            List<Position> probedPoints = new ArrayList<>();
+            for (Position[] column : surfaceScanner.getProbePositionGrid()) {
+                probedPoints.addAll(Arrays.asList(column));
+            }
 
-            // Step 3: Adjust Z heights codes based on mesh offsets.
+            // Adjust Z heights based on the probed surface, arcs are expanded and lines are split at the grid lines
+            commandProcessorList = new CommandProcessorList();
             commandProcessorList.add(
-                    new MeshLeveler(autoLevelSettings.getZSurface(),
-                            surfaceScanner.getProbePositionGrid()));
+                    new SurfaceLeveler(autoLevelSettings.getZSurface(),
+                            new SurfaceHeightMap(probedPoints),
+                            autoLevelSettings.getAutoLevelArcSliceLength()));
 
             backend.applyCommandProcessor(commandProcessorList);
         } catch (Exception ex) {
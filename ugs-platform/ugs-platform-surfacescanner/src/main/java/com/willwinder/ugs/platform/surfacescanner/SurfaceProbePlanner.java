@@ -0,0 +1,296 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.platform.surfacescanner;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+
+/**
+ * Plans in which order the points of a probe grid should be probed. The points are visited in a
+ * serpentine path, column by column with the direction alternating between the columns so that the
+ * probe never has to travel back to the start of a column.
+ * <p>
+ * When created with a coarse step larger than one, only every n:th grid point is probed in a first
+ * pass. The remaining points of a coarse cell are then only probed if the surface curvature around the
+ * cell means that a bilinear interpolation of its corners would deviate more than the given threshold,
+ * all other points are interpolated from the coarse cell corners.
+ * <p>
+ * The curvature can only be estimated with at least three coarse points along an axis. If neither axis
+ * has that, all points are probed in a single pass.
+ *
+ * @author wwinder
+ */
+public class SurfaceProbePlanner {
+    private final int xPoints;
+    private final int yPoints;
+    private final int[] coarseXIndices;
+    private final int[] coarseYIndices;
+    private final double refinementThreshold;
+    private final double[][] heights;
+    private final boolean[][] measured;
+    private final Deque<GridPoint> pendingPoints = new ArrayDeque<>();
+    private boolean refined;
+
+    /**
+     * @param xPoints             the number of grid points along the X axis
+     * @param yPoints             the number of grid points along the Y axis
+     * @param coarseStep          the number of grid steps between the points in the first pass, use one to probe all points.
+     *                            A grid too small for estimating the curvature with this step is probed fully.
+     * @param refinementThreshold the largest allowed interpolation error of an unprobed point
+     */
+    public SurfaceProbePlanner(int xPoints, int yPoints, int coarseStep, double refinementThreshold) {
+        if (xPoints < 1 || yPoints < 1 || coarseStep < 1) {
+            throw new IllegalArgumentException("The grid must have at least one point and the coarse step must be at least one");
+        }
+
+        this.xPoints = xPoints;
+        this.yPoints = yPoints;
+        if (getCoarseIndices(xPoints, coarseStep).length < 3 && getCoarseIndices(yPoints, coarseStep).length < 3) {
+            coarseStep = 1;
+        }
+        this.coarseXIndices = getCoarseIndices(xPoints, coarseStep);
+        this.coarseYIndices = getCoarseIndices(yPoints, coarseStep);
+        this.refinementThreshold = refinementThreshold;
+        this.heights = new double[xPoints][yPoints];
+        this.measured = new boolean[xPoints][yPoints];
+
+        boolean[][] selected = new boolean[xPoints][yPoints];
+        for (int x : coarseXIndices) {
+            for (int y : coarseYIndices) {
+                selected[x][y] = true;
+            }
+        }
+        addSerpentine(selected);
+        refined = coarseXIndices.length == xPoints && coarseYIndices.length == yPoints;
+    }
+
+    private static int[] getCoarseIndices(int points, int coarseStep) {
+        int count = (points - 1 + coarseStep - 1) / coarseStep + 1;
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = Math.min(i * coarseStep, points - 1);
+        }
+        return indices;
+    }
+
+    private void addSerpentine(boolean[][] selected) {
+        boolean ascending = true;
+        for (int x = 0; x < xPoints; x++) {
+            boolean hasPoints = false;
+            for (int i = 0; i < yPoints; i++) {
+                int y = ascending ? i : yPoints - 1 - i;
+                if (selected[x][y]) {
+                    pendingPoints.add(new GridPoint(x, y));
+                    hasPoints = true;
+                }
+            }
+
+            if (hasPoints) {
+                ascending = !ascending;
+            }
+        }
+    }
+
+    /**
+     * @return the next point to probe or empty if all points needed have been probed
+     */
+    public Optional<GridPoint> getNextPoint() {
+        return Optional.ofNullable(pendingPoints.peek());
+    }
+
+    /**
+     * Records the height of the next point to probe. When the coarse pass is done the points
+     * needing refinement are added to the pending points.
+     *
+     * @param z the probed height
+     * @return the point that was recorded
+     */
+    public GridPoint recordNextPoint(double z) {
+        GridPoint point = pendingPoints.pop();
+        heights[point.x][point.y] = z;
+        measured[point.x][point.y] = true;
+
+        if (pendingPoints.isEmpty() && !refined) {
+            refined = true;
+            addRefinementPoints();
+        }
+        return point;
+    }
+
+    public boolean isComplete() {
+        return pendingPoints.isEmpty();
+    }
+
+    public boolean isMeasured(int x, int y) {
+        return measured[x][y];
+    }
+
+    /**
+     * Returns the height of a grid point, if the point wasn't probed it will be interpolated from
+     * the corners of the surrounding coarse cell.
+     *
+     * @param x the grid index along the X axis
+     * @param y the grid index along the Y axis
+     * @return the height or NaN if it isn't known yet
+     */
+    public double getHeight(int x, int y) {
+        if (measured[x][y]) {
+            return heights[x][y];
+        }
+
+        int xCell = getCell(coarseXIndices, x);
+        int yCell = getCell(coarseYIndices, y);
+        int x0 = coarseXIndices[xCell];
+        int x1 = coarseXIndices[Math.min(xCell + 1, coarseXIndices.length - 1)];
+        int y0 = coarseYIndices[yCell];
+        int y1 = coarseYIndices[Math.min(yCell + 1, coarseYIndices.length - 1)];
+        if (!measured[x0][y0] || !measured[x1][y0] || !measured[x0][y1] || !measured[x1][y1]) {
+            return Double.NaN;
+        }
+
+        double xRatio = x1 == x0 ? 0 : (x - x0) / (double) (x1 - x0);
+        double yRatio = y1 == y0 ? 0 : (y - y0) / (double) (y1 - y0);
+        double lower = heights[x0][y0] + (heights[x1][y0] - heights[x0][y0]) * xRatio;
+        double upper = heights[x0][y1] + (heights[x1][y1] - heights[x0][y1]) * xRatio;
+        return lower + (upper - lower) * yRatio;
+    }
+
+    /**
+     * Returns the highest probed point within the rectangle spanned by the two given points,
+     * extended by one grid step in each direction. This is used for finding how far the probe
+     * needs to retract before it can travel between the two points.
+     *
+     * @return the highest probed point or NaN if no points in the area has been probed
+     */
+    public double getMaxHeightBetween(GridPoint from, GridPoint to) {
+        int xMin = Math.max(0, Math.min(from.x, to.x) - 1);
+        int xMax = Math.min(xPoints - 1, Math.max(from.x, to.x) + 1);
+        int yMin = Math.max(0, Math.min(from.y, to.y) - 1);
+        int yMax = Math.min(yPoints - 1, Math.max(from.y, to.y) + 1);
+
+        double maxHeight = Double.NaN;
+        for (int x = xMin; x <= xMax; x++) {
+            for (int y = yMin; y <= yMax; y++) {
+                if (measured[x][y] && !(heights[x][y] <= maxHeight)) {
+                    maxHeight = heights[x][y];
+                }
+            }
+        }
+        return maxHeight;
+    }
+
+    private static int getCell(int[] coarseIndices, int index) {
+        for (int i = coarseIndices.length - 1; i > 0; i--) {
+            if (coarseIndices[i - 1] <= index && coarseIndices[i] >= index) {
+                return i - 1;
+            }
+        }
+        return 0;
+    }
+
+    private void addRefinementPoints() {
+        double[][] curvature = getCoarseCurvature();
+        boolean[][] selected = new boolean[xPoints][yPoints];
+        for (int i = 0; i < coarseXIndices.length - 1; i++) {
+            for (int j = 0; j < coarseYIndices.length - 1; j++) {
+                double xWidth = coarseXIndices[i + 1] - coarseXIndices[i];
+                double yWidth = coarseYIndices[j + 1] - coarseYIndices[j];
+                double cellCurvature = Math.max(
+                        Math.max(curvature[i][j], curvature[i + 1][j]),
+                        Math.max(curvature[i][j + 1], curvature[i + 1][j + 1]));
+
+                // The largest error of a linear interpolation over the width h is h^2 * f'' / 8
+                double width = Math.max(xWidth, yWidth);
+                if (width > 1 && cellCurvature * width * width / 8 > refinementThreshold) {
+                    for (int x = coarseXIndices[i]; x <= coarseXIndices[i + 1]; x++) {
+                        for (int y = coarseYIndices[j]; y <= coarseYIndices[j + 1]; y++) {
+                            selected[x][y] = !measured[x][y];
+                        }
+                    }
+                }
+            }
+        }
+        addSerpentine(selected);
+    }
+
+    /**
+     * Estimates the absolute second derivative in grid steps for each of the coarse points using
+     * the neighbouring coarse points along each axis.
+     */
+    private double[][] getCoarseCurvature() {
+        double[][] curvature = new double[coarseXIndices.length][coarseYIndices.length];
+        for (int i = 0; i < coarseXIndices.length; i++) {
+            for (int j = 0; j < coarseYIndices.length; j++) {
+                int x = coarseXIndices[i];
+                int y = coarseYIndices[j];
+                if (i > 0 && i < coarseXIndices.length - 1) {
+                    curvature[i][j] = getSecondDerivative(
+                            coarseXIndices[i - 1], heights[coarseXIndices[i - 1]][y],
+                            x, heights[x][y],
+                            coarseXIndices[i + 1], heights[coarseXIndices[i + 1]][y]);
+                }
+                if (j > 0 && j < coarseYIndices.length - 1) {
+                    curvature[i][j] = Math.max(curvature[i][j], getSecondDerivative(
+                            coarseYIndices[j - 1], heights[x][coarseYIndices[j - 1]],
+                            y, heights[x][y],
+                            coarseYIndices[j + 1], heights[x][coarseYIndices[j + 1]]));
+                }
+            }
+        }
+        return curvature;
+    }
+
+    private static double getSecondDerivative(int i0, double z0, int i1, double z1, int i2, double z2) {
+        double h0 = i1 - i0;
+        double h1 = i2 - i1;
+        return Math.abs(2 * ((z2 - z1) / h1 - (z1 - z0) / h0) / (h0 + h1));
+    }
+
+    /**
+     * The indices of a point in the probe grid
+     */
+    public static class GridPoint {
+        public final int x;
+        public final int y;
+
+        public GridPoint(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof GridPoint)) return false;
+            GridPoint gridPoint = (GridPoint) o;
+            return x == gridPoint.x && y == gridPoint.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + x + ", " + y + ")";
+        }
+    }
+}
@@ -28,8 +28,6 @@ import com.willwinder.universalgcodesender.model.UnitUtils.Units;
 import com.willwinder.universalgcodesender.model.events.ProbeEvent;
 import com.willwinder.universalgcodesender.utils.AutoLevelSettings;
 
-import java.util.Deque;
-import java.util.LinkedList;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -41,16 +39,24 @@ import java.util.logging.Logger;
 import static com.willwinder.universalgcodesender.utils.MathUtils.isEqual;
 
 /**
+ * Probes a surface in a grid with the step resolution given in the {@link AutoLevelSettings}. The order
+ * of the probe points and which points that needs probing is given by a {@link SurfaceProbePlanner}.
+ *
  * @author wwinder
  */
 public class SurfaceScanner {
     private static final Logger logger = Logger.getLogger(SurfaceScanner.class.getSimpleName());
 
+    /**
+     * The number of grid steps between the points probed in the first pass when using adaptive refinement
+     */
+    private static final int ADAPTIVE_COARSE_STEP = 4;
+
     private final BackendAPI backend;
     private final AutoLevelSettings settings;
     private final Set<SurfaceScannerListener> listeners = ConcurrentHashMap.newKeySet();
     private Position[][] probePositionGrid = new Position[0][0];
-    private Deque<Position> pendingPositions = new LinkedList<>();
+    private SurfaceProbePlanner probePlanner = new SurfaceProbePlanner(1, 1, 1, 0);
     private Position minXYZ = Position.ZERO;
     private Position maxXYZ = Position.ZERO;
     private Position machineWorkOffset = new Position(Units.MM);
@@ -93,7 +99,7 @@ public class SurfaceScanner {
     }
 
     public void handleEvent(ProbeEvent evt) {
-        if (pendingPositions.isEmpty() || !isScanning.get()) return;
+        if (probePlanner.isComplete() || !isScanning.get()) return;
 
         Position probeMachinePosition = evt.getProbePosition();
         if (!Double.isFinite(probeMachinePosition.getZ())) {
@@ -109,16 +115,17 @@ public class SurfaceScanner {
 
         logger.log(Level.INFO, "Record ({0}, {1}, {2})",
                 new Object[]{probePosition.getX(), probePosition.getY(), probePosition.getZ()});
-        probeEvent(probePosition);
+        SurfaceProbePlanner.GridPoint probedPoint = probeEvent(probePosition);
 
-        if (pendingPositions.isEmpty()) {
+        Optional<SurfaceProbePlanner.GridPoint> nextPoint = probePlanner.getNextPoint();
+        if (nextPoint.isPresent()) {
+            double retractedZ = retract(probePosition.getZ(), probedPoint, nextPoint.get());
+            probeNextPoint(retractedZ);
+        } else {
             // The probing is done!
             moveToSafeStartPoint(probePosition);
-        } else {
-            double retractedZ = retract(probePosition.getZ());
-            probeNextPoint(retractedZ);
         }
-}
+    }
 
     private Units getPreferredUnits() {
         return this.backend.getSettings().getPreferredUnits();
@@ -144,25 +151,23 @@ public class SurfaceScanner {
             }
         }
 
-        // Move along grid in zigzag pattern
-        int yIncrement = 1;
-        int yIndex = 0;
-        pendingPositions = new LinkedList<>();
-        for (Position[] columnPositions : probePositionGrid) {
-            while (yIndex >= 0 && yIndex < columnPositions.length) {
-                Position p = columnPositions[yIndex];
-                pendingPositions.add(p);
-                yIndex += yIncrement;
-            }
-            yIncrement = -yIncrement;
-            yIndex += yIncrement;
-        }
+        int coarseStep = settings.getAdaptiveRefinement() ? ADAPTIVE_COARSE_STEP : 1;
+        double refinementThreshold = settings.getAdaptiveRefinementThreshold() * UnitUtils.scaleUnits(Units.MM, minXYZ.getUnits());
+        probePlanner = new SurfaceProbePlanner(xAxisPoints, yAxisPoints, coarseStep, refinementThreshold);
 
         listeners.forEach(SurfaceScannerListener::onScannerUpdate);
     }
 
-    public void probeEvent(final Position p) {
-        Position expectedProbePosition = pendingPositions.pop();
+    /**
+     * Records the probed position of the next probe point
+     *
+     * @param p the probed position in work coordinates
+     * @return the grid indices of the recorded point
+     */
+    public SurfaceProbePlanner.GridPoint probeEvent(final Position p) {
+        SurfaceProbePlanner.GridPoint gridPoint = probePlanner.getNextPoint()
+                .orElseThrow(() -> new IllegalStateException("There are no more points to probe"));
+        Position expectedProbePosition = probePositionGrid[gridPoint.x][gridPoint.y];
         Position probedPosition = p.getPositionIn(expectedProbePosition.getUnits());
 
         // The position reported from the controller might lack some precision on the X/Y position.
@@ -172,12 +177,23 @@ public class SurfaceScanner {
             reset();
             throw new RuntimeException(String.format("Unexpected probe location, expected %s to be %s", probedPosition, expectedProbePosition));
         }
+        probePlanner.recordNextPoint(probedPosition.getZ());
         Position settingsOffset = settings.getAutoLevelProbeOffset().getPositionIn(getPreferredUnits());
-
-        expectedProbePosition.setX(expectedProbePosition.getX() + settingsOffset.getX());
-        expectedProbePosition.setY(expectedProbePosition.getY() + settingsOffset.getY());
-        expectedProbePosition.setZ(probedPosition.getZ() + settingsOffset.getZ());
+        if (probePlanner.isComplete()) {
+            // Apply the offset to all points at once as the unprobed points are interpolated from the probed
+            for (int x = 0; x < probePositionGrid.length; x++) {
+                for (int y = 0; y < probePositionGrid[x].length; y++) {
+                    Position position = probePositionGrid[x][y];
+                    position.setX(position.getX() + settingsOffset.getX());
+                    position.setY(position.getY() + settingsOffset.getY());
+                    position.setZ(probePlanner.getHeight(x, y) + settingsOffset.getZ());
+                }
+            }
+        } else {
+            expectedProbePosition.setZ(probedPosition.getZ() + settingsOffset.getZ());
+        }
         listeners.forEach(SurfaceScannerListener::onScannerUpdate);
+        return gridPoint;
     }
 
     /**
@@ -228,12 +244,12 @@ public class SurfaceScanner {
     }
 
     public Optional<Position> getNextProbePoint() {
-        return Optional.ofNullable(this.pendingPositions.peek());
+        return probePlanner.getNextPoint().map(p -> probePositionGrid[p.x][p.y]);
     }
 
     private void probeNextPoint(Double zBackoff) {
         try {
-            Position p = this.pendingPositions.peek();
+            Position p = getNextProbePoint().orElseThrow(() -> new IllegalStateException("There are no more points to probe"));
 
             // Position over next probe position
             PartialPosition startPos = PartialPosition.builder(p).clearZ().build();
@@ -260,14 +276,22 @@ public class SurfaceScanner {
         return settings.getProbeScanFeedRate() * UnitUtils.scaleUnits(Units.MM, getPreferredUnits());
     }
 
-    private double retract(Double zLast) {
+    /**
+     * Retracts the probe so that it clears all probed points around and between the current
+     * and the next point.
+     */
+    private double retract(double zLast, SurfaceProbePlanner.GridPoint current, SurfaceProbePlanner.GridPoint next) {
         double zRetract = settings.getZRetract() * maxXYZ.getZ();
         if (zRetract <= 0) {
             zRetract = maxXYZ.getZ() - minXYZ.getZ();
         }
 
-        // Start by backing off the current position
-        double zBackoff = Math.min(zLast + zRetract, maxXYZ.getZ());
+        // Start by backing off the highest point in the neighbourhood
+        double zNeighbourhood = probePlanner.getMaxHeightBetween(current, next);
+        if (Double.isNaN(zNeighbourhood) || zNeighbourhood < zLast) {
+            zNeighbourhood = zLast;
+        }
+        double zBackoff = Math.min(zNeighbourhood + zRetract, maxXYZ.getZ());
         PartialPosition safeZ = PartialPosition.builder(maxXYZ.getUnits()).setZ(zBackoff).build();
         String retractCommand = GcodeUtils.generateMoveCommand(
                 "G90G0",
@@ -290,8 +314,8 @@ public class SurfaceScanner {
         machineWorkOffset.z = 0;
 
         // Generate some random test data.
-        while (!pendingPositions.isEmpty()) {
-            Position p = new Position(pendingPositions.peek());
+        while (!probePlanner.isComplete()) {
+            Position p = new Position(getNextProbePoint().get());
             p.setZ(ThreadLocalRandom.current().nextDouble(minXYZ.getZ(), maxXYZ.getZ()));
             probeEvent(p);
         }
@@ -317,7 +341,7 @@ public class SurfaceScanner {
     }
 
     public boolean isValid() {
-        return probePositionGrid.length > 0 && pendingPositions.isEmpty();
+        return probePositionGrid.length > 0 && probePlanner.isComplete();
     }
 
     public void addListener(SurfaceScannerListener listener) {
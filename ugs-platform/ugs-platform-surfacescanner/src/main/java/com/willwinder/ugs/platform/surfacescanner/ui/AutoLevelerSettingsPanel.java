@@ -62,6 +62,13 @@ public class AutoLevelerSettingsPanel extends AbstractUGSSettings {
                 Localization.getString("autoleveler.option.offset-z"),
                 new SpinnerNumberModel(0., 0., null, 1.));
 
+    private final JCheckBox adaptiveRefinementCheckBox = new JCheckBox(
+                Localization.getString("autoleveler.option.adaptive-refinement"));
+
+    private final Spinner adaptiveRefinementThresholdSpinner = new Spinner(
+                Localization.getString("autoleveler.option.adaptive-refinement-threshold"),
+                new SpinnerNumberModel(0.05, 0.001, null, 0.01));
+
     public AutoLevelerSettingsPanel(Settings settings, IChanged changer) {
         super(settings, changer);
     }
@@ -94,6 +101,12 @@ public class AutoLevelerSettingsPanel extends AbstractUGSSettings {
 
         this.zOffsetSpinner.setValue(autoLevelSettings.getAutoLevelProbeOffset().z);
         add(this.zOffsetSpinner);
+
+        this.adaptiveRefinementCheckBox.setSelected(autoLevelSettings.getAdaptiveRefinement());
+        add(this.adaptiveRefinementCheckBox);
+
+        this.adaptiveRefinementThresholdSpinner.setValue(autoLevelSettings.getAdaptiveRefinementThreshold());
+        add(this.adaptiveRefinementThresholdSpinner);
     }
 
     @Override
@@ -108,6 +121,8 @@ public class AutoLevelerSettingsPanel extends AbstractUGSSettings {
                 (double)this.yOffsetSpinner.getValue(),
                 (double)this.zOffsetSpinner.getValue(),
                 Units.MM));
+        values.setAdaptiveRefinement(this.adaptiveRefinementCheckBox.isSelected());
+        values.setAdaptiveRefinementThreshold((double) this.adaptiveRefinementThresholdSpinner.getValue());
         settings.getAutoLevelSettings().apply(values);
     }
 
@@ -0,0 +1,138 @@
+/*
+    Copyright 2023 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.platform.surfacescanner;
+
+import com.willwinder.ugs.platform.surfacescanner.SurfaceProbePlanner.GridPoint;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SurfaceProbePlannerTest {
+
+    private static List<GridPoint> probeAll(SurfaceProbePlanner planner, BiFunction<Integer, Integer, Double> surface) {
+        List<GridPoint> probedPoints = new ArrayList<>();
+        while (planner.getNextPoint().isPresent()) {
+            GridPoint point = planner.getNextPoint().get();
+            probedPoints.add(planner.recordNextPoint(surface.apply(point.x, point.y)));
+        }
+        return probedPoints;
+    }
+
+    @Test
+    public void pointsShouldBeProbedInASerpentinePath() {
+        SurfaceProbePlanner planner = new SurfaceProbePlanner(3, 2, 1, 0.1);
+        List<GridPoint> probedPoints = probeAll(planner, (x, y) -> 0d);
+
+        assertEquals(Arrays.asList(
+                new GridPoint(0, 0), new GridPoint(0, 1),
+                new GridPoint(1, 1), new GridPoint(1, 0),
+                new GridPoint(2, 0), new GridPoint(2, 1)), probedPoints);
+        assertTrue(planner.isComplete());
+    }
+
+    @Test
+    public void flatSurfaceShouldOnlyBeProbedInTheCoarsePass() {
+        SurfaceProbePlanner planner = new SurfaceProbePlanner(10, 10, 4, 0.05);
+        List<GridPoint> probedPoints = probeAll(planner, (x, y) -> 1 + x * 0.1 + y * 0.2);
+
+        // Coarse indices 0, 4, 8 and 9 along each axis
+        assertEquals(16, probedPoints.size());
+        assertEquals(Arrays.asList(new GridPoint(0, 0), new GridPoint(0, 4), new GridPoint(0, 8), new GridPoint(0, 9),
+                new GridPoint(4, 9), new GridPoint(4, 8)), probedPoints.subList(0, 6));
+
+        // A tilted plane is interpolated exactly
+        assertFalse(planner.isMeasured(2, 3));
+        assertEquals(1 + 0.2 + 0.6, planner.getHeight(2, 3), 0.0001);
+        assertEquals(1 + 0.5 + 1.8, planner.getHeight(5, 9), 0.0001);
+    }
+
+    @Test
+    public void curvedAreasShouldBeRefined() {
+        // A bump in the middle of the X axis
+        SurfaceProbePlanner planner = new SurfaceProbePlanner(17, 9, 4, 0.2);
+        List<GridPoint> probedPoints = probeAll(planner, (x, y) -> x == 8 ? 1d : 0d);
+
+        assertTrue(probedPoints.size() > 15);
+        assertTrue(planner.isMeasured(6, 2));
+        assertTrue(planner.isMeasured(10, 5));
+        assertEquals(0, planner.getHeight(6, 2), 0.0001);
+
+        // The cells far from the bump are flat
+        assertFalse(planner.isMeasured(1, 1));
+        assertFalse(planner.isMeasured(15, 7));
+        assertEquals(0, planner.getHeight(15, 7), 0.0001);
+    }
+
+    @Test
+    public void refinementShouldNotBeAddedBelowTheThreshold() {
+        SurfaceProbePlanner planner = new SurfaceProbePlanner(17, 9, 4, 0.6);
+        List<GridPoint> probedPoints = probeAll(planner, (x, y) -> x == 8 ? 0.1 : 0d);
+
+        assertEquals(15, probedPoints.size());
+        assertEquals(0.05, planner.getHeight(6, 3), 0.0001);
+    }
+
+    @Test
+    public void gridsTooSmallForEstimatingTheCurvatureShouldBeFullyProbed() {
+        // Only the corners would be coarse points, which gives no curvature at all
+        SurfaceProbePlanner planner = new SurfaceProbePlanner(5, 5, 4, 0.05);
+        List<GridPoint> probedPoints = probeAll(planner, (x, y) -> (x - 2) * (x - 2) * 0.1 + (y - 2) * (y - 2) * 0.1);
+
+        assertEquals(25, probedPoints.size());
+        assertTrue(planner.isMeasured(2, 2));
+        assertEquals(0, planner.getHeight(2, 2), 0.0001);
+        assertEquals(0.4, planner.getHeight(0, 2), 0.0001);
+    }
+
+    @Test
+    public void gridsWithEnoughCoarsePointsOnOneAxisShouldBeProbedCoarse() {
+        SurfaceProbePlanner planner = new SurfaceProbePlanner(9, 5, 4, 0.05);
+        List<GridPoint> probedPoints = probeAll(planner, (x, y) -> 0d);
+
+        // Coarse indices 0, 4 and 8 along X and 0 and 4 along Y
+        assertEquals(6, probedPoints.size());
+    }
+
+    @Test
+    public void heightShouldBeUnknownUntilTheCellIsProbed() {
+        SurfaceProbePlanner planner = new SurfaceProbePlanner(9, 9, 4, 0.05);
+        planner.recordNextPoint(1);
+        planner.recordNextPoint(1);
+
+        assertEquals(1, planner.getHeight(0, 0), 0.0001);
+        assertTrue(Double.isNaN(planner.getHeight(2, 2)));
+    }
+
+    @Test
+    public void maxHeightBetweenShouldIncludeTheNeighbourhood() {
+        SurfaceProbePlanner planner = new SurfaceProbePlanner(4, 4, 1, 0.05);
+        assertTrue(Double.isNaN(planner.getMaxHeightBetween(new GridPoint(0, 0), new GridPoint(0, 1))));
+
+        probeAll(planner, (x, y) -> x == 3 && y == 3 ? 5d : x + y / 10d);
+        assertEquals(1.2, planner.getMaxHeightBetween(new GridPoint(0, 0), new GridPoint(0, 1)), 0.0001);
+        assertEquals(5, planner.getMaxHeightBetween(new GridPoint(2, 2), new GridPoint(2, 1)), 0.0001);
+    }
+}
@@ -1,5 +1,6 @@
 package com.willwinder.ugs.platform.surfacescanner;
 
+import com.willwinder.universalgcodesender.gcode.processors.MeshLeveler;
 import com.willwinder.universalgcodesender.model.BackendAPI;
 import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UnitUtils;
@@ -115,6 +116,34 @@ public class SurfaceScannerTest {
         assertEquals(25.4, surfaceScanner.getProbePositionGrid()[1][1].getZ(), 0.1);
     }
 
+    @Test
+    public void adaptiveRefinementShouldInterpolateTheUnprobedPointsOnAFlatSurface() {
+        Settings settings = new Settings();
+        settings.getAutoLevelSettings().setMaxX(8);
+        settings.getAutoLevelSettings().setMaxY(8);
+        settings.getAutoLevelSettings().setAdaptiveRefinement(true);
+        when(backendAPI.getSettings()).thenReturn(settings);
+
+        SurfaceScanner surfaceScanner = new SurfaceScanner(backendAPI);
+        surfaceScanner.reset();
+
+        int probeCount = 0;
+        while (surfaceScanner.getNextProbePoint().isPresent()) {
+            Position next = surfaceScanner.getNextProbePoint().get();
+            surfaceScanner.probeEvent(createProbePoint(next, UnitUtils.Units.MM, 0.5 + next.getX() * 0.1));
+            probeCount++;
+        }
+
+        assertEquals(9, probeCount);
+        assertTrue(surfaceScanner.isValid());
+
+        Position[][] grid = surfaceScanner.getProbePositionGrid();
+        assertEquals(9, grid.length);
+        assertEquals(9, grid[0].length);
+        assertEquals(0.8, grid[3][2].getZ(), 0.001);
+        new MeshLeveler(0, grid);
+    }
+
 
     private static Position createProbePoint(Position position, UnitUtils.Units units, double z) {
         Position probePoint = new Position(position.getPositionIn(units));
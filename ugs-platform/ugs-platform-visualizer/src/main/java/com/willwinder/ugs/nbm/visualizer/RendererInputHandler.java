@@ -151,6 +151,12 @@ public class RendererInputHandler implements
         }
     }
 
+    @Override
+    public boolean isCommandCompleteCoalescingEnabled() {
+        // Only the last completed command is used for graying out the toolpath
+        return true;
+    }
+
     /**
      * Mouse Motion Listener
      */
@@ -19,7 +19,7 @@
 package com.willwinder.ugs.nbm.visualizer.renderables;
 
 import com.willwinder.ugs.nbm.visualizer.options.VisualizerOptions;
-import com.willwinder.universalgcodesender.visualizer.LineSegment;
+import com.willwinder.universalgcodesender.visualizer.ToolpathBuffer;
 
 import java.awt.Color;
 
@@ -31,7 +31,7 @@ import static com.willwinder.ugs.nbm.visualizer.options.VisualizerOptions.VISUAL
 import static com.willwinder.ugs.nbm.visualizer.options.VisualizerOptions.VISUALIZER_OPTION_RAPID;
 
 /**
- * Generates a color based on the current line segment
+ * Generates a color based on the current line segment in a toolpath
  *
  * @author Joacim Breiler
  */
@@ -53,17 +53,17 @@ public class GcodeLineColorizer {
         completedColor = vo.getOptionForKey(VISUALIZER_OPTION_COMPLETE).value;
     }
 
-    public Color getColor(LineSegment lineSegment, long currentCommandNumber) {
-        if (lineSegment.getLineNumber() < currentCommandNumber) {
+    public Color getColor(ToolpathBuffer toolpath, int index, long currentCommandNumber) {
+        if (toolpath.getLineNumber(index) < currentCommandNumber) {
             return completedColor;
-        } else if (lineSegment.isArc()) {
+        } else if (toolpath.isArc(index)) {
             return arcColor;
-        } else if (lineSegment.isFastTraverse()) {
+        } else if (toolpath.isFastTraverse(index)) {
             return rapidColor;
-        } else if (lineSegment.isZMovement()) {
+        } else if (toolpath.isZMovement(index)) {
             return plungeColor;
         } else {
-            return getFeedColor(lineSegment.getSpindleSpeed());
+            return getFeedColor(toolpath.getSpindleSpeed(index));
         }
     }
 
@@ -32,7 +32,7 @@ import com.willwinder.universalgcodesender.utils.GUIHelpers;
 import com.willwinder.universalgcodesender.utils.GcodeStreamReader;
 import com.willwinder.universalgcodesender.utils.IGcodeStreamReader;
 import com.willwinder.universalgcodesender.visualizer.GcodeViewParse;
-import com.willwinder.universalgcodesender.visualizer.LineSegment;
+import com.willwinder.universalgcodesender.visualizer.ToolpathBuffer;
 import com.willwinder.universalgcodesender.visualizer.VisualizerUtils;
 
 import java.awt.Color;
@@ -41,38 +41,46 @@ import java.io.IOException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static com.jogamp.opengl.GL.GL_ARRAY_BUFFER;
+import static com.jogamp.opengl.GL.GL_DYNAMIC_DRAW;
 import static com.jogamp.opengl.GL.GL_LINES;
+import static com.jogamp.opengl.GL.GL_STATIC_DRAW;
 import static com.jogamp.opengl.fixedfunc.GLPointerFunc.GL_COLOR_ARRAY;
 import static com.jogamp.opengl.fixedfunc.GLPointerFunc.GL_VERTEX_ARRAY;
 import static com.willwinder.ugs.nbm.visualizer.options.VisualizerOptions.VISUALIZER_OPTION_MODEL;
 
 /**
+ * Renders the toolpath of the loaded gcode file.
+ * <p>
+ * The geometry is uploaded once to a buffer object when the file is loaded. While streaming
+ * only the segments of the lines that changed state since the last frame are recolored and
+ * uploaded, which are found using the line number index of the {@link ToolpathBuffer}.
+ *
  * @author wwinder
  */
 public class GcodeModel extends Renderable {
     public static final double ARC_SEGMENT_LENGTH = 0.8;
     private static final Logger logger = Logger.getLogger(GcodeModel.class.getName());
+    private static final int COLOR_BYTES_PER_SEGMENT = 8;
     private final GcodeLineColorizer colorizer = new GcodeLineColorizer();
-    private boolean colorArrayDirty, vertexArrayDirty, vertexBufferDirty;
+    private boolean colorsDirty, geometryDirty;
     // Gcode file data
     private String gcodeFile = null;
     private boolean isDrawable = false; //True if a file is loaded; false if not
-    // TODO: don't save the line list.
-    private List<LineSegment> gcodeLineList; //An ArrayList of linesegments composing the model
-    private List<LineSegment> pointList; //An ArrayList of linesegments composing the model
-    private int currentCommandNumber = 0;
+    private ToolpathBuffer toolpath = new ToolpathBuffer(1); // The line segments composing the model
+    private volatile int currentCommandNumber = 0;
+    private int coloredCommandNumber = 0; // The command number that the color data was generated for
     // OpenGL Object Buffer Variables
     private int numberOfVertices = -1;
-    private float[] lineVertexData = null;
     private byte[] lineColorData = null;
-    private FloatBuffer lineVertexBuffer = null;
     private ByteBuffer lineColorBuffer = null;
+    private final int[] bufferIds = new int[2]; // The vertex and color buffer objects, zero until created
+    private int dirtyColorStart, dirtyColorEnd; // The range of segments with colors that needs to be uploaded
     private Position objectMin;
     private Position objectMax;
     private Position objectSize;
@@ -86,7 +94,7 @@ public class GcodeModel extends Renderable {
     @Override
     final public void reloadPreferences(VisualizerOptions vo) {
         colorizer.reloadPreferences(vo);
-        vertexBufferDirty = true;
+        colorsDirty = true;
     }
 
     /**
@@ -109,11 +117,10 @@ public class GcodeModel extends Renderable {
      */
     public void setCurrentCommandNumber(int num) {
         currentCommandNumber = num;
-        vertexBufferDirty = true;
     }
 
-    public List<LineSegment> getLineList() {
-        return this.pointList != null ? this.pointList : Collections.emptyList();
+    public ToolpathBuffer getToolpath() {
+        return this.toolpath;
     }
 
     @Override
@@ -133,37 +140,52 @@ public class GcodeModel extends Renderable {
 
     @Override
     public void init(GLAutoDrawable drawable) {
+        // Any buffer objects belonged to the previous context
+        Arrays.fill(bufferIds, 0);
         generateObject();
     }
 
+    @Override
+    public void dispose(GLAutoDrawable drawable) {
+        deleteGLBuffers(drawable.getGL().getGL2());
+    }
+
     @Override
     public void draw(GLAutoDrawable drawable, boolean idle, Position machineCoord, Position workCoord, Position focusMin, Position focusMax, double scaleFactor, Position mouseCoordinates, Position rotation) {
+        GL2 gl = drawable.getGL().getGL2();
+
+        // The file has been reloaded or unloaded, release the buffers of the previous file
+        if (!isDrawable || geometryDirty) {
+            deleteGLBuffers(gl);
+        }
+
         if (!isDrawable) return;
 
-        GL2 gl = drawable.getGL().getGL2();
+        updateColors();
 
         // Batch mode if available
         if (gl.isFunctionAvailable("glGenBuffers")
                 && gl.isFunctionAvailable("glBindBuffer")
                 && gl.isFunctionAvailable("glBufferData")
+                && gl.isFunctionAvailable("glBufferSubData")
                 && gl.isFunctionAvailable("glDeleteBuffers")) {
 
-            // Initialize OpenGL arrays if required.
-            if (this.vertexBufferDirty && !vertexArrayDirty && !colorArrayDirty) {
-                updateVertexBuffers();
-                this.vertexBufferDirty = false;
-            }
-            if (this.colorArrayDirty) {
-                this.updateGLColorArray(drawable);
-                this.colorArrayDirty = false;
-            }
-            if (this.vertexArrayDirty) {
-                this.updateGLGeometryArray(drawable);
-                this.vertexArrayDirty = false;
+            // Initialize OpenGL buffers if required, otherwise only upload the changed colors.
+            if (this.geometryDirty || bufferIds[0] == 0) {
+                this.updateGLBuffers(gl);
+                this.geometryDirty = false;
+            } else if (dirtyColorEnd > dirtyColorStart) {
+                this.updateGLColorBuffer(gl);
             }
+
             gl.glLineWidth(1.0f);
             gl.glEnableClientState(GL_VERTEX_ARRAY);
             gl.glEnableClientState(GL_COLOR_ARRAY);
+            gl.glBindBuffer(GL_ARRAY_BUFFER, bufferIds[0]);
+            gl.glVertexPointer(3, GL.GL_FLOAT, 0, 0L);
+            gl.glBindBuffer(GL_ARRAY_BUFFER, bufferIds[1]);
+            gl.glColorPointer(4, GL.GL_UNSIGNED_BYTE, 0, 0L);
+            gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
             gl.glDrawArrays(GL.GL_LINES, 0, numberOfVertices);
             gl.glDisableClientState(GL_COLOR_ARRAY);
             gl.glDisableClientState(GL_VERTEX_ARRAY);
@@ -173,15 +195,17 @@ public class GcodeModel extends Renderable {
             gl.glBegin(GL_LINES);
             gl.glLineWidth(1.0f);
 
+            float[] lineVertexData = toolpath.getCoordinates();
             int verts = 0;
             int colors = 0;
-            for (int i = 0; i < pointList.size(); i++) {
+            for (int i = 0; i < toolpath.size(); i++) {
                 gl.glColor4ub(lineColorData[colors++], lineColorData[colors++], lineColorData[colors++], lineColorData[colors++]);
                 gl.glVertex3d(lineVertexData[verts++], lineVertexData[verts++], lineVertexData[verts++]);
                 gl.glColor4ub(lineColorData[colors++], lineColorData[colors++], lineColorData[colors++], lineColorData[colors++]);
                 gl.glVertex3d(lineVertexData[verts++], lineVertexData[verts++], lineVertexData[verts++]);
             }
             gl.glEnd();
+            dirtyColorStart = dirtyColorEnd = 0;
         }
     }
 
@@ -206,26 +230,18 @@ public class GcodeModel extends Renderable {
             GcodeViewParse gcvp = new GcodeViewParse();
             logger.log(Level.INFO, "About to process {}", gcodeFile);
             try (IGcodeStreamReader gsr = new GcodeStreamReader(new File(gcodeFile), new DefaultCommandCreator())) {
-                gcodeLineList = gcvp.toObjFromReader(gsr, ARC_SEGMENT_LENGTH);
+                toolpath = gcvp.toToolpathFromReader(gsr, ARC_SEGMENT_LENGTH);
             } catch (GcodeStreamReader.NotGcodeStreamFile e) {
                 List<String> linesInFile;
                 linesInFile = VisualizerUtils.readFiletoArrayList(this.gcodeFile);
-                gcodeLineList = gcvp.toObjRedux(linesInFile, ARC_SEGMENT_LENGTH);
-            }
-
-            // Convert LineSegments to points.
-            this.pointList = new ArrayList<>(gcodeLineList.size());
-
-            for (LineSegment ls : gcodeLineList) {
-                this.pointList.add(VisualizerUtils.toCartesian(ls));
+                toolpath = gcvp.toToolpath(linesInFile, ARC_SEGMENT_LENGTH);
             }
-            gcodeLineList = pointList;
 
             this.objectMin = gcvp.getMinimumExtremes();
             this.objectMax = gcvp.getMaximumExtremes();
             this.colorizer.setMaxSpindleSpeed(gcvp.getMaxSpindleSpeed());
 
-            if (gcodeLineList.isEmpty()) {
+            if (toolpath.isEmpty()) {
                 return false;
             }
 
@@ -235,7 +251,7 @@ public class GcodeModel extends Renderable {
 
             Position center = VisualizerUtils.findCenter(objectMin, objectMax);
             logger.info("Center = " + center);
-            logger.info("Num Line Segments :" + gcodeLineList.size());
+            logger.info("Num Line Segments :" + toolpath.size());
 
             objectSize.x = this.objectMax.x - this.objectMin.x;
             objectSize.y = this.objectMax.y - this.objectMin.y;
@@ -244,11 +260,13 @@ public class GcodeModel extends Renderable {
             // Now that the object is known, fill the buffers.
             this.isDrawable = true;
 
-            this.numberOfVertices = gcodeLineList.size() * 2;
-            this.lineVertexData = new float[numberOfVertices * 4];
-            this.lineColorData = new byte[numberOfVertices * 4];
+            this.numberOfVertices = toolpath.size() * 2;
+            this.lineColorData = new byte[toolpath.size() * COLOR_BYTES_PER_SEGMENT];
 
-            this.updateVertexBuffers();
+            this.coloredCommandNumber = currentCommandNumber;
+            this.updateColorData(0, toolpath.size(), coloredCommandNumber);
+            this.colorsDirty = false;
+            this.geometryDirty = true;
         } catch (GcodeParserException | IOException e) {
             String error = Localization.getString("mainWindow.error.openingFile") + " : " + e.getLocalizedMessage();
             logger.log(Level.SEVERE, error, e);
@@ -260,100 +278,113 @@ public class GcodeModel extends Renderable {
     }
 
     /**
-     * Convert the gcodeLineList into vertex and color arrays.
+     * Recolors the segments which have changed since the last frame. If the command number
+     * has changed only the segments of the lines between the old and new command number are
+     * updated, all segments are updated if the preferences has changed.
      */
-    private void updateVertexBuffers() {
-        if (this.isDrawable) {
-            int vertIndex = 0;
-            int colorIndex = 0;
-            byte[] c = new byte[4];
-            for (LineSegment ls : gcodeLineList) {
-                Color color = colorizer.getColor(ls, this.currentCommandNumber);
-
-                Position p1 = ls.getStart();
-                Position p2 = ls.getEnd();
-
-                c[0] = (byte) color.getRed();
-                c[1] = (byte) color.getGreen();
-                c[2] = (byte) color.getBlue();
-                c[3] = (byte) color.getAlpha();
-
-                // colors
-                //p1
-                lineColorData[colorIndex++] = c[0];
-                lineColorData[colorIndex++] = c[1];
-                lineColorData[colorIndex++] = c[2];
-                lineColorData[colorIndex++] = c[3];
-
-                //p2
-                lineColorData[colorIndex++] = c[0];
-                lineColorData[colorIndex++] = c[1];
-                lineColorData[colorIndex++] = c[2];
-                lineColorData[colorIndex++] = c[3];
-
-                // p1 location
-                lineVertexData[vertIndex++] = (float) p1.x;
-                lineVertexData[vertIndex++] = (float) p1.y;
-                lineVertexData[vertIndex++] = (float) p1.z;
-                //p2
-                lineVertexData[vertIndex++] = (float) p2.x;
-                lineVertexData[vertIndex++] = (float) p2.y;
-                lineVertexData[vertIndex++] = (float) p2.z;
-            }
-
-            this.colorArrayDirty = true;
-            this.vertexArrayDirty = true;
+    private void updateColors() {
+        int commandNumber = this.currentCommandNumber;
+        if (this.colorsDirty || (commandNumber != coloredCommandNumber && !toolpath.isSortedByLineNumber())) {
+            updateColorData(0, toolpath.size(), commandNumber);
+            this.colorsDirty = false;
+        } else if (commandNumber != coloredCommandNumber) {
+            int start = toolpath.indexOfLineNumber(Math.min(commandNumber, coloredCommandNumber));
+            int end = toolpath.indexOfLineNumber(Math.max(commandNumber, coloredCommandNumber));
+            updateColorData(start, end, commandNumber);
         }
+        this.coloredCommandNumber = commandNumber;
     }
 
     /**
-     * Initialize or update open gl geometry array in native buffer objects.
+     * Generates the colors of the segments in the given range and marks them for upload.
+     *
+     * @param start         the index of the first segment
+     * @param end           the index after the last segment
+     * @param commandNumber the current command number
      */
-    private void updateGLGeometryArray(GLAutoDrawable drawable) {
-        GL2 gl = drawable.getGL().getGL2();
+    private void updateColorData(int start, int end, int commandNumber) {
+        if (start >= end) {
+            return;
+        }
 
-        // Reset buffer and set to null of new geometry doesn't fit.
-        if (lineVertexBuffer != null) {
-            ((Buffer) lineVertexBuffer).clear();
-            if (lineVertexBuffer.remaining() < lineVertexData.length) {
-                lineVertexBuffer = null;
+        int colorIndex = start * COLOR_BYTES_PER_SEGMENT;
+        for (int i = start; i < end; i++) {
+            Color color = colorizer.getColor(toolpath, i, commandNumber);
+            byte red = (byte) color.getRed();
+            byte green = (byte) color.getGreen();
+            byte blue = (byte) color.getBlue();
+            byte alpha = (byte) color.getAlpha();
+
+            // Same color for both vertices of the segment
+            for (int vertex = 0; vertex < 2; vertex++) {
+                lineColorData[colorIndex++] = red;
+                lineColorData[colorIndex++] = green;
+                lineColorData[colorIndex++] = blue;
+                lineColorData[colorIndex++] = alpha;
             }
         }
 
-        if (lineVertexBuffer == null) {
-            lineVertexBuffer = Buffers.newDirectFloatBuffer(lineVertexData.length);
+        if (dirtyColorEnd > dirtyColorStart) {
+            dirtyColorStart = Math.min(dirtyColorStart, start);
+            dirtyColorEnd = Math.max(dirtyColorEnd, end);
+        } else {
+            dirtyColorStart = start;
+            dirtyColorEnd = end;
         }
-
-        lineVertexBuffer.put(lineVertexData);
-        ((Buffer) lineVertexBuffer).flip();
-        gl.glVertexPointer(3, GL.GL_FLOAT, 0, lineVertexBuffer);
     }
 
     /**
-     * Initialize or update open gl color array in native buffer objects.
+     * Uploads the geometry and all colors to the buffer objects, creating them if needed.
      */
-    private void updateGLColorArray(GLAutoDrawable drawable) {
-        GL2 gl = drawable.getGL().getGL2();
+    private void updateGLBuffers(GL2 gl) {
+        if (bufferIds[0] == 0) {
+            gl.glGenBuffers(bufferIds.length, bufferIds, 0);
+        }
 
-        // Reset buffer and set to null of new colors don't fit.
-        if (lineColorBuffer != null) {
-            ((Buffer) lineColorBuffer).clear();
+        int length = toolpath.size() * ToolpathBuffer.COORDINATES_PER_SEGMENT;
+        FloatBuffer lineVertexBuffer = Buffers.newDirectFloatBuffer(toolpath.getCoordinates(), 0, length);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, bufferIds[0]);
+        gl.glBufferData(GL_ARRAY_BUFFER, (long) length * Buffers.SIZEOF_FLOAT, lineVertexBuffer, GL_STATIC_DRAW);
 
-            if (lineColorBuffer.remaining() < lineColorData.length) {
-                lineColorBuffer = null;
-            }
-        }
+        // Keep a native copy of the colors for partial updates
+        lineColorBuffer = Buffers.newDirectByteBuffer(lineColorData);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, bufferIds[1]);
+        gl.glBufferData(GL_ARRAY_BUFFER, lineColorData.length, lineColorBuffer, GL_DYNAMIC_DRAW);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
 
-        if (lineColorBuffer == null) {
-            if (lineColorData == null) {
-                updateVertexBuffers();
-            }
-            lineColorBuffer = Buffers.newDirectByteBuffer(this.lineColorData.length);
+        dirtyColorStart = dirtyColorEnd = 0;
+    }
+
+    /**
+     * Deletes the buffer objects if they have been created.
+     */
+    private void deleteGLBuffers(GL2 gl) {
+        if (bufferIds[0] == 0) {
+            return;
         }
 
-        lineColorBuffer.put(lineColorData);
-        ((Buffer) lineColorBuffer).flip();
-        gl.glColorPointer(4, GL.GL_UNSIGNED_BYTE, 0, lineColorBuffer);
+        gl.glDeleteBuffers(bufferIds.length, bufferIds, 0);
+        Arrays.fill(bufferIds, 0);
+        lineColorBuffer = null;
+    }
+
+    /**
+     * Uploads the colors of the segments that has changed since the last frame.
+     */
+    private void updateGLColorBuffer(GL2 gl) {
+        int offset = dirtyColorStart * COLOR_BYTES_PER_SEGMENT;
+        int length = (dirtyColorEnd - dirtyColorStart) * COLOR_BYTES_PER_SEGMENT;
+
+        ((Buffer) lineColorBuffer).clear();
+        ((Buffer) lineColorBuffer).position(offset);
+        lineColorBuffer.put(lineColorData, offset, length);
+        ((Buffer) lineColorBuffer).position(offset);
+
+        gl.glBindBuffer(GL_ARRAY_BUFFER, bufferIds[1]);
+        gl.glBufferSubData(GL_ARRAY_BUFFER, offset, length, lineColorBuffer);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+        dirtyColorStart = dirtyColorEnd = 0;
     }
 
     @Override
@@ -1,5 +1,5 @@
 /*
-    Copyright 2013-2022 Will Winder
+    Copyright 2013-2023 Will Winder
 
     This file is part of Universal Gcode Sender (UGS).
 
@@ -477,6 +477,9 @@ public class GcodeRenderer implements GLEventListener, IRenderableRegistrationSe
     @Override
     synchronized public void dispose(GLAutoDrawable drawable) {
         logger.log(Level.INFO, "Disposing OpenGL context.");
+        for (Renderable r : objects) {
+            r.dispose(drawable);
+        }
     }
 
     private void setHorizontalTranslationVector() {
@@ -1,5 +1,5 @@
 /*
-    Copyright 2016-2022 Will Winder
+    Copyright 2016-2023 Will Winder
 
     This file is part of Universal Gcode Sender (UGS).
 
@@ -103,6 +103,13 @@ public abstract class Renderable implements Comparable<Renderable> {
     abstract public boolean center();
 
     abstract public void init(GLAutoDrawable drawable);
+
+    /**
+     * Releases any OpenGL resources of the object, called before the OpenGL context is destroyed.
+     */
+    public void dispose(GLAutoDrawable drawable) {
+    }
+
     abstract public void reloadPreferences(VisualizerOptions vo);
     abstract public void draw(GLAutoDrawable drawable, boolean idle, Position machineCoord, Position workCoord, Position objectMin, Position objectMax, double scaleFactor, Position mouseWorldCoordinates, Position rotation);
 